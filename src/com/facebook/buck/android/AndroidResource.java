@@ -18,6 +18,7 @@ package com.facebook.buck.android;
 
 import com.facebook.buck.android.aapt.MiniAapt;
 import com.facebook.buck.android.aapt.MiniAapt.ResourceCollectionType;
+import com.facebook.buck.android.aapt.ParsedResourceFiles;
 import com.facebook.buck.android.packageable.AndroidPackageable;
 import com.facebook.buck.android.packageable.AndroidPackageableCollector;
 import com.facebook.buck.core.build.buildable.context.BuildableContext;
@@ -133,6 +134,9 @@ public class AndroidResource extends AbstractBuildRuleWithDeclaredAndExtraDeps
 
   private final AtomicReference<String> rDotJavaPackage;
 
+  // Kept across builds of the rule, so that only the resource files that changed are parsed again.
+  private final ParsedResourceFiles parsedResourceFiles = new ParsedResourceFiles();
+
   public AndroidResource(
       BuildTarget buildTarget,
       ProjectFilesystem projectFilesystem,
@@ -340,7 +344,8 @@ public class AndroidResource extends AbstractBuildRuleWithDeclaredAndExtraDeps
             Objects.requireNonNull(pathToTextSymbolsFile),
             pathsToSymbolsOfDeps,
             isGrayscaleImageProcessingEnabled,
-            ResourceCollectionType.R_DOT_TXT));
+            ResourceCollectionType.R_DOT_TXT,
+            parsedResourceFiles));
     return steps.build();
   }
 
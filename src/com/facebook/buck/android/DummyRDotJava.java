@@ -169,11 +169,6 @@ public class DummyRDotJava extends AbstractBuildRule
     ImmutableList.Builder<Step> steps = ImmutableList.builder();
     Path rDotJavaSrcFolder = getRDotJavaSrcFolder(getBuildTarget(), getProjectFilesystem());
 
-    steps.addAll(
-        MakeCleanDirectoryStep.of(
-            BuildCellRelativePath.fromCellRelativePath(
-                context.getBuildCellRootPath(), getProjectFilesystem(), rDotJavaSrcFolder)));
-
     // Generate the .java files and record where they will be written in javaSourceFilePaths.
     ImmutableSortedSet<Path> javaSourceFilePaths;
     if (androidResourceDeps.isEmpty()) {
@@ -187,6 +182,10 @@ public class DummyRDotJava extends AbstractBuildRule
 
       steps.addAll(
           MakeCleanDirectoryStep.of(
+              BuildCellRelativePath.fromCellRelativePath(
+                  context.getBuildCellRootPath(), getProjectFilesystem(), rDotJavaSrcFolder)));
+      steps.add(
+          MkdirStep.of(
               BuildCellRelativePath.fromCellRelativePath(
                   context.getBuildCellRootPath(),
                   getProjectFilesystem(),
@@ -199,6 +198,8 @@ public class DummyRDotJava extends AbstractBuildRule
               /* executable */ false));
       javaSourceFilePaths = ImmutableSortedSet.of(emptyRDotJava);
     } else {
+      // The merge steps keep the R.java files of the packages whose resources didn't change, and
+      // delete the others themselves, so the folder isn't cleaned.
       MergeAndroidResourcesStep mergeStep =
           MergeAndroidResourcesStep.createStepForDummyRDotJava(
               getProjectFilesystem(),
@@ -209,7 +210,8 @@ public class DummyRDotJava extends AbstractBuildRule
               unionPackage,
               /* rName */ Optional.empty(),
               useOldStyleableFormat,
-              skipNonUnionRDotJava);
+              skipNonUnionRDotJava,
+              Optional.of(getRDotJavaIndexFolder()));
       steps.add(mergeStep);
 
       if (!finalRName.isPresent()) {
@@ -225,7 +227,8 @@ public class DummyRDotJava extends AbstractBuildRule
                 unionPackage,
                 finalRName,
                 useOldStyleableFormat,
-                skipNonUnionRDotJava);
+                skipNonUnionRDotJava,
+                Optional.of(getRDotJavaIndexFolder()));
         steps.add(mergeFinalRStep);
 
         javaSourceFilePaths =
@@ -360,6 +363,12 @@ public class DummyRDotJava extends AbstractBuildRule
     return BuildTargetPaths.getScratchPath(filesystem, buildTarget, "__%s_rdotjava_src__");
   }
 
+  /** The index of the R.java files written by the merge steps, see {@link MergedRDotJavaIndex}. */
+  private Path getRDotJavaIndexFolder() {
+    return BuildTargetPaths.getScratchPath(
+        getProjectFilesystem(), getBuildTarget(), "__%s_rdotjava_index__");
+  }
+
   public static Path getRDotJavaBinFolder(BuildTarget buildTarget, ProjectFilesystem filesystem) {
     return CompilerOutputPaths.of(buildTarget, filesystem).getClassesDir();
   }
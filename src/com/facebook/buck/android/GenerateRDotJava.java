@@ -31,7 +31,7 @@ import com.facebook.buck.core.sourcepath.resolver.SourcePathResolverAdapter;
 import com.facebook.buck.io.BuildCellRelativePath;
 import com.facebook.buck.io.filesystem.ProjectFilesystem;
 import com.facebook.buck.step.Step;
-import com.facebook.buck.step.fs.MakeCleanDirectoryStep;
+import com.facebook.buck.step.fs.MkdirStep;
 import com.facebook.buck.step.fs.RmStep;
 import com.facebook.buck.util.zip.ZipCompressionLevel;
 import com.facebook.buck.zip.ZipStep;
@@ -117,8 +117,10 @@ public class GenerateRDotJava extends AbstractBuildRule {
     // Merge R.txt of HasAndroidRes and generate the resulting R.java files per package.
     Path rDotJavaSrc = getPathToGeneratedRDotJavaSrcFiles();
 
-    steps.addAll(
-        MakeCleanDirectoryStep.of(
+    // The merge step keeps the R.java files of the packages whose resources didn't change, and
+    // deletes the others itself, so the directory isn't cleaned.
+    steps.add(
+        MkdirStep.of(
             BuildCellRelativePath.fromCellRelativePath(
                 buildContext.getBuildCellRootPath(), projectFilesystem, rDotJavaSrc)));
 
@@ -136,7 +138,8 @@ public class GenerateRDotJava extends AbstractBuildRule {
             pathToOverrideSymbolsFile.stream()
                 .map(p -> pathResolver.getAbsolutePath(p))
                 .collect(ImmutableList.toImmutableList()),
-            resourceUnionPackage);
+            resourceUnionPackage,
+            Optional.of(getPathToRDotJavaIndex()));
     steps.add(mergeStep);
 
     Path rzipPath = getPathToRZip();
@@ -181,6 +184,12 @@ public class GenerateRDotJava extends AbstractBuildRule {
     return ExplicitBuildTargetSourcePath.of(getBuildTarget(), getPathToRZip());
   }
 
+  /** The index of the R.java files written by the merge step, see {@link MergedRDotJavaIndex}. */
+  private Path getPathToRDotJavaIndex() {
+    return BuildTargetPaths.getScratchPath(
+        getProjectFilesystem(), getBuildTarget(), "__%s_rdotjava_index__");
+  }
+
   private Path getPathToRZip() {
     return BuildTargetPaths.getScratchPath(
         getProjectFilesystem(), getBuildTarget(), "__%s_rzip.src.zip");
@@ -37,17 +37,25 @@ import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Joiner;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Strings;
+import com.google.common.collect.ContiguousSet;
 import com.google.common.collect.FluentIterable;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.ImmutableSetMultimap;
 import com.google.common.collect.ImmutableSortedSet;
+import com.google.common.collect.Iterables;
 import com.google.common.collect.SetMultimap;
 import com.google.common.collect.Sets;
 import com.google.common.collect.SortedSetMultimap;
 import com.google.common.collect.TreeMultimap;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
@@ -56,6 +64,7 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.EnumSet;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
@@ -65,10 +74,14 @@ import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 public class MergeAndroidResourcesStep implements Step {
   private static final Logger LOG = Logger.get(MergeAndroidResourcesStep.class);
 
+  /** Bump this when the contents of the generated R.java files change, to invalidate indexes. */
+  private static final int R_DOT_JAVA_FORMAT_VERSION = 1;
+
   private final ProjectFilesystem filesystem;
   private final SourcePathResolverAdapter pathResolver;
   private final ImmutableList<HasAndroidResourceDeps> androidResourceDeps;
@@ -82,12 +95,17 @@ public class MergeAndroidResourcesStep implements Step {
   private final boolean useOldStyleableFormat;
   private final ImmutableList<Path> overrideSymbolsPath;
   private final boolean skipNonUnionRDotJava;
+  private final Optional<Path> rDotJavaIndexDir;
 
   /**
    * Merges text symbols files from {@code aapt} for each of the input {@code android_resource} into
    * a set of resources per R.java package and writes an {@code R.java} file per package under the
    * output directory. Also, if {@code uberRDotTxt} is present, the IDs in the output {@code R.java}
-   * file will be taken from the {@code R.txt} file.
+   * file will be taken from the {@code R.txt} file. If {@code rDotJavaIndexDir} is present, the
+   * step keeps an index of the files it wrote there, and only reads the symbols files and writes
+   * the {@code R.java} files of the packages whose inputs changed since then, see {@link
+   * MergedRDotJavaIndex}. The output directory is then maintained by the step, and must not be
+   * cleaned before it runs.
    */
   @VisibleForTesting
   MergeAndroidResourcesStep(
@@ -103,7 +121,8 @@ public class MergeAndroidResourcesStep implements Step {
       Optional<String> unionPackage,
       Optional<String> rName,
       boolean useOldStyleableFormat,
-      boolean skipNonUnionRDotJava) {
+      boolean skipNonUnionRDotJava,
+      Optional<Path> rDotJavaIndexDir) {
     this.filesystem = filesystem;
     this.pathResolver = pathResolver;
     this.androidResourceDeps = ImmutableList.copyOf(androidResourceDeps);
@@ -117,6 +136,7 @@ public class MergeAndroidResourcesStep implements Step {
     this.rName = rName.orElse("R");
     this.useOldStyleableFormat = useOldStyleableFormat;
     this.skipNonUnionRDotJava = skipNonUnionRDotJava;
+    this.rDotJavaIndexDir = rDotJavaIndexDir;
   }
 
   public static MergeAndroidResourcesStep createStepForDummyRDotJava(
@@ -128,7 +148,8 @@ public class MergeAndroidResourcesStep implements Step {
       Optional<String> unionPackage,
       Optional<String> rName,
       boolean useOldStyleableFormat,
-      boolean skipNonUnionRDotJava) {
+      boolean skipNonUnionRDotJava,
+      Optional<Path> rDotJavaIndexDir) {
     return new MergeAndroidResourcesStep(
         filesystem,
         pathResolver,
@@ -142,7 +163,8 @@ public class MergeAndroidResourcesStep implements Step {
         unionPackage,
         rName,
         useOldStyleableFormat,
-        skipNonUnionRDotJava);
+        skipNonUnionRDotJava,
+        rDotJavaIndexDir);
   }
 
   public static MergeAndroidResourcesStep createStepForUberRDotJava(
@@ -154,7 +176,8 @@ public class MergeAndroidResourcesStep implements Step {
       EnumSet<RType> bannedDuplicateResourceTypes,
       Optional<Path> duplicateResourceWhitelistPath,
       ImmutableList<Path> overrideSymbolsPath,
-      Optional<String> unionPackage) {
+      Optional<String> unionPackage,
+      Optional<Path> rDotJavaIndexDir) {
     return new MergeAndroidResourcesStep(
         filesystem,
         pathResolver,
@@ -168,7 +191,8 @@ public class MergeAndroidResourcesStep implements Step {
         unionPackage,
         /* rName */ Optional.empty(),
         /* useOldStyleableFormat */ false,
-        /* skipNonUnionRDotJava */ false);
+        /* skipNonUnionRDotJava */ false,
+        rDotJavaIndexDir);
   }
 
   public ImmutableSortedSet<Path> getRDotJavaFiles() {
@@ -211,6 +235,73 @@ public class MergeAndroidResourcesStep implements Step {
         rDotTxtToPackage.put(rDotTxtPath.getPath(), res.getRDotJavaPackage());
         symbolsFileToResourceDeps.put(rDotTxtPath.getPath(), res);
       }
+      ImmutableMap<Path, String> symbolsFileToRDotJavaPackage = rDotTxtToPackage.build();
+
+      Optional<SetMultimap<String, RDotTxtEntry>> overrideSymbols =
+          loadOverrideSymbols(overrideSymbolsPath);
+
+      ImmutableSet<String> duplicateResourceWhitelist =
+          (duplicateResourceWhitelistPath.isPresent())
+              ? ImmutableSet.copyOf(filesystem.readLines(duplicateResourceWhitelistPath.get()))
+              : ImmutableSet.of();
+
+      ImmutableSet.Builder<String> requiredPackages = ImmutableSet.builder();
+      if (skipNonUnionRDotJava) {
+        Preconditions.checkArgument(
+            unionPackage.isPresent(),
+            "union_package should be specified if skip_non_union_r_dot_java is set");
+      } else {
+        requiredPackages.addAll(symbolsFileToRDotJavaPackage.values());
+      }
+      unionPackage.ifPresent(requiredPackages::add);
+
+      // Only the packages whose inputs changed since the files in the index were written need to
+      // be generated again, from the symbols files they depend on.
+      Optional<MergedRDotJavaIndex> index =
+          rDotJavaIndexDir.map(
+              dir -> MergedRDotJavaIndex.load(filesystem, dir.resolve(rName + ".json")));
+      ImmutableMap<String, HashCode> packageToInputsKey = ImmutableMap.of();
+      Set<String> packagesToWrite = ImmutableSet.of();
+      if (index.isPresent()) {
+        ImmutableSet<String> outputPackages =
+            skipNonUnionRDotJava
+                ? requiredPackages.build()
+                : Sets.union(
+                        requiredPackages.build(),
+                        overrideSymbols.map(SetMultimap::keySet).orElse(ImmutableSet.of()))
+                    .immutableCopy();
+        deleteRDotJavaOfOtherPackages(outputPackages);
+        index.get().retainPackages(outputPackages);
+
+        packageToInputsKey =
+            hashInputsPerPackage(
+                symbolsFileToRDotJavaPackage,
+                outputPackages,
+                overrideSymbols.isPresent(),
+                duplicateResourceWhitelist);
+        ImmutableSet.Builder<String> packagesToWriteBuilder = ImmutableSet.builder();
+        for (String rDotJavaPackage : outputPackages) {
+          if (!index
+              .get()
+              .isUpToDate(
+                  rDotJavaPackage,
+                  packageToInputsKey.get(rDotJavaPackage),
+                  getPathToRDotJava(rDotJavaPackage))) {
+            packagesToWriteBuilder.add(rDotJavaPackage);
+          }
+        }
+        packagesToWrite = packagesToWriteBuilder.build();
+        LOG.debug(
+            "%d of %d R.java files with %s are out of date.",
+            packagesToWrite.size(), outputPackages.size(), rName);
+        if (packagesToWrite.isEmpty()) {
+          index.get().save();
+          return StepExecutionResults.SUCCESS;
+        }
+        symbolsFileToRDotJavaPackage =
+            getSymbolsFilesToRead(symbolsFileToRDotJavaPackage, packagesToWrite);
+      }
+
       Optional<ImmutableMap<RDotTxtEntry, String>> uberRDotTxtIds;
       if (uberRDotTxt.isEmpty()) {
         uberRDotTxtIds = Optional.empty();
@@ -230,15 +321,6 @@ public class MergeAndroidResourcesStep implements Step {
                 uberRdotTxtEntries.build().stream()
                     .collect(ImmutableMap.toImmutableMap(input -> input, input -> input.idValue)));
       }
-      ImmutableMap<Path, String> symbolsFileToRDotJavaPackage = rDotTxtToPackage.build();
-
-      Optional<SetMultimap<String, RDotTxtEntry>> overrideSymbols =
-          loadOverrideSymbols(overrideSymbolsPath);
-
-      ImmutableSet<String> duplicateResourceWhitelist =
-          (duplicateResourceWhitelistPath.isPresent())
-              ? ImmutableSet.copyOf(filesystem.readLines(duplicateResourceWhitelistPath.get()))
-              : ImmutableSet.of();
 
       SortedSetMultimap<String, RDotTxtEntry> rDotJavaPackageToResources =
           sortSymbols(
@@ -251,30 +333,20 @@ public class MergeAndroidResourcesStep implements Step {
               filesystem,
               useOldStyleableFormat);
 
-      ImmutableSet.Builder<String> requiredPackages = ImmutableSet.builder();
-
       // Create a temporary list as the multimap
       // will be concurrently modified below.
       ArrayList<Entry<String, RDotTxtEntry>> entries =
           new ArrayList<>(rDotJavaPackageToResources.entries());
 
       if (skipNonUnionRDotJava) {
-        Preconditions.checkArgument(
-            unionPackage.isPresent(),
-            "union_package should be specified if skip_non_union_r_dot_java is set");
-
         // If skip_non_union_r_dot_java is true remove all packages except union package
         rDotJavaPackageToResources = TreeMultimap.create();
-
-      } else {
-        requiredPackages.addAll(symbolsFileToRDotJavaPackage.values());
       }
 
       // If a resource_union_package was specified, copy all resource into that package,
       // unless they are already present.
       if (unionPackage.isPresent()) {
         String unionPackageName = unionPackage.get();
-        requiredPackages.add(unionPackageName);
 
         for (Map.Entry<String, RDotTxtEntry> entry : entries) {
           if (!rDotJavaPackageToResources.containsEntry(unionPackageName, entry.getValue())) {
@@ -283,12 +355,30 @@ public class MergeAndroidResourcesStep implements Step {
         }
       }
 
-      writePerPackageRDotJava(rDotJavaPackageToResources, filesystem);
       Set<String> emptyPackages =
-          Sets.difference(requiredPackages.build(), rDotJavaPackageToResources.keySet());
+          Sets.difference(requiredPackages.build(), rDotJavaPackageToResources.keySet())
+              .immutableCopy();
+      if (index.isPresent()) {
+        rDotJavaPackageToResources.keySet().retainAll(packagesToWrite);
+        emptyPackages = Sets.intersection(emptyPackages, packagesToWrite);
+      }
 
+      Map<String, HashCode> writtenFiles = new HashMap<>();
+      writtenFiles.putAll(writePerPackageRDotJava(rDotJavaPackageToResources, index));
       if (!emptyPackages.isEmpty()) {
-        writeEmptyRDotJavaForPackages(emptyPackages, filesystem);
+        writtenFiles.putAll(writeEmptyRDotJavaForPackages(emptyPackages, index));
+      }
+
+      if (index.isPresent()) {
+        for (Map.Entry<String, HashCode> writtenFile : writtenFiles.entrySet()) {
+          index
+              .get()
+              .put(
+                  writtenFile.getKey(),
+                  packageToInputsKey.get(writtenFile.getKey()),
+                  writtenFile.getValue());
+        }
+        index.get().save();
       }
       return StepExecutionResults.SUCCESS;
     } catch (DuplicateResourceException e) {
@@ -299,6 +389,139 @@ public class MergeAndroidResourcesStep implements Step {
     }
   }
 
+  /**
+   * Returns a key of everything the R.java file of each of the given packages is generated from.
+   *
+   * <p>With ids from an uber R.txt, the file of a package only depends on the symbols files of
+   * that package. Otherwise, ids are enumerated across all symbols files in order, so it depends on
+   * all the symbols files up to the last one of the package. The union package depends on all of
+   * them.
+   */
+  private ImmutableMap<String, HashCode> hashInputsPerPackage(
+      ImmutableMap<Path, String> symbolsFileToRDotJavaPackage,
+      Set<String> rDotJavaPackages,
+      boolean hasOverrideSymbols,
+      Set<String> duplicateResourceWhitelist)
+      throws IOException {
+    Hasher stepHasher =
+        Hashing.murmur3_128()
+            .newHasher()
+            .putInt(R_DOT_JAVA_FORMAT_VERSION)
+            .putString(rName, StandardCharsets.UTF_8)
+            .putBoolean(forceFinalResourceIds)
+            .putBoolean(useOldStyleableFormat)
+            .putBoolean(skipNonUnionRDotJava)
+            .putString(unionPackage.orElse(""), StandardCharsets.UTF_8)
+            .putString(bannedDuplicateResourceTypes.toString(), StandardCharsets.UTF_8)
+            .putString(
+                ImmutableSortedSet.copyOf(duplicateResourceWhitelist).toString(),
+                StandardCharsets.UTF_8)
+            .putBoolean(hasOverrideSymbols);
+    for (Path path : Iterables.concat(uberRDotTxt, overrideSymbolsPath)) {
+      putFileHash(stepHasher, path);
+    }
+    HashCode stepKey = stepHasher.hash();
+
+    ImmutableList<Path> symbolsFiles = symbolsFileToRDotJavaPackage.keySet().asList();
+    ImmutableList<String> symbolsFilePackages = symbolsFileToRDotJavaPackage.values().asList();
+    List<HashCode> symbolsFileKeys = new ArrayList<>(symbolsFiles.size());
+    for (int i = 0; i < symbolsFiles.size(); i++) {
+      Hasher hasher =
+          Hashing.murmur3_128()
+              .newHasher()
+              .putString(symbolsFiles.get(i).toString(), StandardCharsets.UTF_8)
+              .putString(symbolsFilePackages.get(i), StandardCharsets.UTF_8);
+      putFileHash(hasher, symbolsFiles.get(i));
+      symbolsFileKeys.add(hasher.hash());
+    }
+
+    ImmutableMap.Builder<String, HashCode> packageToInputsKey = ImmutableMap.builder();
+    for (String rDotJavaPackage : rDotJavaPackages) {
+      Hasher hasher =
+          Hashing.murmur3_128()
+              .newHasher()
+              .putBytes(stepKey.asBytes())
+              .putString(rDotJavaPackage, StandardCharsets.UTF_8);
+      for (int i : getSymbolsFileIndexes(symbolsFilePackages, rDotJavaPackage)) {
+        hasher.putBytes(symbolsFileKeys.get(i).asBytes());
+      }
+      packageToInputsKey.put(rDotJavaPackage, hasher.hash());
+    }
+    return packageToInputsKey.build();
+  }
+
+  private void putFileHash(Hasher hasher, Path path) throws IOException {
+    if (filesystem.isFile(path)) {
+      hasher.putString(filesystem.computeSha1(path).getHash(), StandardCharsets.UTF_8);
+    } else {
+      hasher.putString("<missing>", StandardCharsets.UTF_8);
+    }
+  }
+
+  /** Returns the indexes of the symbols files the R.java file of the package is generated from. */
+  private ImmutableSortedSet<Integer> getSymbolsFileIndexes(
+      ImmutableList<String> symbolsFilePackages, String rDotJavaPackage) {
+    if (unionPackage.isPresent() && unionPackage.get().equals(rDotJavaPackage)) {
+      return ContiguousSet.closedOpen(0, symbolsFilePackages.size());
+    }
+    if (!uberRDotTxt.isEmpty()) {
+      return IntStream.range(0, symbolsFilePackages.size())
+          .filter(i -> symbolsFilePackages.get(i).equals(rDotJavaPackage))
+          .boxed()
+          .collect(ImmutableSortedSet.toImmutableSortedSet(natural()));
+    }
+    return ContiguousSet.closedOpen(0, symbolsFilePackages.lastIndexOf(rDotJavaPackage) + 1);
+  }
+
+  /**
+   * Returns the symbols files which need to be read to generate the R.java files of the given
+   * packages, in the order they are read in.
+   */
+  private ImmutableMap<Path, String> getSymbolsFilesToRead(
+      ImmutableMap<Path, String> symbolsFileToRDotJavaPackage, Set<String> rDotJavaPackages) {
+    if (!bannedDuplicateResourceTypes.isEmpty()) {
+      // Duplicates are looked for across all symbols files.
+      return symbolsFileToRDotJavaPackage;
+    }
+    ImmutableList<String> symbolsFilePackages = symbolsFileToRDotJavaPackage.values().asList();
+    Set<Integer> indexes = new HashSet<>();
+    for (String rDotJavaPackage : rDotJavaPackages) {
+      indexes.addAll(getSymbolsFileIndexes(symbolsFilePackages, rDotJavaPackage));
+    }
+    ImmutableList<Entry<Path, String>> symbolsFiles =
+        symbolsFileToRDotJavaPackage.entrySet().asList();
+    ImmutableMap.Builder<Path, String> symbolsFilesToRead = ImmutableMap.builder();
+    for (int i = 0; i < symbolsFiles.size(); i++) {
+      if (indexes.contains(i)) {
+        symbolsFilesToRead.put(symbolsFiles.get(i));
+      }
+    }
+    return symbolsFilesToRead.build();
+  }
+
+  /** Deletes the R.java files of packages which aren't generated anymore. */
+  private void deleteRDotJavaOfOtherPackages(Set<String> rDotJavaPackages) throws IOException {
+    if (!filesystem.isDirectory(outputDir)) {
+      return;
+    }
+    ImmutableSet<Path> outputFiles =
+        rDotJavaPackages.stream()
+            .map(this::getPathToRDotJava)
+            .collect(ImmutableSet.toImmutableSet());
+    for (Path file :
+        filesystem.getFilesUnderPath(
+            outputDir, path -> path.getFileName().toString().equals(rName + ".java"))) {
+      if (!outputFiles.contains(file)) {
+        filesystem.deleteFileAtPathIfExists(file);
+        for (Path dir = file.getParent();
+            !dir.equals(outputDir) && filesystem.getDirectoryContents(dir).isEmpty();
+            dir = dir.getParent()) {
+          filesystem.deleteFileAtPathIfExists(dir);
+        }
+      }
+    }
+  }
+
   private Optional<SetMultimap<String, RDotTxtEntry>> loadOverrideSymbols(Iterable<Path> paths)
       throws IOException {
     ImmutableSetMultimap.Builder<String, RDotTxtEntry> symbolsBuilder =
@@ -320,25 +543,32 @@ public class MergeAndroidResourcesStep implements Step {
     return Optional.of(symbolsBuilder.build());
   }
 
-  private void writeEmptyRDotJavaForPackages(
-      Set<String> rDotJavaPackages, ProjectFilesystem filesystem) throws IOException {
+  private ImmutableMap<String, HashCode> writeEmptyRDotJavaForPackages(
+      Set<String> rDotJavaPackages, Optional<MergedRDotJavaIndex> index) throws IOException {
+    ImmutableMap.Builder<String, HashCode> writtenFiles = ImmutableMap.builder();
     for (String rDotJavaPackage : rDotJavaPackages) {
-      Path outputFile = getPathToRDotJava(rDotJavaPackage);
-      filesystem.mkdirs(outputFile.getParent());
-      filesystem.writeContentsToPath(
-          String.format("package %s;\n\npublic class %s {}\n", rDotJavaPackage, rName), outputFile);
+      ByteArrayOutputStream contents = new ByteArrayOutputStream();
+      try (ThrowingPrintWriter writer = new ThrowingPrintWriter(contents)) {
+        writer.format("package %s;\n\npublic class %s {}\n", rDotJavaPackage, rName);
+      }
+      writtenFiles.put(rDotJavaPackage, writeRDotJava(rDotJavaPackage, contents, index));
     }
+    return writtenFiles.build();
   }
 
+  /**
+   * Writes the R.java file of each package, unless the index shows it already has the same
+   * contents, and returns the hashes of the files.
+   */
   @VisibleForTesting
-  void writePerPackageRDotJava(
-      SortedSetMultimap<String, RDotTxtEntry> packageToResources, ProjectFilesystem filesystem)
+  ImmutableMap<String, HashCode> writePerPackageRDotJava(
+      SortedSetMultimap<String, RDotTxtEntry> packageToResources,
+      Optional<MergedRDotJavaIndex> index)
       throws IOException {
+    ImmutableMap.Builder<String, HashCode> writtenFiles = ImmutableMap.builder();
     for (String rDotJavaPackage : packageToResources.keySet()) {
-      Path outputFile = getPathToRDotJava(rDotJavaPackage);
-      filesystem.mkdirs(outputFile.getParent());
-      try (ThrowingPrintWriter writer =
-          new ThrowingPrintWriter(filesystem.newFileOutputStream(outputFile))) {
+      ByteArrayOutputStream contents = new ByteArrayOutputStream();
+      try (ThrowingPrintWriter writer = new ThrowingPrintWriter(contents)) {
         writer.format("package %s;\n\n", rDotJavaPackage);
         writer.format("public class %s {\n", rName);
 
@@ -398,7 +628,26 @@ public class MergeAndroidResourcesStep implements Step {
         // Close the class definition.
         writer.println("}");
       }
+      writtenFiles.put(rDotJavaPackage, writeRDotJava(rDotJavaPackage, contents, index));
+    }
+    return writtenFiles.build();
+  }
+
+  private HashCode writeRDotJava(
+      String rDotJavaPackage, ByteArrayOutputStream contents, Optional<MergedRDotJavaIndex> index)
+      throws IOException {
+    Path outputFile = getPathToRDotJava(rDotJavaPackage);
+    HashCode contentsHash = Hashing.sha1().hashBytes(contents.toByteArray());
+    // Ids are enumerated across packages, so the inputs of a package can change without changing
+    // its R.java file.
+    if (index.isPresent() && index.get().hasContents(rDotJavaPackage, outputFile, contentsHash)) {
+      return contentsHash;
+    }
+    filesystem.mkdirs(outputFile.getParent());
+    try (OutputStream output = filesystem.newFileOutputStream(outputFile)) {
+      contents.writeTo(output);
     }
+    return contentsHash;
   }
 
   @VisibleForTesting
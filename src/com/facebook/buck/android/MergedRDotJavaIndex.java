@@ -0,0 +1,140 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.android;
+
+import com.facebook.buck.core.util.log.Logger;
+import com.facebook.buck.io.filesystem.ProjectFilesystem;
+import com.facebook.buck.util.json.ObjectMappers;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSortedMap;
+import com.google.common.hash.HashCode;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import javax.annotation.Nullable;
+
+/**
+ * The R.java files a {@link MergeAndroidResourcesStep} wrote in a previous build, persisted next to
+ * its output. For each R.java package, it records a key of the inputs the file was generated from
+ * and the hash of the file, so that a later build with the same inputs can keep the file as it is,
+ * without reading the symbols files it came from.
+ */
+class MergedRDotJavaIndex {
+
+  private static final Logger LOG = Logger.get(MergedRDotJavaIndex.class);
+
+  private static final String INPUTS = "inputs";
+  private static final String OUTPUTS = "outputs";
+
+  private final ProjectFilesystem filesystem;
+  private final Path indexFile;
+  private final Map<String, String> packageToInputsKey;
+  private final Map<String, String> packageToOutputHash;
+
+  private MergedRDotJavaIndex(
+      ProjectFilesystem filesystem,
+      Path indexFile,
+      Map<String, String> packageToInputsKey,
+      Map<String, String> packageToOutputHash) {
+    this.filesystem = filesystem;
+    this.indexFile = indexFile;
+    this.packageToInputsKey = new HashMap<>(packageToInputsKey);
+    this.packageToOutputHash = new HashMap<>(packageToOutputHash);
+  }
+
+  /** Loads the index from the given file, or returns an empty index if it can't be read. */
+  static MergedRDotJavaIndex load(ProjectFilesystem filesystem, Path indexFile) {
+    Map<String, Map<String, String>> index = ImmutableMap.of();
+    Optional<String> contents = filesystem.readFileIfItExists(indexFile);
+    if (contents.isPresent()) {
+      try {
+        index =
+            ObjectMappers.readValue(
+                contents.get(), new TypeReference<Map<String, Map<String, String>>>() {});
+      } catch (IOException e) {
+        LOG.warn(e, "Unable to read the R.java index %s, ignoring it.", indexFile);
+      }
+    }
+    Map<String, String> inputs = index.get(INPUTS);
+    Map<String, String> outputs = index.get(OUTPUTS);
+    if (inputs == null || outputs == null) {
+      return new MergedRDotJavaIndex(filesystem, indexFile, ImmutableMap.of(), ImmutableMap.of());
+    }
+    return new MergedRDotJavaIndex(filesystem, indexFile, inputs, outputs);
+  }
+
+  /**
+   * @return whether the R.java file of the package was generated from inputs with the given key,
+   *     and still has the contents it was written with.
+   */
+  boolean isUpToDate(String rDotJavaPackage, HashCode inputsKey, Path outputFile)
+      throws IOException {
+    return inputsKey.toString().equals(packageToInputsKey.get(rDotJavaPackage))
+        && hasContents(rDotJavaPackage, outputFile, packageToOutputHash.get(rDotJavaPackage));
+  }
+
+  /**
+   * @return whether the R.java file of the package was written with contents with the given hash,
+   *     and still has them, so that it doesn't need to be written again.
+   */
+  boolean hasContents(String rDotJavaPackage, Path outputFile, HashCode contentsHash)
+      throws IOException {
+    return contentsHash.toString().equals(packageToOutputHash.get(rDotJavaPackage))
+        && hasContents(rDotJavaPackage, outputFile, contentsHash.toString());
+  }
+
+  private boolean hasContents(String rDotJavaPackage, Path outputFile, @Nullable String hash)
+      throws IOException {
+    if (hash == null || !filesystem.isFile(outputFile)) {
+      return false;
+    }
+    if (filesystem.computeSha1(outputFile).getHash().equals(hash)) {
+      return true;
+    }
+    LOG.debug("The R.java file of %s was modified since it was written.", rDotJavaPackage);
+    return false;
+  }
+
+  /** Records that the R.java file of the package was written from inputs with the given key. */
+  void put(String rDotJavaPackage, HashCode inputsKey, HashCode outputHash) {
+    packageToInputsKey.put(rDotJavaPackage, inputsKey.toString());
+    packageToOutputHash.put(rDotJavaPackage, outputHash.toString());
+  }
+
+  /** Forgets the packages which aren't generated anymore. */
+  void retainPackages(Set<String> rDotJavaPackages) {
+    packageToInputsKey.keySet().retainAll(rDotJavaPackages);
+    packageToOutputHash.keySet().retainAll(rDotJavaPackages);
+  }
+
+  /** Writes the index to its file. */
+  void save() throws IOException {
+    filesystem.mkdirs(indexFile.getParent());
+    filesystem.writeContentsToPath(
+        ObjectMappers.WRITER.writeValueAsString(
+            ImmutableMap.of(
+                INPUTS,
+                ImmutableSortedMap.copyOf(packageToInputsKey),
+                OUTPUTS,
+                ImmutableSortedMap.copyOf(packageToOutputHash))),
+        indexFile);
+  }
+}
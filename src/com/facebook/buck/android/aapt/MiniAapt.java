@@ -32,7 +32,9 @@ import com.facebook.buck.step.Step;
 import com.facebook.buck.step.StepExecutionResult;
 import com.facebook.buck.step.StepExecutionResults;
 import com.facebook.buck.util.ThrowingPrintWriter;
+import com.facebook.buck.util.concurrent.ExecutorPool;
 import com.facebook.buck.util.json.ObjectMappers;
+import com.facebook.buck.util.sha1.Sha1HashCode;
 import com.facebook.buck.util.xml.DocumentLocation;
 import com.facebook.buck.util.xml.PositionalXmlHandler;
 import com.facebook.buck.util.xml.XmlDomParserWithLineNumbers;
@@ -40,20 +42,29 @@ import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Joiner;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Strings;
+import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.ImmutableSortedSet;
 import com.google.common.collect.Ordering;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.file.FileVisitOption;
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.EnumSet;
+import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 import javax.xml.xpath.XPathConstants;
 import javax.xml.xpath.XPathExpression;
@@ -85,15 +96,21 @@ public class MiniAapt implements Step {
   private static final String PUBLIC_FILENAME = "public.xml";
   private static final String CUSTOM_DRAWABLE_PREFIX = "app-";
 
-  private static final XPathExpression ANDROID_ID_USAGE =
-      createExpression(
-          "//@*[starts-with(., '@') and "
-              + "not(starts-with(., '@+')) and "
-              + "not(starts-with(., '@android:')) and "
-              + "not(starts-with(., '@null'))]");
-
-  private static final XPathExpression ANDROID_ID_DEFINITION =
-      createExpression("//@*[starts-with(., '@+') and " + "not(starts-with(., '@+android:id'))]");
+  // XPathExpression is not thread-safe and resource files are parsed in parallel.
+  private static final ThreadLocal<XPathExpression> ANDROID_ID_USAGE =
+      ThreadLocal.withInitial(
+          () ->
+              createExpression(
+                  "//@*[starts-with(., '@') and "
+                      + "not(starts-with(., '@+')) and "
+                      + "not(starts-with(., '@android:')) and "
+                      + "not(starts-with(., '@null'))]"));
+
+  private static final ThreadLocal<XPathExpression> ANDROID_ID_DEFINITION =
+      ThreadLocal.withInitial(
+          () ->
+              createExpression(
+                  "//@*[starts-with(., '@+') and " + "not(starts-with(., '@+android:id'))]"));
 
   private static final ImmutableMap<String, RType> RESOURCE_TYPES = getResourceTypes();
 
@@ -121,6 +138,7 @@ public class MiniAapt implements Step {
   private final ResourceCollector resourceCollector;
   private final boolean isGrayscaleImageProcessingEnabled;
   private final ResourceCollectionType resourceCollectionType;
+  private final ParsedResourceFiles parsedResourceFiles;
 
   public MiniAapt(
       SourcePathResolverAdapter resolver,
@@ -146,6 +164,26 @@ public class MiniAapt implements Step {
       ImmutableSet<Path> pathsToSymbolsOfDeps,
       boolean isGrayscaleImageProcessingEnabled,
       ResourceCollectionType resourceCollectionType) {
+    this(
+        resolver,
+        filesystem,
+        resDirectory,
+        pathToOutputFile,
+        pathsToSymbolsOfDeps,
+        isGrayscaleImageProcessingEnabled,
+        resourceCollectionType,
+        new ParsedResourceFiles());
+  }
+
+  public MiniAapt(
+      SourcePathResolverAdapter resolver,
+      ProjectFilesystem filesystem,
+      SourcePath resDirectory,
+      Path pathToOutputFile,
+      ImmutableSet<Path> pathsToSymbolsOfDeps,
+      boolean isGrayscaleImageProcessingEnabled,
+      ResourceCollectionType resourceCollectionType,
+      ParsedResourceFiles parsedResourceFiles) {
     this.resolver = resolver;
     this.filesystem = filesystem;
     this.resDirectory = resDirectory;
@@ -153,6 +191,7 @@ public class MiniAapt implements Step {
     this.pathsToSymbolsOfDeps = pathsToSymbolsOfDeps;
     this.isGrayscaleImageProcessingEnabled = isGrayscaleImageProcessingEnabled;
     this.resourceCollectionType = resourceCollectionType;
+    this.parsedResourceFiles = parsedResourceFiles;
 
     switch (resourceCollectionType) {
       case R_DOT_TXT:
@@ -192,13 +231,21 @@ public class MiniAapt implements Step {
   }
 
   @Override
-  public StepExecutionResult execute(ExecutionContext context) throws IOException {
+  public StepExecutionResult execute(ExecutionContext context)
+      throws IOException, InterruptedException {
     ImmutableSet.Builder<RDotTxtEntry> references = ImmutableSet.builder();
 
     ProjectFilesystemView filesystemViewWithoutIgnores = filesystem.asView();
     try {
-      collectResources(filesystemViewWithoutIgnores, context.getBuckEventBus());
-      processXmlFilesForIds(filesystemViewWithoutIgnores, references);
+      List<ResourceFileParser> parsers = new ArrayList<>();
+      collectResources(filesystemViewWithoutIgnores, context.getBuckEventBus(), parsers);
+      collectXmlFilesForIds(filesystemViewWithoutIgnores, parsers);
+      addParsedSymbols(
+          parsers,
+          references,
+          context
+              .getExecutors()
+              .getOrDefault(ExecutorPool.CPU, MoreExecutors.newDirectExecutorService()));
     } catch (XPathExpressionException | ResourceParseException e) {
       context.logError(e, "Error parsing resources to generate resource IDs for %s.", resDirectory);
       return StepExecutionResults.ERROR;
@@ -269,7 +316,10 @@ public class MiniAapt implements Step {
    * <p>For files under the {@code values*} directories, see {@link
    * #processValuesFile(ProjectFilesystem, Path)}
    */
-  private void collectResources(ProjectFilesystemView filesystemView, BuckEventBus eventBus)
+  private void collectResources(
+      ProjectFilesystemView filesystemView,
+      BuckEventBus eventBus,
+      List<ResourceFileParser> parsers)
       throws IOException, ResourceParseException {
     Collection<Path> contents =
         filesystemView.getDirectoryContents(resolver.getRelativePath(resDirectory));
@@ -286,15 +336,24 @@ public class MiniAapt implements Step {
         if (!isAValuesDir(dirname)) {
           throw new ResourceParseException("'%s' is not a valid values directory.", dir);
         }
-        processValues(filesystemView, eventBus, dir);
+        collectValues(filesystemView, eventBus, dir, parsers);
       } else {
-        processFileNamesInDirectory(filesystemView, dir);
+        collectFileNamesInDirectory(filesystemView, dir, parsers);
       }
     }
   }
 
+  @VisibleForTesting
   void processFileNamesInDirectory(ProjectFilesystemView filesystemView, Path dir)
       throws IOException, ResourceParseException {
+    List<ResourceFileParser> parsers = new ArrayList<>();
+    collectFileNamesInDirectory(filesystemView, dir, parsers);
+    addParsedResources(parsers);
+  }
+
+  private void collectFileNamesInDirectory(
+      ProjectFilesystemView filesystemView, Path dir, List<ResourceFileParser> parsers)
+      throws IOException, ResourceParseException {
     String dirname = dir.getFileName().toString();
     int dashIndex = dirname.indexOf('-');
     if (dashIndex != -1) {
@@ -315,17 +374,33 @@ public class MiniAapt implements Step {
       String resourceName = dotIndex != -1 ? filename.substring(0, dotIndex) : filename;
 
       RType rType = Objects.requireNonNull(RESOURCE_TYPES.get(dirname));
-      if (rType == RType.DRAWABLE) {
-        processDrawables(filesystem, resourceFile);
-      } else {
-        resourceCollector.addIntResourceIfNotPresent(
-            rType, resourceName, resourceFile, DocumentLocation.of(0, 0));
-      }
+      ResourceFileParser parser =
+          () -> {
+            ResourceFileSymbols symbols = new ResourceFileSymbols();
+            if (rType == RType.DRAWABLE) {
+              processDrawables(filesystem, resourceFile, symbols);
+            } else {
+              symbols.addIntResourceIfNotPresent(
+                  rType, resourceName, resourceFile, DocumentLocation.of(0, 0));
+            }
+            return symbols;
+          };
+      parsers.add(
+          rType == RType.DRAWABLE && filename.endsWith(".xml")
+              ? cachingParser("drawable", resourceFile, parser)
+              : parser);
     }
   }
 
+  @VisibleForTesting
   void processDrawables(ProjectFilesystem filesystem, Path resourceFile)
       throws IOException, ResourceParseException {
+    processDrawables(filesystem, resourceFile, resourceCollector);
+  }
+
+  private void processDrawables(
+      ProjectFilesystem filesystem, Path resourceFile, ResourceCollector resourceCollector)
+      throws IOException, ResourceParseException {
     String filename = resourceFile.getFileName().toString();
     int dotIndex = filename.indexOf('.');
     String resourceName = dotIndex != -1 ? filename.substring(0, dotIndex) : filename;
@@ -361,8 +436,20 @@ public class MiniAapt implements Step {
     }
   }
 
+  @VisibleForTesting
   void processValues(ProjectFilesystemView filesystemView, BuckEventBus eventBus, Path valuesDir)
       throws IOException, ResourceParseException {
+    List<ResourceFileParser> parsers = new ArrayList<>();
+    collectValues(filesystemView, eventBus, valuesDir, parsers);
+    addParsedResources(parsers);
+  }
+
+  private void collectValues(
+      ProjectFilesystemView filesystemView,
+      BuckEventBus eventBus,
+      Path valuesDir,
+      List<ResourceFileParser> parsers)
+      throws IOException {
     for (Path path :
         filesystemView.getFilesUnderPath(valuesDir, EnumSet.of(FileVisitOption.FOLLOW_LINKS))) {
       if (shouldIgnoreFile(path, filesystem)) {
@@ -372,7 +459,15 @@ public class MiniAapt implements Step {
         eventBus.post(ConsoleEvent.warning("MiniAapt [warning]: ignoring non-file '%s'.", path));
         continue;
       }
-      processValuesFile(filesystem, path);
+      parsers.add(
+          cachingParser(
+              "values",
+              path,
+              () -> {
+                ResourceFileSymbols symbols = new ResourceFileSymbols();
+                processValuesFile(filesystem, path, symbols);
+                return symbols;
+              }));
     }
   }
 
@@ -405,6 +500,12 @@ public class MiniAapt implements Step {
   @VisibleForTesting
   void processValuesFile(ProjectFilesystem filesystem, Path valuesFile)
       throws IOException, ResourceParseException {
+    processValuesFile(filesystem, valuesFile, resourceCollector);
+  }
+
+  private void processValuesFile(
+      ProjectFilesystem filesystem, Path valuesFile, ResourceCollector resourceCollector)
+      throws IOException, ResourceParseException {
     try (InputStream stream = filesystem.newFileInputStream(valuesFile)) {
       Document dom = parseXml(valuesFile, stream);
       Element root = dom.getDocumentElement();
@@ -458,7 +559,7 @@ public class MiniAapt implements Step {
         }
 
         RType rType = Objects.requireNonNull(RESOURCE_TYPES.get(resourceType));
-        addToResourceCollector(node, rType, valuesFile);
+        addToResourceCollector(resourceCollector, node, rType, valuesFile);
       }
     }
   }
@@ -474,7 +575,8 @@ public class MiniAapt implements Step {
     return typeNode;
   }
 
-  private void addToResourceCollector(Node node, RType rType, Path file)
+  private void addToResourceCollector(
+      ResourceCollector resourceCollector, Node node, RType rType, Path file)
       throws ResourceParseException {
     String resourceName = sanitizeName(extractNameAttribute(node));
     DocumentLocation location = extractDocumentLocation(node);
@@ -511,9 +613,8 @@ public class MiniAapt implements Step {
     }
   }
 
-  void processXmlFilesForIds(
-      ProjectFilesystemView filesystemView, ImmutableSet.Builder<RDotTxtEntry> references)
-      throws IOException, XPathExpressionException, ResourceParseException {
+  private void collectXmlFilesForIds(
+      ProjectFilesystemView filesystemView, List<ResourceFileParser> parsers) throws IOException {
     Path absoluteResDir = resolver.getAbsolutePath(resDirectory);
     Path relativeResDir = resolver.getRelativePath(resDirectory);
     for (Path path :
@@ -526,7 +627,15 @@ public class MiniAapt implements Step {
         // Ignore files under values* directories.
         continue;
       }
-      processXmlFile(this.filesystem, path, references);
+      parsers.add(
+          cachingParser(
+              "ids",
+              path,
+              () -> {
+                ResourceFileSymbols symbols = new ResourceFileSymbols();
+                processXmlFile(filesystem, path, symbols, symbols::addReference);
+                return symbols;
+              }));
     }
   }
 
@@ -534,10 +643,19 @@ public class MiniAapt implements Step {
   void processXmlFile(
       ProjectFilesystem filesystem, Path xmlFile, ImmutableSet.Builder<RDotTxtEntry> references)
       throws IOException, XPathExpressionException, ResourceParseException {
+    processXmlFile(filesystem, xmlFile, resourceCollector, references::add);
+  }
+
+  private void processXmlFile(
+      ProjectFilesystem filesystem,
+      Path xmlFile,
+      ResourceCollector resourceCollector,
+      Consumer<RDotTxtEntry> references)
+      throws IOException, XPathExpressionException, ResourceParseException {
     try (InputStream stream = filesystem.newFileInputStream(xmlFile)) {
       Document dom = parseXml(xmlFile, stream);
       NodeList nodesWithIds =
-          (NodeList) ANDROID_ID_DEFINITION.evaluate(dom, XPathConstants.NODESET);
+          (NodeList) ANDROID_ID_DEFINITION.get().evaluate(dom, XPathConstants.NODESET);
       for (int i = 0; i < nodesWithIds.getLength(); i++) {
         String resourceName = nodesWithIds.item(i).getNodeValue();
         if (!resourceName.startsWith(ID_DEFINITION_PREFIX)) {
@@ -551,7 +669,8 @@ public class MiniAapt implements Step {
             RType.ID, resourceName.substring(ID_DEFINITION_PREFIX.length()), xmlFile, location);
       }
 
-      NodeList nodesUsingIds = (NodeList) ANDROID_ID_USAGE.evaluate(dom, XPathConstants.NODESET);
+      NodeList nodesUsingIds =
+          (NodeList) ANDROID_ID_USAGE.get().evaluate(dom, XPathConstants.NODESET);
       for (int i = 0; i < nodesUsingIds.getLength(); i++) {
         String resourceName = nodesUsingIds.item(i).getNodeValue();
         int slashPosition = resourceName.indexOf('/');
@@ -571,11 +690,74 @@ public class MiniAapt implements Step {
         }
         RType rType = Objects.requireNonNull(RESOURCE_TYPES.get(rawRType));
 
-        references.add(new FakeRDotTxtEntry(IdType.INT, rType, sanitizeName(name)));
+        references.accept(new FakeRDotTxtEntry(IdType.INT, rType, sanitizeName(name)));
+      }
+    }
+  }
+
+  /**
+   * Parses the given resource files in parallel on the executor and adds their symbols to the
+   * resource collector in the order of the list.
+   */
+  private void addParsedSymbols(
+      List<ResourceFileParser> parsers,
+      ImmutableSet.Builder<RDotTxtEntry> references,
+      ListeningExecutorService executor)
+      throws IOException, ResourceParseException, XPathExpressionException, InterruptedException {
+    List<ListenableFuture<ResourceFileSymbols>> futures = new ArrayList<>(parsers.size());
+    for (ResourceFileParser parser : parsers) {
+      futures.add(executor.submit(() -> parseOrRecordFailure(parser)));
+    }
+    ListenableFuture<List<ResourceFileSymbols>> parsedFiles = Futures.allAsList(futures);
+    try {
+      for (ResourceFileSymbols symbols : parsedFiles.get()) {
+        symbols.addTo(resourceCollector, references);
       }
+    } catch (InterruptedException e) {
+      parsedFiles.cancel(true);
+      throw e;
+    } catch (ExecutionException e) {
+      // Parsing failures are recorded in the symbols, only errors end up here.
+      Throwables.throwIfUnchecked(e.getCause());
+      throw new IllegalStateException(e.getCause());
+    }
+  }
+
+  private void addParsedResources(List<ResourceFileParser> parsers)
+      throws IOException, ResourceParseException {
+    try {
+      // Only used by tests, which parse the files on the calling thread.
+      addParsedSymbols(parsers, ImmutableSet.builder(), MoreExecutors.newDirectExecutorService());
+    } catch (XPathExpressionException | InterruptedException e) {
+      // Only files parsed for their ids are searched with XPath expressions, and nothing waits.
+      throw new IllegalStateException(e);
     }
   }
 
+  private static ResourceFileSymbols parseOrRecordFailure(ResourceFileParser parser) {
+    try {
+      return parser.parse();
+    } catch (IOException
+        | ResourceParseException
+        | XPathExpressionException
+        | RuntimeException e) {
+      return ResourceFileSymbols.failed(e);
+    }
+  }
+
+  /** Returns a parser that reuses the symbols of the file if it did not change. */
+  private ResourceFileParser cachingParser(String kind, Path file, ResourceFileParser parser) {
+    return () -> {
+      Sha1HashCode hash = filesystem.computeSha1(file);
+      ResourceFileSymbols symbols = parsedResourceFiles.get(kind, file, hash);
+      if (symbols == null) {
+        symbols = parser.parse();
+        parsedResourceFiles.put(kind, file, hash, symbols);
+      }
+      return symbols;
+    };
+  }
+
   private static Document parseXml(Path filepath, InputStream inputStream)
       throws IOException, ResourceParseException {
     try {
@@ -664,6 +846,12 @@ public class MiniAapt implements Step {
     return getShortName() + " " + resDirectory;
   }
 
+  /** Parses a single resource file, see {@link ResourceFileSymbols}. */
+  private interface ResourceFileParser {
+    ResourceFileSymbols parse()
+        throws IOException, ResourceParseException, XPathExpressionException;
+  }
+
   @VisibleForTesting
   static class ResourceParseException extends Exception {
 
@@ -0,0 +1,61 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.android.aapt;
+
+import com.facebook.buck.util.sha1.Sha1HashCode;
+import java.nio.file.Path;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import javax.annotation.Nullable;
+
+/**
+ * The symbols of the resource files that {@link MiniAapt} parsed for a rule, so that building the
+ * rule again only parses the files that changed since.
+ *
+ * <p>An instance belongs to a rule and lives as long as it, i.e. as long as the daemon keeps the
+ * action graph. It holds at most one entry per file and kind of parsing: the entry of a file that
+ * changed is replaced by the one of its new content.
+ */
+public class ParsedResourceFiles {
+
+  private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<>();
+
+  /** Returns the symbols parsed from the file when its content had the given hash, if any. */
+  @Nullable
+  ResourceFileSymbols get(String kind, Path file, Sha1HashCode hash) {
+    Entry entry = entries.get(getKey(kind, file));
+    return entry != null && entry.hash.equals(hash) ? entry.symbols : null;
+  }
+
+  void put(String kind, Path file, Sha1HashCode hash, ResourceFileSymbols symbols) {
+    entries.put(getKey(kind, file), new Entry(hash, symbols));
+  }
+
+  private static String getKey(String kind, Path file) {
+    return kind + ":" + file;
+  }
+
+  private static class Entry {
+    private final Sha1HashCode hash;
+    private final ResourceFileSymbols symbols;
+
+    private Entry(Sha1HashCode hash, ResourceFileSymbols symbols) {
+      this.hash = hash;
+      this.symbols = symbols;
+    }
+  }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.android.aapt;
+
+import com.facebook.buck.android.aapt.RDotTxtEntry.CustomDrawableType;
+import com.facebook.buck.android.aapt.RDotTxtEntry.IdType;
+import com.facebook.buck.android.aapt.RDotTxtEntry.RType;
+import com.facebook.buck.util.xml.DocumentLocation;
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableSet;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import javax.annotation.Nullable;
+import javax.xml.xpath.XPathExpressionException;
+
+/**
+ * The resources defined and referenced by a single resource file.
+ *
+ * <p>Resource files are parsed in parallel into instances of this class, which record the calls
+ * made to them as a {@link ResourceCollector}. The calls are then replayed to the actual collector
+ * in the order the files were found in, so the resulting ids do not depend on the order the files
+ * were parsed in.
+ */
+class ResourceFileSymbols implements ResourceCollector {
+
+  private final List<Consumer<ResourceCollector>> calls = new ArrayList<>();
+  private final ImmutableSet.Builder<RDotTxtEntry> references = ImmutableSet.builder();
+  @Nullable private final Exception failure;
+
+  ResourceFileSymbols() {
+    this(null);
+  }
+
+  private ResourceFileSymbols(@Nullable Exception failure) {
+    this.failure = failure;
+  }
+
+  /** Returns symbols that rethrow the exception that occurred while parsing the file. */
+  static ResourceFileSymbols failed(Exception failure) {
+    return new ResourceFileSymbols(failure);
+  }
+
+  /** Adds the recorded resources to the collector and the recorded references to the builder. */
+  void addTo(ResourceCollector collector, ImmutableSet.Builder<RDotTxtEntry> referencesOut)
+      throws IOException, MiniAapt.ResourceParseException, XPathExpressionException {
+    if (failure != null) {
+      Throwables.throwIfInstanceOf(failure, IOException.class);
+      Throwables.throwIfInstanceOf(failure, MiniAapt.ResourceParseException.class);
+      Throwables.throwIfInstanceOf(failure, XPathExpressionException.class);
+      Throwables.throwIfUnchecked(failure);
+      throw new RuntimeException(failure);
+    }
+    for (Consumer<ResourceCollector> call : calls) {
+      call.accept(collector);
+    }
+    referencesOut.addAll(references.build());
+  }
+
+  void addReference(RDotTxtEntry reference) {
+    references.add(reference);
+  }
+
+  @Override
+  public void addIntResourceIfNotPresent(
+      RType rType, String name, Path path, DocumentLocation documentLocation) {
+    calls.add(
+        collector -> collector.addIntResourceIfNotPresent(rType, name, path, documentLocation));
+  }
+
+  @Override
+  public void addCustomDrawableResourceIfNotPresent(
+      RType rType,
+      String name,
+      Path path,
+      DocumentLocation documentLocation,
+      CustomDrawableType drawableType) {
+    calls.add(
+        collector ->
+            collector.addCustomDrawableResourceIfNotPresent(
+                rType, name, path, documentLocation, drawableType));
+  }
+
+  @Override
+  public void addIntArrayResourceIfNotPresent(
+      RType rType, String name, int numValues, Path path, DocumentLocation documentLocation) {
+    calls.add(
+        collector ->
+            collector.addIntArrayResourceIfNotPresent(
+                rType, name, numValues, path, documentLocation));
+  }
+
+  @Override
+  public void addResource(
+      RType rType,
+      IdType idType,
+      String name,
+      String idValue,
+      @Nullable String parent,
+      Path path,
+      DocumentLocation documentLocation) {
+    calls.add(
+        collector ->
+            collector.addResource(rType, idType, name, idValue, parent, path, documentLocation));
+  }
+}
@@ -16,9 +16,11 @@
 
 package com.facebook.buck.android.resources;
 
+import com.facebook.buck.core.util.log.Logger;
 import com.facebook.buck.io.file.MostFiles;
 import com.facebook.buck.util.MoreSuppliers;
 import com.facebook.buck.util.stream.RichStream;
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Charsets;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
@@ -26,17 +28,24 @@ import com.google.common.collect.ImmutableSortedMap;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Ordering;
 import com.google.common.io.ByteStreams;
-import java.io.ByteArrayInputStream;
 import java.io.Closeable;
+import java.io.EOFException;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.OptionalLong;
 import java.util.Set;
 import java.util.SortedMap;
 import java.util.function.Function;
@@ -107,6 +116,8 @@ import java.util.zip.ZipFile;
  * different package ids.
  */
 public class ExoResourcesRewriter {
+  private static final Logger LOG = Logger.get(ExoResourcesRewriter.class);
+
   private ExoResourcesRewriter() {}
 
   public static void rewrite(
@@ -136,12 +147,7 @@ public class ExoResourcesRewriter {
       // Write the full (rearranged) resources to the exo resources.
       try (ResourcesZipBuilder zipBuilder = new ResourcesZipBuilder(exoResources)) {
         for (ZipEntry entry : apkZip.getEntries()) {
-          addEntry(
-              zipBuilder,
-              entry.getName(),
-              apkZip.getContent(entry.getName()),
-              entry.getMethod() == ZipEntry.STORED ? 0 : Deflater.BEST_COMPRESSION,
-              false);
+          addEntry(zipBuilder, apkZip, entry);
         }
       }
       // Then, slice out the resources needed for the primary apk.
@@ -159,13 +165,7 @@ public class ExoResourcesRewriter {
                 : Deflater.BEST_COMPRESSION,
             false);
         for (String path : RichStream.from(closure.files).sorted().toOnceIterable()) {
-          ZipEntry entry = apkZip.getEntry(path);
-          addEntry(
-              zipBuilder,
-              entry.getName(),
-              apkZip.getContent(entry.getName()),
-              entry.getMethod() == ZipEntry.STORED ? 0 : Deflater.BEST_COMPRESSION,
-              false);
+          addEntry(zipBuilder, apkZip, apkZip.getEntry(path));
         }
       }
       return resMapping;
@@ -238,6 +238,25 @@ public class ExoResourcesRewriter {
     }
   }
 
+  private static void addEntry(ResourcesZipBuilder zipBuilder, ApkZip apkZip, ZipEntry entry)
+      throws IOException {
+    int compressionLevel = entry.getMethod() == ZipEntry.STORED ? 0 : Deflater.BEST_COMPRESSION;
+    if (apkZip.isParsed(entry.getName())) {
+      addEntry(
+          zipBuilder,
+          entry.getName(),
+          apkZip.getContentBuffer(entry.getName()),
+          compressionLevel,
+          false);
+    } else {
+      // Files that are not rewritten are streamed from the apk rather than kept in memory.
+      try (InputStream stream = apkZip.getInputStream(entry)) {
+        zipBuilder.addEntry(
+            stream, entry.getSize(), entry.getCrc(), entry.getName(), compressionLevel, false);
+      }
+    }
+  }
+
   private static void addEntry(
       ResourcesZipBuilder zipBuilder,
       String name,
@@ -245,27 +264,160 @@ public class ExoResourcesRewriter {
       int compressionLevel,
       boolean isDirectory)
       throws IOException {
-    // TODO(cjhopman): for files that we don't already have in memory, we should use the builder's
-    // stream api.
+    addEntry(zipBuilder, name, ResChunk.wrap(content), compressionLevel, isDirectory);
+  }
+
+  private static void addEntry(
+      ResourcesZipBuilder zipBuilder,
+      String name,
+      ByteBuffer content,
+      int compressionLevel,
+      boolean isDirectory)
+      throws IOException {
     CRC32 crc32 = new CRC32();
-    crc32.update(content);
+    crc32.update(ResChunk.slice(content, 0));
     zipBuilder.addEntry(
-        new ByteArrayInputStream(content),
-        content.length,
+        new ByteBufferInputStream(ResChunk.slice(content, 0)),
+        content.limit(),
         crc32.getValue(),
         name,
         compressionLevel,
         isDirectory);
   }
 
+  /** Streams the content of a buffer without copying it. */
+  private static class ByteBufferInputStream extends InputStream {
+    private final ByteBuffer buf;
+
+    ByteBufferInputStream(ByteBuffer buf) {
+      this.buf = buf;
+    }
+
+    @Override
+    public int read() {
+      return buf.hasRemaining() ? buf.get() & 0xFF : -1;
+    }
+
+    @Override
+    public int read(byte[] bytes, int offset, int length) {
+      if (!buf.hasRemaining()) {
+        return -1;
+      }
+      int count = Math.min(length, buf.remaining());
+      buf.get(bytes, offset, count);
+      return count;
+    }
+  }
+
+  /**
+   * Reads the content of an entry stored uncompressed in a zip file straight from the file, after
+   * locating it through the central directory (see {@link
+   * com.facebook.buck.util.zip.ZipScrubber}). Returns nothing if the entry is compressed, or if it
+   * can't be located, e.g. because the headers are malformed or the file is a zip64 file.
+   */
+  @VisibleForTesting
+  static Optional<ByteBuffer> readStoredEntry(Path zipPath, ZipEntry entry) throws IOException {
+    if (entry.getMethod() != ZipEntry.STORED
+        || entry.getSize() < 0
+        || entry.getSize() > Integer.MAX_VALUE) {
+      return Optional.empty();
+    }
+    try (FileChannel channel = FileChannel.open(zipPath, StandardOpenOption.READ)) {
+      OptionalLong dataOffset = findStoredEntryDataOffset(channel, entry.getName());
+      if (!dataOffset.isPresent() || dataOffset.getAsLong() + entry.getSize() > channel.size()) {
+        return Optional.empty();
+      }
+      return Optional.of(read(channel, dataOffset.getAsLong(), (int) entry.getSize()));
+    }
+  }
+
+  private static OptionalLong findStoredEntryDataOffset(FileChannel channel, String path)
+      throws IOException {
+    byte[] name = path.getBytes(Charsets.UTF_8);
+    long size = channel.size();
+    if (size < ZipEntry.ENDHDR) {
+      return OptionalLong.empty();
+    }
+    // The end of central directory record is only followed by a comment of at most 64KiB.
+    int tailLength = (int) Math.min(size, ZipEntry.ENDHDR + 0xFFFF);
+    ByteBuffer tail = read(channel, size - tailLength, tailLength);
+    int eocdOffset = tailLength - ZipEntry.ENDHDR;
+    while (eocdOffset >= 0 && tail.getInt(eocdOffset) != ZipEntry.ENDSIG) {
+      eocdOffset--;
+    }
+    if (eocdOffset < 0) {
+      return OptionalLong.empty();
+    }
+    int cdEntries = Short.toUnsignedInt(tail.getShort(eocdOffset + ZipEntry.ENDTOT));
+    long cdSize = Integer.toUnsignedLong(tail.getInt(eocdOffset + ZipEntry.ENDSIZ));
+    long cdOffset = Integer.toUnsignedLong(tail.getInt(eocdOffset + ZipEntry.ENDOFF));
+    if (cdSize > Integer.MAX_VALUE || cdOffset + cdSize > size - tailLength + eocdOffset) {
+      return OptionalLong.empty();
+    }
+    ByteBuffer cd = read(channel, cdOffset, (int) cdSize);
+    int offset = 0;
+    for (int idx = 0;
+        idx < cdEntries
+            && offset + ZipEntry.CENHDR <= cd.limit()
+            && cd.getInt(offset) == ZipEntry.CENSIG;
+        idx++) {
+      int nameLength = Short.toUnsignedInt(cd.getShort(offset + ZipEntry.CENNAM));
+      int nameOffset = offset + ZipEntry.CENHDR;
+      if (nameOffset + nameLength > cd.limit()) {
+        return OptionalLong.empty();
+      }
+      if (nameLength == name.length
+          && ResChunk.slice(cd, nameOffset, nameLength).equals(ByteBuffer.wrap(name))) {
+        long localOffset = Integer.toUnsignedLong(cd.getInt(offset + ZipEntry.CENOFF));
+        if (localOffset + ZipEntry.LOCHDR > size) {
+          return OptionalLong.empty();
+        }
+        ByteBuffer local = read(channel, localOffset, ZipEntry.LOCHDR);
+        if (local.getInt(0) != ZipEntry.LOCSIG) {
+          return OptionalLong.empty();
+        }
+        return OptionalLong.of(
+            localOffset
+                + ZipEntry.LOCHDR
+                + Short.toUnsignedInt(local.getShort(ZipEntry.LOCNAM))
+                + Short.toUnsignedInt(local.getShort(ZipEntry.LOCEXT)));
+      }
+      offset +=
+          ZipEntry.CENHDR
+              + nameLength
+              + Short.toUnsignedInt(cd.getShort(offset + ZipEntry.CENEXT))
+              + Short.toUnsignedInt(cd.getShort(offset + ZipEntry.CENCOM));
+    }
+    return OptionalLong.empty();
+  }
+
+  private static ByteBuffer read(FileChannel channel, long position, int length)
+      throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate(length);
+    while (buffer.hasRemaining()) {
+      if (channel.read(buffer, position + buffer.position()) < 0) {
+        throw new EOFException(
+            String.format("Expected %d bytes at %d, the file is truncated.", length, position));
+      }
+    }
+    buffer.rewind();
+    buffer.order(ByteOrder.LITTLE_ENDIAN);
+    return buffer;
+  }
+
   private static class ApkZip implements Closeable, UsedResourcesFinder.ApkContentProvider {
+    private static final String RESOURCES_ARSC = "resources.arsc";
+
+    private final Path inputPath;
     private final ZipFile zipFile;
     private final SortedMap<String, ZipEntry> entries;
     private final Map<String, byte[]> entryContents;
     private final Map<String, ResourcesXml> xmlEntries;
+    private final Supplier<ByteBuffer> resourceTableContent;
     private final Supplier<ResourceTable> resourceTable;
 
     public ApkZip(Path inputPath) throws IOException {
+      this.inputPath = inputPath;
       this.zipFile = new ZipFile(inputPath.toFile());
       this.entries =
           Collections.list(zipFile.entries()).stream()
@@ -274,9 +426,9 @@ public class ExoResourcesRewriter {
                       Ordering.natural(), ZipEntry::getName, e -> e));
       this.entryContents = new HashMap<>();
       this.xmlEntries = new HashMap<>();
+      this.resourceTableContent = MoreSuppliers.memoize(this::extractResourceTableContent);
       this.resourceTable =
-          MoreSuppliers.memoize(
-              () -> ResourceTable.get(ResChunk.wrap(getContent("resources.arsc"))));
+          MoreSuppliers.memoize(() -> ResourceTable.get(resourceTableContent.get()));
     }
 
     @Override
@@ -323,6 +475,43 @@ public class ExoResourcesRewriter {
       return entryContents.computeIfAbsent(path, this::extractContent);
     }
 
+    /** Whether the file has been parsed, and so might have been rewritten in memory. */
+    boolean isParsed(String path) {
+      return path.equals(RESOURCES_ARSC) || xmlEntries.containsKey(path);
+    }
+
+    ByteBuffer getContentBuffer(String path) {
+      return path.equals(RESOURCES_ARSC)
+          ? resourceTableContent.get()
+          : ResChunk.wrap(getContent(path));
+    }
+
+    InputStream getInputStream(ZipEntry entry) throws IOException {
+      return zipFile.getInputStream(entry);
+    }
+
+    /**
+     * Returns the content of resources.arsc. The table is stored uncompressed in apks, and in that
+     * case it is read straight from the apk into the buffer that reassigning ids rewrites in place,
+     * instead of being copied through the streams of the zip file.
+     */
+    private ByteBuffer extractResourceTableContent() {
+      ZipEntry entry = entries.get(RESOURCES_ARSC);
+      if (entry != null && entry.getMethod() == ZipEntry.STORED) {
+        try {
+          Optional<ByteBuffer> content = readStoredEntry(inputPath, entry);
+          if (content.isPresent()) {
+            return content.get();
+          }
+          LOG.warn("Unable to locate %s in %s, reading it through the zip file.", entry, inputPath);
+        } catch (IOException e) {
+          LOG.warn(
+              e, "Unable to read %s from %s, reading it through the zip file.", entry, inputPath);
+        }
+      }
+      return ResChunk.wrap(getContent(RESOURCES_ARSC));
+    }
+
     private byte[] extractContent(String path) {
       try {
         return ByteStreams.toByteArray(zipFile.getInputStream(entries.get(path)));
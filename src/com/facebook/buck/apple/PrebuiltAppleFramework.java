@@ -36,6 +36,7 @@ import com.facebook.buck.core.sourcepath.SourcePath;
 import com.facebook.buck.cxx.CxxPreprocessorDep;
 import com.facebook.buck.cxx.CxxPreprocessorInput;
 import com.facebook.buck.cxx.TransitiveCxxPreprocessorInputCache;
+import com.facebook.buck.cxx.TransitiveCxxPreprocessorInputGraph;
 import com.facebook.buck.cxx.toolchain.CxxPlatform;
 import com.facebook.buck.cxx.toolchain.linker.Linker;
 import com.facebook.buck.cxx.toolchain.nativelink.LegacyNativeLinkableGroup;
@@ -204,6 +205,12 @@ public class PrebuiltAppleFramework extends AbstractBuildRuleWithDeclaredAndExtr
     return transitiveCxxPreprocessorInputCache.getUnchecked(cxxPlatform, graphBuilder);
   }
 
+  @Override
+  public TransitiveCxxPreprocessorInputGraph getTransitiveCxxPreprocessorInputGraph(
+      CxxPlatform cxxPlatform, ActionGraphBuilder graphBuilder) {
+    return transitiveCxxPreprocessorInputCache.getGraphUnchecked(cxxPlatform, graphBuilder);
+  }
+
   @Override
   public Iterable<NativeLinkableGroup> getNativeLinkableDeps(BuildRuleResolver ruleResolver) {
     return FluentIterable.from(getDeclaredDeps()).filter(NativeLinkableGroup.class);
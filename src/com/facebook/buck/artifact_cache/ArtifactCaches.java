@@ -372,7 +372,9 @@ public class ArtifactCaches implements ArtifactCacheFactory, AutoCloseable {
       // Don't bother wrapping a single artifact cache
       result = artifactCaches.get(0);
     } else {
-      result = new MultiArtifactCache(artifactCaches);
+      result =
+          new MultiArtifactCache(
+              artifactCaches, buckConfig.getTieredFetchHedgeDelaysMillis(), buckEventBus);
     }
 
     // Always support reading two-level cache stores (in case we performed any in the past).
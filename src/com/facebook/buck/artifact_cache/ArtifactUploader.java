@@ -32,11 +32,13 @@ import com.facebook.buck.util.ErrorLogger;
 import com.facebook.buck.util.NamedTemporaryFile;
 import com.facebook.buck.util.ObjectFileCommonModificationDate;
 import com.facebook.buck.util.types.Unit;
+import com.github.luben.zstd.ZstdOutputStream;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Joiner;
 import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSortedMap;
 import com.google.common.collect.ImmutableSortedSet;
 import com.google.common.io.ByteStreams;
 import com.google.common.util.concurrent.FutureCallback;
@@ -49,10 +51,12 @@ import java.io.OutputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
 import java.util.SortedSet;
 import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
 import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
-import org.apache.commons.compress.compressors.zstandard.ZstdCompressorOutputStream;
 
 /**
  * ArtifactUploader contains the logic of how to take a list of artifact paths and metadata and
@@ -61,21 +65,32 @@ import org.apache.commons.compress.compressors.zstandard.ZstdCompressorOutputStr
 public class ArtifactUploader {
   private static final Logger LOG = Logger.get(ArtifactUploader.class);
 
+  private static final long MULTI_THREADED_COMPRESSION_MIN_SIZE = 16 * 1024 * 1024;
+  private static final int MAX_COMPRESSION_WORKERS = 4;
+
   /** As method name says */
   public static ListenableFuture<Unit> performUploadToArtifactCache(
       ImmutableSet<RuleKey> ruleKeys,
       ArtifactCache artifactCache,
+      ZstdDictionaries dictionaries,
       BuckEventBus eventBus,
       ImmutableMap<String, String> buildMetadata,
       SortedSet<Path> pathsToIncludeInArchive,
       BuildRule buildRule,
       long buildTimeMs) {
     ProjectFilesystem projectFilesystem = buildRule.getProjectFilesystem();
+    Optional<ZstdDictionaries.Dictionary> dictionary =
+        dictionaries.getForRuleType(buildRule.getType());
     NamedTemporaryFile archive;
     try {
       archive =
           getTemporaryArtifactArchive(
-              buildRule, projectFilesystem, ruleKeys, eventBus, pathsToIncludeInArchive);
+              buildRule,
+              projectFilesystem,
+              ruleKeys,
+              eventBus,
+              pathsToIncludeInArchive,
+              dictionary);
     } catch (BuckUncheckedExecutionException e) {
       LOG.error(e.getMessage());
       LOG.debug(e.toString() + "\n" + Throwables.getStackTraceAsString(e));
@@ -87,7 +102,7 @@ public class ArtifactUploader {
         artifactCache.store(
             ArtifactInfo.builder()
                 .setRuleKeys(ruleKeys)
-                .setMetadata(buildMetadata)
+                .setMetadata(getArtifactMetadata(buildMetadata, dictionary))
                 .setBuildTarget(buildRule.getBuildTarget())
                 .setBuildTimeMs(buildTimeMs)
                 .build(),
@@ -159,12 +174,28 @@ public class ArtifactUploader {
     return storeFuture;
   }
 
+  /** Records the dictionary the artifact is compressed with, if any, in its metadata. */
+  private static ImmutableMap<String, String> getArtifactMetadata(
+      ImmutableMap<String, String> buildMetadata,
+      Optional<ZstdDictionaries.Dictionary> dictionary) {
+    if (!dictionary.isPresent() && !buildMetadata.containsKey(ZstdDictionaries.METADATA_KEY)) {
+      return buildMetadata;
+    }
+    // The metadata of a rule fetched from the cache may still have the id of its previous artifact.
+    Map<String, String> metadata = new HashMap<>(buildMetadata);
+    metadata.remove(ZstdDictionaries.METADATA_KEY);
+    dictionary.ifPresent(
+        d -> metadata.put(ZstdDictionaries.METADATA_KEY, Long.toString(d.getId())));
+    return ImmutableSortedMap.copyOf(metadata);
+  }
+
   private static NamedTemporaryFile getTemporaryArtifactArchive(
       BuildRule buildRule,
       ProjectFilesystem projectFilesystem,
       ImmutableSet<RuleKey> ruleKeys,
       BuckEventBus eventBus,
-      SortedSet<Path> pathsToIncludeInArchive) {
+      SortedSet<Path> pathsToIncludeInArchive,
+      Optional<ZstdDictionaries.Dictionary> dictionary) {
     ArtifactCompressionEvent.Started started =
         ArtifactCompressionEvent.started(
             ArtifactCompressionEvent.Operation.COMPRESS, ruleKeys, buildRule);
@@ -172,11 +203,22 @@ public class ArtifactUploader {
     BuildTarget buildTarget = buildRule.getBuildTarget();
     long compressedSize = 0L;
     long fullSize = 0L;
+    int workers = 0;
     try (CloseableHolder<NamedTemporaryFile> archive =
         new CloseableHolder<>(
             new NamedTemporaryFile(
                 "buck_artifact_" + MostFiles.sanitize(buildTarget.getShortName()), ".tar.zst"))) {
-      fullSize = compress(projectFilesystem, pathsToIncludeInArchive, archive.get().get());
+      workers =
+          getCompressionWorkers(
+              getFullSize(projectFilesystem, pathsToIncludeInArchive),
+              Runtime.getRuntime().availableProcessors());
+      fullSize =
+          compress(
+              projectFilesystem,
+              pathsToIncludeInArchive,
+              archive.get().get(),
+              workers,
+              dictionary);
       compressedSize = Files.size(archive.get().get());
       return archive.release();
     } catch (IOException e) {
@@ -187,19 +229,68 @@ public class ArtifactUploader {
           Joiner.on('\n').join(ImmutableSortedSet.copyOf(pathsToIncludeInArchive)));
     } finally {
       eventBus.post(
-          ArtifactCompressionEvent.finished(started, fullSize, compressedSize, buildRule));
+          ArtifactCompressionEvent.finished(
+              started, fullSize, compressedSize, workers, buildRule));
     }
   }
 
+  /**
+   * Returns the number of background zstd workers to compress an artifact of the given size with.
+   * Large artifacts are usually on the critical path of the upload, so they are compressed by
+   * several workers while the calling thread keeps archiving. Small ones are compressed on the
+   * calling thread: zstd splits its input in jobs of several megabytes, so workers would not help.
+   */
+  @VisibleForTesting
+  static int getCompressionWorkers(long fullSize, int availableProcessors) {
+    if (fullSize < MULTI_THREADED_COMPRESSION_MIN_SIZE) {
+      return 0;
+    }
+    // Leave processors to the rules which are still building.
+    return Math.min(MAX_COMPRESSION_WORKERS, availableProcessors / 2);
+  }
+
+  private static long getFullSize(
+      ProjectFilesystem projectFilesystem, Collection<Path> pathsToIncludeInArchive)
+      throws IOException {
+    long fullSize = 0L;
+    for (Path path : pathsToIncludeInArchive) {
+      if (!projectFilesystem.isDirectory(path)) {
+        fullSize += projectFilesystem.getFileSize(path);
+      }
+    }
+    return fullSize;
+  }
+
   /** Archive and compress 'pathsToIncludeInArchive' into 'out', using tar+zstandard. */
   @VisibleForTesting
   static long compress(
       ProjectFilesystem projectFilesystem, Collection<Path> pathsToIncludeInArchive, Path out)
       throws IOException {
+    return compress(projectFilesystem, pathsToIncludeInArchive, out, 0, Optional.empty());
+  }
+
+  /**
+   * Archive and compress 'pathsToIncludeInArchive' into 'out', using tar+zstandard with the given
+   * number of background zstd workers and the given dictionary.
+   */
+  @VisibleForTesting
+  static long compress(
+      ProjectFilesystem projectFilesystem,
+      Collection<Path> pathsToIncludeInArchive,
+      Path out,
+      int workers,
+      Optional<ZstdDictionaries.Dictionary> dictionary)
+      throws IOException {
     long fullSize = 0L;
     try (OutputStream o = new BufferedOutputStream(Files.newOutputStream(out));
-        OutputStream z = new ZstdCompressorOutputStream(o);
+        ZstdOutputStream z = new ZstdOutputStream(o);
         TarArchiveOutputStream archive = new TarArchiveOutputStream(z)) {
+      if (workers > 0) {
+        z.setWorkers(workers);
+      }
+      if (dictionary.isPresent()) {
+        z.setDict(dictionary.get().getBytes());
+      }
       archive.setLongFileMode(TarArchiveOutputStream.LONGFILE_POSIX);
       for (Path path : pathsToIncludeInArchive) {
         boolean isRegularFile = !projectFilesystem.isDirectory(path);
@@ -67,6 +67,18 @@ public abstract class CacheCountersSummary {
   @JsonView(JsonViews.MachineReadableLog.class)
   public abstract AtomicInteger getFailureUploadCount();
 
+  /** How many caches were queried before the previous ones responded to a fetch. */
+  @JsonView(JsonViews.MachineReadableLog.class)
+  public abstract int getTieredFetchHedgeCount();
+
+  /** How many fetches were left to complete in the background because another cache hit first. */
+  @JsonView(JsonViews.MachineReadableLog.class)
+  public abstract int getTieredFetchAbandonCount();
+
+  /** How many times an artifact fetched from a cache was stored to the faster caches. */
+  @JsonView(JsonViews.MachineReadableLog.class)
+  public abstract int getTieredFetchBackfillCount();
+
   public static CacheCountersSummary of(
       Map<ArtifactCacheMode, ? extends AtomicInteger> cacheHitsPerMode,
       Map<ArtifactCacheMode, ? extends AtomicInteger> cacheErrorsPerMode,
@@ -78,7 +90,10 @@ public abstract class CacheCountersSummary {
       long totalCacheBytes,
       int totalCacheLocalKeyUnchangedHits,
       AtomicInteger successUploadCount,
-      AtomicInteger failureUploadCount) {
+      AtomicInteger failureUploadCount,
+      int tieredFetchHedgeCount,
+      int tieredFetchAbandonCount,
+      int tieredFetchBackfillCount) {
     return ImmutableCacheCountersSummary.of(
         cacheHitsPerMode,
         cacheErrorsPerMode,
@@ -90,6 +105,9 @@ public abstract class CacheCountersSummary {
         totalCacheBytes,
         totalCacheLocalKeyUnchangedHits,
         successUploadCount,
-        failureUploadCount);
+        failureUploadCount,
+        tieredFetchHedgeCount,
+        tieredFetchAbandonCount,
+        tieredFetchBackfillCount);
   }
 }
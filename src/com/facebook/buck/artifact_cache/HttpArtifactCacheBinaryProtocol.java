@@ -22,6 +22,7 @@ import com.facebook.buck.util.hash.HasherInputStream;
 import com.facebook.buck.util.hash.HasherOutputStream;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.hash.HashCode;
@@ -34,10 +35,13 @@ import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 
 /** Implements the binary protocol used by Buck to talk to the cache server. */
 public class HttpArtifactCacheBinaryProtocol {
@@ -63,21 +67,78 @@ public class HttpArtifactCacheBinaryProtocol {
 
   public static StoreResponseReadResult readStoreRequest(
       DataInputStream input, OutputStream payloadSink) throws IOException {
-    ImmutableSet.Builder<RuleKey> rawRuleKeys = ImmutableSet.builder();
-    int ruleKeysCount = input.readInt();
-    for (int i = 0; i < ruleKeysCount; i++) {
-      rawRuleKeys.add(new RuleKey(input.readUTF()));
-    }
+    ImmutableSet<RuleKey> rawRuleKeys = readRuleKeys(input);
 
     MetadataAndPayloadReadResultInternal resultInternal =
         readMetadataAndPayload(input, payloadSink);
 
     ImmutableStoreResponseReadResult.Builder result =
         ImmutableStoreResponseReadResult.builder().from(resultInternal);
-    result.setRawKeys(rawRuleKeys.build());
+    result.setRawKeys(rawRuleKeys);
     return result.build();
   }
 
+  /**
+   * Reads the rule keys written by {@link #createKeysHeader}, which is also the body of multi-fetch
+   * and multi-contains requests.
+   */
+  public static ImmutableSet<RuleKey> readRuleKeys(DataInputStream input) throws IOException {
+    ImmutableSet.Builder<RuleKey> ruleKeys = ImmutableSet.builder();
+    int ruleKeysCount = input.readInt();
+    for (int i = 0; i < ruleKeysCount; i++) {
+      ruleKeys.add(new RuleKey(input.readUTF()));
+    }
+    return ruleKeys.build();
+  }
+
+  /**
+   * Writes the response to a multi-contains request: whether each of the requested rule keys is in
+   * the cache, in the order of the request.
+   */
+  public static void writeMultiContainsResponse(List<Boolean> contained, OutputStream responseSink)
+      throws IOException {
+    DataOutputStream output = new DataOutputStream(responseSink);
+    output.writeInt(contained.size());
+    for (boolean contains : contained) {
+      output.writeBoolean(contains);
+    }
+    output.flush();
+  }
+
+  public static ImmutableList<Boolean> readMultiContainsResponse(DataInputStream input)
+      throws IOException {
+    ImmutableList.Builder<Boolean> contained = ImmutableList.builder();
+    int count = input.readInt();
+    for (int i = 0; i < count; i++) {
+      contained.add(input.readBoolean());
+    }
+    return contained.build();
+  }
+
+  /**
+   * Reads the artifact of one rule key out of a multi-fetch response, which starts with the number
+   * of rule keys, followed for each of them by whether it was found and, if so, the size and the
+   * contents of its {@link FetchResponse}.
+   *
+   * @return the artifact, or empty if the cache didn't have it.
+   */
+  public static Optional<FetchResponseReadResult> readMultiFetchResponseEntry(
+      DataInputStream input, OutputStream payloadSink) throws IOException {
+    if (!input.readBoolean()) {
+      return Optional.empty();
+    }
+    long size = input.readLong();
+    // Reading the payload closes its stream, which mustn't close the remaining entries.
+    InputStream entry =
+        new FilterInputStream(ByteStreams.limit(input, size)) {
+          @Override
+          public void close() {}
+        };
+    FetchResponseReadResult result = readFetchResponse(new DataInputStream(entry), payloadSink);
+    ByteStreams.exhaust(entry);
+    return Optional.of(result);
+  }
+
   public static MetadataAndPayloadReadResultInternal readMetadataAndPayload(
       DataInputStream input, OutputStream payloadSink) throws IOException {
     // Read the size of a the metadata, and use that to build a input stream to read and
@@ -138,8 +199,8 @@ public class HttpArtifactCacheBinaryProtocol {
     return result.build();
   }
 
-  @VisibleForTesting
-  static byte[] createKeysHeader(ImmutableSet<RuleKey> ruleKeys) throws IOException {
+  /** Writes the rule keys of a store request, also used as the body of multi-key requests. */
+  public static byte[] createKeysHeader(ImmutableSet<RuleKey> ruleKeys) throws IOException {
     try (ByteArrayOutputStream out = new ByteArrayOutputStream();
         DataOutputStream data = new DataOutputStream(out)) {
       data.writeInt(ruleKeys.size());
@@ -248,11 +309,21 @@ public class HttpArtifactCacheBinaryProtocol {
 
     public void write(OutputStream responseSink) throws IOException {
       try (DataOutputStream dataOutputStream = new DataOutputStream(responseSink)) {
-        dataOutputStream.writeInt(rawMetadata.length);
-        dataOutputStream.write(rawMetadata);
+        writeHeader(dataOutputStream);
         payloadSource.copyTo(responseSink);
       }
     }
+
+    /**
+     * Writes everything but the payload, for servers which send the payload themselves, e.g.
+     * straight from a file. Doesn't close the sink.
+     */
+    public void writeHeader(OutputStream responseSink) throws IOException {
+      DataOutputStream dataOutputStream = new DataOutputStream(responseSink);
+      dataOutputStream.writeInt(rawMetadata.length);
+      dataOutputStream.write(rawMetadata);
+      dataOutputStream.flush();
+    }
   }
 
   public abstract static class MetadataAndPayloadReadResult {
@@ -19,8 +19,10 @@ package com.facebook.buck.artifact_cache;
 import com.facebook.buck.artifact_cache.config.CacheReadMode;
 import com.facebook.buck.core.model.BuildTarget;
 import com.facebook.buck.core.rulekey.RuleKey;
+import com.facebook.buck.event.BuckEventBus;
 import com.facebook.buck.io.file.BorrowablePath;
 import com.facebook.buck.io.file.LazyPath;
+import com.facebook.buck.util.concurrent.MostExecutors;
 import com.facebook.buck.util.types.Pair;
 import com.facebook.buck.util.types.Unit;
 import com.google.common.annotations.VisibleForTesting;
@@ -38,6 +40,8 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.atomic.AtomicReference;
 import javax.annotation.Nullable;
 
@@ -51,9 +55,39 @@ public class MultiArtifactCache implements ArtifactCache {
   private final ImmutableList<ArtifactCache> artifactCaches;
   private final ImmutableList<ArtifactCache> writableArtifactCaches;
   private final boolean isStoreSupported;
+  private final ImmutableList<Long> hedgeDelaysMillis;
+  private final Optional<BuckEventBus> eventBus;
+  private final Optional<ScheduledExecutorService> hedgeScheduler;
 
   public MultiArtifactCache(ImmutableList<ArtifactCache> artifactCaches) {
+    this(artifactCaches, ImmutableList.of(), Optional.empty());
+  }
+
+  /**
+   * @param hedgeDelaysMillis How long to wait for each cache to respond to a fetch before also
+   *     querying the next one (see {@link TieredFetch}). If empty, the next cache is only queried
+   *     after the previous one missed.
+   */
+  public MultiArtifactCache(
+      ImmutableList<ArtifactCache> artifactCaches,
+      ImmutableList<Long> hedgeDelaysMillis,
+      BuckEventBus eventBus) {
+    this(artifactCaches, hedgeDelaysMillis, Optional.of(eventBus));
+  }
+
+  private MultiArtifactCache(
+      ImmutableList<ArtifactCache> artifactCaches,
+      ImmutableList<Long> hedgeDelaysMillis,
+      Optional<BuckEventBus> eventBus) {
     this.artifactCaches = artifactCaches;
+    this.hedgeDelaysMillis = hedgeDelaysMillis;
+    this.eventBus = eventBus;
+    this.hedgeScheduler =
+        hedgeDelaysMillis.isEmpty()
+            ? Optional.empty()
+            : Optional.of(
+                Executors.newSingleThreadScheduledExecutor(
+                    new MostExecutors.NamedThreadFactory("MultiArtifactCache hedging")));
     this.writableArtifactCaches =
         artifactCaches.stream()
             .filter(c -> c.getCacheReadMode().equals(CacheReadMode.READWRITE))
@@ -69,6 +103,10 @@ public class MultiArtifactCache implements ArtifactCache {
   @Override
   public ListenableFuture<CacheResult> fetchAsync(
       @Nullable BuildTarget target, RuleKey ruleKey, LazyPath output) {
+    if (hedgeScheduler.isPresent()) {
+      return fetchConcurrently(target, ruleKey, output, hedgeScheduler.get());
+    }
+
     ListenableFuture<CacheResult> cacheResult = Futures.immediateFuture(CacheResult.miss());
     AtomicReference<ArtifactCache> lastCache = new AtomicReference<>();
 
@@ -91,37 +129,79 @@ public class MultiArtifactCache implements ArtifactCache {
     return Futures.transform(
         cacheResult,
         (CacheResult result) -> {
-          if (!result.getType().isSuccess()) {
-            return result;
-          }
-
-          ImmutableList.Builder<ArtifactCache> builder = ImmutableList.builder();
-          for (ArtifactCache artifactCache : artifactCaches) {
-            if (artifactCache == lastCache.get()) {
-              break;
-            }
-
-            if (artifactCache.getCacheReadMode().isWritable()) {
-              builder.add(artifactCache);
-            }
+          if (result.getType().isSuccess()) {
+            backfill(
+                target,
+                ruleKey,
+                output,
+                result,
+                artifactCaches.subList(0, artifactCaches.indexOf(lastCache.get())));
           }
+          return result;
+        },
+        MoreExecutors.directExecutor());
+  }
 
-          ImmutableList<ArtifactCache> cachesToFill = builder.build();
-          if (!cachesToFill.isEmpty()) {
-            storeToCaches(
-                cachesToFill,
-                ArtifactInfo.builder()
-                    .addRuleKeys(ruleKey)
-                    .setMetadata(result.getMetadata())
-                    .setBuildTarget(Optional.ofNullable(target))
-                    .build(),
-                BorrowablePath.notBorrowablePath(output.getUnchecked()));
-          }
+  /**
+   * Fetches from the caches concurrently, the next cache being queried when the previous ones
+   * missed or were too slow to respond, and uses the first hit.
+   */
+  private ListenableFuture<CacheResult> fetchConcurrently(
+      @Nullable BuildTarget target,
+      RuleKey ruleKey,
+      LazyPath output,
+      ScheduledExecutorService scheduler) {
+    TieredFetch fetch =
+        new TieredFetch(artifactCaches, hedgeDelaysMillis, scheduler, target, ruleKey, output);
+    return Futures.transform(
+        fetch.start(),
+        (CacheResult result) -> {
+          int backfilledCaches =
+              result.getType().isSuccess()
+                  ? backfill(target, ruleKey, output, result, fetch.getFasterCachesWhichMissed())
+                  : 0;
+          eventBus.ifPresent(
+              bus ->
+                  bus.post(
+                      new TieredFetchEvent(
+                          fetch.getHedgedTiers(), fetch.getAbandonedTiers(), backfilledCaches)));
           return result;
         },
         MoreExecutors.directExecutor());
   }
 
+  /**
+   * Stores an artifact fetched from a cache to the given caches which missed it, if writable.
+   *
+   * @return How many caches the artifact was stored to.
+   */
+  private int backfill(
+      @Nullable BuildTarget target,
+      RuleKey ruleKey,
+      LazyPath output,
+      CacheResult result,
+      List<ArtifactCache> missedCaches) {
+    ImmutableList.Builder<ArtifactCache> builder = ImmutableList.builder();
+    for (ArtifactCache artifactCache : missedCaches) {
+      if (artifactCache.getCacheReadMode().isWritable()) {
+        builder.add(artifactCache);
+      }
+    }
+
+    ImmutableList<ArtifactCache> cachesToFill = builder.build();
+    if (!cachesToFill.isEmpty()) {
+      storeToCaches(
+          cachesToFill,
+          ArtifactInfo.builder()
+              .addRuleKeys(ruleKey)
+              .setMetadata(result.getMetadata())
+              .setBuildTarget(Optional.ofNullable(target))
+              .build(),
+          BorrowablePath.notBorrowablePath(output.getUnchecked()));
+    }
+    return cachesToFill.size();
+  }
+
   @Override
   public void skipPendingAndFutureAsyncFetches() {
     for (ArtifactCache artifactCache : artifactCaches) {
@@ -246,6 +326,7 @@ public class MultiArtifactCache implements ArtifactCache {
 
   @Override
   public void close() {
+    hedgeScheduler.ifPresent(ScheduledExecutorService::shutdownNow);
     Optional<RuntimeException> throwable = Optional.empty();
     for (ArtifactCache artifactCache : artifactCaches) {
       try {
@@ -0,0 +1,243 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.artifact_cache;
+
+import com.facebook.buck.core.model.BuildTarget;
+import com.facebook.buck.core.rulekey.RuleKey;
+import com.facebook.buck.core.util.log.Logger;
+import com.facebook.buck.io.file.LazyPath;
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+import javax.annotation.Nullable;
+
+/**
+ * A fetch from tiers of caches (e.g. a dir cache, then an http cache) which queries the next tier
+ * as soon as the previous one missed or didn't respond within a hedging delay, and uses the first
+ * hit.
+ *
+ * <p>Each tier fetches to its own file next to the output, and the file of the hit is moved to the
+ * output, so that tiers fetching concurrently don't overwrite each other's artifact. The fetches
+ * of the other tiers are left to complete, as cancelling a fetch doesn't stop it from writing its
+ * file, and their files are deleted once they did.
+ */
+class TieredFetch {
+  private static final Logger LOG = Logger.get(TieredFetch.class);
+
+  private final ImmutableList<ArtifactCache> caches;
+  private final ImmutableList<Long> hedgeDelaysMillis;
+  private final ScheduledExecutorService scheduler;
+  @Nullable private final BuildTarget target;
+  private final RuleKey ruleKey;
+  private final LazyPath output;
+  private final ImmutableList<TierOutput> tierOutputs;
+  private final SettableFuture<CacheResult> result = SettableFuture.create();
+
+  // Guarded by this.
+  private final List<ListenableFuture<CacheResult>> fetches = new ArrayList<>();
+  private final CacheResult[] tierResults;
+  private int startedTiers;
+  private int finishedTiers;
+  private int winningTier = -1;
+  private int hedgedTiers;
+  private int abandonedTiers;
+
+  /**
+   * @param hedgeDelaysMillis How long to wait for each tier to respond before also querying the
+   *     next one. The last delay applies to the tiers past the end of the list.
+   */
+  TieredFetch(
+      ImmutableList<ArtifactCache> caches,
+      ImmutableList<Long> hedgeDelaysMillis,
+      ScheduledExecutorService scheduler,
+      @Nullable BuildTarget target,
+      RuleKey ruleKey,
+      LazyPath output) {
+    this.caches = caches;
+    this.hedgeDelaysMillis = hedgeDelaysMillis;
+    this.scheduler = scheduler;
+    this.target = target;
+    this.ruleKey = ruleKey;
+    this.output = output;
+    this.tierOutputs =
+        IntStream.range(0, caches.size())
+            .mapToObj(tier -> new TierOutput(output, tier))
+            .collect(ImmutableList.toImmutableList());
+    this.tierResults = new CacheResult[caches.size()];
+  }
+
+  /** @return The result of the first tier which hit, or of the last tier if none did. */
+  ListenableFuture<CacheResult> start() {
+    startTier(0, false);
+    return result;
+  }
+
+  /** @return The tier which hit, or -1 if none did. */
+  synchronized int getWinningTier() {
+    return winningTier;
+  }
+
+  /** @return How many tiers were queried before the previous one responded. */
+  synchronized int getHedgedTiers() {
+    return hedgedTiers;
+  }
+
+  /** @return How many tiers were still fetching when another one hit. */
+  synchronized int getAbandonedTiers() {
+    return abandonedTiers;
+  }
+
+  /**
+   * @return The caches of the tiers before the one which hit that responded without the artifact.
+   *     The tiers which were still fetching when another one hit may yet have it.
+   */
+  synchronized ImmutableList<ArtifactCache> getFasterCachesWhichMissed() {
+    ImmutableList.Builder<ArtifactCache> missed = ImmutableList.builder();
+    for (int tier = 0; tier < winningTier; tier++) {
+      if (tierResults[tier] != null) {
+        missed.add(caches.get(tier));
+      }
+    }
+    return missed.build();
+  }
+
+  private void startTier(int tier, boolean hedged) {
+    synchronized (this) {
+      if (tier != startedTiers || tier >= caches.size() || result.isDone()) {
+        return;
+      }
+      startedTiers++;
+      if (hedged) {
+        hedgedTiers++;
+      }
+    }
+    if (tier + 1 < caches.size()) {
+      scheduler.schedule(
+          () -> startTier(tier + 1, true),
+          hedgeDelaysMillis.get(Math.min(tier, hedgeDelaysMillis.size() - 1)),
+          TimeUnit.MILLISECONDS);
+    }
+    ListenableFuture<CacheResult> fetch =
+        caches.get(tier).fetchAsync(target, ruleKey, tierOutputs.get(tier));
+    synchronized (this) {
+      fetches.add(fetch);
+    }
+    fetch.addListener(() -> onFetched(tier, fetch), MoreExecutors.directExecutor());
+  }
+
+  private void onFetched(int tier, ListenableFuture<CacheResult> fetch) {
+    CacheResult tierResult;
+    try {
+      tierResult = Futures.getDone(fetch);
+    } catch (ExecutionException e) {
+      deleteTierOutput(tier);
+      result.setException(e.getCause());
+      return;
+    } catch (RuntimeException e) {
+      // E.g. the fetch was cancelled by its cache.
+      deleteTierOutput(tier);
+      result.setException(e);
+      return;
+    }
+
+    if (tierResult.getType().isSuccess()) {
+      synchronized (this) {
+        if (winningTier >= 0 || result.isDone()) {
+          deleteTierOutput(tier);
+          return;
+        }
+        winningTier = tier;
+        for (ListenableFuture<CacheResult> other : fetches) {
+          if (other != fetch && !other.isDone()) {
+            abandonedTiers++;
+          }
+        }
+      }
+      try {
+        // Metadata-only hits don't fetch a file.
+        Path tierOutput = tierOutputs.get(tier).get();
+        if (Files.exists(tierOutput)) {
+          Files.move(tierOutput, output.get(), StandardCopyOption.REPLACE_EXISTING);
+        }
+      } catch (IOException e) {
+        result.setException(e);
+        return;
+      }
+      result.set(tierResult);
+      return;
+    }
+
+    boolean lastTier;
+    synchronized (this) {
+      tierResults[tier] = tierResult;
+      finishedTiers++;
+      lastTier = finishedTiers == caches.size();
+    }
+    deleteTierOutput(tier);
+    if (lastTier) {
+      result.set(tierResults[caches.size() - 1]);
+    } else {
+      startTier(tier + 1, false);
+    }
+  }
+
+  private void deleteTierOutput(int tier) {
+    if (!tierOutputs.get(tier).isCreated()) {
+      return;
+    }
+    try {
+      Files.deleteIfExists(tierOutputs.get(tier).get());
+    } catch (IOException e) {
+      LOG.warn(e, "Unable to delete the fetch of %s from tier %d.", ruleKey, tier);
+    }
+  }
+
+  /** The file a tier fetches to, next to the output. */
+  private static class TierOutput extends LazyPath {
+    private final LazyPath output;
+    private final int tier;
+    private volatile boolean created;
+
+    TierOutput(LazyPath output, int tier) {
+      this.output = output;
+      this.tier = tier;
+    }
+
+    @Override
+    protected Path create() throws IOException {
+      Path path = output.get();
+      created = true;
+      return path.resolveSibling(path.getFileName() + ".tier" + tier);
+    }
+
+    boolean isCreated() {
+      return created;
+    }
+  }
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.artifact_cache;
+
+import com.facebook.buck.event.AbstractBuckEvent;
+import com.facebook.buck.event.EventKey;
+
+/** Posted after a fetch which queried tiers of caches concurrently. */
+public class TieredFetchEvent extends AbstractBuckEvent {
+  private final int hedgedTiers;
+  private final int abandonedTiers;
+  private final int backfilledCaches;
+
+  public TieredFetchEvent(int hedgedTiers, int abandonedTiers, int backfilledCaches) {
+    super(EventKey.unique());
+    this.hedgedTiers = hedgedTiers;
+    this.abandonedTiers = abandonedTiers;
+    this.backfilledCaches = backfilledCaches;
+  }
+
+  /** @return How many tiers were queried before the previous one responded. */
+  public int getHedgedTiers() {
+    return hedgedTiers;
+  }
+
+  /** @return How many tiers were still fetching when another one hit. */
+  public int getAbandonedTiers() {
+    return abandonedTiers;
+  }
+
+  /** @return How many faster caches the hit was stored to. */
+  public int getBackfilledCaches() {
+    return backfilledCaches;
+  }
+
+  @Override
+  public String getEventName() {
+    return this.getClass().getName();
+  }
+
+  @Override
+  protected String getValueString() {
+    return getEventName() + getEventKey();
+  }
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.artifact_cache;
+
+import com.facebook.buck.core.exceptions.HumanReadableException;
+import com.github.luben.zstd.Zstd;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
+import com.google.common.collect.ImmutableMap;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Trained zstd dictionaries to compress the artifacts of the rules of some types with, configured
+ * with {@code [cache] zstd_dictionaries = <rule type> => <path>, ...}.
+ *
+ * <p>Small artifacts (e.g. ABI jars or object files) don't have enough content for zstd to learn
+ * from, so they compress much better with a dictionary trained on similar artifacts (see {@link
+ * ZstdDictionaryTrainer}). The id of the dictionary is stored in the metadata of the artifact, so
+ * that the fetcher of an artifact knows which dictionary to decompress it with. Retraining a
+ * dictionary gives it a new id: artifacts compressed with a previous version of it can't be
+ * extracted anymore, and are rebuilt.
+ */
+public class ZstdDictionaries {
+
+  /** The metadata of artifacts which holds the id of the dictionary they were compressed with. */
+  public static final String METADATA_KEY = "ZSTD_DICTIONARY_ID";
+
+  private static final ZstdDictionaries EMPTY = new ZstdDictionaries(ImmutableMap.of());
+
+  private final ImmutableMap<String, Path> pathsByRuleType;
+  private final Supplier<ImmutableMap<String, Dictionary>> dictionariesByRuleType;
+  private final Supplier<ImmutableMap<Long, Dictionary>> dictionariesById;
+
+  private ZstdDictionaries(ImmutableMap<String, Path> pathsByRuleType) {
+    this.pathsByRuleType = pathsByRuleType;
+    this.dictionariesByRuleType = Suppliers.memoize(this::load);
+    this.dictionariesById =
+        Suppliers.memoize(
+            () -> {
+              Map<Long, Dictionary> dictionaries = new HashMap<>();
+              dictionariesByRuleType.get().values().forEach(d -> dictionaries.put(d.getId(), d));
+              return ImmutableMap.copyOf(dictionaries);
+            });
+  }
+
+  public static ZstdDictionaries of(ImmutableMap<String, Path> pathsByRuleType) {
+    return pathsByRuleType.isEmpty() ? EMPTY : new ZstdDictionaries(pathsByRuleType);
+  }
+
+  public static ZstdDictionaries empty() {
+    return EMPTY;
+  }
+
+  /** Returns the dictionary to compress the artifacts of the rules of the given type with. */
+  public Optional<Dictionary> getForRuleType(String ruleType) {
+    if (!pathsByRuleType.containsKey(ruleType)) {
+      return Optional.empty();
+    }
+    return Optional.ofNullable(dictionariesByRuleType.get().get(ruleType));
+  }
+
+  /** Returns the dictionary with the given id, to decompress an artifact with. */
+  public Optional<Dictionary> getById(long id) {
+    if (pathsByRuleType.isEmpty()) {
+      return Optional.empty();
+    }
+    return Optional.ofNullable(dictionariesById.get().get(id));
+  }
+
+  /**
+   * Returns the dictionary with the id stored in the metadata of an artifact, if the id is valid
+   * and the dictionary is known.
+   */
+  public Optional<Dictionary> getById(String id) {
+    try {
+      return getById(Long.parseLong(id));
+    } catch (NumberFormatException e) {
+      return Optional.empty();
+    }
+  }
+
+  private ImmutableMap<String, Dictionary> load() {
+    ImmutableMap.Builder<String, Dictionary> dictionaries = ImmutableMap.builder();
+    for (Map.Entry<String, Path> entry : pathsByRuleType.entrySet()) {
+      byte[] bytes;
+      try {
+        bytes = Files.readAllBytes(entry.getValue());
+      } catch (IOException e) {
+        throw new HumanReadableException(
+            e,
+            "Unable to read the zstd dictionary of %s rules at %s: %s",
+            entry.getKey(),
+            entry.getValue(),
+            e.getMessage());
+      }
+      long id = Zstd.getDictIdFromDict(bytes);
+      if (id == 0) {
+        throw new HumanReadableException(
+            "%s, the zstd dictionary of %s rules, is not a trained zstd dictionary.",
+            entry.getValue(), entry.getKey());
+      }
+      dictionaries.put(entry.getKey(), new Dictionary(id, bytes));
+    }
+    return dictionaries.build();
+  }
+
+  /** A trained zstd dictionary. */
+  public static final class Dictionary {
+    private final long id;
+    private final byte[] bytes;
+
+    public Dictionary(long id, byte[] bytes) {
+      Preconditions.checkArgument(id != 0, "Only trained dictionaries have an id.");
+      this.id = id;
+      this.bytes = bytes;
+    }
+
+    /** The id zstd stores in the frames compressed with this dictionary. */
+    public long getId() {
+      return id;
+    }
+
+    public byte[] getBytes() {
+      return bytes;
+    }
+  }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.artifact_cache;
+
+import com.github.luben.zstd.ZstdDictTrainer;
+import com.github.luben.zstd.ZstdInputStream;
+import com.google.common.io.ByteStreams;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Trains a zstd dictionary for {@link ZstdDictionaries} on a sample of artifacts, e.g. the
+ * artifacts of the rules of one type in a local dir cache:
+ *
+ * <pre>
+ *   train-zstd-dictionary java_library.dict 112640 buck-cache/ab/abcd... ...
+ * </pre>
+ */
+public class ZstdDictionaryTrainer {
+
+  /** The maximum size of the samples, as a multiple of the size of the dictionary. */
+  private static final int SAMPLES_SIZE_RATIO = 100;
+
+  private ZstdDictionaryTrainer() {}
+
+  public static void main(String[] args) throws IOException {
+    if (args.length < 3) {
+      throw new IllegalArgumentException(
+          "Usage: train-zstd-dictionary <dictionary> <size> <artifact>...");
+    }
+    List<Path> artifacts = new ArrayList<>();
+    for (String artifact : Arrays.asList(args).subList(2, args.length)) {
+      artifacts.add(Paths.get(artifact));
+    }
+    Files.write(Paths.get(args[0]), train(artifacts, Integer.parseInt(args[1])));
+  }
+
+  /**
+   * Trains a dictionary of the given size on the uncompressed contents of the given tar+zstd
+   * artifacts, until the samples are 100 times the size of the dictionary.
+   */
+  public static byte[] train(Iterable<Path> artifacts, int dictionarySize) throws IOException {
+    ZstdDictTrainer trainer =
+        new ZstdDictTrainer(dictionarySize * SAMPLES_SIZE_RATIO, dictionarySize);
+    for (Path artifact : artifacts) {
+      byte[] sample;
+      try (InputStream input = new ZstdInputStream(Files.newInputStream(artifact))) {
+        sample = ByteStreams.toByteArray(input);
+      }
+      if (!trainer.addSample(sample)) {
+        break;
+      }
+    }
+    return trainer.trainSamples();
+  }
+}
@@ -32,6 +32,7 @@ import java.net.URI;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.concurrent.TimeUnit;
@@ -144,6 +145,8 @@ public class ArtifactCacheBuckConfig implements ConfigView<BuckConfig> {
   private static final String MULTI_FETCH_LIMIT = "multi_fetch_limit";
   public static final String MULTI_CHECK = "multi_check";
   private static final int DEFAULT_MULTI_FETCH_LIMIT = 100;
+  private static final String TIERED_FETCH_HEDGE_DELAYS_MILLIS =
+      "tiered_fetch_hedge_delays_millis";
 
   private static final String ENV_VAR_SUFFIX = "_env_var";
 
@@ -189,6 +192,33 @@ public class ArtifactCacheBuckConfig implements ConfigView<BuckConfig> {
         .orElse(DEFAULT_MULTI_FETCH_LIMIT);
   }
 
+  /**
+   * @return How long to wait for each cache, in the order of {@code [cache] mode}, to respond to a
+   *     fetch before also querying the next one. If empty, the next cache is only queried after the
+   *     previous one missed.
+   */
+  public ImmutableList<Long> getTieredFetchHedgeDelaysMillis() {
+    return buckConfig
+        .getListWithoutComments(CACHE_SECTION_NAME, TIERED_FETCH_HEDGE_DELAYS_MILLIS)
+        .stream()
+        .map(
+            delay -> {
+              try {
+                long delayMillis = Long.parseLong(delay);
+                if (delayMillis >= 0) {
+                  return delayMillis;
+                }
+              } catch (NumberFormatException e) {
+                // Reported below.
+              }
+              throw new HumanReadableException(
+                  "Malformed value for %s in [%s]: %s; expecting a list of non-negative numbers "
+                      + "of milliseconds.",
+                  TIERED_FETCH_HEDGE_DELAYS_MILLIS, CACHE_SECTION_NAME, delay);
+            })
+        .collect(ImmutableList.toImmutableList());
+  }
+
   public String getRepository() {
     return buckConfig.getValue(CACHE_SECTION_NAME, REPOSITORY).orElse(DEFAULT_REPOSITORY);
   }
@@ -464,6 +494,18 @@ public class ArtifactCacheBuckConfig implements ConfigView<BuckConfig> {
     DISK_IO,
   }
 
+  /**
+   * @return the paths of the trained zstd dictionaries to compress the artifacts of the rules of
+   *     some types with, by rule type.
+   */
+  public ImmutableMap<String, Path> getZstdDictionaries() {
+    return buckConfig.getMap(CACHE_SECTION_NAME, "zstd_dictionaries").entrySet().stream()
+        .collect(
+            ImmutableMap.toImmutableMap(
+                Map.Entry::getKey,
+                e -> projectFilesystem.getPathForRelativePath(e.getValue())));
+  }
+
   /** @return The thread pool dir cache store operations should be executed on. */
   public Executor getDirCacheStoreExecutor() {
     return buckConfig
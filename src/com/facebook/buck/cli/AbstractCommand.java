@@ -431,6 +431,7 @@ public abstract class AbstractCommand extends CommandWithPluginManager {
                 buckConfig.getView(RuleKeyConfig.class).getRuleKeyDiagnosticsMode())
             .setConcurrencyLimit(getConcurrencyLimit(params.getBuckConfig()))
             .setPersistentWorkerPools(params.getPersistentWorkerPools())
+            .setClassLoaderCache(params.getGlobalState().getClassLoaderCache().addRef())
             .setProjectFilesystemFactory(params.getProjectFilesystemFactory())
             .setTruncateFailingCommandEnabled(cliConfig.getEnableFailingCommandTruncation());
     return builder;
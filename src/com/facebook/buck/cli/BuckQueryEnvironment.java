@@ -27,7 +27,6 @@ import com.facebook.buck.core.filesystems.RelPath;
 import com.facebook.buck.core.model.BuildFileTree;
 import com.facebook.buck.core.model.BuildTarget;
 import com.facebook.buck.core.model.QueryTarget;
-import com.facebook.buck.core.model.impl.FilesystemBackedBuildFileTree;
 import com.facebook.buck.core.model.targetgraph.TargetNode;
 import com.facebook.buck.core.model.targetgraph.impl.TargetNodes;
 import com.facebook.buck.core.sourcepath.PathSourcePath;
@@ -87,7 +86,9 @@ import com.google.common.util.concurrent.MoreExecutors;
 import com.google.common.util.concurrent.SettableFuture;
 import com.google.common.util.concurrent.UncheckedExecutionException;
 import java.io.IOException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -101,6 +102,7 @@ import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 import java.util.function.Function;
 import java.util.function.Predicate;
+import javax.annotation.Nullable;
 
 /**
  * The environment of a Buck query that can evaluate queries to produce a result.
@@ -145,6 +147,15 @@ public class BuckQueryEnvironment implements QueryEnvironment<QueryBuildTarget>
   private Map<BuildTarget, TargetNode<?>> targetsToNodes = new ConcurrentHashMap<>();
   private TemporaryUnconfiguredTargetToTargetUniquenessChecker checker;
 
+  // Dense ids of nodes in the graph, used by bitset-backed traversals over large universes. Nodes
+  // are never removed from the graph, so ids stay valid for the lifetime of this environment.
+  private final Map<TargetNode<?>, Integer> nodeIds = new HashMap<>();
+  // The last universe whose transitive closure was computed by getReverseDepsInUniverse. Queries
+  // like `rdeps(//..., %s)` evaluate the same universe expression many times. It is a copy, so that
+  // the caller mutating its set cannot make the closure stale.
+  @Nullable private ImmutableSet<QueryBuildTarget> lastUniverse;
+  @Nullable private BitSet lastUniverseClosure;
+
   @VisibleForTesting
   protected BuckQueryEnvironment(
       Cell rootCell,
@@ -164,10 +175,9 @@ public class BuckQueryEnvironment implements QueryEnvironment<QueryBuildTarget>
             .collect(
                 ImmutableMap.toImmutableMap(
                     Function.identity(),
-                    cell ->
-                        new FilesystemBackedBuildFileTree(
-                            cell.getFilesystem(),
-                            cell.getBuckConfigView(ParserConfig.class).getBuildFileName())));
+                    // Reuse the trees of the daemon, which are kept up to date by file system
+                    // events, instead of probing the file system again for every query.
+                    cell -> parser.getPermState().getBuildFileTree(cell)));
     this.targetPatternEvaluator = targetPatternEvaluator;
     this.queryTargetEvaluator = new TargetEvaluator(targetPatternEvaluator);
     this.typeCoercerFactory = typeCoercerFactory;
@@ -331,6 +341,76 @@ public class BuckQueryEnvironment implements QueryEnvironment<QueryBuildTarget>
     return result;
   }
 
+  /**
+   * Bitset-backed implementation of reverse dependency search, which avoids materializing the
+   * transitive closure of the universe as a set of targets, since it can easily contain every
+   * target in the repository.
+   */
+  @Override
+  public Set<QueryBuildTarget> getReverseDepsInUniverse(
+      Set<QueryBuildTarget> universe, Set<QueryBuildTarget> targets, int depthBound)
+      throws QueryException {
+    BitSet universeClosure = getTransitiveClosureIds(universe);
+
+    BitSet visited = new BitSet();
+    Set<QueryBuildTarget> result = new LinkedHashSet<>();
+    List<TargetNode<?>> current = new ArrayList<>(targets.size());
+    for (QueryBuildTarget target : targets) {
+      // Targets that have not been discovered cannot be part of the universe closure.
+      TargetNode<?> node = targetsToNodes.get(target.getBuildTarget());
+      if (node != null) {
+        current.add(node);
+      }
+    }
+
+    // Iterating depthBound+1 times because the first one processes the given argument set.
+    for (int i = 0; i <= depthBound && !current.isEmpty(); i++) {
+      List<TargetNode<?>> next = new ArrayList<>();
+      for (TargetNode<?> node : current) {
+        int id = getNodeId(node);
+        if (!universeClosure.get(id) || visited.get(id)) {
+          continue;
+        }
+        visited.set(id);
+        result.add(getOrCreateQueryBuildTarget(node.getBuildTarget()));
+        Iterables.addAll(next, graph.getIncomingNodesFor(node));
+      }
+      current = next;
+    }
+    return result;
+  }
+
+  private BitSet getTransitiveClosureIds(Set<QueryBuildTarget> targets) throws QueryException {
+    if (lastUniverse != null && lastUniverse.equals(targets)) {
+      return Objects.requireNonNull(lastUniverseClosure);
+    }
+    BitSet closure = new BitSet();
+    ArrayDeque<TargetNode<?>> toVisit = new ArrayDeque<>(targets.size());
+    for (QueryBuildTarget target : targets) {
+      toVisit.add(getNode(target));
+    }
+    while (!toVisit.isEmpty()) {
+      TargetNode<?> node = toVisit.pop();
+      int id = getNodeId(node);
+      if (closure.get(id)) {
+        continue;
+      }
+      closure.set(id);
+      for (BuildTarget dep : node.getParseDeps()) {
+        toVisit.add(
+            Preconditions.checkNotNull(
+                targetsToNodes.get(dep), "Couldn't find TargetNode for %s", dep));
+      }
+    }
+    lastUniverse = ImmutableSet.copyOf(targets);
+    lastUniverseClosure = closure;
+    return closure;
+  }
+
+  private int getNodeId(TargetNode<?> node) {
+    return nodeIds.computeIfAbsent(node, ignored -> nodeIds.size());
+  }
+
   @Override
   public Set<QueryFileTarget> getInputs(QueryBuildTarget target) throws QueryException {
     TargetNode<?> node = getNode(target);
@@ -918,7 +918,9 @@ public class BuildCommand extends AbstractCommand {
             params.createBuilderArgs(),
             getExecutionContext(),
             actionGraphAndBuilder,
-            new LocalCachingBuildEngineDelegate(params.getFileHashCache()),
+            new LocalCachingBuildEngineDelegate(
+                params.getFileHashCache(),
+                Optional.of(params.getGlobalState().getDependencyFileInputsIndex())),
             executor,
             isKeepGoing(),
             ruleKeyCacheScope,
@@ -291,7 +291,10 @@ public class CacheCommand extends AbstractCommand {
                     cacheBytes,
                     localKeyUnchanged,
                     new AtomicInteger(0),
-                    new AtomicInteger(0))));
+                    new AtomicInteger(0),
+                    0,
+                    0,
+                    0)));
 
     ExitCode exitCode = (totalRuns == goodRuns) ? ExitCode.SUCCESS : ExitCode.BUILD_ERROR;
     params.getBuckEventBus().post(BuildEvent.finished(started, exitCode));
@@ -0,0 +1,149 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.cli;
+
+import com.facebook.buck.core.util.log.Logger;
+import com.google.common.base.Preconditions;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Keeps track of the commands running in the daemon at the same time, and of the latencies of the
+ * read-only commands which ran alongside other commands (e.g. a {@code buck query} from an IDE
+ * during a {@code buck build}), which aren't serialized by the command semaphore.
+ */
+class ConcurrentCommandTracker {
+
+  private static final Logger LOG = Logger.get(ConcurrentCommandTracker.class);
+
+  /** How many of the latest latencies the percentiles are computed over. */
+  private static final int MAX_LATENCIES = 1000;
+
+  private final LongSupplier nanoTime;
+
+  // Guarded by this.
+  private final Set<TrackedCommand> activeCommands = new HashSet<>();
+  private final Deque<Long> concurrentReadOnlyLatenciesMillis = new ArrayDeque<>();
+
+  ConcurrentCommandTracker() {
+    this(System::nanoTime);
+  }
+
+  ConcurrentCommandTracker(LongSupplier nanoTime) {
+    this.nanoTime = nanoTime;
+  }
+
+  /** Registers a command which starts running, until the returned object is closed. */
+  synchronized TrackedCommand start(boolean readOnly) {
+    TrackedCommand command = new TrackedCommand(readOnly, nanoTime.getAsLong());
+    if (!activeCommands.isEmpty()) {
+      command.concurrent = true;
+      activeCommands.forEach(other -> other.concurrent = true);
+    }
+    activeCommands.add(command);
+    return command;
+  }
+
+  /**
+   * @return the given percentile (between 0 and 1) of the latencies of the latest read-only
+   *     commands which ran alongside other commands, or -1 if there were none.
+   */
+  synchronized long getConcurrentReadOnlyLatencyPercentileMillis(double percentile) {
+    Preconditions.checkArgument(percentile >= 0 && percentile <= 1);
+    if (concurrentReadOnlyLatenciesMillis.isEmpty()) {
+      return -1;
+    }
+    long[] latencies =
+        concurrentReadOnlyLatenciesMillis.stream().mapToLong(Long::longValue).toArray();
+    Arrays.sort(latencies);
+    return latencies[Math.max(0, (int) Math.ceil(percentile * latencies.length) - 1)];
+  }
+
+  private synchronized void finish(TrackedCommand command, long latencyMillis) {
+    activeCommands.remove(command);
+    if (!command.readOnly || !command.concurrent) {
+      return;
+    }
+    concurrentReadOnlyLatenciesMillis.addLast(latencyMillis);
+    if (concurrentReadOnlyLatenciesMillis.size() > MAX_LATENCIES) {
+      concurrentReadOnlyLatenciesMillis.removeFirst();
+    }
+  }
+
+  /** A command running in the daemon. */
+  class TrackedCommand implements AutoCloseable {
+    private final boolean readOnly;
+    private final long startNanos;
+    // Guarded by the tracker.
+    private boolean concurrent;
+    private boolean finished;
+
+    private TrackedCommand(boolean readOnly, long startNanos) {
+      this.readOnly = readOnly;
+      this.startNanos = startNanos;
+    }
+
+    /** @return whether other commands are running alongside this one right now. */
+    boolean hasConcurrentCommands() {
+      synchronized (ConcurrentCommandTracker.this) {
+        return activeCommands.size() > 1;
+      }
+    }
+
+    /** @return whether this is a read-only command which ran alongside other commands. */
+    boolean isConcurrentReadOnly() {
+      synchronized (ConcurrentCommandTracker.this) {
+        return readOnly && concurrent;
+      }
+    }
+
+    /**
+     * Records the latency of this command, once it ran. Calling this before it is closed records
+     * the latency without the time it then takes to tear the command down.
+     *
+     * @return the latency of this command.
+     */
+    long finish() {
+      long latencyMillis = TimeUnit.NANOSECONDS.toMillis(nanoTime.getAsLong() - startNanos);
+      synchronized (ConcurrentCommandTracker.this) {
+        if (finished) {
+          return latencyMillis;
+        }
+        finished = true;
+        ConcurrentCommandTracker.this.finish(this, latencyMillis);
+      }
+      if (isConcurrentReadOnly()) {
+        LOG.info(
+            "Read-only command ran alongside other commands in %d ms (p50: %d ms, p99: %d ms).",
+            latencyMillis,
+            getConcurrentReadOnlyLatencyPercentileMillis(0.5),
+            getConcurrentReadOnlyLatencyPercentileMillis(0.99));
+      }
+      return latencyMillis;
+    }
+
+    @Override
+    public void close() {
+      finish();
+    }
+  }
+}
@@ -16,6 +16,8 @@
 
 package com.facebook.buck.cli;
 
+import com.facebook.buck.artifact_cache.ZstdDictionaries;
+import com.facebook.buck.artifact_cache.config.ArtifactCacheBuckConfig;
 import com.facebook.buck.command.Build;
 import com.facebook.buck.command.config.BuildBuckConfig;
 import com.facebook.buck.core.build.engine.config.CachingBuildEngineBuckConfig;
@@ -126,7 +128,9 @@ public class FetchCommand extends BuildCommand {
       CachingBuildEngineBuckConfig cachingBuildEngineBuckConfig =
           params.getBuckConfig().getView(CachingBuildEngineBuckConfig.class);
       LocalCachingBuildEngineDelegate localCachingBuildEngineDelegate =
-          new LocalCachingBuildEngineDelegate(params.getFileHashCache());
+          new LocalCachingBuildEngineDelegate(
+              params.getFileHashCache(),
+              Optional.of(params.getGlobalState().getDependencyFileInputsIndex()));
       try (RuleKeyCacheScope<RuleKey> ruleKeyCacheScope =
               getDefaultRuleKeyCacheScope(
                   params,
@@ -142,6 +146,12 @@ public class FetchCommand extends BuildCommand {
                   cachingBuildEngineBuckConfig.getBuildDepFiles(),
                   cachingBuildEngineBuckConfig.getBuildMaxDepFileCacheEntries(),
                   cachingBuildEngineBuckConfig.getBuildArtifactCacheSizeLimit(),
+                  ZstdDictionaries.of(
+                      params
+                          .getBuckConfig()
+                          .getView(ArtifactCacheBuckConfig.class)
+                          .getZstdDictionaries()),
+                  cachingBuildEngineBuckConfig.getCachePrefetchMaxArtifacts(),
                   actionGraphAndBuilder.getActionGraphBuilder(),
                   actionGraphAndBuilder.getBuildEngineActionToBuildRuleResolver(),
                   params.getTargetConfigurationSerializer(),
@@ -126,6 +126,7 @@ import com.facebook.buck.log.ConsoleHandlerState;
 import com.facebook.buck.log.GlobalStateManager;
 import com.facebook.buck.log.InvocationInfo;
 import com.facebook.buck.log.LogConfig;
+import com.facebook.buck.parser.DaemonicParserState;
 import com.facebook.buck.parser.Parser;
 import com.facebook.buck.parser.ParserFactory;
 import com.facebook.buck.parser.ParserPythonInterpreterProvider;
@@ -309,6 +310,8 @@ public final class MainRunner {
   private final Architecture architecture;
 
   private static final Semaphore commandSemaphore = new Semaphore(1);
+  private static final ConcurrentCommandTracker concurrentCommandTracker =
+      new ConcurrentCommandTracker();
   private static final AtomicReference<ImmutableList<String>> activeCommandArgs =
       new AtomicReference<>();
 
@@ -666,7 +669,9 @@ public final class MainRunner {
     // happens in setupLogging().
     ImmutableList.Builder<String> previousCommandArgsBuilder = new ImmutableList.Builder<>();
     try (CloseableWrapper<Semaphore> semaphore =
-        getSemaphoreWrapper(command, unexpandedCommandLineArgs, previousCommandArgsBuilder)) {
+            getSemaphoreWrapper(command, unexpandedCommandLineArgs, previousCommandArgsBuilder);
+        ConcurrentCommandTracker.TrackedCommand trackedCommand =
+            concurrentCommandTracker.start(command.isReadOnly())) {
       if (!command.isReadOnly() && semaphore == null) {
         // buck_tool will set BUCK_BUSY_DISPLAYED if it already displayed the busy error
         if (!clientEnvironment.containsKey("BUCK_BUSY_DISPLAYED")) {
@@ -876,19 +881,6 @@ public final class MainRunner {
               targetName ->
                   buildTargetFactory.create(targetName, cells.getRootCell().getCellNameResolver()));
 
-      Pair<BuckGlobalState, LifecycleStatus> buckGlobalStateRequest =
-          buckGlobalStateLifecycleManager.getBuckGlobalState(
-              cells,
-              knownRuleTypesProvider,
-              watchman,
-              printConsole,
-              clock,
-              buildTargetFactory,
-              targetConfigurationSerializer);
-
-      BuckGlobalState buckGlobalState = buckGlobalStateRequest.getFirst();
-      LifecycleStatus stateLifecycleStatus = buckGlobalStateRequest.getSecond();
-
       if (!context.isPresent()) {
         // Clean up the trash on a background thread if this was a
         // non-buckd read-write command. (We don't bother waiting
@@ -900,52 +892,6 @@ public final class MainRunner {
 
       ImmutableList<BuckEventListener> eventListeners = ImmutableList.of();
 
-      ImmutableList.Builder<ProjectFileHashCache> allCaches = ImmutableList.builder();
-
-      // Build up the hash cache, which is a collection of the stateful cell cache and some
-      // per-run caches.
-      //
-      // TODO(coneko, ruibm, agallagher): Determine whether we can use the existing filesystem
-      // object that is in scope instead of creating a new rootCellProjectFilesystem. The primary
-      // difference appears to be that filesystem is created with a Config that is used to produce
-      // ImmutableSet<PathMatcher> and BuckPaths for the ProjectFilesystem, whereas this one
-      // uses the defaults.
-      ProjectFilesystem rootCellProjectFilesystem =
-          projectFilesystemFactory.createOrThrow(
-              CanonicalCellName.rootCell(),
-              cells.getRootCell().getFilesystem().getRootPath(),
-              BuckPaths.getBuckOutIncludeTargetConfigHashFromRootCellConfig(config));
-      BuildBuckConfig buildBuckConfig =
-          cells.getRootCell().getBuckConfig().getView(BuildBuckConfig.class);
-      allCaches.addAll(buckGlobalState.getFileHashCaches());
-
-      cells
-          .getAllCells()
-          .forEach(
-              cell -> {
-                if (cell.getCanonicalName() != CanonicalCellName.rootCell()) {
-                  allCaches.add(
-                      DefaultFileHashCache.createBuckOutFileHashCache(
-                          cell.getFilesystem(), buildBuckConfig.getFileHashCacheMode()));
-                }
-              });
-
-      // A cache which caches hashes of cell-relative paths which may have been ignore by
-      // the main cell cache, and only serves to prevent rehashing the same file multiple
-      // times in a single run.
-      allCaches.add(
-          DefaultFileHashCache.createDefaultFileHashCache(
-              rootCellProjectFilesystem, buildBuckConfig.getFileHashCacheMode()));
-      allCaches.addAll(
-          DefaultFileHashCache.createOsRootDirectoriesCaches(
-              projectFilesystemFactory, buildBuckConfig.getFileHashCacheMode()));
-
-      StackedFileHashCache fileHashCache = new StackedFileHashCache(allCaches.build());
-      stackedFileHashCache = Optional.of(fileHashCache);
-
-      Optional<WebServer> webServer = buckGlobalState.getWebServer();
-      ConcurrentMap<String, WorkerProcessPool> persistentWorkerPools =
-          buckGlobalState.getPersistentWorkerPools();
       TestBuckConfig testConfig = buckConfig.getView(TestBuckConfig.class);
       ArtifactCacheBuckConfig cacheBuckConfig = new ArtifactCacheBuckConfig(buckConfig);
 
@@ -991,7 +937,26 @@ public final class MainRunner {
 
       LogBuckConfig logBuckConfig = buckConfig.getView(LogBuckConfig.class);
 
-      try (TaskManagerCommandScope managerScope =
+      Pair<BuckGlobalState, LifecycleStatus> buckGlobalStateRequest =
+          buckGlobalStateLifecycleManager.acquireBuckGlobalState(
+              cells,
+              knownRuleTypesProvider,
+              watchman,
+              printConsole,
+              clock,
+              buildTargetFactory,
+              targetConfigurationSerializer,
+              // Read-only commands don't hold the command semaphore, so the commands running
+              // alongside them may still use the stored state.
+              command.isReadOnly() && trackedCommand.hasConcurrentCommands());
+
+      BuckGlobalState buckGlobalState = buckGlobalStateRequest.getFirst();
+      LifecycleStatus stateLifecycleStatus = buckGlobalStateRequest.getSecond();
+
+      try (CloseableWrapper<BuckGlobalState> buckGlobalStateReleaser =
+              CloseableWrapper.of(
+                  buckGlobalState, buckGlobalStateLifecycleManager::releaseBuckGlobalState);
+          TaskManagerCommandScope managerScope =
               bgTaskManager.getNewScope(
                   buildId,
                   !context.isPresent()
@@ -1009,6 +974,52 @@ public final class MainRunner {
                       verbosity);
           DefaultBuckEventBus buildEventBus = new DefaultBuckEventBus(clock, buildId);
           ) {
+        ImmutableList.Builder<ProjectFileHashCache> allCaches = ImmutableList.builder();
+
+        // Build up the hash cache, which is a collection of the stateful cell cache and some
+        // per-run caches.
+        //
+        // TODO(coneko, ruibm, agallagher): Determine whether we can use the existing filesystem
+        // object that is in scope instead of creating a new rootCellProjectFilesystem. The primary
+        // difference appears to be that filesystem is created with a Config that is used to produce
+        // ImmutableSet<PathMatcher> and BuckPaths for the ProjectFilesystem, whereas this one
+        // uses the defaults.
+        ProjectFilesystem rootCellProjectFilesystem =
+            projectFilesystemFactory.createOrThrow(
+                CanonicalCellName.rootCell(),
+                cells.getRootCell().getFilesystem().getRootPath(),
+                BuckPaths.getBuckOutIncludeTargetConfigHashFromRootCellConfig(config));
+        BuildBuckConfig buildBuckConfig =
+            cells.getRootCell().getBuckConfig().getView(BuildBuckConfig.class);
+        allCaches.addAll(buckGlobalState.getFileHashCaches());
+
+        cells
+            .getAllCells()
+            .forEach(
+                cell -> {
+                  if (cell.getCanonicalName() != CanonicalCellName.rootCell()) {
+                    allCaches.add(
+                        DefaultFileHashCache.createBuckOutFileHashCache(
+                            cell.getFilesystem(), buildBuckConfig.getFileHashCacheMode()));
+                  }
+                });
+
+        // A cache which caches hashes of cell-relative paths which may have been ignore by
+        // the main cell cache, and only serves to prevent rehashing the same file multiple
+        // times in a single run.
+        allCaches.add(
+            DefaultFileHashCache.createDefaultFileHashCache(
+                rootCellProjectFilesystem, buildBuckConfig.getFileHashCacheMode()));
+        allCaches.addAll(
+            DefaultFileHashCache.createOsRootDirectoriesCaches(
+                projectFilesystemFactory, buildBuckConfig.getFileHashCacheMode()));
+
+        StackedFileHashCache fileHashCache = new StackedFileHashCache(allCaches.build());
+        stackedFileHashCache = Optional.of(fileHashCache);
+
+        Optional<WebServer> webServer = buckGlobalState.getWebServer();
+        ConcurrentMap<String, WorkerProcessPool> persistentWorkerPools =
+            buckGlobalState.getPersistentWorkerPools();
         BuckConfigWriter.writeConfig(
             filesystem.getRootPath().getPath(), invocationInfo, buckConfig);
 
@@ -1409,7 +1420,12 @@ public final class MainRunner {
                   executableFinder,
                   buildTargetFactory,
                   hostConfiguration.orElse(UnconfiguredTargetConfiguration.INSTANCE),
-                  targetSpecResolver);
+                  targetSpecResolver,
+                  // A read-only command sharing the stored state with the commands running
+                  // alongside it parses against the build files as they are when it starts.
+                  command.isReadOnly()
+                      && stateLifecycleStatus != LifecycleStatus.ISOLATED
+                      && trackedCommand.hasConcurrentCommands());
 
           // Because the Parser is potentially constructed before the CounterRegistry,
           // we need to manually register its counters after it's created.
@@ -1501,6 +1517,7 @@ public final class MainRunner {
                 new CacheStatsEvent(
                     "versioned_target_graph_cache",
                     parserAndCaches.getVersionedTargetGraphCache().getCacheStats()));
+            registerConcurrentCommandCounters(trackedCommand, counterRegistry);
           }
         } catch (Exception e) {
           exceptionForFix = Optional.of(e);
@@ -1853,7 +1870,8 @@ public final class MainRunner {
       ExecutableFinder executableFinder,
       UnconfiguredBuildTargetViewFactory unconfiguredBuildTargetFactory,
       TargetConfiguration hostConfiguration,
-      TargetSpecResolver targetSpecResolver)
+      TargetSpecResolver targetSpecResolver,
+      boolean snapshotParserState)
       throws IOException, InterruptedException {
     Optional<WatchmanWatcher> watchmanWatcher = Optional.empty();
     if (watchman.getTransportPath().isPresent()) {
@@ -1897,13 +1915,18 @@ public final class MainRunner {
       }
     }
 
+    DaemonicParserState daemonicParserState =
+        snapshotParserState
+            ? buckGlobalState.getDaemonicParserState().snapshot()
+            : buckGlobalState.getDaemonicParserState();
+
     return ImmutableParserAndCaches.of(
         ParserFactory.create(
             typeCoercerFactory,
             new DefaultConstructorArgMarshaller(),
             knownRuleTypesProvider,
             new ParserPythonInterpreterProvider(parserConfig, executableFinder),
-            buckGlobalState.getDaemonicParserState(),
+            daemonicParserState,
             targetSpecResolver,
             watchman,
             buildEventBus,
@@ -2188,6 +2211,32 @@ public final class MainRunner {
   }
 
 
+  /**
+   * Reports the latency of a read-only command which ran alongside other commands, with the tail
+   * latencies of the latest such commands.
+   */
+  private static void registerConcurrentCommandCounters(
+      ConcurrentCommandTracker.TrackedCommand trackedCommand, CounterRegistry counterRegistry) {
+    long latencyMillis = trackedCommand.finish();
+    if (!trackedCommand.isConcurrentReadOnly()) {
+      return;
+    }
+    // Percentiles are values at a point in time rather than counts, so they are reported as
+    // samples, which aren't summed when the counters are flushed.
+    counterRegistry
+        .newSamplingCounter(
+            "buck_daemon", "concurrent_read_only_command_latency_millis", ImmutableMap.of())
+        .addSample(latencyMillis);
+    counterRegistry
+        .newSamplingCounter(
+            "buck_daemon", "concurrent_read_only_command_p50_latency_millis", ImmutableMap.of())
+        .addSample(concurrentCommandTracker.getConcurrentReadOnlyLatencyPercentileMillis(0.5));
+    counterRegistry
+        .newSamplingCounter(
+            "buck_daemon", "concurrent_read_only_command_p99_latency_millis", ImmutableMap.of())
+        .addSample(concurrentCommandTracker.getConcurrentReadOnlyLatencyPercentileMillis(0.99));
+  }
+
   @SuppressWarnings("PMD.PrematureDeclaration")
   private ImmutableList<BuckEventListener> addEventListeners(
       BuckEventBus buckEventBus,
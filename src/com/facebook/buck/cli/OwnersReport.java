@@ -25,6 +25,7 @@ import com.facebook.buck.core.model.TargetConfiguration;
 import com.facebook.buck.core.model.targetgraph.TargetNode;
 import com.facebook.buck.core.path.ForwardRelativePath;
 import com.facebook.buck.io.file.MorePaths;
+import com.facebook.buck.parser.InputOwnersIndex;
 import com.facebook.buck.parser.Parser;
 import com.facebook.buck.parser.PerBuildState;
 import com.facebook.buck.parser.config.ParserConfig;
@@ -47,7 +48,6 @@ import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
-import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
 /** Used to determine owners of specific files */
@@ -119,6 +119,12 @@ final class OwnersReport {
   @VisibleForTesting
   static OwnersReport generateOwnersReport(
       Cell rootCell, TargetNode<?> targetNode, String filePath) {
+    return generateOwnersReport(
+        rootCell, InputOwnersIndex.of(ImmutableList.of(targetNode)), filePath);
+  }
+
+  private static OwnersReport generateOwnersReport(
+      Cell rootCell, InputOwnersIndex inputOwnersIndex, String filePath) {
     Path file = rootCell.getFilesystem().getPathForRelativePath(filePath);
     if (!Files.exists(file)) {
       return new OwnersReport(
@@ -134,19 +140,14 @@ final class OwnersReport {
           ImmutableSet.of(filePath));
     } else {
       Path commandInput = rootCell.getFilesystem().getPath(filePath);
-      ImmutableSet<ForwardRelativePath> ruleInputs = targetNode.getInputs();
-      ImmutableSet<Path> ruleInputPaths =
-          ruleInputs.stream()
-              .map(p -> p.toPath(commandInput.getFileSystem()))
-              .collect(ImmutableSet.toImmutableSet());
-      Predicate<Path> startsWith =
-          input -> !commandInput.equals(input) && commandInput.startsWith(input);
-      if (ruleInputPaths.contains(commandInput) || ruleInputPaths.stream().anyMatch(startsWith)) {
+      ImmutableSet<TargetNode<?>> owners =
+          inputOwnersIndex.getOwners(ForwardRelativePath.ofPath(commandInput));
+      if (!owners.isEmpty()) {
+        ImmutableSetMultimap.Builder<TargetNode<?>, Path> ownersBuilder =
+            ImmutableSetMultimap.builder();
+        owners.forEach(owner -> ownersBuilder.put(owner, commandInput));
         return new OwnersReport(
-            ImmutableSetMultimap.of(targetNode, commandInput),
-            ImmutableSet.of(),
-            ImmutableSet.of(),
-            ImmutableSet.of());
+            ownersBuilder.build(), ImmutableSet.of(), ImmutableSet.of(), ImmutableSet.of());
       } else {
         return new OwnersReport(
             ImmutableSetMultimap.of(),
@@ -187,28 +188,30 @@ final class OwnersReport {
     }
 
     private OwnersReport getReportForBasePath(
-        Map<AbsPath, ImmutableList<TargetNode<?>>> map,
-        Cell cell,
-        RelPath basePath,
-        RelPath cellRelativePath) {
+        Map<AbsPath, InputOwnersIndex> map, Cell cell, RelPath basePath, RelPath cellRelativePath) {
       AbsPath buckFile =
           cell.getFilesystem()
               .resolve(basePath)
               .resolve(cell.getBuckConfigView(ParserConfig.class).getBuildFileName());
-      ImmutableList<TargetNode<?>> targetNodes =
+      InputOwnersIndex inputOwnersIndex =
           map.computeIfAbsent(
               buckFile,
               basePath1 -> {
                 try {
-                  return parser.getAllTargetNodesWithTargetCompatibilityFiltering(
-                      parserState, cell, basePath1, targetConfiguration);
+                  ImmutableList<TargetNode<?>> targetNodes =
+                      parser.getAllTargetNodesWithTargetCompatibilityFiltering(
+                          parserState, cell, basePath1, targetConfiguration);
+                  return parser
+                      .getPermState()
+                      .getInputOwnersIndex(cell, basePath1, targetConfiguration, targetNodes);
                 } catch (BuildFileParseException e) {
                   throw new HumanReadableException(e);
                 }
               });
-      return targetNodes.stream()
-          .map(targetNode -> generateOwnersReport(cell, targetNode, cellRelativePath.toString()))
-          .reduce(OwnersReport.emptyReport(), OwnersReport::updatedWith);
+      if (inputOwnersIndex.isEmpty()) {
+        return OwnersReport.emptyReport();
+      }
+      return generateOwnersReport(cell, inputOwnersIndex, cellRelativePath.toString());
     }
 
     private ImmutableSet<RelPath> getAllBasePathsForPath(
@@ -291,9 +294,9 @@ final class OwnersReport {
                 buildFileTrees.get(cell),
                 "cell is be derived from buildFileTree keys, so should be present");
 
-        // Path from buck file to target nodes. We keep our own cache here since the manner that we
-        // are calling the parser does not make use of its internal caches.
-        Map<AbsPath, ImmutableList<TargetNode<?>>> map = new HashMap<>();
+        // Path from buck file to the index of its target nodes' inputs. We keep our own cache here
+        // to avoid asking the parser for the nodes of the same build file more than once.
+        Map<AbsPath, InputOwnersIndex> map = new HashMap<>();
         for (Path absolutePath : entry.getValue()) {
           RelPath cellRelativePath = cell.getFilesystem().relativize(absolutePath);
           ImmutableSet<RelPath> basePaths = getAllBasePathsForPath(buildFileTree, cellRelativePath);
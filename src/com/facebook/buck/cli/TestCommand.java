@@ -19,6 +19,8 @@ package com.facebook.buck.cli;
 import com.facebook.buck.android.device.TargetDevice;
 import com.facebook.buck.android.device.TargetDeviceOptions;
 import com.facebook.buck.android.exopackage.AndroidDevicesHelperFactory;
+import com.facebook.buck.artifact_cache.ZstdDictionaries;
+import com.facebook.buck.artifact_cache.config.ArtifactCacheBuckConfig;
 import com.facebook.buck.command.Build;
 import com.facebook.buck.command.config.BuildBuckConfig;
 import com.facebook.buck.core.build.context.BuildContext;
@@ -284,6 +286,7 @@ public class TestCommand extends BuildCommand {
 
     coverageIncludes.ifPresent(strings -> builder.setCoverageIncludes(String.join(",", strings)));
     coverageExcludes.ifPresent(strings -> builder.setCoverageExcludes(String.join(",", strings)));
+    builder.setJavaTestRunnerPoolSize(testBuckConfig.getJavaTestRunnerPoolSize());
 
     return builder.build();
   }
@@ -594,7 +597,9 @@ public class TestCommand extends BuildCommand {
                 .isRemoteExecutionAutoEnabled(
                     params.getBuildEnvironmentDescription().getUser(), getArguments());
         LocalCachingBuildEngineDelegate localCachingBuildEngineDelegate =
-            new LocalCachingBuildEngineDelegate(params.getFileHashCache());
+            new LocalCachingBuildEngineDelegate(
+                params.getFileHashCache(),
+                Optional.of(params.getGlobalState().getDependencyFileInputsIndex()));
         try (CachingBuildEngine cachingBuildEngine =
                 new CachingBuildEngine(
                     localCachingBuildEngineDelegate,
@@ -614,6 +619,12 @@ public class TestCommand extends BuildCommand {
                     cachingBuildEngineBuckConfig.getBuildDepFiles(),
                     cachingBuildEngineBuckConfig.getBuildMaxDepFileCacheEntries(),
                     cachingBuildEngineBuckConfig.getBuildArtifactCacheSizeLimit(),
+                    ZstdDictionaries.of(
+                        params
+                            .getBuckConfig()
+                            .getView(ArtifactCacheBuckConfig.class)
+                            .getZstdDictionaries()),
+                    cachingBuildEngineBuckConfig.getCachePrefetchMaxArtifacts(),
                     actionGraphAndBuilder.getActionGraphBuilder(),
                     actionGraphAndBuilder.getBuildEngineActionToBuildRuleResolver(),
                     params.getTargetConfigurationSerializer(),
@@ -0,0 +1,107 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.cli;
+
+import com.facebook.buck.core.model.BuildTarget;
+import com.facebook.buck.core.util.log.Logger;
+import com.facebook.buck.io.filesystem.ProjectFilesystem;
+import com.facebook.buck.util.json.ObjectMappers;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSortedMap;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
+
+/**
+ * Wall clock durations of the previous runs of test rules.
+ *
+ * <p>Durations are persisted in buck-out between commands and are used to start the slowest tests
+ * first. With a fixed number of test threads this keeps a long test from being started last and
+ * becoming the tail of the whole test run.
+ */
+class TestDurationStore {
+
+  private static final Logger LOG = Logger.get(TestDurationStore.class);
+
+  @VisibleForTesting static final String FILE_NAME = "test_durations.json";
+
+  private final ProjectFilesystem filesystem;
+  private final Path path;
+  private final ConcurrentMap<String, Long> durationsMillis;
+
+  private TestDurationStore(
+      ProjectFilesystem filesystem, Path path, Map<String, Long> durationsMillis) {
+    this.filesystem = filesystem;
+    this.path = path;
+    this.durationsMillis = new ConcurrentHashMap<>(durationsMillis);
+  }
+
+  /** Loads durations recorded by previous test runs in the given project. */
+  static TestDurationStore load(ProjectFilesystem filesystem) {
+    Path path = filesystem.getBuckPaths().getLogDir().resolve(FILE_NAME);
+    Map<String, Long> durationsMillis = ImmutableSortedMap.of();
+    Optional<String> contents = filesystem.readFileIfItExists(path);
+    if (contents.isPresent()) {
+      try {
+        durationsMillis =
+            ObjectMappers.readValue(contents.get(), new TypeReference<Map<String, Long>>() {});
+      } catch (IOException e) {
+        LOG.warn(e, "Unable to read test durations from %s, ignoring them.", path);
+      }
+    }
+    return new TestDurationStore(filesystem, path, durationsMillis);
+  }
+
+  /** Records the duration of a run of all tests of the given test rule. */
+  void record(BuildTarget target, long durationMillis) {
+    durationsMillis.put(target.getFullyQualifiedName(), durationMillis);
+  }
+
+  /**
+   * Returns the given items ordered by the recorded duration of their test rules, longest first.
+   * Items without a recorded duration come first, since they might be arbitrarily slow. The order
+   * of items with equal durations is preserved.
+   */
+  <T> ImmutableList<T> sortLongestFirst(
+      Iterable<T> items, Function<? super T, BuildTarget> targetFunction) {
+    Comparator<T> byDuration =
+        Comparator.comparingLong(
+            item ->
+                -durationsMillis.getOrDefault(
+                    targetFunction.apply(item).getFullyQualifiedName(), Long.MAX_VALUE));
+    return ImmutableList.sortedCopyOf(byDuration, items);
+  }
+
+  /** Writes the recorded durations to buck-out. */
+  void save() {
+    try {
+      filesystem.mkdirs(path.getParent());
+      filesystem.writeContentsToPath(
+          ObjectMappers.WRITER.writeValueAsString(ImmutableSortedMap.copyOf(durationsMillis)),
+          path);
+    } catch (IOException e) {
+      LOG.warn(e, "Unable to write test durations to %s.", path);
+    }
+  }
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.cli;
+
+import com.facebook.buck.core.model.BuildTarget;
+import com.facebook.buck.core.rulekey.RuleKey;
+import com.facebook.buck.core.util.log.Logger;
+import com.facebook.buck.io.filesystem.ProjectFilesystem;
+import com.facebook.buck.test.TestRunningOptions;
+import com.facebook.buck.util.json.ObjectMappers;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableSortedMap;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Keys of the runs of test rules which passed, so that a test rule which passed can be reported as
+ * passed again, from the results of that run, without running it.
+ *
+ * <p>The key of a run covers the rule key of the test rule, the rule keys of its runtime deps, the
+ * environment of the command and the options the tests run with. A test whose outcome depends on
+ * anything else, e.g. on the network or on timing, may pass from the cache when running it would
+ * have failed, which is why caching is opt in with {@code test.cache_passing_results}.
+ */
+class TestResultCache {
+
+  private static final Logger LOG = Logger.get(TestResultCache.class);
+
+  @VisibleForTesting static final String FILE_NAME = "test_result_keys.json";
+
+  private final ProjectFilesystem filesystem;
+  private final Path path;
+  private final ConcurrentMap<String, String> passedKeys;
+
+  private TestResultCache(ProjectFilesystem filesystem, Path path, Map<String, String> passedKeys) {
+    this.filesystem = filesystem;
+    this.path = path;
+    this.passedKeys = new ConcurrentHashMap<>(passedKeys);
+  }
+
+  /** Loads the keys of the passed runs recorded by previous test runs in the given project. */
+  static TestResultCache load(ProjectFilesystem filesystem) {
+    Path path = filesystem.getBuckPaths().getLogDir().resolve(FILE_NAME);
+    Map<String, String> passedKeys = ImmutableSortedMap.of();
+    Optional<String> contents = filesystem.readFileIfItExists(path);
+    if (contents.isPresent()) {
+      try {
+        passedKeys =
+            ObjectMappers.readValue(contents.get(), new TypeReference<Map<String, String>>() {});
+      } catch (IOException e) {
+        LOG.warn(e, "Unable to read test result keys from %s, ignoring them.", path);
+      }
+    }
+    return new TestResultCache(filesystem, path, passedKeys);
+  }
+
+  /**
+   * Computes the key of a run of a test rule, which is unchanged as long as nothing the run is
+   * known to depend on changed.
+   */
+  static String computeKey(
+      RuleKey testRuleKey,
+      Iterable<RuleKey> runtimeDepRuleKeys,
+      Map<String, String> environment,
+      TestRunningOptions options) {
+    Hasher hasher = Hashing.sha1().newHasher();
+    hasher.putString(testRuleKey.toString(), Charsets.UTF_8).putChar('\0');
+    for (RuleKey runtimeDepRuleKey : runtimeDepRuleKeys) {
+      hasher.putString(runtimeDepRuleKey.toString(), Charsets.UTF_8).putChar('\0');
+    }
+    putMap(hasher, environment);
+    putMap(hasher, options.getEnvironmentOverrides());
+    hasher
+        .putString(options.getPathToJavaAgent().orElse(""), Charsets.UTF_8)
+        .putChar('\0')
+        .putString(options.getJavaTempDir().orElse(""), Charsets.UTF_8)
+        .putChar('\0')
+        .putBoolean(options.isShufflingTests());
+    return hasher.hash().toString();
+  }
+
+  private static void putMap(Hasher hasher, Map<String, String> map) {
+    ImmutableSortedMap.copyOf(map)
+        .forEach(
+            (key, value) ->
+                hasher
+                    .putString(key, Charsets.UTF_8)
+                    .putChar('=')
+                    .putString(value, Charsets.UTF_8)
+                    .putChar('\0'));
+    hasher.putChar('\0');
+  }
+
+  /** Whether the last run of the test rule with the given key passed. */
+  boolean hasPassed(BuildTarget target, String key) {
+    return key.equals(passedKeys.get(target.getFullyQualifiedName()));
+  }
+
+  /** Records that a run of the test rule with the given key passed. */
+  void recordPassed(BuildTarget target, String key) {
+    passedKeys.put(target.getFullyQualifiedName(), key);
+  }
+
+  /** Forgets the passed run of the test rule, e.g. because it runs again. */
+  void forget(BuildTarget target) {
+    passedKeys.remove(target.getFullyQualifiedName());
+  }
+
+  /** Writes the recorded keys to buck-out. */
+  void save() {
+    try {
+      filesystem.mkdirs(path.getParent());
+      filesystem.writeContentsToPath(
+          ObjectMappers.WRITER.writeValueAsString(ImmutableSortedMap.copyOf(passedKeys)), path);
+    } catch (IOException e) {
+      LOG.warn(e, "Unable to write test result keys to %s.", path);
+    }
+  }
+}
@@ -29,6 +29,7 @@ import com.facebook.buck.core.model.UnconfiguredTargetConfiguration;
 import com.facebook.buck.core.rules.BuildRule;
 import com.facebook.buck.core.rules.BuildRuleResolver;
 import com.facebook.buck.core.rules.SourcePathRuleFinder;
+import com.facebook.buck.core.rules.attr.HasRuntimeDeps;
 import com.facebook.buck.core.sourcepath.SourcePath;
 import com.facebook.buck.core.test.event.IndividualTestEvent;
 import com.facebook.buck.core.test.event.TestRunEvent;
@@ -53,6 +54,8 @@ import com.facebook.buck.jvm.java.JavaLibraryWithTests;
 import com.facebook.buck.jvm.java.JavaOptions;
 import com.facebook.buck.jvm.java.JavaTest;
 import com.facebook.buck.jvm.java.JavacOptions;
+import com.facebook.buck.rules.keys.DefaultRuleKeyFactory;
+import com.facebook.buck.rules.keys.RuleKeyFieldLoader;
 import com.facebook.buck.step.Step;
 import com.facebook.buck.step.StepFailedException;
 import com.facebook.buck.step.StepRunner;
@@ -64,9 +67,11 @@ import com.facebook.buck.test.TestResults;
 import com.facebook.buck.test.TestRuleEvent;
 import com.facebook.buck.test.TestRunningOptions;
 import com.facebook.buck.test.TestStatusMessage;
+import com.facebook.buck.test.config.TestBuckConfig;
 import com.facebook.buck.test.result.type.ResultType;
 import com.facebook.buck.util.Threads;
 import com.facebook.buck.util.concurrent.MoreFutures;
+import com.facebook.buck.util.timing.Clock;
 import com.facebook.buck.util.types.Either;
 import com.facebook.buck.util.types.Unit;
 import com.google.common.annotations.VisibleForTesting;
@@ -104,6 +109,7 @@ import java.util.concurrent.CancellationException;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Stream;
 import javax.annotation.Nullable;
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
@@ -175,6 +181,27 @@ public class TestRunning {
 
     int totalNumberOfTests = Iterables.size(tests);
 
+    // Durations of runs with test selectors are not representative of the whole test rule.
+    TestDurationStore testDurationStore =
+        TestDurationStore.load(params.getCells().getRootCell().getFilesystem());
+    Optional<TestDurationStore> testDurationRecorder =
+        options.getTestSelectorList().isEmpty() ? Optional.of(testDurationStore) : Optional.empty();
+
+    // Runs with test selectors don't cover the whole test rule, and runs with code coverage have
+    // to produce coverage data.
+    Optional<TestResultCache> testResultCache =
+        params.getBuckConfig().getView(TestBuckConfig.class).isCachingPassingResultsEnabled()
+                && options.getTestSelectorList().isEmpty()
+                && !options.isCodeCoverageEnabled()
+            ? Optional.of(TestResultCache.load(params.getCells().getRootCell().getFilesystem()))
+            : Optional.empty();
+    DefaultRuleKeyFactory ruleKeyFactory =
+        new DefaultRuleKeyFactory(
+            new RuleKeyFieldLoader(params.getRuleKeyConfiguration()),
+            params.getFileHashCache(),
+            ruleFinder);
+    Map<BuildTarget, String> testResultKeys = new HashMap<>();
+
     params
         .getBuckEventBus()
         .post(
@@ -281,10 +308,30 @@ public class TestRunning {
       params.getBuckEventBus().post(IndividualTestEvent.started(testTargets));
       ImmutableList.Builder<Step> stepsBuilder = ImmutableList.builder();
       Preconditions.checkState(buildEngine.isRuleBuilt(test.getBuildTarget()));
-      List<Step> testSteps =
-          test.runTests(executionContext, options, buildContext, testReportingCallback);
-      if (!testSteps.isEmpty()) {
-        stepsBuilder.addAll(testSteps);
+      Optional<String> testResultKey =
+          testResultCache.map(
+              cache ->
+                  TestResultCache.computeKey(
+                      ruleKeyFactory.build(test),
+                      getRuntimeDeps(test, ruleResolver)
+                          .map(ruleKeyFactory::build)
+                          .collect(ImmutableList.toImmutableList()),
+                      params.getEnvironment(),
+                      options));
+      if (testResultKey.isPresent()
+          && testResultCache.get().hasPassed(test.getBuildTarget(), testResultKey.get())
+          && test.getProjectFilesystem().isDirectory(test.getPathToTestOutputDirectory())) {
+        // Nothing the tests depend on changed since they passed, so their results are still in
+        // the test output directory.
+        LOG.debug("Reporting the previous results of %s, which passed with the same key", test);
+      } else {
+        testResultCache.ifPresent(cache -> cache.forget(test.getBuildTarget()));
+        testResultKey.ifPresent(key -> testResultKeys.put(test.getBuildTarget(), key));
+        List<Step> testSteps =
+            test.runTests(executionContext, options, buildContext, testReportingCallback);
+        if (!testSteps.isEmpty()) {
+          stepsBuilder.addAll(testSteps);
+        }
       }
       steps = stepsBuilder.build();
 
@@ -301,7 +348,11 @@ public class TestRunning {
       }
     }
 
-    for (TestRun testRun : parallelTestRuns) {
+    // Start the slowest tests first, so that they run in parallel with the fast ones instead of
+    // being started last.
+    for (TestRun testRun :
+        testDurationStore.sortLongestFirst(
+            parallelTestRuns, testRun -> testRun.getTest().getBuildTarget())) {
       ListenableFuture<TestResults> testResults =
           runStepsAndYieldResult(
               executionContext,
@@ -309,6 +360,8 @@ public class TestRunning {
               testRun.getTestResultsCallable(),
               testRun.getTest().getBuildTarget(),
               params.getBuckEventBus(),
+              params.getClock(),
+              testDurationRecorder,
               service);
       results.add(
           transformTestResults(
@@ -345,6 +398,8 @@ public class TestRunning {
                               testRun.getTestResultsCallable(),
                               testRun.getTest().getBuildTarget(),
                               params.getBuckEventBus(),
+                              params.getClock(),
+                              testDurationRecorder,
                               directExecutorService),
                           testRun.getTest(),
                           testRun.getTestReportingCallback(),
@@ -397,6 +452,16 @@ public class TestRunning {
     }
 
     params.getBuckEventBus().post(TestRunEvent.finished(testTargets, completedResults));
+    testDurationRecorder.ifPresent(TestDurationStore::save);
+    if (testResultCache.isPresent()) {
+      for (TestResults testResults : completedResults) {
+        String key = testResultKeys.get(testResults.getBuildTarget());
+        if (key != null && testResults.isSuccess()) {
+          testResultCache.get().recordPassed(testResults.getBuildTarget(), key);
+        }
+      }
+      testResultCache.get().save();
+    }
 
     // Write out the results as XML, if requested.
     Optional<String> path = options.getPathToXmlTestOutput();
@@ -572,6 +637,17 @@ public class TestRunning {
     };
   }
 
+  /** Returns the runtime deps of a test rule, which its tests may use when they run. */
+  private static Stream<BuildRule> getRuntimeDeps(TestRule test, BuildRuleResolver ruleResolver) {
+    if (!(test instanceof HasRuntimeDeps)) {
+      return Stream.empty();
+    }
+    return ((HasRuntimeDeps) test)
+        .getRuntimeDeps(ruleResolver)
+        .sorted()
+        .map(ruleResolver::getRule);
+  }
+
   /** Generates the set of Java library rules under test. */
   static ImmutableSet<JavaLibrary> getRulesUnderTest(Iterable<TestRule> tests) {
     ImmutableSet.Builder<JavaLibrary> rulesUnderTest = ImmutableSet.builder();
@@ -852,15 +928,22 @@ public class TestRunning {
       Callable<TestResults> interpretResults,
       BuildTarget buildTarget,
       BuckEventBus eventBus,
+      Clock clock,
+      Optional<TestDurationStore> testDurationRecorder,
       ListeningExecutorService listeningExecutorService) {
     Preconditions.checkState(!listeningExecutorService.isShutdown());
     Callable<TestResults> callable =
         () -> {
           LOG.debug("Test steps will run for %s", buildTarget);
           eventBus.post(TestRuleEvent.started(buildTarget));
+          long startMillis = clock.currentTimeMillis();
           for (Step step : steps) {
             StepRunner.runStep(context, step, Optional.of(buildTarget));
           }
+          if (!steps.isEmpty()) {
+            long durationMillis = clock.currentTimeMillis() - startMillis;
+            testDurationRecorder.ifPresent(store -> store.record(buildTarget, durationMillis));
+          }
           LOG.debug("Test steps did run for %s", buildTarget);
           eventBus.post(TestRuleEvent.finished(buildTarget));
 
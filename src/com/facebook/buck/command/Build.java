@@ -266,6 +266,17 @@ public class Build implements Closeable {
         results.stream().filter(input -> !input.isSuccess()).collect(Collectors.toList()));
   }
 
+  /**
+   * Starts building the given rules asynchronously, ahead of the rules that are built next, which
+   * might not need them. Their failures only fail the builds of the rules that depend on them.
+   */
+  public void startBuildingAhead(ImmutableList<BuildRule> rules) throws IOException {
+    setupBuildSymlinks();
+    for (BuildRule rule : rules) {
+      buildEngine.buildAhead(buildContext, executionContext, rule);
+    }
+  }
+
   /** Starts building the given BuildRules asynchronously. */
   private List<BuildEngine.BuildEngineResult> initializeBuild(ImmutableList<BuildRule> rulesToBuild)
       throws IOException {
@@ -16,6 +16,8 @@
 
 package com.facebook.buck.command;
 
+import com.facebook.buck.artifact_cache.ZstdDictionaries;
+import com.facebook.buck.artifact_cache.config.ArtifactCacheBuckConfig;
 import com.facebook.buck.command.config.BuildBuckConfig;
 import com.facebook.buck.core.build.engine.config.CachingBuildEngineBuckConfig;
 import com.facebook.buck.core.build.engine.delegate.CachingBuildEngineDelegate;
@@ -28,6 +30,9 @@ import com.facebook.buck.core.model.BuildTarget;
 import com.facebook.buck.core.model.TargetConfigurationSerializer;
 import com.facebook.buck.core.model.actiongraph.ActionGraphAndBuilder;
 import com.facebook.buck.core.rulekey.RuleKey;
+import com.facebook.buck.core.rules.BuildRule;
+import com.facebook.buck.core.util.graph.AbstractBreadthFirstTraversal;
+import com.facebook.buck.jvm.core.JavaAbis;
 import com.facebook.buck.jvm.java.JavaBuckConfig;
 import com.facebook.buck.log.thrift.ThriftRuleKeyLogger;
 import com.facebook.buck.remoteexecution.config.RemoteExecutionConfig;
@@ -38,8 +43,12 @@ import com.facebook.buck.rules.modern.builders.ModernBuildRuleBuilderFactory;
 import com.facebook.buck.rules.modern.config.ModernBuildRuleConfig;
 import com.facebook.buck.util.ExitCode;
 import com.facebook.buck.util.concurrent.WeightedListeningExecutorService;
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
 import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Optional;
 
 /** Used to build a given set of targets. */
@@ -108,6 +117,9 @@ public class BuildExecutor {
       Iterable<BuildTarget> targetsToBuild, Optional<Path> pathToBuildReport) throws Exception {
     Preconditions.checkArgument(!isShutdown);
     try {
+      if (args.getBuckConfig().getView(JavaBuckConfig.class).shouldBuildSourceOnlyAbisFirst()) {
+        build.startBuildingAhead(getSourceOnlyAbiRules(build.getRulesToBuild(targetsToBuild)));
+      }
       return build.executeAndPrintFailuresToEventBus(
           targetsToBuild, args.getBuckEventBus(), args.getConsole(), pathToBuildReport);
     } catch (BuildTargetParseException e) {
@@ -118,6 +130,43 @@ public class BuildExecutor {
     }
   }
 
+  /**
+   * Returns the source-only ABI rules that the given rules transitively depend on and that can be
+   * built without building anything but other source-only ABI rules. Source-only ABI rules that
+   * depend on full libraries, e.g. ones that are {@code required_for_source_only_abi}, are left to
+   * the build engine, so that starting rules ahead never builds more than ABI jars.
+   */
+  @VisibleForTesting
+  static ImmutableList<BuildRule> getSourceOnlyAbiRules(Iterable<BuildRule> rules) {
+    Map<BuildRule, Boolean> onlyDependsOnSourceOnlyAbis = new HashMap<>();
+    ImmutableList.Builder<BuildRule> sourceOnlyAbiRules = ImmutableList.builder();
+    AbstractBreadthFirstTraversal.traverse(
+        rules,
+        (BuildRule rule) -> {
+          if (isSourceOnlyAbiRuleWithOnlySourceOnlyAbiDeps(rule, onlyDependsOnSourceOnlyAbis)) {
+            sourceOnlyAbiRules.add(rule);
+          }
+          return rule.getBuildDeps();
+        });
+    return sourceOnlyAbiRules.build();
+  }
+
+  private static boolean isSourceOnlyAbiRuleWithOnlySourceOnlyAbiDeps(
+      BuildRule rule, Map<BuildRule, Boolean> memo) {
+    Boolean result = memo.get(rule);
+    if (result == null) {
+      result = JavaAbis.isSourceOnlyAbiTarget(rule.getBuildTarget());
+      for (BuildRule dep : rule.getBuildDeps()) {
+        if (!result) {
+          break;
+        }
+        result = isSourceOnlyAbiRuleWithOnlySourceOnlyAbiDeps(dep, memo);
+      }
+      memo.put(rule, result);
+    }
+    return result;
+  }
+
   public CachingBuildEngine getCachingBuildEngine() {
     return cachingBuildEngine;
   }
@@ -161,6 +210,9 @@ public class BuildExecutor {
         engineConfig.getBuildDepFiles(),
         engineConfig.getBuildMaxDepFileCacheEntries(),
         engineConfig.getBuildArtifactCacheSizeLimit(),
+        ZstdDictionaries.of(
+            args.getBuckConfig().getView(ArtifactCacheBuckConfig.class).getZstdDictionaries()),
+        engineConfig.getCachePrefetchMaxArtifacts(),
         actionGraphAndBuilder.getActionGraphBuilder(),
         actionGraphAndBuilder.getBuildEngineActionToBuildRuleResolver(),
         targetConfigurationSerializer,
@@ -37,6 +37,14 @@ public interface BuildEngine {
   BuildEngineResult build(
       BuildEngineBuildContext buildContext, ExecutionContext executionContext, BuildRule rule);
 
+  /**
+   * Starts building the given build rule before it is known whether the build needs it. A failure
+   * of the rule does not terminate the build: it only fails the builds of the rules that turn out
+   * to depend on it.
+   */
+  void buildAhead(
+      BuildEngineBuildContext buildContext, ExecutionContext executionContext, BuildRule rule);
+
   /**
    * Returns the build result of the build rule associated with the given build target. Returns
    * {@code null} if the build rule has not yet been built.
@@ -19,6 +19,7 @@ package com.facebook.buck.core.build.engine.cache.manager;
 import com.facebook.buck.artifact_cache.ArtifactCache;
 import com.facebook.buck.artifact_cache.CacheResult;
 import com.facebook.buck.artifact_cache.CacheResultType;
+import com.facebook.buck.artifact_cache.ZstdDictionaries;
 import com.facebook.buck.artifact_cache.config.ArtifactCacheMode;
 import com.facebook.buck.core.build.engine.buildinfo.BuildInfo;
 import com.facebook.buck.core.build.engine.buildinfo.BuildInfoStore;
@@ -36,6 +37,8 @@ import com.facebook.buck.util.concurrent.WeightedListeningExecutorService;
 import com.facebook.buck.util.stream.RichStream;
 import com.facebook.buck.util.unarchive.ArchiveFormat;
 import com.facebook.buck.util.unarchive.ExistingFileMode;
+import com.facebook.buck.util.unarchive.Unarchiver;
+import com.facebook.buck.util.unarchive.Untar;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableSet;
@@ -46,6 +49,7 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.Map;
+import java.util.Optional;
 
 public class BuildCacheArtifactFetcher {
 
@@ -58,6 +62,7 @@ public class BuildCacheArtifactFetcher {
   private final BuckEventBus eventBus;
   private final BuildInfoStoreManager buildInfoStoreManager;
   private final OnDiskBuildInfo onDiskBuildInfo;
+  private final ZstdDictionaries zstdDictionaries;
 
   public BuildCacheArtifactFetcher(
       BuildRule rule,
@@ -66,7 +71,8 @@ public class BuildCacheArtifactFetcher {
       OnOutputsWillChange onOutputsWillChange,
       BuckEventBus eventBus,
       BuildInfoStoreManager buildInfoStoreManager,
-      OnDiskBuildInfo onDiskBuildInfo) {
+      OnDiskBuildInfo onDiskBuildInfo,
+      ZstdDictionaries zstdDictionaries) {
     this.rule = rule;
     this.buildRuleScopeManager = buildRuleScopeManager;
     this.executorService = executorService;
@@ -74,6 +80,7 @@ public class BuildCacheArtifactFetcher {
     this.eventBus = eventBus;
     this.buildInfoStoreManager = buildInfoStoreManager;
     this.onDiskBuildInfo = onDiskBuildInfo;
+    this.zstdDictionaries = zstdDictionaries;
   }
 
   private Scope buildRuleScope() {
@@ -215,6 +222,12 @@ public class BuildCacheArtifactFetcher {
       LOG.debug("Cache miss for '%s' with rulekey '%s'", rule, ruleKey);
       return cacheResult;
     }
+    Optional<Unarchiver> unarchiver = getUnarchiver(ruleKey, cacheResult);
+    if (!unarchiver.isPresent()) {
+      // The artifact can't be extracted, so the rule is built as if it wasn't in the cache.
+      Files.deleteIfExists(lazyZipPath.getUnchecked());
+      return CacheResult.miss();
+    }
     onOutputsWillChange.call();
 
     Preconditions.checkState(cacheResult.metadata().isPresent());
@@ -253,8 +266,8 @@ public class BuildCacheArtifactFetcher {
           BuildInfo.MetadataKey.ORIGIN_BUILD_ID);
 
       ImmutableSet<Path> extractedFiles =
-          ArchiveFormat.TAR_ZSTD
-              .getUnarchiver()
+          unarchiver
+              .get()
               .extractArchive(
                   zipPath.toAbsolutePath(),
                   filesystem,
@@ -285,6 +298,22 @@ public class BuildCacheArtifactFetcher {
     return cacheResult;
   }
 
+  private Optional<Unarchiver> getUnarchiver(RuleKey ruleKey, CacheResult cacheResult) {
+    String dictionaryId = cacheResult.getMetadata().get(ZstdDictionaries.METADATA_KEY);
+    if (dictionaryId == null) {
+      return Optional.of(ArchiveFormat.TAR_ZSTD.getUnarchiver());
+    }
+    Optional<ZstdDictionaries.Dictionary> dictionary = zstdDictionaries.getById(dictionaryId);
+    if (!dictionary.isPresent()) {
+      LOG.warn(
+          "%s: artifact with rule key %s was compressed with unknown zstd dictionary '%s' (was it "
+              + "retrained?), treating it as a cache miss.",
+          rule.getBuildTarget(), ruleKey, dictionaryId);
+      return Optional.empty();
+    }
+    return Optional.of(Untar.zstdUnarchiver(dictionary.get().getBytes()));
+  }
+
   @FunctionalInterface
   public interface OnOutputsWillChange {
     void call() throws IOException;
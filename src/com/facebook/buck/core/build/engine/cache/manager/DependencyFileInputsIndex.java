@@ -0,0 +1,157 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.core.build.engine.cache.manager;
+
+import com.facebook.buck.core.model.BuildTarget;
+import com.facebook.buck.core.util.log.Logger;
+import com.facebook.buck.io.watchman.WatchmanOverflowEvent;
+import com.facebook.buck.io.watchman.WatchmanPathEvent;
+import com.facebook.buck.util.types.Pair;
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.SetMultimap;
+import com.google.common.eventbus.Subscribe;
+import com.google.common.hash.HashCode;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Daemon-wide index of the inputs that rules with dep-files (e.g. the headers included by a C++
+ * translation unit) used in the build that produced their current outputs, with the hashes of
+ * their contents, kept up to date with Watchman file events.
+ *
+ * <p>Watchman reports files that were only touched, or changed and changed back, so a reported
+ * change is only a hint: the build engine compares the current hashes of the reported inputs of a
+ * rule with the recorded ones, and only if one differs does it know that the dep-file rule key of
+ * the rule cannot match without computing it.
+ *
+ * <p>Inputs are also indexed by the target of their symlink, so that a change to a header is
+ * attributed to the rules that included it through a header symlink tree. Changes to generated
+ * inputs aren't reported by Watchman, so a rule without reported changes may still have to be
+ * rebuilt.
+ */
+public class DependencyFileInputsIndex {
+  private static final Logger LOG = Logger.get(DependencyFileInputsIndex.class);
+
+  private final Map<BuildTarget, ImmutableMap<Path, HashCode>> inputHashesByTarget =
+      new HashMap<>();
+  // The inputs of the rules, by the paths Watchman reports changes to.
+  private final SetMultimap<Path, Pair<BuildTarget, Path>> inputsByWatchedPath =
+      HashMultimap.create();
+  private final SetMultimap<BuildTarget, Path> watchedPathsByTarget = HashMultimap.create();
+  private final SetMultimap<BuildTarget, Path> changedInputsByTarget = HashMultimap.create();
+
+  /**
+   * Records the inputs, with the hashes of their contents, that the rule used in the build that
+   * produced its current outputs. Paths are absolute.
+   */
+  public synchronized void record(BuildTarget target, Map<Path, HashCode> inputHashes) {
+    forget(target);
+    Map<Path, HashCode> normalizedInputHashes = new HashMap<>();
+    for (Map.Entry<Path, HashCode> entry : inputHashes.entrySet()) {
+      Path path = entry.getKey().normalize();
+      normalizedInputHashes.put(path, entry.getValue());
+      watch(target, path, path);
+      if (Files.isSymbolicLink(path)) {
+        try {
+          watch(target, path.toRealPath(), path);
+        } catch (IOException e) {
+          LOG.verbose(e, "Cannot resolve the symlink of %s used by %s.", path, target);
+        }
+      }
+    }
+    inputHashesByTarget.put(target, ImmutableMap.copyOf(normalizedInputHashes));
+  }
+
+  /**
+   * Returns the recorded hashes of the inputs of the rule that Watchman reported changes to since
+   * they were recorded. Rules that are not in the index have no changed inputs.
+   */
+  public synchronized ImmutableMap<Path, HashCode> getChangedInputs(BuildTarget target) {
+    ImmutableMap<Path, HashCode> inputHashes = inputHashesByTarget.get(target);
+    if (inputHashes == null) {
+      return ImmutableMap.of();
+    }
+    ImmutableMap.Builder<Path, HashCode> changedInputs = ImmutableMap.builder();
+    for (Path input : changedInputsByTarget.get(target)) {
+      changedInputs.put(input, inputHashes.get(input));
+    }
+    return changedInputs.build();
+  }
+
+  /** Whether Watchman reported a change to an input of the rule since its inputs were recorded. */
+  public synchronized boolean isAffected(BuildTarget target) {
+    return changedInputsByTarget.containsKey(target);
+  }
+
+  public synchronized boolean contains(BuildTarget target) {
+    return inputHashesByTarget.containsKey(target);
+  }
+
+  /** Returns the rules of the index whose recorded inputs include the given one. */
+  public synchronized ImmutableSet<BuildTarget> getTargetsUsing(Path absolutePath) {
+    ImmutableSet.Builder<BuildTarget> targets = ImmutableSet.builder();
+    for (Pair<BuildTarget, Path> input : inputsByWatchedPath.get(absolutePath.normalize())) {
+      targets.add(input.getFirst());
+    }
+    return targets.build();
+  }
+
+  /**
+   * Removes the rule from the index, e.g. because its outputs were fetched from a cache, so it is
+   * not known which inputs they were built from.
+   */
+  public synchronized void forget(BuildTarget target) {
+    inputHashesByTarget.remove(target);
+    changedInputsByTarget.removeAll(target);
+    for (Path watchedPath : watchedPathsByTarget.removeAll(target)) {
+      inputsByWatchedPath.get(watchedPath).removeIf(input -> input.getFirst().equals(target));
+    }
+  }
+
+  public synchronized void invalidateAll() {
+    inputHashesByTarget.clear();
+    inputsByWatchedPath.clear();
+    watchedPathsByTarget.clear();
+    changedInputsByTarget.clear();
+  }
+
+  @Subscribe
+  public synchronized void onFileSystemChange(WatchmanPathEvent event) {
+    Path path = event.getCellPath().resolve(event.getPath()).getPath().normalize();
+    for (Pair<BuildTarget, Path> input : inputsByWatchedPath.get(path)) {
+      LOG.verbose("%s might be affected by the change of %s.", input.getFirst(), path);
+      changedInputsByTarget.put(input.getFirst(), input.getSecond());
+    }
+  }
+
+  @Subscribe
+  public void onFileSystemChange(WatchmanOverflowEvent event) {
+    // Nothing is known about the changes, so nothing is known about the rules anymore.
+    LOG.verbose("Invalidating the index due to %s.", event);
+    invalidateAll();
+  }
+
+  private void watch(BuildTarget target, Path watchedPath, Path input) {
+    inputsByWatchedPath.put(watchedPath, new Pair<>(target, input));
+    watchedPathsByTarget.put(target, watchedPath);
+  }
+}
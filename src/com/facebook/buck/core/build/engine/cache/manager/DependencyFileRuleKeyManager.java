@@ -23,6 +23,7 @@ import com.facebook.buck.core.build.engine.type.DepFiles;
 import com.facebook.buck.core.rulekey.RuleKey;
 import com.facebook.buck.core.rules.BuildRule;
 import com.facebook.buck.core.rules.attr.SupportsDependencyFileRuleKey;
+import com.facebook.buck.core.util.log.Logger;
 import com.facebook.buck.event.BuckEventBus;
 import com.facebook.buck.event.RuleKeyCalculationEvent;
 import com.facebook.buck.rules.keys.DependencyFileEntry;
@@ -31,21 +32,30 @@ import com.facebook.buck.rules.keys.RuleKeyFactories;
 import com.facebook.buck.rules.keys.SizeLimiter;
 import com.facebook.buck.util.Discardable;
 import com.facebook.buck.util.Scope;
+import com.facebook.buck.util.cache.FileHashCache;
 import com.facebook.buck.util.json.ObjectMappers;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableList;
+import com.google.common.hash.HashCode;
 import java.io.IOException;
 import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Optional;
 
 public class DependencyFileRuleKeyManager {
+  private static final Logger LOG = Logger.get(DependencyFileRuleKeyManager.class);
+
   private final DepFiles depFiles;
   private final BuildRule rule;
   private final Discardable<BuildInfoRecorder> buildInfoRecorder;
   private final OnDiskBuildInfo onDiskBuildInfo;
   private final RuleKeyFactories ruleKeyFactories;
   private final BuckEventBus eventBus;
+  private final Optional<DependencyFileInputsIndex> inputsIndex;
+  private final FileHashCache fileHashCache;
 
   public DependencyFileRuleKeyManager(
       DepFiles depFiles,
@@ -53,13 +63,17 @@ public class DependencyFileRuleKeyManager {
       Discardable<BuildInfoRecorder> buildInfoRecorder,
       OnDiskBuildInfo onDiskBuildInfo,
       RuleKeyFactories ruleKeyFactories,
-      BuckEventBus eventBus) {
+      BuckEventBus eventBus,
+      Optional<DependencyFileInputsIndex> inputsIndex,
+      FileHashCache fileHashCache) {
     this.depFiles = depFiles;
     this.rule = rule;
     this.buildInfoRecorder = buildInfoRecorder;
     this.onDiskBuildInfo = onDiskBuildInfo;
     this.ruleKeyFactories = ruleKeyFactories;
     this.eventBus = eventBus;
+    this.inputsIndex = inputsIndex;
+    this.fileHashCache = fileHashCache;
   }
 
   public boolean useDependencyFileRuleKey() {
@@ -73,11 +87,16 @@ public class DependencyFileRuleKeyManager {
   }
 
   public boolean checkMatchingDepfile() throws IOException {
+    // The content of an input the last build used changed, so its dep-file rule key can't match.
+    if (hasInputWithChangedContent()) {
+      return false;
+    }
+
     // Try to get the current dep-file rule key.
+    Optional<ImmutableList<String>> depFile =
+        onDiskBuildInfo.getValues(BuildInfo.MetadataKey.DEP_FILE);
     Optional<DependencyFileRuleKeyFactory.RuleKeyAndInputs> depFileRuleKeyAndInputs =
-        calculateDepFileRuleKey(
-            onDiskBuildInfo.getValues(BuildInfo.MetadataKey.DEP_FILE),
-            /* allowMissingInputs */ true);
+        calculateDepFileRuleKey(depFile, /* allowMissingInputs */ true);
     if (!depFileRuleKeyAndInputs.isPresent()) {
       return false;
     }
@@ -88,7 +107,69 @@ public class DependencyFileRuleKeyManager {
     // Check the input-based rule key says we're already built.
     Optional<RuleKey> lastDepFileRuleKey =
         onDiskBuildInfo.getRuleKey(BuildInfo.MetadataKey.DEP_FILE_RULE_KEY);
-    return lastDepFileRuleKey.isPresent() && depFileRuleKey.equals(lastDepFileRuleKey.get());
+    boolean matching =
+        lastDepFileRuleKey.isPresent() && depFileRuleKey.equals(lastDepFileRuleKey.get());
+    if (matching
+        && inputsIndex.isPresent()
+        && (!inputsIndex.get().contains(rule.getBuildTarget())
+            || inputsIndex.get().isAffected(rule.getBuildTarget()))) {
+      // The index doesn't know the rule yet, e.g. because the daemon restarted, or the changes it
+      // reported did not change the content of the inputs.
+      recordInputs(parseDepFile(depFile.get()));
+    }
+    return matching;
+  }
+
+  /**
+   * Whether Watchman reported a change to an input that the build of the current outputs used,
+   * and its content is no longer the same. Changes that left the content as it was, e.g. touching
+   * a header, don't count.
+   */
+  private boolean hasInputWithChangedContent() {
+    if (!inputsIndex.isPresent()) {
+      return false;
+    }
+    for (Map.Entry<Path, HashCode> input :
+        inputsIndex.get().getChangedInputs(rule.getBuildTarget()).entrySet()) {
+      try {
+        if (!fileHashCache.get(input.getKey()).equals(input.getValue())) {
+          return true;
+        }
+      } catch (IOException e) {
+        // The input was e.g. deleted.
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Records the inputs, with the hashes of their contents, used by the build of the rule that just
+   * completed, or that produced its current outputs.
+   */
+  public void recordInputs(ImmutableList<DependencyFileEntry> inputs) {
+    if (!inputsIndex.isPresent()) {
+      return;
+    }
+    Map<Path, HashCode> inputHashes = new HashMap<>();
+    for (DependencyFileEntry input : inputs) {
+      Path path = rule.getProjectFilesystem().resolve(input.pathToFile());
+      try {
+        inputHashes.put(path, fileHashCache.get(path));
+      } catch (IOException e) {
+        // Inputs outside of the cells, whose changes Watchman doesn't report, aren't indexed.
+        LOG.verbose(e, "Cannot hash %s used by %s, not indexing it.", path, rule);
+      }
+    }
+    inputsIndex.get().record(rule.getBuildTarget(), inputHashes);
+  }
+
+  /**
+   * Removes the rule from the index, because its outputs changed in another way than by building
+   * it locally, e.g. by fetching them from a cache.
+   */
+  public void forgetInputs() {
+    inputsIndex.ifPresent(index -> index.forget(rule.getBuildTarget()));
   }
 
   public Optional<DependencyFileRuleKeyFactory.RuleKeyAndInputs> calculateDepFileRuleKey(
@@ -103,10 +184,7 @@ public class DependencyFileRuleKeyManager {
 
     // Build the dep-file rule key.  If any inputs are no longer on disk, this means something
     // changed and a dep-file based rule key can't be calculated.
-    ImmutableList<DependencyFileEntry> inputs =
-        depFile.get().stream()
-            .map(ObjectMappers.fromJsonFunction(DependencyFileEntry.class))
-            .collect(ImmutableList.toImmutableList());
+    ImmutableList<DependencyFileEntry> inputs = parseDepFile(depFile.get());
 
     try (Scope ignored =
         RuleKeyCalculationEvent.scope(
@@ -125,4 +203,10 @@ public class DependencyFileRuleKeyManager {
       throw e;
     }
   }
+
+  private static ImmutableList<DependencyFileEntry> parseDepFile(ImmutableList<String> depFile) {
+    return depFile.stream()
+        .map(ObjectMappers.fromJsonFunction(DependencyFileEntry.class))
+        .collect(ImmutableList.toImmutableList());
+  }
 }
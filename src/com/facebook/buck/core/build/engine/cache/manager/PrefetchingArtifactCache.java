@@ -0,0 +1,207 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.core.build.engine.cache.manager;
+
+import com.facebook.buck.artifact_cache.ArtifactCache;
+import com.facebook.buck.artifact_cache.ArtifactInfo;
+import com.facebook.buck.artifact_cache.CacheDecorator;
+import com.facebook.buck.artifact_cache.CacheDeleteResult;
+import com.facebook.buck.artifact_cache.CacheResult;
+import com.facebook.buck.artifact_cache.CacheResultType;
+import com.facebook.buck.artifact_cache.config.CacheReadMode;
+import com.facebook.buck.core.model.BuildTarget;
+import com.facebook.buck.core.rulekey.RuleKey;
+import com.facebook.buck.core.util.log.Logger;
+import com.facebook.buck.io.file.BorrowablePath;
+import com.facebook.buck.io.file.LazyPath;
+import com.facebook.buck.util.types.Unit;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.annotation.Nullable;
+
+/**
+ * Fetches artifacts before the build engine asks for them, into temporary files, and hands them
+ * over when it does. Fetches of artifacts which weren't prefetched, or whose prefetch missed, go to
+ * the delegate as usual.
+ *
+ * <p>The delegate is owned by whoever created it: closing this only discards the prefetched
+ * artifacts which weren't used.
+ */
+public class PrefetchingArtifactCache implements ArtifactCache, CacheDecorator {
+
+  private static final Logger LOG = Logger.get(PrefetchingArtifactCache.class);
+
+  private final ArtifactCache delegate;
+  private final ConcurrentMap<RuleKey, Prefetch> prefetches = new ConcurrentHashMap<>();
+  // The rule keys the build engine already fetched, which aren't worth prefetching anymore.
+  private final Set<RuleKey> fetchedRuleKeys = Sets.newConcurrentHashSet();
+  private final AtomicInteger prefetchCount = new AtomicInteger();
+  private final AtomicInteger usedPrefetchCount = new AtomicInteger();
+
+  public PrefetchingArtifactCache(ArtifactCache delegate) {
+    this.delegate = delegate;
+  }
+
+  /**
+   * Starts fetching the artifact with the given rule key, unless it is already being fetched.
+   *
+   * @return whether a fetch was started.
+   */
+  public boolean prefetch(BuildTarget target, RuleKey ruleKey) {
+    if (fetchedRuleKeys.contains(ruleKey)) {
+      return false;
+    }
+    Prefetch prefetch = new Prefetch();
+    if (prefetches.putIfAbsent(ruleKey, prefetch) != null) {
+      return false;
+    }
+    prefetchCount.incrementAndGet();
+    prefetch.result.setFuture(delegate.fetchAsync(target, ruleKey, prefetch.path));
+    return true;
+  }
+
+  /** @return how many artifacts were prefetched. */
+  public int getPrefetchCount() {
+    return prefetchCount.get();
+  }
+
+  /** @return how many prefetched artifacts were then fetched by the build engine. */
+  public int getUsedPrefetchCount() {
+    return usedPrefetchCount.get();
+  }
+
+  @Override
+  public ListenableFuture<CacheResult> fetchAsync(
+      @Nullable BuildTarget target, RuleKey ruleKey, LazyPath output) {
+    fetchedRuleKeys.add(ruleKey);
+    Prefetch prefetch = prefetches.remove(ruleKey);
+    if (prefetch == null) {
+      return delegate.fetchAsync(target, ruleKey, output);
+    }
+    return Futures.transformAsync(
+        prefetch.result,
+        result -> {
+          if (result.getType() == CacheResultType.MISS) {
+            prefetch.delete();
+            return Futures.immediateFuture(result);
+          }
+          if (!result.getType().isSuccess()) {
+            // A prefetch can fail for reasons which don't affect a regular fetch (e.g. it was
+            // skipped), so give the delegate another chance.
+            prefetch.delete();
+            return delegate.fetchAsync(target, ruleKey, output);
+          }
+          usedPrefetchCount.incrementAndGet();
+          // Metadata-only hits don't fetch a file.
+          if (prefetch.path.isCreated() && Files.exists(prefetch.path.get())) {
+            Files.move(prefetch.path.get(), output.get(), StandardCopyOption.REPLACE_EXISTING);
+          }
+          return Futures.immediateFuture(result);
+        },
+        MoreExecutors.directExecutor());
+  }
+
+  @Override
+  public void skipPendingAndFutureAsyncFetches() {
+    delegate.skipPendingAndFutureAsyncFetches();
+  }
+
+  @Override
+  public ListenableFuture<Unit> store(ArtifactInfo info, BorrowablePath output) {
+    return delegate.store(info, output);
+  }
+
+  @Override
+  public ListenableFuture<ImmutableMap<RuleKey, CacheResult>> multiContainsAsync(
+      ImmutableSet<RuleKey> ruleKeys) {
+    return delegate.multiContainsAsync(ruleKeys);
+  }
+
+  @Override
+  public ListenableFuture<CacheDeleteResult> deleteAsync(List<RuleKey> ruleKeys) {
+    return delegate.deleteAsync(ruleKeys);
+  }
+
+  @Override
+  public CacheReadMode getCacheReadMode() {
+    return delegate.getCacheReadMode();
+  }
+
+  @Override
+  public ArtifactCache getDelegate() {
+    return delegate;
+  }
+
+  @Override
+  public void close() {
+    for (Map.Entry<RuleKey, Prefetch> entry : prefetches.entrySet()) {
+      if (prefetches.remove(entry.getKey(), entry.getValue())) {
+        entry.getValue().result.cancel(true);
+        entry.getValue().delete();
+      }
+    }
+    LOG.debug("Used %d of %d prefetched artifacts.", usedPrefetchCount.get(), prefetchCount.get());
+  }
+
+  /** The fetch of an artifact, into a temporary file, before it was needed. */
+  private static class Prefetch {
+    private final StagingPath path = new StagingPath();
+    // Set once the fetch started, so that it can be registered before.
+    private final SettableFuture<CacheResult> result = SettableFuture.create();
+
+    void delete() {
+      if (!path.isCreated()) {
+        return;
+      }
+      try {
+        Files.deleteIfExists(path.get());
+      } catch (IOException e) {
+        LOG.warn(e, "Unable to delete the prefetched artifact at %s.", path);
+      }
+    }
+  }
+
+  /** A temporary file, which is only created if the cache fetches an artifact into it. */
+  private static class StagingPath extends LazyPath {
+    private volatile boolean created;
+
+    @Override
+    protected Path create() throws IOException {
+      created = true;
+      return Files.createTempFile("buck_prefetched_artifact_", ".zip");
+    }
+
+    boolean isCreated() {
+      return created;
+    }
+  }
+}
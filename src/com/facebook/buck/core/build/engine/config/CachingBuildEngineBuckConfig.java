@@ -63,6 +63,14 @@ public abstract class CachingBuildEngineBuckConfig implements ConfigView<BuckCon
     return getDelegate().getLong("build", "artifact_cache_size_limit");
   }
 
+  /**
+   * @return the maximum number of artifacts to fetch from the cache before the build engine needs
+   *     them, or 0 not to prefetch artifacts.
+   */
+  public int getCachePrefetchMaxArtifacts() {
+    return getDelegate().getInteger("build", "cache_prefetch_max_artifacts").orElse(0);
+  }
+
   public ResourceAwareSchedulingInfo getResourceAwareSchedulingInfo() {
     ResourcesConfig resourcesConfig = getDelegate().getView(ResourcesConfig.class);
     return ResourceAwareSchedulingInfo.of(
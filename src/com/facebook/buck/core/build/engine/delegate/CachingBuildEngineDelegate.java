@@ -16,8 +16,10 @@
 
 package com.facebook.buck.core.build.engine.delegate;
 
+import com.facebook.buck.core.build.engine.cache.manager.DependencyFileInputsIndex;
 import com.facebook.buck.core.rules.BuildRule;
 import com.facebook.buck.util.cache.FileHashCache;
+import java.util.Optional;
 
 /**
  * Functionality used in the {@link com.facebook.buck.core.build.engine.impl.CachingBuildEngine}
@@ -27,6 +29,9 @@ public interface CachingBuildEngineDelegate {
 
   FileHashCache getFileHashCache();
 
+  /** The index of the inputs used by rules with dep-files, if it is kept between builds. */
+  Optional<DependencyFileInputsIndex> getDependencyFileInputsIndex();
+
   /**
    * Called right before the rule is going to be built. This is when direct inputs to the rule would
    * get materialized on disk.
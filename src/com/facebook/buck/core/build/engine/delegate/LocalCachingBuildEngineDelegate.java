@@ -16,15 +16,25 @@
 
 package com.facebook.buck.core.build.engine.delegate;
 
+import com.facebook.buck.core.build.engine.cache.manager.DependencyFileInputsIndex;
 import com.facebook.buck.core.rules.BuildRule;
 import com.facebook.buck.util.cache.FileHashCache;
+import java.util.Optional;
 
 /** */
 public class LocalCachingBuildEngineDelegate implements CachingBuildEngineDelegate {
   private final FileHashCache defaultFileHashCache;
+  private final Optional<DependencyFileInputsIndex> dependencyFileInputsIndex;
 
-  public LocalCachingBuildEngineDelegate(FileHashCache defaultFileHashCache) {
+  public LocalCachingBuildEngineDelegate(
+      FileHashCache defaultFileHashCache,
+      Optional<DependencyFileInputsIndex> dependencyFileInputsIndex) {
     this.defaultFileHashCache = defaultFileHashCache;
+    this.dependencyFileInputsIndex = dependencyFileInputsIndex;
+  }
+
+  public LocalCachingBuildEngineDelegate(FileHashCache defaultFileHashCache) {
+    this(defaultFileHashCache, Optional.empty());
   }
 
   @Override
@@ -32,6 +42,11 @@ public class LocalCachingBuildEngineDelegate implements CachingBuildEngineDelega
     return defaultFileHashCache;
   }
 
+  @Override
+  public Optional<DependencyFileInputsIndex> getDependencyFileInputsIndex() {
+    return dependencyFileInputsIndex;
+  }
+
   @Override
   public void onRuleAboutToBeBuilt(BuildRule buildRule) {
     // no-op.
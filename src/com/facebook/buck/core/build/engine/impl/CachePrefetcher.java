@@ -0,0 +1,166 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.core.build.engine.impl;
+
+import com.facebook.buck.artifact_cache.CacheResult;
+import com.facebook.buck.core.build.engine.RuleDepsCache;
+import com.facebook.buck.core.build.engine.cache.manager.PrefetchingArtifactCache;
+import com.facebook.buck.core.rulekey.RuleKey;
+import com.facebook.buck.core.rulekey.calculator.ParallelRuleKeyCalculator;
+import com.facebook.buck.core.rules.BuildRule;
+import com.facebook.buck.core.rules.BuildRuleResolver;
+import com.facebook.buck.core.rules.attr.HasRuntimeDeps;
+import com.facebook.buck.core.util.log.Logger;
+import com.facebook.buck.event.BuckEventBus;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+/**
+ * Prefetches the artifacts the build engine is likely to fetch, so that a build which mostly hits
+ * the cache is bound by the bandwidth to the cache rather than by its latency.
+ *
+ * <p>The build engine only looks up the artifact of a rule once it decided to build the rule, i.e.
+ * once the rules depending on it missed, so it queries the cache one level of the graph at a time.
+ * Once the rule keys of a requested rule and its deps are known, this walks the graph top-down in
+ * the same way, but checks whole levels with one {@link
+ * com.facebook.buck.artifact_cache.ArtifactCache#multiContainsAsync} each, and prefetches the
+ * artifacts it finds. Like the build engine, it only descends into the deps of the rules which
+ * missed, unless the build engine builds all rules anyway.
+ */
+class CachePrefetcher {
+
+  private static final Logger LOG = Logger.get(CachePrefetcher.class);
+
+  private final PrefetchingArtifactCache artifactCache;
+  private final ParallelRuleKeyCalculator<RuleKey> ruleKeyCalculator;
+  private final RuleDepsCache ruleDeps;
+  private final BuildRuleResolver resolver;
+  private final ListeningExecutorService service;
+  private final boolean descendIntoHits;
+  private final AtomicInteger remainingPrefetches;
+  private final Set<BuildRule> seen = Sets.newConcurrentHashSet();
+
+  CachePrefetcher(
+      PrefetchingArtifactCache artifactCache,
+      ParallelRuleKeyCalculator<RuleKey> ruleKeyCalculator,
+      RuleDepsCache ruleDeps,
+      BuildRuleResolver resolver,
+      ListeningExecutorService service,
+      boolean descendIntoHits,
+      int maxPrefetches) {
+    this.artifactCache = artifactCache;
+    this.ruleKeyCalculator = ruleKeyCalculator;
+    this.ruleDeps = ruleDeps;
+    this.resolver = resolver;
+    this.service = service;
+    this.descendIntoHits = descendIntoHits;
+    this.remainingPrefetches = new AtomicInteger(maxPrefetches);
+  }
+
+  PrefetchingArtifactCache getArtifactCache() {
+    return artifactCache;
+  }
+
+  /** Starts prefetching the artifacts of the given rule and of the deps it is likely to need. */
+  ListenableFuture<?> prefetch(BuckEventBus eventBus, BuildRule rule) {
+    if (!seen.add(rule)) {
+      return Futures.immediateFuture(null);
+    }
+    ListenableFuture<?> result = prefetchLevel(eventBus, ImmutableList.of(rule));
+    Futures.addCallback(
+        result,
+        new FutureCallback<Object>() {
+          @Override
+          public void onSuccess(Object unused) {}
+
+          @Override
+          public void onFailure(Throwable t) {
+            LOG.debug(t, "Stopped prefetching the artifacts needed by %s.", rule);
+          }
+        },
+        service);
+    return result;
+  }
+
+  private ListenableFuture<?> prefetchLevel(BuckEventBus eventBus, ImmutableList<BuildRule> level) {
+    if (level.isEmpty() || remainingPrefetches.get() <= 0) {
+      return Futures.immediateFuture(null);
+    }
+    List<ListenableFuture<RuleKey>> ruleKeys = new ArrayList<>(level.size());
+    for (BuildRule rule : level) {
+      ruleKeys.add(ruleKeyCalculator.calculate(eventBus, rule));
+    }
+    ListenableFuture<ImmutableMap<RuleKey, CacheResult>> contains =
+        Futures.transformAsync(
+            Futures.allAsList(ruleKeys),
+            keys ->
+                artifactCache.multiContainsAsync(
+                    IntStream.range(0, level.size())
+                        .filter(i -> level.get(i).isCacheable())
+                        .mapToObj(keys::get)
+                        .collect(ImmutableSet.toImmutableSet())),
+            service);
+    return Futures.transformAsync(
+        contains,
+        results -> {
+          Set<BuildRule> nextLevel = new LinkedHashSet<>();
+          for (int i = 0; i < level.size(); i++) {
+            BuildRule rule = level.get(i);
+            RuleKey ruleKey = Futures.getDone(ruleKeys.get(i));
+            CacheResult result = results.get(ruleKey);
+            boolean hit = result != null && result.getType().isSuccess();
+            if (hit
+                && remainingPrefetches.getAndDecrement() > 0
+                && !artifactCache.prefetch(rule.getBuildTarget(), ruleKey)) {
+              remainingPrefetches.incrementAndGet();
+            }
+            if (!hit || descendIntoHits) {
+              addDeps(rule, nextLevel);
+            }
+          }
+          return prefetchLevel(eventBus, ImmutableList.copyOf(nextLevel));
+        },
+        service);
+  }
+
+  private void addDeps(BuildRule rule, Set<BuildRule> nextLevel) {
+    for (BuildRule dep : ruleDeps.get(rule)) {
+      if (seen.add(dep)) {
+        nextLevel.add(dep);
+      }
+    }
+    if (rule instanceof HasRuntimeDeps) {
+      ((HasRuntimeDeps) rule)
+          .getRuntimeDeps(resolver)
+          .map(resolver::getRule)
+          .filter(seen::add)
+          .forEach(nextLevel::add);
+    }
+  }
+}
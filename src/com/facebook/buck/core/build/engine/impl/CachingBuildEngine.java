@@ -18,6 +18,7 @@ package com.facebook.buck.core.build.engine.impl;
 
 import com.facebook.buck.artifact_cache.ArtifactCache;
 import com.facebook.buck.artifact_cache.CacheResult;
+import com.facebook.buck.artifact_cache.ZstdDictionaries;
 import com.facebook.buck.core.build.action.resolver.BuildEngineActionToBuildRuleResolver;
 import com.facebook.buck.core.build.buildable.context.BuildableContext;
 import com.facebook.buck.core.build.engine.BuildEngine;
@@ -31,6 +32,8 @@ import com.facebook.buck.core.build.engine.buildinfo.BuildInfoRecorder;
 import com.facebook.buck.core.build.engine.buildinfo.BuildInfoStore;
 import com.facebook.buck.core.build.engine.buildinfo.OnDiskBuildInfo;
 import com.facebook.buck.core.build.engine.cache.manager.BuildInfoStoreManager;
+import com.facebook.buck.core.build.engine.cache.manager.DependencyFileInputsIndex;
+import com.facebook.buck.core.build.engine.cache.manager.PrefetchingArtifactCache;
 import com.facebook.buck.core.build.engine.config.ResourceAwareSchedulingInfo;
 import com.facebook.buck.core.build.engine.delegate.CachingBuildEngineDelegate;
 import com.facebook.buck.core.build.engine.type.BuildType;
@@ -127,7 +130,13 @@ public class CachingBuildEngine implements BuildEngine, Closeable {
   private final BuildRuleResolver resolver;
   private final TargetConfigurationSerializer targetConfigurationSerializer;
   private final Optional<Long> artifactCacheSizeLimit;
+  private final ZstdDictionaries zstdDictionaries;
+  private final int cachePrefetchMaxArtifacts;
+  // The prefetchers of the artifact caches of the builds, when prefetching is enabled.
+  private final ConcurrentMap<ArtifactCache, CachePrefetcher> cachePrefetchers =
+      new ConcurrentHashMap<>();
   private final FileHashCache fileHashCache;
+  private final Optional<DependencyFileInputsIndex> dependencyFileInputsIndex;
   @VisibleForTesting final RuleKeyFactories ruleKeyFactories;
   private final ResourceAwareSchedulingInfo resourceAwareSchedulingInfo;
 
@@ -152,6 +161,8 @@ public class CachingBuildEngine implements BuildEngine, Closeable {
       DepFiles depFiles,
       long maxDepFileCacheEntries,
       Optional<Long> artifactCacheSizeLimit,
+      ZstdDictionaries zstdDictionaries,
+      int cachePrefetchMaxArtifacts,
       BuildRuleResolver resolver,
       BuildEngineActionToBuildRuleResolver actionToBuildRuleResolver,
       TargetConfigurationSerializer targetConfigurationSerializer,
@@ -167,6 +178,8 @@ public class CachingBuildEngine implements BuildEngine, Closeable {
         depFiles,
         maxDepFileCacheEntries,
         artifactCacheSizeLimit,
+        zstdDictionaries,
+        cachePrefetchMaxArtifacts,
         resolver,
         buildInfoStoreManager,
         actionToBuildRuleResolver,
@@ -195,6 +208,8 @@ public class CachingBuildEngine implements BuildEngine, Closeable {
       DepFiles depFiles,
       long maxDepFileCacheEntries,
       Optional<Long> artifactCacheSizeLimit,
+      ZstdDictionaries zstdDictionaries,
+      int cachePrefetchMaxArtifacts,
       BuildRuleResolver resolver,
       BuildInfoStoreManager buildInfoStoreManager,
       BuildEngineActionToBuildRuleResolver actionToBuildRuleResolver,
@@ -211,10 +226,13 @@ public class CachingBuildEngine implements BuildEngine, Closeable {
     this.depFiles = depFiles;
     this.maxDepFileCacheEntries = maxDepFileCacheEntries;
     this.artifactCacheSizeLimit = artifactCacheSizeLimit;
+    this.zstdDictionaries = zstdDictionaries;
+    this.cachePrefetchMaxArtifacts = cachePrefetchMaxArtifacts;
     this.resolver = resolver;
     this.targetConfigurationSerializer = targetConfigurationSerializer;
 
     this.fileHashCache = cachingBuildEngineDelegate.getFileHashCache();
+    this.dependencyFileInputsIndex = cachingBuildEngineDelegate.getDependencyFileInputsIndex();
     this.ruleKeyFactories = ruleKeyFactories;
     this.resourceAwareSchedulingInfo = resourceAwareSchedulingInfo;
     this.buildInfoStoreManager = buildInfoStoreManager;
@@ -245,6 +263,7 @@ public class CachingBuildEngine implements BuildEngine, Closeable {
       }
       terminateBuildWithFailure(new CancellationException("Cancelling due to engine shutdown."));
       Futures.allAsList(asyncCallbacks).get();
+      cachePrefetchers.values().forEach(prefetcher -> prefetcher.getArtifactCache().close());
     } catch (InterruptedException e) {
       e.printStackTrace();
     } catch (IOException | ExecutionException e) {
@@ -445,10 +464,44 @@ public class CachingBuildEngine implements BuildEngine, Closeable {
     // to make sure we wait for these before calling yielding the final build result.
     registerTopLevelRule(rule, buildContext.getEventBus());
     ListenableFuture<BuildResult> resultFuture =
-        getBuildRuleResultWithRuntimeDeps(rule, buildContext, executionContext);
+        getBuildRuleResultWithRuntimeDeps(
+            rule, withCachePrefetching(buildContext, rule), executionContext);
     return BuildEngine.BuildEngineResult.of(resultFuture);
   }
 
+  @Override
+  public void buildAhead(
+      BuildEngineBuildContext buildContext, ExecutionContext executionContext, BuildRule rule) {
+    // Nothing might need the rule, so it is not a top-level rule, and its failure must not cancel
+    // the rest of the build. The rules that do need it see the failure in their dep results.
+    getBuildRuleResultWithRuntimeDeps(rule, buildContext.withKeepGoing(true), executionContext);
+  }
+
+  /**
+   * Starts prefetching the artifacts the build of the given rule is likely to fetch, and returns a
+   * context whose artifact cache hands them over.
+   */
+  private BuildEngineBuildContext withCachePrefetching(
+      BuildEngineBuildContext buildContext, BuildRule rule) {
+    if (cachePrefetchMaxArtifacts <= 0) {
+      return buildContext;
+    }
+    CachePrefetcher prefetcher =
+        cachePrefetchers.computeIfAbsent(
+            buildContext.getArtifactCache(),
+            artifactCache ->
+                new CachePrefetcher(
+                    new PrefetchingArtifactCache(artifactCache),
+                    ruleKeyCalculator,
+                    ruleDeps,
+                    resolver,
+                    serviceByAdjustingDefaultWeightsTo(SCHEDULING_MORE_WORK_RESOURCE_AMOUNTS),
+                    buildMode != BuildType.SHALLOW,
+                    cachePrefetchMaxArtifacts));
+    prefetcher.prefetch(buildContext.getEventBus(), rule);
+    return buildContext.withArtifactCache(prefetcher.getArtifactCache());
+  }
+
   @Nullable
   @Override
   public BuildResult getBuildRuleResult(BuildTarget buildTarget)
@@ -484,12 +537,14 @@ public class CachingBuildEngine implements BuildEngine, Closeable {
         new CachingBuildRuleBuilder(
             new DefaultBuildRuleBuilderDelegate(this, buildContext),
             artifactCacheSizeLimit,
+            zstdDictionaries,
             buildInfoStoreManager,
             buildMode,
             buildRuleDurationTracker,
             consoleLogBuildFailuresInline,
             defaultRuleKeyDiagnostics,
             depFiles,
+            dependencyFileInputsIndex,
             fileHashCache,
             maxDepFileCacheEntries,
             resolver.getSourcePathResolver(),
@@ -21,6 +21,7 @@ import com.facebook.buck.artifact_cache.CacheResult;
 import com.facebook.buck.artifact_cache.CacheResultType;
 import com.facebook.buck.artifact_cache.RuleKeyCacheResult;
 import com.facebook.buck.artifact_cache.RuleKeyCacheResultEvent;
+import com.facebook.buck.artifact_cache.ZstdDictionaries;
 import com.facebook.buck.core.build.buildable.context.BuildableContext;
 import com.facebook.buck.core.build.context.BuildContext;
 import com.facebook.buck.core.build.engine.BuildEngineBuildContext;
@@ -37,6 +38,7 @@ import com.facebook.buck.core.build.engine.cache.manager.BuildCacheArtifactFetch
 import com.facebook.buck.core.build.engine.cache.manager.BuildCacheArtifactUploader;
 import com.facebook.buck.core.build.engine.cache.manager.BuildInfoStoreManager;
 import com.facebook.buck.core.build.engine.cache.manager.BuildRuleScopeManager;
+import com.facebook.buck.core.build.engine.cache.manager.DependencyFileInputsIndex;
 import com.facebook.buck.core.build.engine.cache.manager.DependencyFileRuleKeyManager;
 import com.facebook.buck.core.build.engine.cache.manager.InputBasedRuleKeyManager;
 import com.facebook.buck.core.build.engine.cache.manager.ManifestRuleKeyManager;
@@ -192,12 +194,14 @@ class CachingBuildRuleBuilder {
   public CachingBuildRuleBuilder(
       BuildRuleBuilderDelegate buildRuleBuilderDelegate,
       Optional<Long> artifactCacheSizeLimit,
+      ZstdDictionaries zstdDictionaries,
       BuildInfoStoreManager buildInfoStoreManager,
       BuildType buildMode,
       BuildRuleDurationTracker buildRuleDurationTracker,
       boolean consoleLogBuildFailuresInline,
       RuleKeyDiagnostics<RuleKey, String> defaultRuleKeyDiagnostics,
       DepFiles depFiles,
+      Optional<DependencyFileInputsIndex> dependencyFileInputsIndex,
       FileHashCache fileHashCache,
       long maxDepFileCacheEntries,
       SourcePathResolverAdapter pathResolver,
@@ -259,7 +263,14 @@ class CachingBuildRuleBuilder {
             eventBus);
     this.dependencyFileRuleKeyManager =
         new DependencyFileRuleKeyManager(
-            depFiles, rule, this.buildInfoRecorder, onDiskBuildInfo, ruleKeyFactories, eventBus);
+            depFiles,
+            rule,
+            this.buildInfoRecorder,
+            onDiskBuildInfo,
+            ruleKeyFactories,
+            eventBus,
+            dependencyFileInputsIndex,
+            fileHashCache);
     this.buildCacheArtifactFetcher =
         new BuildCacheArtifactFetcher(
             rule,
@@ -268,7 +279,8 @@ class CachingBuildRuleBuilder {
             this::onOutputsWillChange,
             eventBus,
             buildInfoStoreManager,
-            onDiskBuildInfo);
+            onDiskBuildInfo,
+            zstdDictionaries);
     inputBasedRuleKeyManager =
         new InputBasedRuleKeyManager(
             eventBus,
@@ -305,7 +317,8 @@ class CachingBuildRuleBuilder {
             manifestRuleKeyManager,
             eventBus,
             artifactCache,
-            artifactCacheSizeLimit);
+            artifactCacheSizeLimit,
+            zstdDictionaries);
     this.customBuildRuleStrategy = customBuildRuleStrategy;
   }
 
@@ -520,6 +533,12 @@ class CachingBuildRuleBuilder {
             finalizeMatchingKey(success);
             break;
         }
+        // Rules built locally or matching their dep-file rule key recorded their inputs already.
+        // For the others it is not known which inputs the current outputs were built from.
+        if (success != BuildRuleSuccessType.BUILT_LOCALLY
+            && success != BuildRuleSuccessType.MATCHING_DEP_FILE_RULE_KEY) {
+          dependencyFileRuleKeyManager.forgetInputs();
+        }
       } catch (Exception e) {
         throw new BuckUncheckedExecutionException(e, "When finalizing rule.");
       }
@@ -670,12 +689,16 @@ class CachingBuildRuleBuilder {
       // Record the inputs into our metadata for next time.
       // TODO(#9117006): We don't support a way to serlialize `SourcePath`s to the cache,
       // so need to use DependencyFileEntry's instead and recover them on deserialization.
-      ImmutableList<String> inputStrings =
+      ImmutableList<DependencyFileEntry> inputEntries =
           inputs.stream()
               .map(inputString -> DependencyFileEntry.fromSourcePath(inputString, pathResolver))
+              .collect(ImmutableList.toImmutableList());
+      ImmutableList<String> inputStrings =
+          inputEntries.stream()
               .map(ObjectMappers.toJsonFunction())
               .collect(ImmutableList.toImmutableList());
       getBuildInfoRecorder().addMetadata(BuildInfo.MetadataKey.DEP_FILE, inputStrings);
+      dependencyFileRuleKeyManager.recordInputs(inputEntries);
 
       // Re-calculate and store the depfile rule key for next time.
       Optional<DependencyFileRuleKeyFactory.RuleKeyAndInputs> depFileRuleKeyAndInputs =
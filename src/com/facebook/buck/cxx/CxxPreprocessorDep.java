@@ -48,4 +48,15 @@ public interface CxxPreprocessorDep {
    */
   ImmutableMap<BuildTarget, CxxPreprocessorInput> getTransitiveCxxPreprocessorInput(
       CxxPlatform cxxPlatform, ActionGraphBuilder graphBuilder);
+
+  /**
+   * Returns the same inputs as {@link #getTransitiveCxxPreprocessorInput(CxxPlatform,
+   * ActionGraphBuilder)}, as a graph which the rules depending on this one can share instead of
+   * copying. Rules which cache their transitive inputs should return the cached graph.
+   */
+  default TransitiveCxxPreprocessorInputGraph getTransitiveCxxPreprocessorInputGraph(
+      CxxPlatform cxxPlatform, ActionGraphBuilder graphBuilder) {
+    return TransitiveCxxPreprocessorInputGraph.of(
+        getTransitiveCxxPreprocessorInput(cxxPlatform, graphBuilder));
+  }
 }
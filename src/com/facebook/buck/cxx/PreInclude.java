@@ -167,6 +167,12 @@ public abstract class PreInclude extends NoopBuildRuleWithDeclaredAndExtraDeps
     return transitiveCxxPreprocessorInputCache.getUnchecked(cxxPlatform, graphBuilder);
   }
 
+  @Override
+  public TransitiveCxxPreprocessorInputGraph getTransitiveCxxPreprocessorInputGraph(
+      CxxPlatform cxxPlatform, ActionGraphBuilder graphBuilder) {
+    return transitiveCxxPreprocessorInputCache.getGraphUnchecked(cxxPlatform, graphBuilder);
+  }
+
   private ImmutableList<CxxPreprocessorInput> getCxxPreprocessorInputs(
       CxxPlatform cxxPlatform, ActionGraphBuilder graphBuilder) {
     ImmutableList.Builder<CxxPreprocessorInput> builder = ImmutableList.builder();
@@ -673,6 +673,12 @@ public class PrebuiltCxxLibraryDescription
         return transitiveCxxPreprocessorInputCache.getUnchecked(cxxPlatform, graphBuilder);
       }
 
+      @Override
+      public TransitiveCxxPreprocessorInputGraph getTransitiveCxxPreprocessorInputGraph(
+          CxxPlatform cxxPlatform, ActionGraphBuilder graphBuilder) {
+        return transitiveCxxPreprocessorInputCache.getGraphUnchecked(cxxPlatform, graphBuilder);
+      }
+
       public ImmutableList<Arg> getExportedLinkerFlags(
           CxxPlatform cxxPlatform, ActionGraphBuilder graphBuilder) {
         return PrebuiltCxxLibraryDescription.this.getExportedLinkerArgs(
@@ -257,6 +257,12 @@ public class PrebuiltCxxLibraryGroupDescription
       return transitiveCxxPreprocessorInputCache.getUnchecked(cxxPlatform, graphBuilder);
     }
 
+    @Override
+    public TransitiveCxxPreprocessorInputGraph getTransitiveCxxPreprocessorInputGraph(
+        CxxPlatform cxxPlatform, ActionGraphBuilder graphBuilder) {
+      return transitiveCxxPreprocessorInputCache.getGraphUnchecked(cxxPlatform, graphBuilder);
+    }
+
     @Override
     public Iterable<? extends NativeLinkableGroup> getNativeLinkableDeps(
         BuildRuleResolver ruleResolver) {
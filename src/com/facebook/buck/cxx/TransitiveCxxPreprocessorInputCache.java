@@ -27,15 +27,21 @@ import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSortedMap;
 import com.google.common.util.concurrent.UncheckedExecutionException;
 import java.util.Collection;
-import java.util.HashMap;
-import java.util.Map;
 import java.util.concurrent.ExecutionException;
 import javax.annotation.Nonnull;
 
-/** Transitive C++ preprocessor input cache */
+/**
+ * Transitive C++ preprocessor input cache.
+ *
+ * <p>The cache holds a {@link TransitiveCxxPreprocessorInputGraph} per platform, which shares the
+ * graphs of the deps, and only softly holds the flattened map of all the inputs: keeping the maps of
+ * every rule of a deep C++ graph would take memory quadratic in the number of rules.
+ */
 public class TransitiveCxxPreprocessorInputCache {
-  private final Cache<CxxPlatform, ImmutableSortedMap<BuildTarget, CxxPreprocessorInput>> cache =
+  private final Cache<CxxPlatform, TransitiveCxxPreprocessorInputGraph> graphs =
       CacheBuilder.newBuilder().build();
+  private final Cache<CxxPlatform, ImmutableSortedMap<BuildTarget, CxxPreprocessorInput>> maps =
+      CacheBuilder.newBuilder().softValues().build();
   private final CxxPreprocessorDep preprocessorDep;
 
   public TransitiveCxxPreprocessorInputCache(CxxPreprocessorDep preprocessorDep) {
@@ -46,10 +52,20 @@ public class TransitiveCxxPreprocessorInputCache {
   public ImmutableMap<BuildTarget, CxxPreprocessorInput> getUnchecked(
       CxxPlatform key, ActionGraphBuilder graphBuilder) {
     try {
-      return cache.get(
+      return maps.get(key, () -> getGraphUnchecked(key, graphBuilder).toMap());
+    } catch (ExecutionException e) {
+      throw new UncheckedExecutionException(e.getCause());
+    }
+  }
+
+  /** Get the graph of the transitive inputs from the cache */
+  public TransitiveCxxPreprocessorInputGraph getGraphUnchecked(
+      CxxPlatform key, ActionGraphBuilder graphBuilder) {
+    try {
+      return graphs.get(
           key,
           () ->
-              computeTransitiveCxxToPreprocessorInputMap(
+              computeTransitiveCxxPreprocessorInputGraph(
                   key, preprocessorDep, true, graphBuilder, graphBuilder.getParallelizer()));
     } catch (ExecutionException e) {
       throw new UncheckedExecutionException(e.getCause());
@@ -62,30 +78,6 @@ public class TransitiveCxxPreprocessorInputCache {
           CxxPreprocessorDep preprocessorDep,
           boolean includeDep,
           ActionGraphBuilder graphBuilder) {
-    return computeTransitiveCxxToPreprocessorInputMap(
-        key, preprocessorDep, includeDep, graphBuilder, graphBuilder.getParallelizer());
-  }
-
-  private static ImmutableSortedMap<BuildTarget, CxxPreprocessorInput>
-      computeTransitiveCxxToPreprocessorInputMap(
-          @Nonnull CxxPlatform key,
-          CxxPreprocessorDep preprocessorDep,
-          boolean includeDep,
-          ActionGraphBuilder graphBuilder,
-          Parallelizer parallelizer) {
-    Map<BuildTarget, CxxPreprocessorInput> builder = new HashMap<>();
-    if (includeDep) {
-      builder.put(
-          preprocessorDep.getBuildTarget(),
-          preprocessorDep.getCxxPreprocessorInput(key, graphBuilder));
-    }
-
-    Collection<ImmutableMap<BuildTarget, CxxPreprocessorInput>> transitiveDepInputs =
-        parallelizer.maybeParallelizeTransform(
-            ImmutableList.copyOf(preprocessorDep.getCxxPreprocessorDeps(key, graphBuilder)),
-            dep -> dep.getTransitiveCxxPreprocessorInput(key, graphBuilder));
-    transitiveDepInputs.forEach(builder::putAll);
-
     // Using an ImmutableSortedMap here:
     //
     // 1. Memory efficiency. ImmutableSortedMap is implemented with 2 lists (an ImmutableSortedSet
@@ -96,6 +88,28 @@ public class TransitiveCxxPreprocessorInputCache {
     //
     // 3. We mostly iterate over these maps rather than do lookups, so ImmutableSortedMap
     // binary-search based lookup is not an issue.
-    return ImmutableSortedMap.copyOf(builder);
+    return computeTransitiveCxxPreprocessorInputGraph(
+            key, preprocessorDep, includeDep, graphBuilder, graphBuilder.getParallelizer())
+        .toMap();
+  }
+
+  private static TransitiveCxxPreprocessorInputGraph computeTransitiveCxxPreprocessorInputGraph(
+      @Nonnull CxxPlatform key,
+      CxxPreprocessorDep preprocessorDep,
+      boolean includeDep,
+      ActionGraphBuilder graphBuilder,
+      Parallelizer parallelizer) {
+    ImmutableMap<BuildTarget, CxxPreprocessorInput> inputs =
+        includeDep
+            ? ImmutableMap.of(
+                preprocessorDep.getBuildTarget(),
+                preprocessorDep.getCxxPreprocessorInput(key, graphBuilder))
+            : ImmutableMap.of();
+
+    Collection<TransitiveCxxPreprocessorInputGraph> transitiveDepInputs =
+        parallelizer.maybeParallelizeTransform(
+            ImmutableList.copyOf(preprocessorDep.getCxxPreprocessorDeps(key, graphBuilder)),
+            dep -> dep.getTransitiveCxxPreprocessorInputGraph(key, graphBuilder));
+    return TransitiveCxxPreprocessorInputGraph.of(inputs, transitiveDepInputs);
   }
 }
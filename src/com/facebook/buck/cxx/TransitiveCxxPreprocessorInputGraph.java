@@ -0,0 +1,102 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.cxx;
+
+import com.facebook.buck.core.model.BuildTarget;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSortedMap;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Sets;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The transitive {@link CxxPreprocessorInput}s of a {@link CxxPreprocessorDep}, represented as a
+ * DAG which shares the graphs of its deps instead of copying their inputs. A graph only holds the
+ * inputs of its own rule, so the graphs of all the rules of a C++ graph take memory linear in the
+ * number of edges, where flat maps of every rule's transitive closure take quadratic memory.
+ */
+public final class TransitiveCxxPreprocessorInputGraph {
+
+  private static final TransitiveCxxPreprocessorInputGraph EMPTY =
+      new TransitiveCxxPreprocessorInputGraph(ImmutableMap.of(), ImmutableList.of());
+
+  private final ImmutableMap<BuildTarget, CxxPreprocessorInput> inputs;
+  private final ImmutableList<TransitiveCxxPreprocessorInputGraph> deps;
+
+  private TransitiveCxxPreprocessorInputGraph(
+      ImmutableMap<BuildTarget, CxxPreprocessorInput> inputs,
+      ImmutableList<TransitiveCxxPreprocessorInputGraph> deps) {
+    this.inputs = inputs;
+    this.deps = deps;
+  }
+
+  /** Wraps already flattened transitive inputs, e.g. of a rule which doesn't share its deps'. */
+  public static TransitiveCxxPreprocessorInputGraph of(
+      ImmutableMap<BuildTarget, CxxPreprocessorInput> inputs) {
+    return of(inputs, ImmutableList.of());
+  }
+
+  /** Returns the graph of the given inputs on top of the graphs of the deps. */
+  public static TransitiveCxxPreprocessorInputGraph of(
+      ImmutableMap<BuildTarget, CxxPreprocessorInput> inputs,
+      Iterable<TransitiveCxxPreprocessorInputGraph> deps) {
+    ImmutableList<TransitiveCxxPreprocessorInputGraph> nonEmptyDeps =
+        ImmutableList.copyOf(Iterables.filter(deps, dep -> dep != EMPTY));
+    if (inputs.isEmpty()) {
+      if (nonEmptyDeps.isEmpty()) {
+        return EMPTY;
+      } else if (nonEmptyDeps.size() == 1) {
+        // No need for a node of our own, reuse the only dep's.
+        return nonEmptyDeps.get(0);
+      }
+    }
+    return new TransitiveCxxPreprocessorInputGraph(inputs, nonEmptyDeps);
+  }
+
+  /**
+   * Flattens the graph into the map of all its inputs. Every shared sub-graph is only visited once,
+   * and the graph is walked iteratively, so the cost is linear in the size of the result whatever
+   * the depth of the C++ graph.
+   */
+  public ImmutableSortedMap<BuildTarget, CxxPreprocessorInput> toMap() {
+    if (deps.isEmpty()) {
+      return ImmutableSortedMap.copyOf(inputs);
+    }
+    Map<BuildTarget, CxxPreprocessorInput> result = new HashMap<>();
+    Set<TransitiveCxxPreprocessorInputGraph> visited = Sets.newIdentityHashSet();
+    Deque<TransitiveCxxPreprocessorInputGraph> toVisit = new ArrayDeque<>();
+    toVisit.push(this);
+    while (!toVisit.isEmpty()) {
+      TransitiveCxxPreprocessorInputGraph graph = toVisit.pop();
+      if (!visited.add(graph)) {
+        continue;
+      }
+      // The inputs of a target are the same wherever it is reached from, so the first wins.
+      graph.inputs.forEach(result::putIfAbsent);
+      for (TransitiveCxxPreprocessorInputGraph dep : graph.deps.reverse()) {
+        toVisit.push(dep);
+      }
+    }
+    // See TransitiveCxxPreprocessorInputCache for why the result is sorted.
+    return ImmutableSortedMap.copyOf(result);
+  }
+}
@@ -75,7 +75,16 @@ public abstract class ArtifactCompressionEvent extends AbstractBuckEvent
   /** Create a new Finished event for corresponding Started event */
   public static Finished finished(
       Started started, long fullSize, long compressedSize, HasNameAndType rule) {
-    return new Finished(started, fullSize, compressedSize, rule);
+    return finished(started, fullSize, compressedSize, 0, rule);
+  }
+
+  /**
+   * Create a new Finished event for corresponding Started event of an operation which ran on the
+   * given number of background zstd workers.
+   */
+  public static Finished finished(
+      Started started, long fullSize, long compressedSize, int workers, HasNameAndType rule) {
+    return new Finished(started, fullSize, compressedSize, workers, rule);
   }
 
   /** Event for when a artifact starts compression/decompression */
@@ -94,11 +103,13 @@ public abstract class ArtifactCompressionEvent extends AbstractBuckEvent
 
   /** Event for when a artifact finishes compression/decompression */
   public static class Finished extends ArtifactCompressionEvent {
-    protected Finished(Started started, long fullSize, long compressedSize, HasNameAndType rule) {
+    protected Finished(
+        Started started, long fullSize, long compressedSize, int workers, HasNameAndType rule) {
       super(started.getEventKey(), started.getOperation(), started.getRuleKeys(), rule);
       startedTimeStamp = started.getTimestampMillis();
       this.fullSize = fullSize;
       this.compressedSize = compressedSize;
+      this.workers = workers;
     }
 
     private final long startedTimeStamp;
@@ -109,11 +120,20 @@ public abstract class ArtifactCompressionEvent extends AbstractBuckEvent
     @JsonView(JsonViews.MachineReadableLog.class)
     public final long compressedSize;
 
+    /** Number of background zstd workers, 0 when the operation ran on the calling thread only. */
+    @JsonView(JsonViews.MachineReadableLog.class)
+    public final int workers;
+
     /** Returns the timestamp of corresponding started event */
     public long getStartedTimeStamp() {
       return startedTimeStamp;
     }
 
+    /** Returns how many bytes the compression saved, e.g. on the upload of the artifact. */
+    public long getBytesSaved() {
+      return fullSize - compressedSize;
+    }
+
     @Override
     public String getEventName() {
       return String.format(
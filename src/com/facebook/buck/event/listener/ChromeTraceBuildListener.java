@@ -668,12 +668,14 @@ public class ChromeTraceBuildListener implements BuckEventListener {
 
   @Subscribe
   public void artifactCompressionFinished(ArtifactCompressionEvent.Finished finished) {
-    writeArtifactCompressionEvent(
-        finished,
-        ChromeTraceEvent.Phase.END,
+    ImmutableMap.Builder<String, String> builder =
         ImmutableMap.<String, String>builder()
             .put("full_size", Long.toString(finished.fullSize))
-            .put("compressed_size", Long.toString(finished.compressedSize)));
+            .put("compressed_size", Long.toString(finished.compressedSize));
+    if (finished.workers > 0) {
+      builder.put("workers", Integer.toString(finished.workers));
+    }
+    writeArtifactCompressionEvent(finished, ChromeTraceEvent.Phase.END, builder);
   }
 
   public void writeArtifactCompressionEvent(
@@ -28,6 +28,7 @@ import com.facebook.buck.artifact_cache.CacheCountersSummary;
 import com.facebook.buck.artifact_cache.CacheResult;
 import com.facebook.buck.artifact_cache.CacheResultType;
 import com.facebook.buck.artifact_cache.HttpArtifactCacheEvent;
+import com.facebook.buck.artifact_cache.TieredFetchEvent;
 import com.facebook.buck.artifact_cache.config.ArtifactCacheMode;
 import com.facebook.buck.core.build.event.BuildEvent;
 import com.facebook.buck.core.build.event.BuildRuleEvent;
@@ -115,6 +116,11 @@ public class MachineReadableLoggerListener implements BuckEventListener {
   private AtomicInteger cacheUploadSuccessCount = new AtomicInteger();
   private AtomicInteger cacheUploadFailureCount = new AtomicInteger();
 
+  // Concurrent fetches from tiers of caches statistics
+  private AtomicInteger tieredFetchHedgeCount = new AtomicInteger();
+  private AtomicInteger tieredFetchAbandonCount = new AtomicInteger();
+  private AtomicInteger tieredFetchBackfillCount = new AtomicInteger();
+
   public MachineReadableLoggerListener(
       InvocationInfo info,
       ProjectFilesystem filesystem,
@@ -343,6 +349,13 @@ public class MachineReadableLoggerListener implements BuckEventListener {
     }
   }
 
+  @Subscribe
+  public void onTieredFetchEvent(TieredFetchEvent event) {
+    tieredFetchHedgeCount.addAndGet(event.getHedgedTiers());
+    tieredFetchAbandonCount.addAndGet(event.getAbandonedTiers());
+    tieredFetchBackfillCount.addAndGet(event.getBackfilledCaches());
+  }
+
   private Path getLogFilePath() {
     return filesystem
         .resolve(info.getLogDirectoryPath())
@@ -387,7 +400,10 @@ public class MachineReadableLoggerListener implements BuckEventListener {
                     cacheModeBytes.values().stream().mapToLong(AtomicLong::get).sum(),
                     localKeyUnchangedHits.get(),
                     cacheUploadSuccessCount,
-                    cacheUploadFailureCount));
+                    cacheUploadFailureCount,
+                    tieredFetchHedgeCount.get(),
+                    tieredFetchAbandonCount.get(),
+                    tieredFetchBackfillCount.get()));
 
             outputStream.write(
                 String.format(
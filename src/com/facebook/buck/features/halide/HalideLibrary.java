@@ -30,6 +30,7 @@ import com.facebook.buck.cxx.CxxPreprocessables;
 import com.facebook.buck.cxx.CxxPreprocessorDep;
 import com.facebook.buck.cxx.CxxPreprocessorInput;
 import com.facebook.buck.cxx.TransitiveCxxPreprocessorInputCache;
+import com.facebook.buck.cxx.TransitiveCxxPreprocessorInputGraph;
 import com.facebook.buck.cxx.toolchain.CxxPlatform;
 import com.facebook.buck.cxx.toolchain.HeaderVisibility;
 import com.facebook.buck.cxx.toolchain.linker.Linker;
@@ -108,6 +109,12 @@ public class HalideLibrary extends NoopBuildRuleWithDeclaredAndExtraDeps
     return transitiveCxxPreprocessorInputCache.getUnchecked(cxxPlatform, graphBuilder);
   }
 
+  @Override
+  public TransitiveCxxPreprocessorInputGraph getTransitiveCxxPreprocessorInputGraph(
+      CxxPlatform cxxPlatform, ActionGraphBuilder graphBuilder) {
+    return transitiveCxxPreprocessorInputCache.getGraphUnchecked(cxxPlatform, graphBuilder);
+  }
+
   @Override
   public NativeLinkableInfo getNativeLinkable(
       CxxPlatform cxxPlatform, ActionGraphBuilder graphBuilder) {
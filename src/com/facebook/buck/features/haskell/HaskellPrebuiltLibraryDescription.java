@@ -33,6 +33,7 @@ import com.facebook.buck.cxx.CxxPreprocessables;
 import com.facebook.buck.cxx.CxxPreprocessorDep;
 import com.facebook.buck.cxx.CxxPreprocessorInput;
 import com.facebook.buck.cxx.TransitiveCxxPreprocessorInputCache;
+import com.facebook.buck.cxx.TransitiveCxxPreprocessorInputGraph;
 import com.facebook.buck.cxx.toolchain.CxxPlatform;
 import com.facebook.buck.cxx.toolchain.linker.Linker;
 import com.facebook.buck.cxx.toolchain.nativelink.NativeLinkable;
@@ -212,6 +213,12 @@ public class HaskellPrebuiltLibraryDescription
           CxxPlatform cxxPlatform, ActionGraphBuilder graphBuilder) {
         return transitiveCxxPreprocessorInputCache.getUnchecked(cxxPlatform, graphBuilder);
       }
+
+      @Override
+      public TransitiveCxxPreprocessorInputGraph getTransitiveCxxPreprocessorInputGraph(
+          CxxPlatform cxxPlatform, ActionGraphBuilder graphBuilder) {
+        return transitiveCxxPreprocessorInputCache.getGraphUnchecked(cxxPlatform, graphBuilder);
+      }
     };
   }
 
@@ -25,30 +25,71 @@ import com.facebook.buck.core.util.log.Logger;
 import com.facebook.buck.io.file.BorrowablePath;
 import com.facebook.buck.io.file.LazyPath;
 import com.facebook.buck.io.filesystem.ProjectFilesystem;
+import com.facebook.buck.util.environment.Platform;
+import com.facebook.buck.util.json.ObjectMappers;
+import com.facebook.buck.util.timing.Clock;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.io.ByteSource;
 import com.google.common.util.concurrent.Futures;
 import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.EnumMap;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import javax.annotation.Nullable;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import org.eclipse.jetty.server.HttpOutput;
 import org.eclipse.jetty.server.Request;
 import org.eclipse.jetty.server.handler.AbstractHandler;
 
-/** Implements a really simple cache server on top of the local dircache. */
+/**
+ * Implements a cache server on top of the local dircache, speaking {@link
+ * HttpArtifactCacheBinaryProtocol}:
+ *
+ * <ul>
+ *   <li>{@code GET /artifacts/key/<rule key>} fetches an artifact.
+ *   <li>{@code PUT /artifacts/key} stores an artifact.
+ *   <li>{@code POST /artifacts/multi_fetch} fetches the artifacts of the rule keys in the body.
+ *   <li>{@code POST /artifacts/multi_contains} checks which rule keys of the body are cached.
+ *   <li>{@code GET /artifacts/stats} returns the request counts and latencies of each endpoint.
+ * </ul>
+ *
+ * <p>Payloads are sent from memory-mapped files, which Jetty writes to the socket without copying
+ * them on the heap. Requests beyond the concurrency limit are rejected rather than queued, so that
+ * clients fall back to building instead of waiting on a saturated server.
+ */
 public class ArtifactCacheHandler extends AbstractHandler {
   private static final Logger LOG = Logger.get(ArtifactCacheHandler.class);
 
   private final ProjectFilesystem projectFilesystem;
+  private final Clock clock;
+  private final Semaphore requestPermits;
+  private final Map<Endpoint, EndpointStats> endpointStats = new EnumMap<>(Endpoint.class);
   private Optional<ArtifactCache> artifactCache;
 
-  public ArtifactCacheHandler(ProjectFilesystem projectFilesystem) {
+  public ArtifactCacheHandler(
+      ProjectFilesystem projectFilesystem, Clock clock, int maxConcurrentRequests) {
     this.artifactCache = Optional.empty();
     this.projectFilesystem = projectFilesystem;
+    this.clock = clock;
+    this.requestPermits = new Semaphore(maxConcurrentRequests);
+    for (Endpoint endpoint : Endpoint.values()) {
+      endpointStats.put(endpoint, new EndpointStats());
+    }
   }
 
   public void setArtifactCache(Optional<ArtifactCache> artifactCache) {
@@ -59,8 +100,13 @@ public class ArtifactCacheHandler extends AbstractHandler {
   public void handle(
       String target, Request baseRequest, HttpServletRequest request, HttpServletResponse response)
       throws IOException {
+    @Nullable
+    Endpoint endpoint =
+        Endpoint.of(baseRequest.getMethod(), baseRequest.getHttpURI().getPath().split("/"));
+    long startNanos = clock.nanoTime();
+    int status = HttpServletResponse.SC_INTERNAL_SERVER_ERROR;
     try {
-      int status = handle(baseRequest, response);
+      status = handle(baseRequest, response, endpoint);
       response.setStatus(status);
     } catch (Exception e) {
       LOG.error(e, "Exception when handling request %s", target);
@@ -69,60 +115,63 @@ public class ArtifactCacheHandler extends AbstractHandler {
     } finally {
       response.flushBuffer();
       baseRequest.setHandled(true);
+      if (endpoint != null) {
+        endpointStats.get(endpoint).record(clock.nanoTime() - startNanos, status);
+      }
     }
   }
 
-  private int handle(Request baseRequest, HttpServletResponse response) throws IOException {
+  private int handle(
+      Request baseRequest, HttpServletResponse response, @Nullable Endpoint endpoint)
+      throws IOException {
+    if (endpoint == Endpoint.STATS) {
+      return handleStats(response);
+    }
     if (!artifactCache.isPresent()) {
       response.getWriter().write("Serving local cache is disabled for this instance.");
       return HttpServletResponse.SC_INTERNAL_SERVER_ERROR;
     }
-    int status = HttpServletResponse.SC_INTERNAL_SERVER_ERROR;
-    String method = baseRequest.getMethod();
-    if (method.equals("GET")) {
-      status = handleGet(baseRequest, response);
-    } else if (method.equals("PUT")) {
-      status = handlePut(baseRequest, response);
-    }
-    return status;
-  }
-
-  private int handleGet(Request baseRequest, HttpServletResponse response) throws IOException {
-    String path = baseRequest.getHttpURI().getPath();
-    String[] pathElements = path.split("/");
-    if (pathElements.length != 4 || !pathElements[2].equals("key")) {
+    if (endpoint == null) {
       response.getWriter().write("Incorrect url format.");
       return HttpServletResponse.SC_INTERNAL_SERVER_ERROR;
     }
+    if (!requestPermits.tryAcquire()) {
+      response.getWriter().write("Too many concurrent requests.");
+      return HttpServletResponse.SC_SERVICE_UNAVAILABLE;
+    }
+    try {
+      switch (endpoint) {
+        case FETCH:
+          return handleGet(baseRequest, response);
+        case STORE:
+          return handlePut(baseRequest, response);
+        case MULTI_FETCH:
+          return handleMultiFetch(baseRequest, response);
+        case MULTI_CONTAINS:
+          return handleMultiContains(baseRequest, response);
+        case STATS:
+        default:
+          throw new IllegalStateException("Unexpected endpoint " + endpoint);
+      }
+    } finally {
+      requestPermits.release();
+    }
+  }
 
-    RuleKey ruleKey = new RuleKey(pathElements[3]);
+  private int handleGet(Request baseRequest, HttpServletResponse response) throws IOException {
+    RuleKey ruleKey = new RuleKey(baseRequest.getHttpURI().getPath().split("/")[3]);
 
     Path temp = null;
     try {
-      projectFilesystem.mkdirs(projectFilesystem.getBuckPaths().getScratchDir());
-      temp =
-          projectFilesystem.createTempFile(
-              projectFilesystem.getBuckPaths().getScratchDir(), "outgoing_rulekey", ".tmp");
-      CacheResult fetchResult =
-          Futures.getUnchecked(
-              artifactCache.get().fetchAsync(null, ruleKey, LazyPath.ofInstance(temp)));
-      if (!fetchResult.getType().isSuccess()) {
+      temp = createTempFile("outgoing_rulekey");
+      Optional<HttpArtifactCacheBinaryProtocol.FetchResponse> fetchResponse = fetch(ruleKey, temp);
+      if (!fetchResponse.isPresent()) {
         return HttpServletResponse.SC_NOT_FOUND;
       }
 
-      Path tempFinal = temp;
-      HttpArtifactCacheBinaryProtocol.FetchResponse fetchResponse =
-          new HttpArtifactCacheBinaryProtocol.FetchResponse(
-              ImmutableSet.of(ruleKey),
-              fetchResult.getMetadata(),
-              new ByteSource() {
-                @Override
-                public InputStream openStream() throws IOException {
-                  return projectFilesystem.newFileInputStream(tempFinal);
-                }
-              });
-      fetchResponse.write(response.getOutputStream());
-      response.setContentLengthLong(fetchResponse.getContentLength());
+      response.setStatus(HttpServletResponse.SC_OK);
+      response.setContentLengthLong(fetchResponse.get().getContentLength());
+      writeFetchResponse(baseRequest.getResponse().getHttpOutput(), fetchResponse.get(), temp);
       return HttpServletResponse.SC_OK;
     } finally {
       if (temp != null) {
@@ -134,10 +183,7 @@ public class ArtifactCacheHandler extends AbstractHandler {
   private int handlePut(Request baseRequest, HttpServletResponse response) throws IOException {
     Path temp = null;
     try {
-      projectFilesystem.mkdirs(projectFilesystem.getBuckPaths().getScratchDir());
-      temp =
-          projectFilesystem.createTempFile(
-              projectFilesystem.getBuckPaths().getScratchDir(), "incoming_upload", ".tmp");
+      temp = createTempFile("incoming_upload");
 
       HttpArtifactCacheBinaryProtocol.StoreResponseReadResult storeRequest;
       try (DataInputStream requestInputData = new DataInputStream(baseRequest.getInputStream());
@@ -167,4 +213,169 @@ public class ArtifactCacheHandler extends AbstractHandler {
       }
     }
   }
+
+  /** Streams the artifacts of the requested rule keys one after the other, as they're fetched. */
+  private int handleMultiFetch(Request baseRequest, HttpServletResponse response)
+      throws IOException {
+    ImmutableSet<RuleKey> ruleKeys =
+        HttpArtifactCacheBinaryProtocol.readRuleKeys(
+            new DataInputStream(baseRequest.getInputStream()));
+
+    response.setStatus(HttpServletResponse.SC_OK);
+    HttpOutput output = baseRequest.getResponse().getHttpOutput();
+    DataOutputStream responseData = new DataOutputStream(output);
+    responseData.writeInt(ruleKeys.size());
+    for (RuleKey ruleKey : ruleKeys) {
+      Path temp = createTempFile("outgoing_rulekey");
+      try {
+        Optional<HttpArtifactCacheBinaryProtocol.FetchResponse> fetchResponse =
+            fetch(ruleKey, temp);
+        responseData.writeBoolean(fetchResponse.isPresent());
+        if (fetchResponse.isPresent()) {
+          responseData.writeLong(fetchResponse.get().getContentLength());
+          responseData.flush();
+          writeFetchResponse(output, fetchResponse.get(), temp);
+        }
+      } finally {
+        projectFilesystem.deleteFileAtPathIfExists(temp);
+      }
+    }
+    responseData.flush();
+    return HttpServletResponse.SC_OK;
+  }
+
+  private int handleMultiContains(Request baseRequest, HttpServletResponse response)
+      throws IOException {
+    ImmutableSet<RuleKey> ruleKeys =
+        HttpArtifactCacheBinaryProtocol.readRuleKeys(
+            new DataInputStream(baseRequest.getInputStream()));
+    ImmutableMap<RuleKey, CacheResult> results =
+        Futures.getUnchecked(artifactCache.get().multiContainsAsync(ruleKeys));
+
+    ImmutableList.Builder<Boolean> contained = ImmutableList.builder();
+    for (RuleKey ruleKey : ruleKeys) {
+      CacheResult result = results.get(ruleKey);
+      contained.add(result != null && result.getType().isSuccess());
+    }
+    response.setStatus(HttpServletResponse.SC_OK);
+    HttpArtifactCacheBinaryProtocol.writeMultiContainsResponse(
+        contained.build(), response.getOutputStream());
+    return HttpServletResponse.SC_OK;
+  }
+
+  private int handleStats(HttpServletResponse response) throws IOException {
+    ImmutableMap.Builder<String, Object> stats = ImmutableMap.builder();
+    for (Map.Entry<Endpoint, EndpointStats> entry : endpointStats.entrySet()) {
+      stats.put(entry.getKey().name().toLowerCase(), entry.getValue().toMap());
+    }
+    response.setContentType("application/json");
+    response.getWriter().write(ObjectMappers.WRITER.writeValueAsString(stats.build()));
+    return HttpServletResponse.SC_OK;
+  }
+
+  private Path createTempFile(String prefix) throws IOException {
+    projectFilesystem.mkdirs(projectFilesystem.getBuckPaths().getScratchDir());
+    return projectFilesystem.createTempFile(
+        projectFilesystem.getBuckPaths().getScratchDir(), prefix, ".tmp");
+  }
+
+  /** Fetches the artifact of the rule key into the given file. */
+  private Optional<HttpArtifactCacheBinaryProtocol.FetchResponse> fetch(RuleKey ruleKey, Path temp)
+      throws IOException {
+    CacheResult fetchResult =
+        Futures.getUnchecked(
+            artifactCache.get().fetchAsync(null, ruleKey, LazyPath.ofInstance(temp)));
+    if (!fetchResult.getType().isSuccess()) {
+      return Optional.empty();
+    }
+    return Optional.of(
+        new HttpArtifactCacheBinaryProtocol.FetchResponse(
+            ImmutableSet.of(ruleKey),
+            fetchResult.getMetadata(),
+            new ByteSource() {
+              @Override
+              public InputStream openStream() throws IOException {
+                return projectFilesystem.newFileInputStream(temp);
+              }
+            }));
+  }
+
+  private void writeFetchResponse(
+      HttpOutput output, HttpArtifactCacheBinaryProtocol.FetchResponse fetchResponse, Path payload)
+      throws IOException {
+    fetchResponse.writeHeader(output);
+    Path payloadPath = projectFilesystem.resolve(payload);
+    // Mapped files can't be deleted on Windows until they're garbage collected, nor mapped at once
+    // past 2GB.
+    if (Platform.detect() == Platform.WINDOWS || Files.size(payloadPath) > Integer.MAX_VALUE) {
+      Files.copy(payloadPath, output);
+      return;
+    }
+    try (FileChannel channel = FileChannel.open(payloadPath, StandardOpenOption.READ)) {
+      output.write(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+    }
+  }
+
+  /** The endpoints of the server, whose latencies are tracked separately. */
+  enum Endpoint {
+    FETCH,
+    STORE,
+    MULTI_FETCH,
+    MULTI_CONTAINS,
+    STATS,
+    ;
+
+    @Nullable
+    static Endpoint of(String method, String[] pathElements) {
+      switch (method) {
+        case "GET":
+          if (pathElements.length == 4 && pathElements[2].equals("key")) {
+            return FETCH;
+          }
+          return pathElements.length == 3 && pathElements[2].equals("stats") ? STATS : null;
+        case "PUT":
+          return STORE;
+        case "POST":
+          if (pathElements.length != 3) {
+            return null;
+          }
+          if (pathElements[2].equals("multi_fetch")) {
+            return MULTI_FETCH;
+          }
+          return pathElements[2].equals("multi_contains") ? MULTI_CONTAINS : null;
+        default:
+          return null;
+      }
+    }
+  }
+
+  /** Request counts and latencies of an endpoint since the server started. */
+  private static class EndpointStats {
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+
+    void record(long nanos, int status) {
+      requests.increment();
+      if (status >= HttpServletResponse.SC_INTERNAL_SERVER_ERROR) {
+        errors.increment();
+      }
+      totalNanos.add(nanos);
+      maxNanos.accumulate(nanos);
+    }
+
+    ImmutableMap<String, Long> toMap() {
+      long count = requests.sum();
+      return ImmutableMap.of(
+          "requests",
+          count,
+          "errors",
+          errors.sum(),
+          "mean_latency_us",
+          count == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(totalNanos.sum() / count),
+          "max_latency_us",
+          TimeUnit.NANOSECONDS.toMicros(maxNanos.get()));
+    }
+  }
 }
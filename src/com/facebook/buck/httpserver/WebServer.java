@@ -33,8 +33,12 @@ import java.util.HashMap;
 import java.util.Map;
 import java.util.Optional;
 import javax.annotation.Nullable;
+import org.eclipse.jetty.http2.server.HTTP2CServerConnectionFactory;
 import org.eclipse.jetty.server.Handler;
+import org.eclipse.jetty.server.HttpConfiguration;
+import org.eclipse.jetty.server.HttpConnectionFactory;
 import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
 import org.eclipse.jetty.server.handler.ContextHandler;
 import org.eclipse.jetty.server.handler.ContextHandlerCollection;
 import org.eclipse.jetty.servlet.ServletContextHandler;
@@ -63,6 +67,8 @@ public class WebServer {
   private static final String TRACE_DATA_CONTEXT_PATH = "/tracedata";
   private static final Path HTTP_PORT_FILE = Paths.get(".httpport");
 
+  public static final int DEFAULT_MAX_CONCURRENT_CACHE_REQUESTS = 64;
+
   private final ProjectFilesystem projectFilesystem;
   private final Clock clock;
   private final Server server;
@@ -74,11 +80,33 @@ public class WebServer {
    *     port</a> will be assigned. Use {@link #getPort()} to find out which port is being used.
    */
   public WebServer(int port, ProjectFilesystem projectFilesystem, Clock clock) {
+    this(port, projectFilesystem, clock, DEFAULT_MAX_CONCURRENT_CACHE_REQUESTS);
+  }
+
+  /**
+   * @param port If 0, then an <a href="http://en.wikipedia.org/wiki/Ephemeral_port">ephemeral
+   *     port</a> will be assigned. Use {@link #getPort()} to find out which port is being used.
+   * @param maxConcurrentCacheRequests the number of requests to the served cache to handle at
+   *     once, beyond which requests are rejected.
+   */
+  public WebServer(
+      int port, ProjectFilesystem projectFilesystem, Clock clock, int maxConcurrentCacheRequests) {
     this.projectFilesystem = projectFilesystem;
     this.clock = clock;
-    this.server = new Server(port);
+    this.server = new Server();
+    // Besides HTTP/1.1, accept cleartext HTTP/2, which lets cache clients multiplex their fetches
+    // over a single connection.
+    HttpConfiguration httpConfiguration = new HttpConfiguration();
+    ServerConnector connector =
+        new ServerConnector(
+            server,
+            new HttpConnectionFactory(httpConfiguration),
+            new HTTP2CServerConnectionFactory(httpConfiguration));
+    connector.setPort(port);
+    server.addConnector(connector);
     this.streamingWebSocketServlet = new StreamingWebSocketServlet();
-    this.artifactCacheHandler = new ArtifactCacheHandler(projectFilesystem);
+    this.artifactCacheHandler =
+        new ArtifactCacheHandler(projectFilesystem, clock, maxConcurrentCacheRequests);
   }
 
   /** @return The port that web server is listening on. */
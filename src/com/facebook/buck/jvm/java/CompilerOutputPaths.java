@@ -71,6 +71,11 @@ public abstract class CompilerOutputPaths {
         .resolve("used-classes.json");
   }
 
+  /** The state kept between builds of a library to compile it incrementally. */
+  public static Path getIncrementalStatePath(BuildTarget target, ProjectFilesystem filesystem) {
+    return BuildTargetPaths.getScratchPath(filesystem, target, "lib__%s__incremental");
+  }
+
   public static Path getClassesDir(BuildTarget target, ProjectFilesystem filesystem) {
     return CompilerOutputPaths.of(target, filesystem).getClassesDir();
   }
@@ -0,0 +1,171 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.jvm.java;
+
+import com.facebook.buck.core.util.log.Logger;
+import com.facebook.buck.io.filesystem.ProjectFilesystem;
+import com.facebook.buck.util.json.ObjectMappers;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSortedMap;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Predicate;
+
+/**
+ * The parts of the states that compilers keep in buck-out to compile targets incrementally which
+ * do not depend on the compiler: hashing the inputs and sources of a compilation, finding the
+ * sources that changed since the state was recorded, and reading and writing the recorded index.
+ *
+ * <p>These states are not outputs of the rules, so they do not affect rule keys or the artifact
+ * cache. A state is only used if the options and class path of the compilation did not change
+ * since it was recorded, and sources are compared by content, so a state stays correct when the
+ * outputs of its rule are fetched from the cache in between.
+ */
+public class IncrementalCompilerState {
+
+  private static final Logger LOG = Logger.get(IncrementalCompilerState.class);
+
+  private static final String INDEX_FILE_NAME = "index.json";
+
+  private IncrementalCompilerState() {}
+
+  /**
+   * Returns a hash of the options and of the content of the class path of a compilation, or
+   * nothing if the class path contains directories, whose content is not hashed.
+   */
+  public static Optional<String> hashInputs(
+      ProjectFilesystem filesystem, Iterable<String> options, Iterable<Path> classPathEntries)
+      throws IOException {
+    Hasher hasher = Hashing.sha1().newHasher();
+    for (String option : options) {
+      hasher.putString(option, Charsets.UTF_8).putChar('\0');
+    }
+    for (Path entry : classPathEntries) {
+      hasher.putString(entry.toString(), Charsets.UTF_8).putChar('\0');
+      if (filesystem.isDirectory(entry)) {
+        return Optional.empty();
+      }
+      if (filesystem.exists(entry)) {
+        hasher.putString(filesystem.computeSha1(entry).toString(), Charsets.UTF_8);
+      }
+    }
+    return Optional.of(hasher.hash().toString());
+  }
+
+  /** Returns the hashes of the contents of the given sources. */
+  public static ImmutableMap<Path, String> hashSources(
+      ProjectFilesystem filesystem, Iterable<Path> sources) throws IOException {
+    ImmutableMap.Builder<Path, String> hashes = ImmutableMap.builder();
+    for (Path source : sources) {
+      hashes.put(source, filesystem.computeSha1(source).toString());
+    }
+    return hashes.build();
+  }
+
+  /** Reads the index recorded in the given state directory, if there is a readable one. */
+  public static <T extends Index> Optional<T> readIndex(
+      ProjectFilesystem filesystem, Path stateDir, Class<T> indexClass) {
+    Optional<String> contents = filesystem.readFileIfItExists(stateDir.resolve(INDEX_FILE_NAME));
+    if (!contents.isPresent()) {
+      return Optional.empty();
+    }
+    try {
+      return Optional.of(ObjectMappers.readValue(contents.get(), indexClass));
+    } catch (IOException e) {
+      LOG.warn(e, "Unable to read the incremental compiler state in %s, ignoring it.", stateDir);
+      return Optional.empty();
+    }
+  }
+
+  /** Writes the index to the given state directory. */
+  public static void writeIndex(ProjectFilesystem filesystem, Path stateDir, Index index)
+      throws IOException {
+    filesystem.mkdirs(stateDir);
+    filesystem.writeContentsToPath(
+        ObjectMappers.WRITER.writeValueAsString(index), stateDir.resolve(INDEX_FILE_NAME));
+  }
+
+  /** Deletes the index in the given state directory, so that the state is no longer used. */
+  public static void deleteIndex(ProjectFilesystem filesystem, Path stateDir) throws IOException {
+    filesystem.deleteFileAtPathIfExists(stateDir.resolve(INDEX_FILE_NAME));
+  }
+
+  /** Copies the files under a directory that match the predicate to another directory. */
+  public static void copyFiles(
+      ProjectFilesystem filesystem, Path fromDir, Path toDir, Predicate<Path> included)
+      throws IOException {
+    for (Path file : filesystem.getFilesUnderPath(fromDir, included)) {
+      Path target = toDir.resolve(fromDir.relativize(file));
+      filesystem.createParentDirs(target);
+      filesystem.copyFile(file, target);
+    }
+  }
+
+  /**
+   * What every state records about the last successful compilation. Compilers extend it with what
+   * they need to decide which sources to compile again.
+   */
+  public static class Index {
+    @JsonProperty("inputs_hash")
+    public String inputsHash = "";
+
+    @JsonProperty("source_hashes")
+    public Map<String, String> sourceHashes = ImmutableMap.of();
+
+    @JsonProperty("classes_by_source")
+    public Map<String, List<String>> classesBySource = ImmutableMap.of();
+
+    /** Sets the hashes that the compilation the index is recorded for was run with. */
+    public void setHashes(String inputsHash, ImmutableMap<Path, String> sourceHashes) {
+      this.inputsHash = inputsHash;
+      ImmutableSortedMap.Builder<String, String> hashes = ImmutableSortedMap.naturalOrder();
+      sourceHashes.forEach((source, hash) -> hashes.put(source.toString(), hash));
+      this.sourceHashes = hashes.build();
+    }
+
+    /**
+     * Returns the sources that changed since the index was recorded, or nothing if the state
+     * cannot be used to compile the sources incrementally, because the inputs of the compilation
+     * changed or because sources were added or removed.
+     */
+    public Optional<ImmutableSet<Path>> getChangedSources(
+        String inputsHash, ImmutableMap<Path, String> sourceHashes) {
+      if (!inputsHash.equals(this.inputsHash) || sourceHashes.size() != this.sourceHashes.size()) {
+        return Optional.empty();
+      }
+      ImmutableSet.Builder<Path> changed = ImmutableSet.builder();
+      for (Map.Entry<Path, String> entry : sourceHashes.entrySet()) {
+        String recordedHash = this.sourceHashes.get(entry.getKey().toString());
+        if (recordedHash == null) {
+          return Optional.empty();
+        }
+        if (!recordedHash.equals(entry.getValue())) {
+          changed.add(entry.getKey());
+        }
+      }
+      return Optional.of(changed.build());
+    }
+  }
+}
@@ -0,0 +1,213 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.jvm.java;
+
+import com.facebook.buck.core.build.execution.context.ExecutionContext;
+import com.facebook.buck.core.model.BuildTarget;
+import com.facebook.buck.core.sourcepath.resolver.SourcePathResolverAdapter;
+import com.facebook.buck.core.util.log.Logger;
+import com.facebook.buck.io.filesystem.ProjectFilesystem;
+import com.facebook.buck.step.Step;
+import com.facebook.buck.step.StepExecutionResult;
+import com.facebook.buck.step.StepExecutionResults;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSortedSet;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Optional;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+/**
+ * Compiles a java library like {@link JavacStep}, but only compiles the sources that changed since
+ * the last local build of the library and the sources that refer to classes whose ABI changed,
+ * against the classes of the last build. All sources are compiled if that cannot be done safely.
+ * See {@link JavacIncrementalState}.
+ */
+class IncrementalJavacStep implements Step {
+
+  private static final Logger LOG = Logger.get(IncrementalJavacStep.class);
+
+  private final Javac javac;
+  private final JavacOptions javacOptions;
+  private final BuildTarget invokingRule;
+  private final SourcePathResolverAdapter resolver;
+  private final ProjectFilesystem filesystem;
+  private final CompilerParameters compilerParameters;
+  private final Path stateDir;
+  private final JavacStep fullCompileStep;
+
+  IncrementalJavacStep(
+      Javac javac,
+      JavacOptions javacOptions,
+      BuildTarget invokingRule,
+      SourcePathResolverAdapter resolver,
+      ProjectFilesystem filesystem,
+      CompilerParameters compilerParameters,
+      Path stateDir) {
+    this.javac = javac;
+    this.javacOptions = javacOptions;
+    this.invokingRule = invokingRule;
+    this.resolver = resolver;
+    this.filesystem = filesystem;
+    this.compilerParameters = compilerParameters;
+    this.stateDir = stateDir;
+    this.fullCompileStep =
+        new JavacStep(
+            javac,
+            javacOptions,
+            invokingRule,
+            resolver,
+            filesystem,
+            new ClasspathChecker(),
+            compilerParameters,
+            null,
+            null);
+  }
+
+  @Override
+  public StepExecutionResult execute(ExecutionContext context)
+      throws IOException, InterruptedException {
+    Path outputDirectory = compilerParameters.getOutputPaths().getClassesDir();
+    Optional<Path> depFile =
+        compilerParameters.shouldTrackClassUsage()
+            ? Optional.of(CompilerOutputPaths.getDepFilePath(invokingRule, filesystem))
+            : Optional.empty();
+
+    JavacIncrementalState state = JavacIncrementalState.load(filesystem, stateDir);
+    Optional<String> inputsHash =
+        IncrementalCompilerState.hashInputs(
+            filesystem,
+            JavacPipelineState.getOptions(
+                javacOptions,
+                filesystem,
+                resolver,
+                outputDirectory,
+                compilerParameters.getOutputPaths().getAnnotationPath(),
+                context,
+                compilerParameters.getClasspathEntries()),
+            compilerParameters.getClasspathEntries());
+    ImmutableMap<Path, String> sourceHashes =
+        IncrementalCompilerState.hashSources(filesystem, compilerParameters.getSourceFilePaths());
+    Optional<ImmutableSet<Path>> changedSources =
+        inputsHash.isPresent() && (!depFile.isPresent() || state.hasClassUsage())
+            ? state.getChangedSources(inputsHash.get(), sourceHashes)
+            : Optional.empty();
+
+    if (changedSources.isPresent()
+        && compileIncrementally(context, state, changedSources.get(), outputDirectory)) {
+      if (depFile.isPresent()) {
+        state.mergeClassUsage(depFile.get());
+      }
+      state.record(inputsHash.get(), sourceHashes, outputDirectory, depFile);
+      return StepExecutionResults.SUCCESS;
+    }
+
+    state.invalidate();
+    StepExecutionResult result = fullCompileStep.execute(context);
+    if (result.isSuccess() && inputsHash.isPresent()) {
+      state.record(inputsHash.get(), sourceHashes, outputDirectory, depFile);
+    }
+    return result;
+  }
+
+  /**
+   * Compiles the changed sources, and then the sources affected by the changes of their ABI, until
+   * no more sources are affected. Returns false if that is not possible or not worth it because
+   * most of the sources have to be compiled anyway.
+   */
+  private boolean compileIncrementally(
+      ExecutionContext context,
+      JavacIncrementalState state,
+      ImmutableSet<Path> changedSources,
+      Path outputDirectory)
+      throws IOException, InterruptedException {
+    int sourceCount = compilerParameters.getSourceFilePaths().size();
+    SortedSet<Path> sourcesToCompile = new TreeSet<>(changedSources);
+    while (sourcesToCompile.size() <= sourceCount / 2) {
+      Path compileDir = state.getCompileDir();
+      filesystem.deleteRecursivelyIfExists(compileDir);
+      filesystem.mkdirs(compileDir);
+      if (!sourcesToCompile.isEmpty()
+          && compile(context, sourcesToCompile, compileDir, state.getClassesDir())
+              != StepExecutionResults.SUCCESS_EXIT_CODE) {
+        return false;
+      }
+
+      ImmutableSet<Path> compiledSources = ImmutableSet.copyOf(sourcesToCompile);
+      Optional<ImmutableSet<Path>> affectedSources = state.getAffectedSources(compiledSources);
+      if (!affectedSources.isPresent()) {
+        return false;
+      }
+      if (affectedSources.get().isEmpty()) {
+        state.mergeInto(outputDirectory, compiledSources);
+        LOG.debug(
+            "Compiled %d of %d sources of %s incrementally.",
+            compiledSources.size(), sourceCount, invokingRule);
+        return true;
+      }
+      sourcesToCompile.addAll(affectedSources.get());
+    }
+    return false;
+  }
+
+  private int compile(
+      ExecutionContext context, SortedSet<Path> sources, Path compileDir, Path classesDir)
+      throws IOException, InterruptedException {
+    CompilerParameters parameters =
+        CompilerParameters.builder()
+            .from(compilerParameters)
+            .setSourceFilePaths(ImmutableSortedSet.copyOf(sources))
+            .setClasspathEntries(
+                ImmutableSortedSet.<Path>naturalOrder()
+                    .add(filesystem.resolve(classesDir))
+                    .addAll(compilerParameters.getClasspathEntries())
+                    .build())
+            .setOutputPaths(
+                ImmutableCompilerOutputPaths.builder()
+                    .from(compilerParameters.getOutputPaths())
+                    .setClassesDir(compileDir)
+                    .build())
+            .build();
+    JavacPipelineState pipeline =
+        new JavacPipelineState(
+            javac, javacOptions, invokingRule, new ClasspathChecker(), parameters, null, null);
+    try {
+      int exitCode = pipeline.getJavacInvocation(resolver, filesystem, context).buildClasses();
+      if (exitCode != StepExecutionResults.SUCCESS_EXIT_CODE) {
+        // All sources are compiled next, which reports the errors that are still there.
+        LOG.debug(
+            "Incremental compilation of %s failed:\n%s",
+            invokingRule, pipeline.getStderrContents());
+      }
+      return exitCode;
+    } finally {
+      pipeline.close();
+    }
+  }
+
+  @Override
+  public String getShortName() {
+    return "incremental_javac";
+  }
+
+  @Override
+  public String getDescription(ExecutionContext context) {
+    return fullCompileStep.getDescription(context);
+  }
+}
@@ -20,6 +20,7 @@ import com.facebook.buck.core.model.BuildId;
 import com.facebook.buck.core.util.immutables.BuckStyleValueWithBuilder;
 import com.facebook.buck.io.filesystem.ProjectFilesystem;
 import com.facebook.buck.jvm.java.runner.FileClassPathRunner;
+import com.facebook.buck.jvm.java.runner.TestRunnerWorker;
 import com.facebook.buck.test.selectors.TestSelectorList;
 import com.facebook.buck.util.Verbosity;
 import com.facebook.buck.util.env.BuckClasspath;
@@ -162,27 +163,7 @@ abstract class JUnitJvmArgs {
       args.add(String.format("-agentpath:%s", getPathToJavaAgent().get()));
     }
 
-    // Include the buildId
-    args.add(String.format("-D%s=%s", BUILD_ID_PROPERTY, getBuildId()));
-
-    // Include the baseDir
-    args.add(
-        String.format("-D%s=%s", MODULE_BASE_PATH_PROPERTY, getBuckModuleBaseSourceCodePath()));
-
-    // Disable the Java icon from appearing in the OS X Dock while running tests
-    args.add("-Dapple.awt.UIElement=true");
-
-    // Include log levels
-    if (getStdOutLogLevel().isPresent()) {
-      args.add(String.format("-D%s=%s", STD_OUT_LOG_LEVEL_PROPERTY, getStdOutLogLevel().get()));
-    }
-    if (getStdErrLogLevel().isPresent()) {
-      args.add(String.format("-D%s=%s", STD_ERR_LOG_LEVEL_PROPERTY, getStdErrLogLevel().get()));
-    }
-
-    if (getRobolectricLogPath().isPresent()) {
-      args.add(String.format("-Drobolectric.logging=%s", getRobolectricLogPath().get()));
-    }
+    formatSystemPropertiesToList(args);
 
     if (isDebugEnabled()) {
       // This is the default config used by IntelliJ. By doing this, all a user
@@ -216,6 +197,69 @@ abstract class JUnitJvmArgs {
     // responsible for running the tests.
     args.add(getTestType().getDefaultTestRunner());
 
+    formatTestRunnerArgsToList(args, defaultTestTimeoutMillis);
+  }
+
+  /**
+   * @return whether the tests can be run by a reused {@link TestRunnerWorker} JVM, which is only
+   *     the case if they need no JVM options other than system properties.
+   */
+  boolean canRunInTestRunnerWorker() {
+    return getTestType() == TestType.JUNIT
+        && !isDebugEnabled()
+        && !isCodeCoverageEnabled()
+        && !getPathToJavaAgent().isPresent()
+        && getExtraJvmArgs().orElse(ImmutableList.of()).stream()
+            .allMatch(arg -> arg.startsWith("-D"));
+  }
+
+  /**
+   * Formats the arguments of a {@link TestRunnerWorker} job running the tests, see {@link
+   * #canRunInTestRunnerWorker()}.
+   */
+  public void formatTestRunnerWorkerJobArgsToList(
+      ImmutableList.Builder<String> args,
+      ProjectFilesystem filesystem,
+      long defaultTestTimeoutMillis) {
+    args.add(
+        String.format(
+            "-D%s=%s", FileClassPathRunner.TESTRUNNER_CLASSES_PROPERTY, getTestRunnerClasspath()));
+    args.add(
+        String.format(
+            "-D%s=%s",
+            FileClassPathRunner.CLASSPATH_FILE_PROPERTY, filesystem.resolve(getClasspathFile())));
+    formatSystemPropertiesToList(args);
+    getExtraJvmArgs().ifPresent(args::addAll);
+    args.add(getTestType().getDefaultTestRunner());
+    formatTestRunnerArgsToList(args, defaultTestTimeoutMillis);
+  }
+
+  private void formatSystemPropertiesToList(ImmutableList.Builder<String> args) {
+    // Include the buildId
+    args.add(String.format("-D%s=%s", BUILD_ID_PROPERTY, getBuildId()));
+
+    // Include the baseDir
+    args.add(
+        String.format("-D%s=%s", MODULE_BASE_PATH_PROPERTY, getBuckModuleBaseSourceCodePath()));
+
+    // Disable the Java icon from appearing in the OS X Dock while running tests
+    args.add("-Dapple.awt.UIElement=true");
+
+    // Include log levels
+    if (getStdOutLogLevel().isPresent()) {
+      args.add(String.format("-D%s=%s", STD_OUT_LOG_LEVEL_PROPERTY, getStdOutLogLevel().get()));
+    }
+    if (getStdErrLogLevel().isPresent()) {
+      args.add(String.format("-D%s=%s", STD_ERR_LOG_LEVEL_PROPERTY, getStdErrLogLevel().get()));
+    }
+
+    if (getRobolectricLogPath().isPresent()) {
+      args.add(String.format("-Drobolectric.logging=%s", getRobolectricLogPath().get()));
+    }
+  }
+
+  private void formatTestRunnerArgsToList(
+      ImmutableList.Builder<String> args, long defaultTestTimeoutMillis) {
     // The first argument to the test runner is where the test results should be written. It is not
     // reliable to write test results to stdout or stderr because there may be output from the unit
     // tests written to those file descriptors, as well.
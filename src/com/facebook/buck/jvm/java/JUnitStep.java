@@ -20,21 +20,34 @@ import com.facebook.buck.core.build.execution.context.ExecutionContext;
 import com.facebook.buck.core.util.log.Logger;
 import com.facebook.buck.io.ExecutableFinder;
 import com.facebook.buck.io.filesystem.ProjectFilesystem;
+import com.facebook.buck.jvm.java.runner.TestRunnerWorker;
 import com.facebook.buck.shell.ShellStep;
 import com.facebook.buck.step.StepExecutionResult;
 import com.facebook.buck.util.MoreSuppliers;
 import com.facebook.buck.util.ProcessExecutor;
 import com.facebook.buck.util.ProcessExecutorParams;
 import com.facebook.buck.util.environment.Platform;
+import com.facebook.buck.worker.WorkerJobResult;
+import com.facebook.buck.worker.WorkerProcessIdentity;
+import com.facebook.buck.worker.WorkerProcessParams;
+import com.facebook.buck.worker.WorkerProcessPool;
+import com.facebook.buck.worker.WorkerProcessPoolFactory;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Joiner;
+import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.hash.Hashing;
 import java.io.IOException;
 import java.lang.reflect.Field;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.Map;
 import java.util.Optional;
+import java.util.OptionalInt;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 import java.util.function.Supplier;
@@ -42,6 +55,8 @@ import java.util.function.Supplier;
 public class JUnitStep extends ShellStep {
   private static final Logger LOG = Logger.get(JUnitStep.class);
 
+  private static final String TEST_RUNNER_WORKERS_DIR = "test-runner-workers";
+
   private final ProjectFilesystem filesystem;
   private final ImmutableList<String> javaRuntimeLauncher;
   private final ImmutableMap<String, String> nativeLibsEnvironment;
@@ -49,6 +64,7 @@ public class JUnitStep extends ShellStep {
   private final Optional<Long> testCaseTimeoutMs;
   private final ImmutableMap<String, String> env;
   private final JUnitJvmArgs junitJvmArgs;
+  private final OptionalInt testRunnerPoolSize;
   private Supplier<Path> classpathArgfile;
 
   // Set when the junit command times out.
@@ -61,7 +77,8 @@ public class JUnitStep extends ShellStep {
       Optional<Long> testCaseTimeoutMs,
       ImmutableMap<String, String> env,
       ImmutableList<String> javaRuntimeLauncher,
-      JUnitJvmArgs junitJvmArgs) {
+      JUnitJvmArgs junitJvmArgs,
+      OptionalInt testRunnerPoolSize) {
     super(filesystem.getRootPath());
     this.filesystem = filesystem;
     this.javaRuntimeLauncher = javaRuntimeLauncher;
@@ -70,6 +87,7 @@ public class JUnitStep extends ShellStep {
     this.testCaseTimeoutMs = testCaseTimeoutMs;
     this.env = env;
     this.junitJvmArgs = junitJvmArgs;
+    this.testRunnerPoolSize = testRunnerPoolSize;
 
     this.classpathArgfile =
         MoreSuppliers.memoize(
@@ -122,10 +140,75 @@ public class JUnitStep extends ShellStep {
   @Override
   public StepExecutionResult execute(ExecutionContext context)
       throws InterruptedException, IOException {
+    if (shouldRunInTestRunnerPool()) {
+      return executeInTestRunnerPool(context);
+    }
     ensureClasspathArgfile();
     return super.execute(context);
   }
 
+  /**
+   * Tests are run by one of the reused {@link TestRunnerWorker} JVMs if a pool of them was
+   * configured and the tests need neither a specific environment, nor JVM options, nor a timeout
+   * for the whole test rule, which could only be enforced by killing the JVM.
+   */
+  @VisibleForTesting
+  boolean shouldRunInTestRunnerPool() {
+    return testRunnerPoolSize.isPresent()
+        && env.isEmpty()
+        && nativeLibsEnvironment.isEmpty()
+        && !testRuleTimeoutMs.isPresent()
+        && junitJvmArgs.canRunInTestRunnerWorker();
+  }
+
+  private StepExecutionResult executeInTestRunnerPool(ExecutionContext context)
+      throws IOException, InterruptedException {
+    ImmutableList<String> startupCommand =
+        ImmutableList.<String>builder()
+            .addAll(javaRuntimeLauncher)
+            .add("-classpath", junitJvmArgs.getTestRunnerClasspath().toString())
+            .add(TestRunnerWorker.class.getName())
+            .build();
+    // The pools are kept by the daemon, so that the JVMs are also reused by later commands.
+    String poolKey = Joiner.on(' ').join(startupCommand);
+    WorkerProcessPool pool =
+        new WorkerProcessPoolFactory(filesystem)
+            .getWorkerProcessPool(
+                context,
+                WorkerProcessParams.of(
+                    filesystem.getBuckPaths().getScratchDir().resolve(TEST_RUNNER_WORKERS_DIR),
+                    startupCommand,
+                    ImmutableMap.of(),
+                    testRunnerPoolSize.getAsInt(),
+                    /* isAsync */ false,
+                    Optional.of(
+                        WorkerProcessIdentity.of(
+                            poolKey,
+                            Hashing.sha256()
+                                .hashString(
+                                    poolKey + " " + testRunnerPoolSize.getAsInt(),
+                                    StandardCharsets.UTF_8)))));
+
+    ImmutableList.Builder<String> jobArgs = ImmutableList.builder();
+    junitJvmArgs.formatTestRunnerWorkerJobArgsToList(
+        jobArgs, filesystem, testCaseTimeoutMs.orElse(context.getDefaultTestTimeoutMillis()));
+
+    WorkerJobResult result;
+    try {
+      result =
+          pool.submitJob(Joiner.on(TestRunnerWorker.ARGS_SEPARATOR).join(jobArgs.build())).get();
+    } catch (ExecutionException e) {
+      if (e.getCause() != null) {
+        Throwables.throwIfUnchecked(e.getCause());
+      }
+      throw new RuntimeException(e);
+    }
+    return StepExecutionResult.builder()
+        .setExitCode(result.getExitCode())
+        .setStderr(result.getStderr())
+        .build();
+  }
+
   @Override
   public ImmutableMap<String, String> getEnvironmentVariables(ExecutionContext context) {
     ImmutableMap.Builder<String, String> env = ImmutableMap.builder();
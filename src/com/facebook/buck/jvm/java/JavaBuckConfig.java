@@ -247,6 +247,22 @@ public class JavaBuckConfig implements ConfigView<BuckConfig> {
     return delegate.getBooleanValue(SECTION, PROPERTY_COMPILE_AGAINST_ABIS, false);
   }
 
+  /**
+   * Whether java libraries should only compile the sources that changed since their last local
+   * build, and the sources affected by the changes, when that can be done safely.
+   */
+  public boolean shouldCompileIncrementally() {
+    return delegate.getBooleanValue(SECTION, "incremental_compilation", false);
+  }
+
+  /**
+   * Whether the source-only ABI jars of all the libraries of a build should be started before
+   * anything else, so that the libraries that compile against them are unblocked earlier.
+   */
+  public boolean shouldBuildSourceOnlyAbisFirst() {
+    return delegate.getBooleanValue(SECTION, "source_only_abi_prepass", false);
+  }
+
   public Optional<String> getDefaultCxxPlatform() {
     return delegate.getValue(SECTION, "default_cxx_platform");
   }
@@ -95,7 +95,8 @@ public class JavaConfiguredCompilerFactory extends ConfiguredCompilerFactory {
     return new JavacToJarStepFactory(
         getJavac(buildRuleResolver, arg, targetConfiguration),
         javacOptions,
-        extraClasspathProviderSupplier.apply(toolchainProvider, targetConfiguration));
+        extraClasspathProviderSupplier.apply(toolchainProvider, targetConfiguration),
+        javaBuckConfig.shouldCompileIncrementally());
   }
 
   @Override
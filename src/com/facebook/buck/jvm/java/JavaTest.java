@@ -266,7 +266,8 @@ public class JavaTest extends AbstractBuildRuleWithDeclaredAndExtraDeps
         testCaseTimeoutMs,
         Arg.stringify(env, pathResolver),
         javaRuntimeLauncher.getCommandPrefix(pathResolver),
-        args);
+        args,
+        options.getJavaTestRunnerPoolSize());
   }
 
   /** Returns the underlying java library containing the compiled tests. */
@@ -0,0 +1,512 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.jvm.java;
+
+import com.facebook.buck.core.util.log.Logger;
+import com.facebook.buck.io.filesystem.ProjectFilesystem;
+import com.facebook.buck.jvm.java.abi.StubJar;
+import com.facebook.buck.util.json.ObjectMappers;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSortedMap;
+import com.google.common.collect.ImmutableSortedSet;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import javax.annotation.Nullable;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.Opcodes;
+
+/**
+ * What {@link IncrementalJavacStep} remembers about the last successful compilation of a java
+ * library to decide which sources to compile again.
+ *
+ * <p>Besides what {@link IncrementalCompilerState} records for every compiler, this keeps the
+ * classes compiled from every source, a hash of the stub of every class, the classes that declare
+ * constants, the supertypes of the classes and the classes of the library that the classes of every
+ * source refer to. Javac resolves names and inlines constants across the whole library, so a change
+ * to the ABI of a class affects the sources that refer to it or to its subclasses, and a change to
+ * a class with constants or to the set of classes can affect any source. In the latter cases the
+ * state gives up and the whole library is compiled.
+ */
+class JavacIncrementalState {
+
+  private static final Logger LOG = Logger.get(JavacIncrementalState.class);
+
+  private static final String USED_CLASSES_FILE_NAME = "used-classes.json";
+  private static final String CLASSES_DIR_NAME = "classes";
+  private static final String COMPILE_DIR_NAME = "compile";
+  private static final String ABI_JAR_NAME = "abi.jar";
+  private static final String CLASS_FILE_EXTENSION = ".class";
+
+  private static final Pattern PACKAGE_PATTERN =
+      Pattern.compile("^\\s*package\\s+([\\w.\\s]+?)\\s*;", Pattern.MULTILINE);
+  // Matches the class names in field, method and generic signature descriptors.
+  private static final Pattern DESCRIPTOR_CLASS_PATTERN = Pattern.compile("L([^;<>()\\[]+)[;<]");
+
+  private static final int CONSTANT_UTF8 = 1;
+
+  private final ProjectFilesystem filesystem;
+  private final Path stateDir;
+  @Nullable private Index index;
+
+  private JavacIncrementalState(
+      ProjectFilesystem filesystem, Path stateDir, @Nullable Index index) {
+    this.filesystem = filesystem;
+    this.stateDir = stateDir;
+    this.index = index;
+  }
+
+  /** Loads the state recorded in the given directory, if any. */
+  static JavacIncrementalState load(ProjectFilesystem filesystem, Path stateDir) {
+    return new JavacIncrementalState(
+        filesystem,
+        stateDir,
+        IncrementalCompilerState.readIndex(filesystem, stateDir, Index.class).orElse(null));
+  }
+
+  /**
+   * Returns the sources that changed since the state was recorded, or nothing if there is no state
+   * or it cannot be used to compile the sources incrementally.
+   */
+  Optional<ImmutableSet<Path>> getChangedSources(
+      String inputsHash, ImmutableMap<Path, String> sourceHashes) {
+    return index == null ? Optional.empty() : index.getChangedSources(inputsHash, sourceHashes);
+  }
+
+  /** Whether the class usage of the last compilation was recorded. */
+  boolean hasClassUsage() {
+    return filesystem.exists(stateDir.resolve(USED_CLASSES_FILE_NAME));
+  }
+
+  /** The directory that sources which changed are compiled to. */
+  Path getCompileDir() {
+    return stateDir.resolve(COMPILE_DIR_NAME);
+  }
+
+  /** The classes of the last successful compilation. */
+  Path getClassesDir() {
+    return stateDir.resolve(CLASSES_DIR_NAME);
+  }
+
+  /**
+   * Returns the sources that were not compiled to the compile dir, but have to be compiled again
+   * because the ABI of classes they refer to changed, or nothing if it cannot be determined which
+   * sources are affected by the changes: if classes were added or removed, which might change how
+   * names resolve, or if a class with constants changed, as javac inlines constants.
+   */
+  Optional<ImmutableSet<Path>> getAffectedSources(ImmutableSet<Path> compiledSources)
+      throws IOException {
+    Index recorded = Objects.requireNonNull(index);
+    Map<String, String> oldAbiHashes = new HashMap<>();
+    for (Path source : compiledSources) {
+      for (String className : recorded.classesBySource.get(source.toString())) {
+        String abiHash = recorded.abiHashes.get(className);
+        if (abiHash != null) {
+          oldAbiHashes.put(className, abiHash);
+        }
+      }
+    }
+    Set<String> newConstantClasses = new HashSet<>();
+    Map<String, String> newAbiHashes = hashAbi(getCompileDir(), newConstantClasses);
+    if (!newAbiHashes.keySet().equals(oldAbiHashes.keySet())) {
+      return Optional.empty();
+    }
+
+    Set<String> changedClasses = new HashSet<>();
+    for (Map.Entry<String, String> entry : newAbiHashes.entrySet()) {
+      String className = entry.getKey();
+      if (entry.getValue().equals(oldAbiHashes.get(className))) {
+        continue;
+      }
+      if (newConstantClasses.contains(className)
+          || recorded.constantClasses.contains(className)) {
+        return Optional.empty();
+      }
+      changedClasses.add(className);
+    }
+    if (changedClasses.isEmpty()) {
+      return Optional.of(ImmutableSet.of());
+    }
+    addSubclasses(changedClasses, recorded.supertypes);
+
+    ImmutableSet.Builder<Path> affected = ImmutableSet.builder();
+    for (Map.Entry<String, List<String>> entry : recorded.referencesBySource.entrySet()) {
+      Path source = Paths.get(entry.getKey());
+      if (!compiledSources.contains(source)
+          && entry.getValue().stream().anyMatch(changedClasses::contains)) {
+        affected.add(source);
+      }
+    }
+    return Optional.of(affected.build());
+  }
+
+  /**
+   * The members that subclasses inherit are part of their ABI too, so the sources that refer to
+   * subclasses of a changed class have to be compiled again as well.
+   */
+  private static void addSubclasses(Set<String> classes, Map<String, List<String>> supertypes) {
+    Map<String, Set<String>> subclasses = new HashMap<>();
+    supertypes.forEach(
+        (className, classSupertypes) -> {
+          for (String supertype : classSupertypes) {
+            subclasses.computeIfAbsent(supertype, key -> new HashSet<>()).add(className);
+          }
+        });
+    Deque<String> queue = new ArrayDeque<>(classes);
+    while (!queue.isEmpty()) {
+      for (String subclass : subclasses.getOrDefault(queue.pop(), ImmutableSet.of())) {
+        if (classes.add(subclass)) {
+          queue.push(subclass);
+        }
+      }
+    }
+  }
+
+  /**
+   * Replaces the classes of the compiled sources in the recorded classes with the ones in the
+   * compile dir, and writes the result to the output directory.
+   */
+  void mergeInto(Path outputDirectory, ImmutableSet<Path> compiledSources) throws IOException {
+    Map<String, List<String>> classesBySource = Objects.requireNonNull(index).classesBySource;
+    Set<Path> staleClassFiles = new HashSet<>();
+    for (Path source : compiledSources) {
+      for (String className : classesBySource.get(source.toString())) {
+        staleClassFiles.add(getClassesDir().resolve(className + CLASS_FILE_EXTENSION));
+      }
+    }
+    copyClassFiles(getClassesDir(), outputDirectory, staleClassFiles);
+    copyClassFiles(getCompileDir(), outputDirectory, ImmutableSet.of());
+  }
+
+  /**
+   * The classes that sources which were not compiled again used are not in the class usage file of
+   * an incremental compilation, so this adds the ones recorded for the last compilation to it. This
+   * may keep classes that are no longer used, which only makes the dep file more conservative.
+   */
+  void mergeClassUsage(Path depFile) throws IOException {
+    Map<String, SortedSet<String>> merged = new TreeMap<>();
+    for (Path file : ImmutableList.of(stateDir.resolve(USED_CLASSES_FILE_NAME), depFile)) {
+      if (!filesystem.exists(file)) {
+        continue;
+      }
+      Map<String, List<String>> usedClasses =
+          ObjectMappers.readValue(
+              filesystem.resolve(file), new TypeReference<Map<String, List<String>>>() {});
+      usedClasses.forEach(
+          (jar, classes) -> merged.computeIfAbsent(jar, key -> new TreeSet<>()).addAll(classes));
+    }
+    filesystem.writeContentsToPath(ObjectMappers.WRITER.writeValueAsString(merged), depFile);
+  }
+
+  /**
+   * Records the classes in the output directory as the result of compiling the sources with the
+   * given hashes, together with the class usage of the compilation, if it was tracked. The state is
+   * discarded if a class cannot be attributed to a single source.
+   */
+  void record(
+      String inputsHash,
+      ImmutableMap<Path, String> sourceHashes,
+      Path outputDirectory,
+      Optional<Path> depFile)
+      throws IOException {
+    invalidate();
+    filesystem.mkdirs(stateDir);
+    Optional<Map<String, ClassInfo>> classes = readClasses(filesystem, outputDirectory);
+    Optional<Map<String, List<String>>> classesBySource =
+        classes.flatMap(
+            classInfos -> mapClassesToSources(filesystem, classInfos, sourceHashes.keySet()));
+    if (!classesBySource.isPresent()) {
+      LOG.debug("Not all classes in %s belong to a single source file.", outputDirectory);
+      return;
+    }
+
+    Index newIndex = new Index();
+    newIndex.setHashes(inputsHash, sourceHashes);
+    newIndex.classesBySource = ImmutableSortedMap.copyOf(classesBySource.get());
+    Set<String> constantClasses = new HashSet<>();
+    newIndex.abiHashes = ImmutableSortedMap.copyOf(hashAbi(outputDirectory, constantClasses));
+    newIndex.constantClasses = ImmutableSortedSet.copyOf(constantClasses);
+    newIndex.supertypes = new TreeMap<>();
+    newIndex.referencesBySource = new TreeMap<>();
+    Set<String> moduleClasses = classes.get().keySet();
+    for (Map.Entry<String, List<String>> entry : classesBySource.get().entrySet()) {
+      SortedSet<String> references = new TreeSet<>();
+      for (String className : entry.getValue()) {
+        ClassInfo classInfo = classes.get().get(className);
+        references.addAll(classInfo.references);
+        ImmutableList<String> supertypes =
+            classInfo.supertypes.stream()
+                .filter(moduleClasses::contains)
+                .collect(ImmutableList.toImmutableList());
+        if (!supertypes.isEmpty()) {
+          newIndex.supertypes.put(className, supertypes);
+        }
+      }
+      references.retainAll(moduleClasses);
+      references.removeAll(entry.getValue());
+      newIndex.referencesBySource.put(entry.getKey(), ImmutableList.copyOf(references));
+    }
+
+    filesystem.deleteRecursivelyIfExists(getClassesDir());
+    filesystem.mkdirs(getClassesDir());
+    // Resources are copied to the output directory by other steps, so only keep the classes.
+    copyClassFiles(outputDirectory, getClassesDir(), ImmutableSet.of());
+    if (depFile.isPresent()) {
+      filesystem.copyFile(depFile.get(), stateDir.resolve(USED_CLASSES_FILE_NAME));
+    }
+    IncrementalCompilerState.writeIndex(filesystem, stateDir, newIndex);
+    index = newIndex;
+  }
+
+  /** Discards the recorded state, so the next compilation compiles all sources. */
+  void invalidate() throws IOException {
+    index = null;
+    IncrementalCompilerState.deleteIndex(filesystem, stateDir);
+    filesystem.deleteFileAtPathIfExists(stateDir.resolve(USED_CLASSES_FILE_NAME));
+  }
+
+  /**
+   * Returns a hash of the ABI of every class in the directory that is part of the ABI of the
+   * library, and adds the classes that declare constants to the given set.
+   */
+  private Map<String, String> hashAbi(Path classesDir, Set<String> constantClasses)
+      throws IOException {
+    Path abiJar = stateDir.resolve(ABI_JAR_NAME);
+    filesystem.deleteFileAtPathIfExists(abiJar);
+    new StubJar(filesystem.resolve(classesDir)).writeTo(filesystem, abiJar);
+
+    Map<String, String> abiHashes = new HashMap<>();
+    try (ZipFile zip = new ZipFile(filesystem.resolve(abiJar).toFile())) {
+      Enumeration<? extends ZipEntry> entries = zip.entries();
+      while (entries.hasMoreElements()) {
+        ZipEntry entry = entries.nextElement();
+        if (!entry.getName().endsWith(CLASS_FILE_EXTENSION)) {
+          continue;
+        }
+        String className =
+            entry.getName().substring(0, entry.getName().length() - CLASS_FILE_EXTENSION.length());
+        byte[] stub;
+        try (InputStream stream = zip.getInputStream(entry)) {
+          stub = ByteStreams.toByteArray(stream);
+        }
+        abiHashes.put(className, Hashing.sha1().hashBytes(stub).toString());
+        if (declaresConstants(stub)) {
+          constantClasses.add(className);
+        }
+      }
+    }
+    return abiHashes;
+  }
+
+  private static boolean declaresConstants(byte[] classFile) {
+    boolean[] declaresConstants = new boolean[1];
+    new ClassReader(classFile)
+        .accept(
+            new ClassVisitor(Opcodes.ASM7) {
+              @Override
+              public FieldVisitor visitField(
+                  int access, String name, String descriptor, String signature, Object value) {
+                declaresConstants[0] |= value != null;
+                return null;
+              }
+            },
+            ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+    return declaresConstants[0];
+  }
+
+  private void copyClassFiles(Path fromDir, Path toDir, Set<Path> excluded) throws IOException {
+    IncrementalCompilerState.copyFiles(
+        filesystem,
+        fromDir,
+        toDir,
+        path -> path.toString().endsWith(CLASS_FILE_EXTENSION) && !excluded.contains(path));
+  }
+
+  /**
+   * Reads the source file attribute, the supertypes and the referenced classes of every class in
+   * the directory. Returns nothing if a class does not have a source file attribute.
+   */
+  @VisibleForTesting
+  static Optional<Map<String, ClassInfo>> readClasses(
+      ProjectFilesystem filesystem, Path classesDir) throws IOException {
+    Map<String, ClassInfo> classes = new HashMap<>();
+    for (Path classFile :
+        filesystem.getFilesUnderPath(
+            classesDir, path -> path.toString().endsWith(CLASS_FILE_EXTENSION))) {
+      byte[] bytes;
+      try (InputStream stream = filesystem.newFileInputStream(classFile)) {
+        bytes = ByteStreams.toByteArray(stream);
+      }
+      ClassInfo classInfo = ClassInfo.read(bytes);
+      if (classInfo.sourceFile == null) {
+        return Optional.empty();
+      }
+      classes.put(classInfo.name, classInfo);
+    }
+    return Optional.of(classes);
+  }
+
+  /**
+   * Maps every source to the classes compiled from it, using the package declared by the source
+   * and the source file attribute of the classes. Returns nothing if this is ambiguous, e.g.
+   * because two sources with the same name declare the same package.
+   */
+  @VisibleForTesting
+  static Optional<Map<String, List<String>>> mapClassesToSources(
+      ProjectFilesystem filesystem, Map<String, ClassInfo> classes, Iterable<Path> sources) {
+    Map<String, Path> sourcesByQualifiedName = new HashMap<>();
+    Map<String, List<String>> classesBySource = new HashMap<>();
+    for (Path source : sources) {
+      String qualifiedName =
+          getPackageDirectory(filesystem.readFileIfItExists(source).orElse(""))
+              + source.getFileName();
+      if (sourcesByQualifiedName.put(qualifiedName, source) != null) {
+        return Optional.empty();
+      }
+      classesBySource.put(source.toString(), new ArrayList<>());
+    }
+
+    for (ClassInfo classInfo : classes.values()) {
+      int packageEnd = classInfo.name.lastIndexOf('/');
+      Path source =
+          sourcesByQualifiedName.get(
+              classInfo.name.substring(0, packageEnd + 1) + classInfo.sourceFile);
+      if (source == null) {
+        return Optional.empty();
+      }
+      classesBySource.get(source.toString()).add(classInfo.name);
+    }
+    classesBySource.values().forEach(classNames -> classNames.sort(String::compareTo));
+    return Optional.of(classesBySource);
+  }
+
+  @VisibleForTesting
+  static String getPackageDirectory(String source) {
+    Matcher matcher = PACKAGE_PATTERN.matcher(source);
+    if (!matcher.find()) {
+      return "";
+    }
+    return matcher.group(1).replaceAll("\\s", "").replace('.', '/') + "/";
+  }
+
+  /** What the state needs to know about a compiled class. */
+  @VisibleForTesting
+  static class ClassInfo {
+    final String name;
+    @Nullable final String sourceFile;
+    final ImmutableList<String> supertypes;
+    /**
+     * The classes that the class might refer to: all class names in its constant pool, including
+     * the ones in descriptors and signatures. This over-approximates, e.g. a string constant that
+     * happens to be a class name counts as well, which only causes more sources to be compiled.
+     */
+    final ImmutableSet<String> references;
+
+    private ClassInfo(
+        String name,
+        @Nullable String sourceFile,
+        ImmutableList<String> supertypes,
+        ImmutableSet<String> references) {
+      this.name = name;
+      this.sourceFile = sourceFile;
+      this.supertypes = supertypes;
+      this.references = references;
+    }
+
+    static ClassInfo read(byte[] classFile) {
+      ClassReader reader = new ClassReader(classFile);
+      String[] sourceFile = new String[1];
+      reader.accept(
+          new ClassVisitor(Opcodes.ASM7) {
+            @Override
+            public void visitSource(String source, String debug) {
+              sourceFile[0] = source;
+            }
+          },
+          ClassReader.SKIP_CODE | ClassReader.SKIP_FRAMES);
+
+      ImmutableList.Builder<String> supertypes = ImmutableList.builder();
+      if (reader.getSuperName() != null) {
+        supertypes.add(reader.getSuperName());
+      }
+      supertypes.add(reader.getInterfaces());
+
+      ImmutableSet.Builder<String> references = ImmutableSet.builder();
+      for (int i = 1; i < reader.getItemCount(); i++) {
+        int offset = reader.getItem(i);
+        // Long and double constants take two entries, the second of which has no offset.
+        if (offset == 0 || reader.readByte(offset - 1) != CONSTANT_UTF8) {
+          continue;
+        }
+        String value =
+            new String(classFile, offset + 2, reader.readUnsignedShort(offset), Charsets.UTF_8);
+        references.add(value);
+        Matcher matcher = DESCRIPTOR_CLASS_PATTERN.matcher(value);
+        while (matcher.find()) {
+          references.add(matcher.group(1));
+        }
+      }
+
+      return new ClassInfo(
+          reader.getClassName(), sourceFile[0], supertypes.build(), references.build());
+    }
+  }
+
+  /** The persisted part of the state. */
+  static class Index extends IncrementalCompilerState.Index {
+    @JsonProperty("abi_hashes")
+    Map<String, String> abiHashes = ImmutableMap.of();
+
+    @JsonProperty("constant_classes")
+    Set<String> constantClasses = ImmutableSet.of();
+
+    @JsonProperty("supertypes")
+    Map<String, List<String>> supertypes = ImmutableMap.of();
+
+    @JsonProperty("references_by_source")
+    Map<String, List<String>> referencesBySource = ImmutableMap.of();
+  }
+}
@@ -44,12 +44,22 @@ public class JavacToJarStepFactory extends CompileToJarStepFactory implements Ad
   @AddToRuleKey private final Javac javac;
   @AddToRuleKey private final JavacOptions javacOptions;
   @AddToRuleKey private final ExtraClasspathProvider extraClasspathProvider;
+  private final boolean incrementalCompilation;
 
   public JavacToJarStepFactory(
       Javac javac, JavacOptions javacOptions, ExtraClasspathProvider extraClasspathProvider) {
+    this(javac, javacOptions, extraClasspathProvider, false);
+  }
+
+  public JavacToJarStepFactory(
+      Javac javac,
+      JavacOptions javacOptions,
+      ExtraClasspathProvider extraClasspathProvider,
+      boolean incrementalCompilation) {
     this.javac = javac;
     this.javacOptions = javacOptions;
     this.extraClasspathProvider = extraClasspathProvider;
+    this.incrementalCompilation = incrementalCompilation;
   }
 
   public JavacPipelineState createPipelineState(
@@ -99,6 +109,19 @@ public class JavacToJarStepFactory extends CompileToJarStepFactory implements Ad
 
     addAnnotationGenFolderStep(invokingRule, projectFilesystem, steps, buildableContext, context);
 
+    if (shouldCompileIncrementally(invokingRule, parameters)) {
+      steps.add(
+          new IncrementalJavacStep(
+              javac,
+              buildTimeOptions,
+              invokingRule,
+              context.getSourcePathResolver(),
+              projectFilesystem,
+              parameters,
+              CompilerOutputPaths.getIncrementalStatePath(invokingRule, projectFilesystem)));
+      return;
+    }
+
     steps.add(
         new JavacStep(
             javac,
@@ -112,6 +135,18 @@ public class JavacToJarStepFactory extends CompileToJarStepFactory implements Ad
             null));
   }
 
+  /**
+   * Annotation processors generate sources and resources for all sources, so libraries that use
+   * them are always compiled from scratch, as are libraries with sources that are not java files.
+   */
+  private boolean shouldCompileIncrementally(BuildTarget target, CompilerParameters parameters) {
+    return incrementalCompilation
+        && JavaAbis.isLibraryTarget(target)
+        && !hasAnnotationProcessing()
+        && parameters.getSourceFilePaths().stream()
+            .allMatch(path -> path.toString().endsWith(".java"));
+  }
+
   public final void createPipelinedCompileToJarStep(
       BuildContext context,
       ProjectFilesystem projectFilesystem,
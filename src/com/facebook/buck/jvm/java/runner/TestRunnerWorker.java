@@ -0,0 +1,348 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.jvm.java.runner;
+
+import com.facebook.buck.jvm.java.version.JavaVersion;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Runs the tests of several test rules one after another in the same JVM, acting as a Buck worker
+ * process that speaks version 0 of the worker protocol over stdin and stdout. This saves the JVM
+ * startup and JIT warm-up of the test runner for every test rule.
+ *
+ * <p>The arguments file of every job contains {@link #ARGS_SEPARATOR} separated arguments: system
+ * properties in the form {@code -Dname=value}, followed by the name of the test runner class and
+ * the arguments to pass to it. The test runner class must have a {@code public static int
+ * run(String[])} method. The classpath of a job is read from its {@link
+ * FileClassPathRunner#TESTRUNNER_CLASSES_PROPERTY} and {@link
+ * FileClassPathRunner#CLASSPATH_FILE_PROPERTY} properties and loaded by a new class loader, so
+ * classes and their static state are not shared between jobs. System properties, the standard
+ * streams and the context class loader are restored after every job.
+ *
+ * <p>Note: like {@link FileClassPathRunner}, this class only depends on classes present in the
+ * JRE.
+ */
+public class TestRunnerWorker {
+  public static final char ARGS_SEPARATOR = '\0';
+
+  private TestRunnerWorker() {
+    // Do not instantiate.
+  }
+
+  public static void main(String[] args) throws IOException {
+    // Tests must not be able to write to the stream the protocol messages are written to.
+    PrintStream protocolStream = System.out;
+    System.setOut(System.err);
+
+    MessageReader reader =
+        new MessageReader(
+            new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8)));
+    Writer writer =
+        new BufferedWriter(new OutputStreamWriter(protocolStream, StandardCharsets.UTF_8));
+
+    reader.beginArray();
+    Map<String, String> handshake = reader.nextMessage();
+    if (handshake == null || !"handshake".equals(handshake.get("type"))) {
+      throw new IOException("Expected a handshake message, got: " + handshake);
+    }
+    writer.write(
+        "[{\"id\":"
+            + handshake.get("id")
+            + ",\"type\":\"handshake\",\"protocol_version\":\"0\",\"capabilities\":[]}");
+    writer.flush();
+
+    for (Map<String, String> message = reader.nextMessage();
+        message != null;
+        message = reader.nextMessage()) {
+      String type;
+      int exitCode;
+      if ("command".equals(message.get("type"))) {
+        type = "result";
+        exitCode =
+            runJob(
+                Paths.get(message.get("args_path")),
+                Paths.get(message.get("stdout_path")),
+                Paths.get(message.get("stderr_path")));
+      } else {
+        type = "error";
+        exitCode = 1;
+      }
+      writer.write(
+          ",{\"id\":"
+              + message.get("id")
+              + ",\"type\":\""
+              + type
+              + "\",\"exit_code\":"
+              + exitCode
+              + "}");
+      writer.flush();
+    }
+    writer.write("]");
+    writer.flush();
+
+    // Exit even if tests have left behind non-daemon threads.
+    System.exit(0);
+  }
+
+  // VisibleForTesting (can not use guava as dependency)
+  static int runJob(Path argsPath, Path stdOutPath, Path stdErrPath) throws IOException {
+    List<String> jobArgs =
+        splitArgs(new String(Files.readAllBytes(argsPath), StandardCharsets.UTF_8));
+
+    Properties originalProperties = (Properties) System.getProperties().clone();
+    PrintStream originalOut = System.out;
+    PrintStream originalErr = System.err;
+    ClassLoader originalContextClassLoader = Thread.currentThread().getContextClassLoader();
+    try (PrintStream out = new PrintStream(Files.newOutputStream(stdOutPath), true, "UTF-8");
+        PrintStream err = new PrintStream(Files.newOutputStream(stdErrPath), true, "UTF-8")) {
+      System.setOut(out);
+      System.setErr(err);
+      try {
+        return runTestRunner(jobArgs);
+      } catch (InvocationTargetException e) {
+        e.getCause().printStackTrace();
+        return 1;
+      } catch (IOException | ReflectiveOperationException | RuntimeException e) {
+        e.printStackTrace();
+        return 1;
+      } finally {
+        System.setOut(originalOut);
+        System.setErr(originalErr);
+        System.setProperties(originalProperties);
+        Thread.currentThread().setContextClassLoader(originalContextClassLoader);
+      }
+    }
+  }
+
+  private static int runTestRunner(List<String> jobArgs)
+      throws IOException, ReflectiveOperationException {
+    int index = 0;
+    for (; index < jobArgs.size() && jobArgs.get(index).startsWith("-D"); index++) {
+      String property = jobArgs.get(index).substring(2);
+      int separator = property.indexOf('=');
+      if (separator < 0) {
+        System.setProperty(property, "");
+      } else {
+        System.setProperty(property.substring(0, separator), property.substring(separator + 1));
+      }
+    }
+    if (index == jobArgs.size()) {
+      throw new IllegalArgumentException("The name of the test runner class is missing.");
+    }
+    String testRunnerClassName = jobArgs.get(index);
+    String[] testRunnerArgs =
+        jobArgs.subList(index + 1, jobArgs.size()).toArray(new String[jobArgs.size() - index - 1]);
+
+    StringBuilder classPathProperty = new StringBuilder();
+    URL[] classpath = FileClassPathRunner.getClassPath(classPathProperty);
+    System.setProperty("java.class.path", classPathProperty.toString());
+
+    try (URLClassLoader classLoader = new URLClassLoader(classpath, getParentClassLoader())) {
+      Thread.currentThread().setContextClassLoader(classLoader);
+      Method run = classLoader.loadClass(testRunnerClassName).getMethod("run", String[].class);
+      return (Integer) run.invoke(null, new Object[] {testRunnerArgs});
+    }
+  }
+
+  private static ClassLoader getParentClassLoader() {
+    return JavaVersion.getMajorVersion() <= 8
+        ? ClassLoader.getSystemClassLoader().getParent()
+        : FileClassPathRunner.findPlatformClassLoader();
+  }
+
+  // VisibleForTesting (can not use guava as dependency)
+  static List<String> splitArgs(String args) {
+    List<String> result = new ArrayList<>();
+    if (args.isEmpty()) {
+      return result;
+    }
+    int start = 0;
+    for (int end = args.indexOf(ARGS_SEPARATOR);
+        end >= 0;
+        start = end + 1, end = args.indexOf(ARGS_SEPARATOR, start)) {
+      result.add(args.substring(start, end));
+    }
+    result.add(args.substring(start));
+    return result;
+  }
+
+  /**
+   * Reads the array of flat JSON objects sent by Buck to a worker process. Values of nested arrays
+   * are skipped and all other values are returned as their string representation.
+   */
+  // VisibleForTesting (can not use guava as dependency)
+  static class MessageReader {
+    private final Reader reader;
+    private int peeked = -1;
+
+    MessageReader(Reader reader) {
+      this.reader = reader;
+    }
+
+    void beginArray() throws IOException {
+      expect('[', nextNonWhitespace());
+    }
+
+    /** @return the next message, or {@code null} if the array of messages has ended. */
+    Map<String, String> nextMessage() throws IOException {
+      int c = nextNonWhitespace();
+      if (c == ',') {
+        c = nextNonWhitespace();
+      }
+      if (c == ']') {
+        return null;
+      }
+      expect('{', c);
+
+      Map<String, String> message = new HashMap<>();
+      c = nextNonWhitespace();
+      while (c != '}') {
+        expect('"', c);
+        String name = readString();
+        expect(':', nextNonWhitespace());
+        message.put(name, readValue());
+        c = nextNonWhitespace();
+        if (c == ',') {
+          c = nextNonWhitespace();
+        } else {
+          expect('}', c);
+        }
+      }
+      return message;
+    }
+
+    private String readValue() throws IOException {
+      int c = nextNonWhitespace();
+      if (c == '"') {
+        return readString();
+      }
+      if (c == '[') {
+        skipArray();
+        return "";
+      }
+      StringBuilder literal = new StringBuilder();
+      while (c != ',' && c != '}' && c != ']' && !Character.isWhitespace(c)) {
+        literal.append((char) c);
+        c = read();
+      }
+      peeked = c;
+      return literal.toString();
+    }
+
+    private void skipArray() throws IOException {
+      int depth = 1;
+      while (depth > 0) {
+        int c = read();
+        if (c == '"') {
+          readString();
+        } else if (c == '[') {
+          depth++;
+        } else if (c == ']') {
+          depth--;
+        }
+      }
+    }
+
+    private String readString() throws IOException {
+      StringBuilder result = new StringBuilder();
+      for (int c = read(); c != '"'; c = read()) {
+        if (c == '\\') {
+          c = read();
+          switch (c) {
+            case 'b':
+              c = '\b';
+              break;
+            case 'f':
+              c = '\f';
+              break;
+            case 'n':
+              c = '\n';
+              break;
+            case 'r':
+              c = '\r';
+              break;
+            case 't':
+              c = '\t';
+              break;
+            case 'u':
+              char[] hex = new char[4];
+              for (int i = 0; i < hex.length; i++) {
+                hex[i] = (char) read();
+              }
+              c = Integer.parseInt(new String(hex), 16);
+              break;
+            default:
+              // '"', '\\' and '/' stand for themselves.
+              break;
+          }
+        }
+        result.append((char) c);
+      }
+      return result.toString();
+    }
+
+    private int nextNonWhitespace() throws IOException {
+      int c = read();
+      while (Character.isWhitespace(c)) {
+        c = read();
+      }
+      return c;
+    }
+
+    private int read() throws IOException {
+      int c;
+      if (peeked >= 0) {
+        c = peeked;
+        peeked = -1;
+      } else {
+        c = reader.read();
+      }
+      if (c < 0) {
+        throw new EOFException("Unexpected end of worker protocol input.");
+      }
+      return c;
+    }
+
+    private static void expect(char expected, int actual) throws IOException {
+      if (actual != expected) {
+        throw new IOException(
+            String.format("Expected '%c' in worker protocol input, got '%c'.", expected, actual));
+      }
+    }
+  }
+}
@@ -189,8 +189,9 @@ public class JarBackedReflectedKotlinc implements Kotlinc {
 
   private Object loadCompilerShim(ExecutionContext context) {
     try {
-      ClassLoaderCache classLoaderCache = context.getClassLoaderCache();
-      classLoaderCache.addRef();
+      // The compiler shim is kept for the lifetime of the process, so this reference to the cache
+      // is never closed and keeps the class loader open.
+      ClassLoaderCache classLoaderCache = context.getClassLoaderCache().addRef();
 
       ClassLoader classLoader =
           classLoaderCache.getClassLoaderForClassPath(
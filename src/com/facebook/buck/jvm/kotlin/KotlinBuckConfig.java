@@ -39,6 +39,7 @@ public class KotlinBuckConfig implements ConfigView<BuckConfig> {
   private static final String SECTION = "kotlin";
   public static final String PROPERTY_COMPILE_AGAINST_ABIS = "compile_against_abis";
   public static final String PROPERTY_ABI_GENERATION_MODE = "abi_generation_mode";
+  public static final String PROPERTY_INCREMENTAL_COMPILATION = "incremental_compilation";
 
   private static final Path DEFAULT_KOTLIN_COMPILER = Paths.get("kotlinc");
 
@@ -81,6 +82,14 @@ public class KotlinBuckConfig implements ConfigView<BuckConfig> {
     return delegate.getBooleanValue(SECTION, PROPERTY_COMPILE_AGAINST_ABIS, false);
   }
 
+  /**
+   * Whether kotlinc should only recompile the sources that changed since the last local build of
+   * a library, as long as the ABI of the library does not change.
+   */
+  public boolean shouldCompileIncrementally() {
+    return delegate.getBooleanValue(SECTION, PROPERTY_INCREMENTAL_COMPILATION, false);
+  }
+
   public AbiGenerationMode getAbiGenerationMode() {
     return delegate
         .getEnum(SECTION, PROPERTY_ABI_GENERATION_MODE, AbiGenerationMode.class)
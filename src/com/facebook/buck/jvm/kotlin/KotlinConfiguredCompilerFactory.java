@@ -102,7 +102,8 @@ public class KotlinConfiguredCompilerFactory extends ConfiguredCompilerFactory {
         kotlinArgs.getKaptApOptions(),
         extraClasspathProviderSupplier.apply(toolchainProvider, targetConfiguration),
         getJavac(buildRuleResolver, args, targetConfiguration),
-        javacOptions);
+        javacOptions,
+        kotlinBuckConfig.shouldCompileIncrementally());
   }
 
   @Override
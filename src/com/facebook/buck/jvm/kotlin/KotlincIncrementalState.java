@@ -0,0 +1,249 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.jvm.kotlin;
+
+import com.facebook.buck.core.util.log.Logger;
+import com.facebook.buck.io.filesystem.ProjectFilesystem;
+import com.facebook.buck.jvm.java.IncrementalCompilerState;
+import com.facebook.buck.jvm.java.abi.StubJar;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSortedMap;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.function.Predicate;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import javax.annotation.Nullable;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.Opcodes;
+
+/**
+ * What {@link KotlincStep} remembers about the last successful compilation of a target, on top of
+ * what {@link IncrementalCompilerState} records for every compiler: the class files compiled from
+ * every source and a hash of the ABI of all classes. Kotlin sources are only compiled again on
+ * their own as long as that keeps the ABI of the module unchanged.
+ */
+class KotlincIncrementalState {
+
+  private static final Logger LOG = Logger.get(KotlincIncrementalState.class);
+
+  private static final String CLASSES_DIR_NAME = "classes";
+  private static final String COMPILE_DIR_NAME = "compile";
+  private static final String ABI_JAR_NAME = "abi.jar";
+  private static final String KOTLIN_MODULE_EXTENSION = ".kotlin_module";
+
+  private static final Pattern PACKAGE_PATTERN =
+      Pattern.compile("^\\s*package\\s+([\\w.`]+)", Pattern.MULTILINE);
+
+  private final ProjectFilesystem filesystem;
+  private final Path stateDir;
+  @Nullable private Index index;
+
+  private KotlincIncrementalState(
+      ProjectFilesystem filesystem, Path stateDir, @Nullable Index index) {
+    this.filesystem = filesystem;
+    this.stateDir = stateDir;
+    this.index = index;
+  }
+
+  /** Loads the state recorded in the given directory, if any. */
+  static KotlincIncrementalState load(ProjectFilesystem filesystem, Path stateDir) {
+    return new KotlincIncrementalState(
+        filesystem,
+        stateDir,
+        IncrementalCompilerState.readIndex(filesystem, stateDir, Index.class).orElse(null));
+  }
+
+  /**
+   * Returns the sources that changed since the state was recorded, or nothing if there is no state
+   * or it cannot be used to compile the sources incrementally.
+   */
+  Optional<ImmutableSet<Path>> getChangedSources(
+      String inputsHash, ImmutableMap<Path, String> sourceHashes) {
+    return index == null ? Optional.empty() : index.getChangedSources(inputsHash, sourceHashes);
+  }
+
+  /** The directory that sources which changed are compiled to. */
+  Path getCompileDir() {
+    return stateDir.resolve(COMPILE_DIR_NAME);
+  }
+
+  /** The classes of the last successful compilation. */
+  Path getClassesDir() {
+    return stateDir.resolve(CLASSES_DIR_NAME);
+  }
+
+  /**
+   * Replaces the classes of the changed sources in the recorded classes with the ones in the
+   * compile dir, and writes the result to the output directory.
+   */
+  void mergeInto(Path outputDirectory, ImmutableSet<Path> changedSources) throws IOException {
+    Map<String, List<String>> classesBySource = Objects.requireNonNull(index).classesBySource;
+    ImmutableSet.Builder<Path> staleClasses = ImmutableSet.builder();
+    for (Path source : changedSources) {
+      for (String classFile : classesBySource.getOrDefault(source.toString(), ImmutableList.of())) {
+        staleClasses.add(getClassesDir().resolve(classFile));
+      }
+    }
+    ImmutableSet<Path> excluded = staleClasses.build();
+    copyFiles(getClassesDir(), outputDirectory, path -> !excluded.contains(path));
+    // The module file lists the file facades of the whole module, and the set of sources did not
+    // change, so the recorded one stays valid.
+    copyFiles(
+        getCompileDir(),
+        outputDirectory,
+        path -> !path.toString().endsWith(KOTLIN_MODULE_EXTENSION));
+  }
+
+  /** Returns whether the ABI of the classes in the directory differs from the recorded one. */
+  boolean isAbiChanged(Path classesDir) throws IOException {
+    return index == null || !index.abiHash.equals(hashAbi(classesDir));
+  }
+
+  /**
+   * Records the classes in the output directory as the result of compiling the sources with the
+   * given hashes. The state is discarded if a class cannot be attributed to a single source.
+   */
+  void record(String inputsHash, ImmutableMap<Path, String> sourceHashes, Path outputDirectory)
+      throws IOException {
+    invalidate();
+    Optional<Map<String, List<String>>> classesBySource =
+        mapClassesToSources(filesystem, outputDirectory, sourceHashes.keySet());
+    if (!classesBySource.isPresent()) {
+      LOG.debug("Not all classes in %s belong to a single source file.", outputDirectory);
+      return;
+    }
+
+    filesystem.deleteRecursivelyIfExists(getClassesDir());
+    filesystem.mkdirs(getClassesDir());
+    // Resources are copied to the output directory by other steps, so only keep compiler outputs.
+    copyFiles(outputDirectory, getClassesDir(), KotlincIncrementalState::isCompilerOutput);
+
+    Index newIndex = new Index();
+    newIndex.setHashes(inputsHash, sourceHashes);
+    newIndex.abiHash = hashAbi(outputDirectory);
+    newIndex.classesBySource = ImmutableSortedMap.copyOf(classesBySource.get());
+    IncrementalCompilerState.writeIndex(filesystem, stateDir, newIndex);
+    index = newIndex;
+  }
+
+  /** Discards the recorded state, so the next compilation compiles all sources. */
+  void invalidate() throws IOException {
+    index = null;
+    IncrementalCompilerState.deleteIndex(filesystem, stateDir);
+  }
+
+  private String hashAbi(Path classesDir) throws IOException {
+    Path abiJar = stateDir.resolve(ABI_JAR_NAME);
+    filesystem.deleteFileAtPathIfExists(abiJar);
+    new StubJar(filesystem.resolve(classesDir)).writeTo(filesystem, abiJar);
+    return filesystem.computeSha1(abiJar).toString();
+  }
+
+  private static boolean isCompilerOutput(Path path) {
+    String fileName = path.toString();
+    return fileName.endsWith(".class") || fileName.endsWith(KOTLIN_MODULE_EXTENSION);
+  }
+
+  private void copyFiles(Path fromDir, Path toDir, Predicate<Path> included) throws IOException {
+    IncrementalCompilerState.copyFiles(filesystem, fromDir, toDir, included);
+  }
+
+  /**
+   * Maps every source to the class files compiled from it, using the package declared by the
+   * source and the source file attribute of the classes. Returns nothing if this is ambiguous, e.g.
+   * because two sources with the same name declare the same package.
+   */
+  @VisibleForTesting
+  static Optional<Map<String, List<String>>> mapClassesToSources(
+      ProjectFilesystem filesystem, Path classesDir, Iterable<Path> sources) throws IOException {
+    Map<String, Path> sourcesByQualifiedName = new HashMap<>();
+    Map<String, List<String>> classesBySource = new HashMap<>();
+    for (Path source : sources) {
+      String qualifiedName =
+          getPackageDirectory(filesystem.readFileIfItExists(source).orElse(""))
+              + source.getFileName();
+      if (sourcesByQualifiedName.put(qualifiedName, source) != null) {
+        return Optional.empty();
+      }
+      classesBySource.put(source.toString(), new ArrayList<>());
+    }
+
+    for (Path classFile :
+        filesystem.getFilesUnderPath(classesDir, path -> path.toString().endsWith(".class"))) {
+      Path relativeClassFile = classesDir.relativize(classFile);
+      Optional<String> sourceFileName = readSourceFileName(filesystem, classFile);
+      if (!sourceFileName.isPresent()) {
+        return Optional.empty();
+      }
+      Path packageDirectory = relativeClassFile.getParent();
+      Path source =
+          sourcesByQualifiedName.get(
+              (packageDirectory == null ? "" : packageDirectory.toString().replace('\\', '/') + "/")
+                  + sourceFileName.get());
+      if (source == null) {
+        return Optional.empty();
+      }
+      classesBySource.get(source.toString()).add(relativeClassFile.toString());
+    }
+    return Optional.of(classesBySource);
+  }
+
+  @VisibleForTesting
+  static String getPackageDirectory(String source) {
+    Matcher matcher = PACKAGE_PATTERN.matcher(source);
+    if (!matcher.find()) {
+      return "";
+    }
+    return matcher.group(1).replace("`", "").replace('.', '/') + "/";
+  }
+
+  private static Optional<String> readSourceFileName(ProjectFilesystem filesystem, Path classFile)
+      throws IOException {
+    String[] sourceFileName = new String[1];
+    try (InputStream stream = filesystem.newFileInputStream(classFile)) {
+      new ClassReader(stream)
+          .accept(
+              new ClassVisitor(Opcodes.ASM7) {
+                @Override
+                public void visitSource(String source, String debug) {
+                  sourceFileName[0] = source;
+                }
+              },
+              ClassReader.SKIP_CODE | ClassReader.SKIP_FRAMES);
+    }
+    return Optional.ofNullable(sourceFileName[0]);
+  }
+
+  /** The persisted part of the state. */
+  static class Index extends IncrementalCompilerState.Index {
+    @JsonProperty("abi_hash")
+    String abiHash = "";
+  }
+}
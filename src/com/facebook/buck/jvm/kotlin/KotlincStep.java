@@ -20,7 +20,9 @@ import static com.google.common.collect.Iterables.transform;
 
 import com.facebook.buck.core.build.execution.context.ExecutionContext;
 import com.facebook.buck.core.model.BuildTarget;
+import com.facebook.buck.core.util.log.Logger;
 import com.facebook.buck.io.filesystem.ProjectFilesystem;
+import com.facebook.buck.jvm.java.IncrementalCompilerState;
 import com.facebook.buck.step.Step;
 import com.facebook.buck.step.StepExecutionResult;
 import com.facebook.buck.step.StepExecutionResults;
@@ -30,17 +32,23 @@ import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Charsets;
 import com.google.common.base.Joiner;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.ImmutableSortedSet;
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.util.Optional;
+import javax.annotation.Nullable;
 
 public class KotlincStep implements Step {
 
   private static final String CLASSPATH_FLAG = "-classpath";
   private static final String DESTINATION_FLAG = "-d";
   private static final String VERBOSE_FLAG = "-verbose";
+  private static final String FRIEND_PATHS_FLAG = "-Xfriend-paths=";
+
+  private static final Logger LOG = Logger.get(KotlincStep.class);
 
   private final Kotlinc kotlinc;
   private final ImmutableSortedSet<Path> combinedClassPathEntries;
@@ -51,6 +59,7 @@ public class KotlincStep implements Step {
   private final Path pathToSrcsList;
   private final BuildTarget invokingRule;
   private final Optional<Path> workingDirectory;
+  private final Optional<Path> incrementalStateDir;
 
   KotlincStep(
       BuildTarget invokingRule,
@@ -61,7 +70,8 @@ public class KotlincStep implements Step {
       Kotlinc kotlinc,
       ImmutableList<String> extraArguments,
       ProjectFilesystem filesystem,
-      Optional<Path> workingDirectory) {
+      Optional<Path> workingDirectory,
+      Optional<Path> incrementalStateDir) {
     this.invokingRule = invokingRule;
     this.outputDirectory = outputDirectory;
     this.sourceFilePaths = sourceFilePaths;
@@ -71,6 +81,7 @@ public class KotlincStep implements Step {
     this.extraArguments = extraArguments;
     this.filesystem = filesystem;
     this.workingDirectory = workingDirectory;
+    this.incrementalStateDir = incrementalStateDir;
   }
 
   @Override
@@ -89,15 +100,11 @@ public class KotlincStep implements Step {
         ExecutionContext firstOrderContext =
             context.createSubContext(stdout, stderr, Optional.of(verbosity))) {
 
+      ImmutableList<String> options = getOptions(context, combinedClassPathEntries);
       int declaredDepsBuildResult =
-          kotlinc.buildWithClasspath(
-              firstOrderContext,
-              invokingRule,
-              getOptions(context, combinedClassPathEntries),
-              sourceFilePaths,
-              pathToSrcsList,
-              workingDirectory,
-              filesystem);
+          incrementalStateDir.isPresent()
+              ? buildIncrementally(firstOrderContext, options, incrementalStateDir.get())
+              : compile(firstOrderContext, options, sourceFilePaths);
 
       String firstOrderStderr = stderr.getContentsAsString(Charsets.UTF_8);
       Optional<String> returnedStderr;
@@ -113,6 +120,94 @@ public class KotlincStep implements Step {
     }
   }
 
+  private int compile(
+      ExecutionContext context, ImmutableList<String> options, ImmutableSortedSet<Path> sources)
+      throws InterruptedException {
+    return kotlinc.buildWithClasspath(
+        context, invokingRule, options, sources, pathToSrcsList, workingDirectory, filesystem);
+  }
+
+  /**
+   * Compiles only the sources that changed since the last build, against the classes of the last
+   * build. If that changes the ABI of the classes, sources that did not change might have to be
+   * compiled again too, so all sources are compiled instead.
+   */
+  private int buildIncrementally(
+      ExecutionContext context, ImmutableList<String> options, Path stateDir)
+      throws IOException, InterruptedException {
+    KotlincIncrementalState state = KotlincIncrementalState.load(filesystem, stateDir);
+    Optional<String> inputsHash =
+        IncrementalCompilerState.hashInputs(filesystem, options, combinedClassPathEntries);
+    ImmutableMap<Path, String> sourceHashes =
+        IncrementalCompilerState.hashSources(filesystem, sourceFilePaths);
+    Optional<ImmutableSet<Path>> changedSources =
+        inputsHash.isPresent()
+            ? state.getChangedSources(inputsHash.get(), sourceHashes)
+            : Optional.empty();
+
+    if (changedSources.isPresent()) {
+      Path compileDir = state.getCompileDir();
+      filesystem.deleteRecursivelyIfExists(compileDir);
+      filesystem.mkdirs(compileDir);
+      int exitCode =
+          changedSources.get().isEmpty()
+              ? StepExecutionResults.SUCCESS_EXIT_CODE
+              : compile(
+                  context,
+                  getIncrementalOptions(context, compileDir, state.getClassesDir()),
+                  ImmutableSortedSet.copyOf(changedSources.get()));
+      if (exitCode == StepExecutionResults.SUCCESS_EXIT_CODE) {
+        state.mergeInto(outputDirectory, changedSources.get());
+        if (!state.isAbiChanged(outputDirectory)) {
+          LOG.debug(
+              "Compiled %d of %d sources of %s incrementally.",
+              changedSources.get().size(), sourceFilePaths.size(), invokingRule);
+          state.record(inputsHash.get(), sourceHashes, outputDirectory);
+          return exitCode;
+        }
+      }
+      filesystem.deleteRecursivelyIfExists(outputDirectory);
+      filesystem.mkdirs(outputDirectory);
+    }
+
+    state.invalidate();
+    int exitCode = compile(context, options, sourceFilePaths);
+    if (exitCode == StepExecutionResults.SUCCESS_EXIT_CODE && inputsHash.isPresent()) {
+      state.record(inputsHash.get(), sourceHashes, outputDirectory);
+    }
+    return exitCode;
+  }
+
+  /**
+   * Returns the options to compile changed sources to the compile dir, against the classes of the
+   * last build. These classes are part of the module, so they are friends of the sources.
+   */
+  private ImmutableList<String> getIncrementalOptions(
+      ExecutionContext context, Path compileDir, Path classesDir) {
+    String classesDirFriendPath = filesystem.resolve(classesDir).toString();
+    ImmutableList.Builder<String> options = ImmutableList.builder();
+    boolean hasFriendPaths = false;
+    for (String option :
+        getOptions(
+            context,
+            compileDir,
+            ImmutableSortedSet.<Path>naturalOrder()
+                .add(classesDir)
+                .addAll(combinedClassPathEntries)
+                .build())) {
+      if (option.startsWith(FRIEND_PATHS_FLAG)) {
+        hasFriendPaths = true;
+        options.add(option + "," + classesDirFriendPath);
+      } else {
+        options.add(option);
+      }
+    }
+    if (!hasFriendPaths) {
+      options.add(FRIEND_PATHS_FLAG + classesDirFriendPath);
+    }
+    return options.build();
+  }
+
   @VisibleForTesting
   Kotlinc getKotlinc() {
     return kotlinc;
@@ -135,10 +230,17 @@ public class KotlincStep implements Step {
   @VisibleForTesting
   ImmutableList<String> getOptions(
       ExecutionContext context, ImmutableSortedSet<Path> buildClasspathEntries) {
+    return getOptions(context, outputDirectory, buildClasspathEntries);
+  }
+
+  private ImmutableList<String> getOptions(
+      ExecutionContext context,
+      @Nullable Path destination,
+      ImmutableSortedSet<Path> buildClasspathEntries) {
     ImmutableList.Builder<String> builder = ImmutableList.builder();
 
-    if (outputDirectory != null) {
-      builder.add(DESTINATION_FLAG, filesystem.resolve(outputDirectory).toString());
+    if (destination != null) {
+      builder.add(DESTINATION_FLAG, filesystem.resolve(destination).toString());
     }
 
     if (!buildClasspathEntries.isEmpty()) {
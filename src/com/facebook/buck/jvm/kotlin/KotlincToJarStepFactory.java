@@ -87,6 +87,7 @@ public class KotlincToJarStepFactory extends CompileToJarStepFactory implements
   @AddToRuleKey private final JavacOptions javacOptions;
   private final ImmutableSortedSet<Path> kotlinHomeLibraries;
   @Nullable private final Path abiGenerationPlugin;
+  private final boolean incrementalCompilation;
 
   private static final String PLUGIN = "-P";
   private static final String APT_MODE = "aptMode=";
@@ -120,7 +121,8 @@ public class KotlincToJarStepFactory extends CompileToJarStepFactory implements
       ImmutableMap<String, String> kaptApOptions,
       ExtraClasspathProvider extraClassPath,
       Javac javac,
-      JavacOptions javacOptions) {
+      JavacOptions javacOptions,
+      boolean incrementalCompilation) {
     this.kotlinc = kotlinc;
     this.kotlinHomeLibraries = kotlinHomeLibraries;
     this.abiGenerationPlugin = abiGenerationPlugin;
@@ -132,6 +134,7 @@ public class KotlincToJarStepFactory extends CompileToJarStepFactory implements
     this.extraClassPath = extraClassPath;
     this.javac = javac;
     this.javacOptions = Objects.requireNonNull(javacOptions);
+    this.incrementalCompilation = incrementalCompilation;
   }
 
   @Override
@@ -302,6 +305,18 @@ public class KotlincToJarStepFactory extends CompileToJarStepFactory implements
             "-P", "plugin:org.jetbrains.kotlin.jvm.abi:outputDir=" + tmpSourceAbiFolder);
       }
 
+      // Only plain Kotlin compilations can be done incrementally: kapt and the ABI generation
+      // plugin produce outputs for all sources, and Java sources are compiled by javac later.
+      Optional<Path> incrementalStateDir =
+          incrementalCompilation
+                  && annotationProcessingOptionsBuilder.build().isEmpty()
+                  && abiGenerationPlugin == null
+                  && sourceFilePaths.stream().allMatch(KOTLIN_PATH_MATCHER::matches)
+              ? Optional.of(
+                  BuildTargetPaths.getScratchPath(
+                      projectFilesystem, invokingRule, "__%s_kotlinc_incremental__"))
+              : Optional.empty();
+
       steps.add(
           new KotlincStep(
               invokingRule,
@@ -312,7 +327,8 @@ public class KotlincToJarStepFactory extends CompileToJarStepFactory implements
               kotlinc,
               extraArguments.build(),
               projectFilesystem,
-              Optional.of(parameters.getOutputPaths().getWorkingDirectory())));
+              Optional.of(parameters.getOutputPaths().getWorkingDirectory()),
+              incrementalStateDir));
 
       steps.addAll(postKotlinCompilationSteps.build());
     }
@@ -20,6 +20,7 @@ import com.facebook.buck.core.cell.Cell;
 import com.facebook.buck.core.cell.name.CanonicalCellName;
 import com.facebook.buck.core.filesystems.AbsPath;
 import com.facebook.buck.core.model.BuildTarget;
+import com.facebook.buck.core.model.TargetConfiguration;
 import com.facebook.buck.core.model.UnconfiguredBuildTarget;
 import com.facebook.buck.core.model.UnflavoredBuildTarget;
 import com.facebook.buck.core.model.targetgraph.TargetNodeMaybeIncompatible;
@@ -45,8 +46,10 @@ import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
+import java.util.WeakHashMap;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Function;
+import javax.annotation.Nullable;
 import javax.annotation.concurrent.GuardedBy;
 
 class DaemonicCellState {
@@ -81,30 +84,62 @@ class DaemonicCellState {
       this.type = type;
     }
 
+    /** Copies the nodes of the target from the base of this snapshot, unless it has its own. */
+    private void takeOverFromBase(UnflavoredBuildTarget target) {
+      Cache<K, T> baseCache = getBaseCache();
+      for (K key : baseCache.targetsCornucopia.get(target)) {
+        T node = baseCache.allComputedNodes.getIfPresent(key);
+        if (node != null && allComputedNodes.putIfAbsentAndGet(key, node) == node) {
+          targetsCornucopia.put(target, key);
+        }
+      }
+    }
+
     private void invalidateFor(UnflavoredBuildTarget target) {
       Set<K> keys = targetsCornucopia.removeAll(target);
       allComputedNodes.invalidateAll(keys);
     }
 
     public Optional<T> lookupComputedNode(K target) throws BuildTargetException {
-      try (AutoCloseableLock readLock = cachesLock.readLock()) {
-        return Optional.ofNullable(allComputedNodes.getIfPresent(target));
+      try (AutoCloseableLock baseReadLock = lockBaseForReading();
+          AutoCloseableLock readLock = cachesLock.readLock()) {
+        return Optional.ofNullable(getComputedNode(target));
       }
     }
 
     public T putComputedNodeIfNotPresent(K target, T targetNode) throws BuildTargetException {
-      try (AutoCloseableLock writeLock = cachesLock.writeLock()) {
+      try (AutoCloseableLock baseReadLock = lockBaseForReading();
+          AutoCloseableLock writeLock = cachesLock.writeLock()) {
+        UnflavoredBuildTarget unflavoredTarget = type.keyToUnflavoredBuildTargetView.apply(target);
+        T baseNode =
+            readsThroughFor(unflavoredTarget) ? getBaseCache().getComputedNode(target) : null;
+        if (baseNode != null) {
+          return baseNode;
+        }
         T updatedNode = allComputedNodes.putIfAbsentAndGet(target, targetNode);
         Preconditions.checkState(
-            allRawNodeTargets.contains(type.keyToUnflavoredBuildTargetView.apply(target)),
+            isRawNodeTarget(unflavoredTarget),
             "Added %s to computed nodes, which isn't present in raw nodes",
             target);
         if (updatedNode.equals(targetNode)) {
-          targetsCornucopia.put(type.keyToUnflavoredBuildTargetView.apply(target), target);
+          targetsCornucopia.put(unflavoredTarget, target);
         }
         return updatedNode;
       }
     }
+
+    @Nullable
+    private T getComputedNode(K target) {
+      T node = allComputedNodes.getIfPresent(target);
+      if (node == null && readsThroughFor(type.keyToUnflavoredBuildTargetView.apply(target))) {
+        node = getBaseCache().getComputedNode(target);
+      }
+      return node;
+    }
+
+    private Cache<K, T> getBaseCache() {
+      return type.getCache.apply(Objects.requireNonNull(base));
+    }
   }
 
   private final AbsPath cellRoot;
@@ -156,6 +191,14 @@ class DaemonicCellState {
   @GuardedBy("cachesLock")
   private final Set<UnflavoredBuildTarget> allRawNodeTargets;
 
+  /**
+   * Indexes of inputs to their owning target nodes by build file path and the target configuration
+   * used to configure the nodes. Entries are removed together with the nodes of the build file.
+   */
+  @GuardedBy("cachesLock")
+  private final Map<AbsPath, Map<Optional<TargetConfiguration>, InputOwnersIndex>>
+      inputOwnersIndexes;
+
   /** Type-safe accessor to one of state caches */
   static class CellCacheType<K, T> {
     private final Function<DaemonicCellState, Cache<K, T>> getCache;
@@ -200,7 +243,36 @@ class DaemonicCellState {
   private final AutoCloseableReadWriteUpdateLock cachesLock;
   private final int parsingThreads;
 
+  /**
+   * The state this one is a snapshot of, or null. Lookups which miss in a snapshot read through to
+   * its base, except for the files and targets the snapshot shadows. The lock of the base is always
+   * taken before the lock of the snapshot.
+   */
+  @Nullable private final DaemonicCellState base;
+
+  /**
+   * The snapshots of this state, which it hands the entries of a file over to before removing
+   * them. Snapshots are dropped once the commands using them are done with them.
+   */
+  @GuardedBy("cachesLock")
+  private final Set<DaemonicCellState> snapshots = Collections.newSetFromMap(new WeakHashMap<>());
+
+  /**
+   * The files, and the targets defined in them, which this snapshot has its own entries for, either
+   * handed over by its base before they were removed from it, or invalidated by the snapshot.
+   */
+  @GuardedBy("cachesLock")
+  private final Set<AbsPath> shadowedFiles = new HashSet<>();
+
+  @GuardedBy("cachesLock")
+  private final Set<UnflavoredBuildTarget> shadowedTargets = new HashSet<>();
+
   DaemonicCellState(Cell cell, int parsingThreads) {
+    this(cell, parsingThreads, null);
+  }
+
+  private DaemonicCellState(Cell cell, int parsingThreads, @Nullable DaemonicCellState base) {
+    this.base = base;
     this.cell = new AtomicReference<>(cell);
     this.parsingThreads = parsingThreads;
     this.cellRoot = cell.getRoot();
@@ -211,11 +283,116 @@ class DaemonicCellState {
     this.allBuildFileManifests = new ConcurrentMapCache<>(parsingThreads);
     this.allPackageFileManifests = new ConcurrentMapCache<>(parsingThreads);
     this.allRawNodeTargets = new HashSet<>();
+    this.inputOwnersIndexes = new HashMap<>();
     this.cachesLock = new AutoCloseableReadWriteUpdateLock();
     this.targetNodeCache = new Cache<>(TARGET_NODE_CACHE_TYPE);
     this.rawTargetNodeCache = new Cache<>(RAW_TARGET_NODE_CACHE_TYPE);
   }
 
+  /**
+   * Returns a snapshot of this state, which later changes to this state don't affect. Taking it
+   * copies nothing: the snapshot reads through to this state, which hands the entries of a file
+   * over to its snapshots before it removes them. Changes to the snapshot don't affect this state.
+   *
+   * <p>The snapshot doesn't track which build files include which extension files, as only its base
+   * is invalidated by changes to files.
+   */
+  DaemonicCellState snapshot() {
+    Preconditions.checkState(base == null, "Can't take a snapshot of a snapshot.");
+    DaemonicCellState snapshot = new DaemonicCellState(getCell(), parsingThreads, this);
+    try (AutoCloseableLock writeLock = cachesLock.writeLock()) {
+      snapshots.add(snapshot);
+    }
+    return snapshot;
+  }
+
+  /**
+   * Takes the read lock of the base of this snapshot, which has to be taken before the lock of the
+   * snapshot. Returns null, which try-with-resources skips, if this state isn't a snapshot.
+   */
+  @Nullable
+  private AutoCloseableLock lockBaseForReading() {
+    return base == null ? null : base.cachesLock.readLock();
+  }
+
+  @GuardedBy("cachesLock")
+  private boolean readsThroughFor(AbsPath file) {
+    return base != null && !shadowedFiles.contains(file);
+  }
+
+  @GuardedBy("cachesLock")
+  private boolean readsThroughFor(UnflavoredBuildTarget target) {
+    return base != null && !shadowedTargets.contains(target);
+  }
+
+  @GuardedBy("cachesLock")
+  private boolean isRawNodeTarget(UnflavoredBuildTarget target) {
+    return allRawNodeTargets.contains(target)
+        || (readsThroughFor(target)
+            && Objects.requireNonNull(base).allRawNodeTargets.contains(target));
+  }
+
+  /** Hands the entries of the file over to the snapshots of this state, before removing them. */
+  @GuardedBy("cachesLock")
+  private void handOverToSnapshots(AbsPath file) {
+    if (snapshots.isEmpty()
+        || (allBuildFileManifests.getIfPresent(file) == null
+            && allPackageFileManifests.getIfPresent(file) == null
+            && !buildFileEnv.containsKey(file)
+            && !inputOwnersIndexes.containsKey(file))) {
+      return;
+    }
+    for (DaemonicCellState snapshot : snapshots) {
+      try (AutoCloseableLock snapshotWriteLock = snapshot.cachesLock.writeLock()) {
+        snapshot.takeOverFromBase(file);
+      }
+    }
+  }
+
+  /**
+   * Copies the entries of the file, and of the targets defined in it, from the base of this
+   * snapshot, unless it has its own, and stops reading through to the base for them.
+   */
+  @GuardedBy("cachesLock")
+  private void takeOverFromBase(AbsPath file) {
+    DaemonicCellState base = Objects.requireNonNull(this.base);
+    if (!shadowedFiles.add(file)) {
+      return;
+    }
+    BuildFileManifest buildFileManifest = base.allBuildFileManifests.getIfPresent(file);
+    if (buildFileManifest != null) {
+      allBuildFileManifests.putIfAbsentAndGet(file, buildFileManifest);
+      for (Map<String, Object> node : buildFileManifest.getTargets().values()) {
+        UnflavoredBuildTarget target =
+            UnflavoredBuildTargetFactory.createFromRawNode(
+                cellRoot.getPath(), cellCanonicalName, node, file.getPath());
+        if (base.allRawNodeTargets.contains(target)) {
+          allRawNodeTargets.add(target);
+        }
+        if (shadowedTargets.add(target)) {
+          for (Cache<?, ?> cache : typedNodeCaches()) {
+            cache.takeOverFromBase(target);
+          }
+        }
+      }
+    }
+    PackageFileManifest packageFileManifest = base.allPackageFileManifests.getIfPresent(file);
+    if (packageFileManifest != null) {
+      allPackageFileManifests.putIfAbsentAndGet(file, packageFileManifest);
+    }
+    ImmutableMap<String, Optional<String>> env = base.buildFileEnv.get(file);
+    if (env != null) {
+      buildFileEnv.putIfAbsent(file, env);
+    }
+    Map<Optional<TargetConfiguration>, InputOwnersIndex> indexes =
+        base.inputOwnersIndexes.get(file);
+    if (indexes != null) {
+      Map<Optional<TargetConfiguration>, InputOwnersIndex> ownIndexes =
+          inputOwnersIndexes.computeIfAbsent(file, ignored -> new HashMap<>());
+      indexes.forEach(ownIndexes::putIfAbsent);
+    }
+  }
+
   // TODO(mzlee): Only needed for invalidateBasedOn which does not have access to cell metadata
   Cell getCell() {
     return Objects.requireNonNull(cell.get());
@@ -230,9 +407,20 @@ class DaemonicCellState {
   }
 
   Optional<BuildFileManifest> lookupBuildFileManifest(AbsPath buildFile) {
-    try (AutoCloseableLock readLock = cachesLock.readLock()) {
-      return Optional.ofNullable(allBuildFileManifests.getIfPresent(buildFile));
+    try (AutoCloseableLock baseReadLock = lockBaseForReading();
+        AutoCloseableLock readLock = cachesLock.readLock()) {
+      return Optional.ofNullable(getBuildFileManifest(buildFile));
+    }
+  }
+
+  @GuardedBy("cachesLock")
+  @Nullable
+  private BuildFileManifest getBuildFileManifest(AbsPath buildFile) {
+    BuildFileManifest manifest = allBuildFileManifests.getIfPresent(buildFile);
+    if (manifest == null && readsThroughFor(buildFile)) {
+      manifest = Objects.requireNonNull(base).allBuildFileManifests.getIfPresent(buildFile);
     }
+    return manifest;
   }
 
   BuildFileManifest putBuildFileManifestIfNotPresent(
@@ -240,7 +428,15 @@ class DaemonicCellState {
       BuildFileManifest buildFileManifest,
       ImmutableSet<AbsPath> dependentsOfEveryNode,
       ImmutableMap<String, Optional<String>> env) {
-    try (AutoCloseableLock writeLock = cachesLock.writeLock()) {
+    try (AutoCloseableLock baseReadLock = lockBaseForReading();
+        AutoCloseableLock writeLock = cachesLock.writeLock()) {
+      if (readsThroughFor(buildFile)) {
+        BuildFileManifest baseManifest =
+            Objects.requireNonNull(base).allBuildFileManifests.getIfPresent(buildFile);
+        if (baseManifest != null) {
+          return baseManifest;
+        }
+      }
       BuildFileManifest updated =
           allBuildFileManifests.putIfAbsentAndGet(buildFile, buildFileManifest);
       for (Map<String, Object> node : updated.getTargets().values()) {
@@ -261,9 +457,20 @@ class DaemonicCellState {
   }
 
   Optional<PackageFileManifest> lookupPackageFileManifest(AbsPath packageFile) {
-    try (AutoCloseableLock readLock = cachesLock.readLock()) {
-      return Optional.ofNullable(allPackageFileManifests.getIfPresent(packageFile));
+    try (AutoCloseableLock baseReadLock = lockBaseForReading();
+        AutoCloseableLock readLock = cachesLock.readLock()) {
+      return Optional.ofNullable(getPackageFileManifest(packageFile));
+    }
+  }
+
+  @GuardedBy("cachesLock")
+  @Nullable
+  private PackageFileManifest getPackageFileManifest(AbsPath packageFile) {
+    PackageFileManifest manifest = allPackageFileManifests.getIfPresent(packageFile);
+    if (manifest == null && readsThroughFor(packageFile)) {
+      manifest = Objects.requireNonNull(base).allPackageFileManifests.getIfPresent(packageFile);
     }
+    return manifest;
   }
 
   PackageFileManifest putPackageFileManifestIfNotPresent(
@@ -271,7 +478,15 @@ class DaemonicCellState {
       PackageFileManifest packageFileManifest,
       ImmutableSet<AbsPath> packageDependents,
       ImmutableMap<String, Optional<String>> env) {
-    try (AutoCloseableLock writeLock = cachesLock.writeLock()) {
+    try (AutoCloseableLock baseReadLock = lockBaseForReading();
+        AutoCloseableLock writeLock = cachesLock.writeLock()) {
+      if (readsThroughFor(packageFile)) {
+        PackageFileManifest baseManifest =
+            Objects.requireNonNull(base).allPackageFileManifests.getIfPresent(packageFile);
+        if (baseManifest != null) {
+          return baseManifest;
+        }
+      }
       PackageFileManifest updated =
           allPackageFileManifests.putIfAbsentAndGet(packageFile, packageFileManifest);
       buildFileEnv.put(packageFile, env);
@@ -286,6 +501,32 @@ class DaemonicCellState {
     }
   }
 
+  Optional<InputOwnersIndex> lookupInputOwnersIndex(
+      AbsPath buildFile, Optional<TargetConfiguration> targetConfiguration) {
+    try (AutoCloseableLock baseReadLock = lockBaseForReading();
+        AutoCloseableLock readLock = cachesLock.readLock()) {
+      Map<Optional<TargetConfiguration>, InputOwnersIndex> indexes =
+          inputOwnersIndexes.get(buildFile);
+      InputOwnersIndex index = indexes == null ? null : indexes.get(targetConfiguration);
+      if (index == null && readsThroughFor(buildFile)) {
+        indexes = Objects.requireNonNull(base).inputOwnersIndexes.get(buildFile);
+        index = indexes == null ? null : indexes.get(targetConfiguration);
+      }
+      return Optional.ofNullable(index);
+    }
+  }
+
+  void putInputOwnersIndex(
+      AbsPath buildFile,
+      Optional<TargetConfiguration> targetConfiguration,
+      InputOwnersIndex inputOwnersIndex) {
+    try (AutoCloseableLock writeLock = cachesLock.writeLock()) {
+      inputOwnersIndexes
+          .computeIfAbsent(buildFile, ignored -> new HashMap<>())
+          .put(targetConfiguration, inputOwnersIndex);
+    }
+  }
+
   /**
    * Invalidates all target nodes defined in {@param path}. Optionally also invalidates the build
    * targets {@link UnflavoredBuildTarget} depending on {@param invalidateBuildTargets}.
@@ -293,7 +534,13 @@ class DaemonicCellState {
    * @return The number of invalidated nodes.
    */
   int invalidateNodesInPath(AbsPath path, boolean invalidateBuildTargets) {
-    try (AutoCloseableLock writeLock = cachesLock.writeLock()) {
+    try (AutoCloseableLock baseReadLock = lockBaseForReading();
+        AutoCloseableLock writeLock = cachesLock.writeLock()) {
+      if (base != null) {
+        takeOverFromBase(path);
+      }
+      handOverToSnapshots(path);
+      inputOwnersIndexes.remove(path);
       int invalidatedRawNodes = 0;
       BuildFileManifest buildFileManifest = allBuildFileManifests.getIfPresent(path);
       if (buildFileManifest != null) {
@@ -336,7 +583,12 @@ class DaemonicCellState {
    * @return Count of all invalidated raw nodes for the path
    */
   int invalidatePath(AbsPath path) {
-    try (AutoCloseableLock writeLock = cachesLock.writeLock()) {
+    try (AutoCloseableLock baseReadLock = lockBaseForReading();
+        AutoCloseableLock writeLock = cachesLock.writeLock()) {
+      if (base != null) {
+        takeOverFromBase(path);
+      }
+      handOverToSnapshots(path);
       // If `path` is a build file with a valid entry in `allBuildFileManifests`, we also want to
       // invalidate the build targets in the manifest.
       int invalidatedRawNodes = invalidateNodesInPath(path, true);
@@ -387,8 +639,12 @@ class DaemonicCellState {
   Optional<MapDifference<String, String>> invalidateIfEnvHasChanged(Cell cell, AbsPath buildFile) {
     // Invalidate if env vars have changed.
     ImmutableMap<String, Optional<String>> usedEnv;
-    try (AutoCloseableLock readLock = cachesLock.readLock()) {
+    try (AutoCloseableLock baseReadLock = lockBaseForReading();
+        AutoCloseableLock readLock = cachesLock.readLock()) {
       usedEnv = buildFileEnv.get(buildFile);
+      if (usedEnv == null && readsThroughFor(buildFile)) {
+        usedEnv = Objects.requireNonNull(base).buildFileEnv.get(buildFile);
+      }
     }
     if (usedEnv == null) {
       this.cell.set(cell);
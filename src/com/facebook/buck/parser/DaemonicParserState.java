@@ -23,8 +23,10 @@ import com.facebook.buck.core.filesystems.AbsPath;
 import com.facebook.buck.core.filesystems.RelPath;
 import com.facebook.buck.core.model.BuildFileTree;
 import com.facebook.buck.core.model.BuildTarget;
+import com.facebook.buck.core.model.TargetConfiguration;
 import com.facebook.buck.core.model.UnconfiguredBuildTarget;
 import com.facebook.buck.core.model.impl.FilesystemBackedBuildFileTree;
+import com.facebook.buck.core.model.targetgraph.TargetNode;
 import com.facebook.buck.core.model.targetgraph.TargetNodeMaybeIncompatible;
 import com.facebook.buck.core.model.targetgraph.raw.UnconfiguredTargetNode;
 import com.facebook.buck.core.util.log.Logger;
@@ -41,6 +43,7 @@ import com.facebook.buck.parser.api.PackageFileManifest;
 import com.facebook.buck.parser.config.ParserConfig;
 import com.facebook.buck.parser.exceptions.BuildFileParseException;
 import com.facebook.buck.parser.exceptions.BuildTargetException;
+import com.facebook.buck.skylark.parser.SkylarkExtensionCache;
 import com.facebook.buck.util.concurrent.AutoCloseableLock;
 import com.facebook.buck.util.concurrent.AutoCloseableReadWriteLock;
 import com.google.common.annotations.VisibleForTesting;
@@ -355,6 +358,9 @@ public class DaemonicParserState {
 
   private final DaemonicPackageCache packageFileCache;
 
+  /** Evaluated Skylark extensions shared by all Skylark parsers created by the daemon. */
+  private final SkylarkExtensionCache skylarkExtensionCache;
+
   private final int parsingThreads;
 
   private final LoadingCache<Cell, BuildFileTree> buildFileTrees;
@@ -410,15 +416,74 @@ public class DaemonicParserState {
 
     this.rawNodeCache = new DaemonicRawCacheView();
     this.packageFileCache = new DaemonicPackageCache();
+    this.skylarkExtensionCache = new SkylarkExtensionCache();
 
     this.cachedStateLock = new AutoCloseableReadWriteLock();
     this.cellStateLock = new AutoCloseableReadWriteLock();
   }
 
+  /**
+   * Returns a snapshot of this state, for a command which has to see the build files as they were
+   * parsed so far while other commands keep updating this state, e.g. a read-only command running
+   * alongside a build. The snapshot isn't subscribed to file system events, so it only sees the
+   * changes known when it was taken, and what the command parses itself.
+   *
+   * <p>Taking the snapshot doesn't copy the cached nodes: the snapshots of the cell states read
+   * through to them, which hand the entries of a build file over to their snapshots before
+   * invalidating them (see {@link DaemonicCellState#snapshot()}).
+   */
+  public DaemonicParserState snapshot() {
+    DaemonicParserState snapshot = new DaemonicParserState(parsingThreads);
+    // Invalidations only hold the read lock of the cell states, so take the write lock to take the
+    // snapshots of all the cells at the same point. This only registers a snapshot with each cell.
+    try (AutoCloseableLock writeLock = cellStateLock.writeLock()) {
+      cellPathToDaemonicState.forEach(
+          (cellRoot, state) -> snapshot.cellPathToDaemonicState.put(cellRoot, state.snapshot()));
+      snapshot.configurationBuildFiles.addAll(configurationBuildFiles);
+      snapshot.buildFileTrees.putAll(buildFileTrees.asMap());
+    }
+    try (AutoCloseableLock readLock = cachedStateLock.readLock()) {
+      snapshot.cachedIncludes.putAll(cachedIncludes);
+    }
+    return snapshot;
+  }
+
   LoadingCache<Cell, BuildFileTree> getBuildFileTrees() {
     return buildFileTrees;
   }
 
+  /**
+   * @return the {@link BuildFileTree} of the given cell, which is kept until a build file is added
+   *     to or removed from the cell.
+   */
+  public BuildFileTree getBuildFileTree(Cell cell) {
+    return buildFileTrees.getUnchecked(cell);
+  }
+
+  /**
+   * Returns an index of the inputs of {@code targetNodes}, which are all target nodes defined in
+   * {@code buildFile} and configured using {@code targetConfiguration}.
+   *
+   * <p>The index is reused by subsequent calls until the build file is invalidated, as long as the
+   * same node instances are provided, which is the case when the nodes are served from the parser
+   * caches.
+   */
+  public InputOwnersIndex getInputOwnersIndex(
+      Cell cell,
+      AbsPath buildFile,
+      Optional<TargetConfiguration> targetConfiguration,
+      ImmutableList<TargetNode<?>> targetNodes) {
+    DaemonicCellState state = getOrCreateCellState(cell);
+    Optional<InputOwnersIndex> cachedIndex =
+        state.lookupInputOwnersIndex(buildFile, targetConfiguration);
+    if (cachedIndex.isPresent() && cachedIndex.get().isIndexOf(targetNodes)) {
+      return cachedIndex.get();
+    }
+    InputOwnersIndex index = InputOwnersIndex.of(targetNodes);
+    state.putInputOwnersIndex(buildFile, targetConfiguration, index);
+    return index;
+  }
+
   /** Type-safe accessor to one of state caches */
   static final class CacheType<K, T> {
     private final Function<DaemonicParserState, DaemonicCacheView<K, T>> getCacheView;
@@ -451,6 +516,10 @@ public class DaemonicParserState {
     return packageFileCache;
   }
 
+  public SkylarkExtensionCache getSkylarkExtensionCache() {
+    return skylarkExtensionCache;
+  }
+
   @VisibleForTesting
   PipelineNodeCache.Cache<BuildTarget, TargetNodeMaybeIncompatible> getTargetNodeCache() {
     return targetNodeCache;
@@ -565,6 +634,7 @@ public class DaemonicParserState {
         invalidatePath(state, path);
       }
     }
+    skylarkExtensionCache.invalidatePath(path.toString());
   }
 
   /**
@@ -709,6 +779,7 @@ public class DaemonicParserState {
     try (AutoCloseableLock writeLock = cellStateLock.writeLock()) {
       boolean invalidated = cellPathToDaemonicState.containsKey(cell.getRoot());
       cellPathToDaemonicState.remove(cell.getRoot());
+      skylarkExtensionCache.invalidateCell(cell.getRoot());
       if (invalidated) {
         LOG.debug("Cell cache data invalidated.");
       } else {
@@ -726,6 +797,7 @@ public class DaemonicParserState {
       cellPathToDaemonicState.clear();
       buildFileTrees.invalidateAll();
       configurationBuildFiles.clear();
+      skylarkExtensionCache.invalidateAll();
       if (invalidated) {
         LOG.debug("Cache data invalidated.");
       } else {
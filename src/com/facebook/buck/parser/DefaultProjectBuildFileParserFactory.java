@@ -46,6 +46,7 @@ import com.facebook.buck.skylark.io.impl.HybridGlobberFactory;
 import com.facebook.buck.skylark.io.impl.NativeGlobber;
 import com.facebook.buck.skylark.io.impl.SyncCookieState;
 import com.facebook.buck.skylark.parser.BuckGlobals;
+import com.facebook.buck.skylark.parser.SkylarkExtensionCache;
 import com.facebook.buck.skylark.parser.RuleFunctionFactory;
 import com.facebook.buck.skylark.parser.SkylarkProjectBuildFileParser;
 import com.facebook.buck.util.Console;
@@ -68,6 +69,7 @@ public class DefaultProjectBuildFileParserFactory implements ProjectBuildFilePar
   private final KnownRuleTypesProvider knownRuleTypesProvider;
   private final boolean enableProfiling;
   private final Optional<AtomicLong> processedBytes;
+  private final SkylarkExtensionCache skylarkExtensionCache;
 
   public DefaultProjectBuildFileParserFactory(
       TypeCoercerFactory typeCoercerFactory,
@@ -75,13 +77,49 @@ public class DefaultProjectBuildFileParserFactory implements ProjectBuildFilePar
       ParserPythonInterpreterProvider pythonInterpreterProvider,
       KnownRuleTypesProvider knownRuleTypesProvider,
       boolean enableProfiling,
-      Optional<AtomicLong> processedBytes) {
+      Optional<AtomicLong> processedBytes,
+      SkylarkExtensionCache skylarkExtensionCache) {
     this.typeCoercerFactory = typeCoercerFactory;
     this.console = console;
     this.pythonInterpreterProvider = pythonInterpreterProvider;
     this.knownRuleTypesProvider = knownRuleTypesProvider;
     this.enableProfiling = enableProfiling;
     this.processedBytes = processedBytes;
+    this.skylarkExtensionCache = skylarkExtensionCache;
+  }
+
+  public DefaultProjectBuildFileParserFactory(
+      TypeCoercerFactory typeCoercerFactory,
+      Console console,
+      ParserPythonInterpreterProvider pythonInterpreterProvider,
+      KnownRuleTypesProvider knownRuleTypesProvider,
+      boolean enableProfiling,
+      Optional<AtomicLong> processedBytes) {
+    this(
+        typeCoercerFactory,
+        console,
+        pythonInterpreterProvider,
+        knownRuleTypesProvider,
+        enableProfiling,
+        processedBytes,
+        new SkylarkExtensionCache());
+  }
+
+  public DefaultProjectBuildFileParserFactory(
+      TypeCoercerFactory typeCoercerFactory,
+      ParserPythonInterpreterProvider pythonInterpreterProvider,
+      boolean enableProfiling,
+      Optional<AtomicLong> processedBytes,
+      KnownRuleTypesProvider knownRuleTypesProvider,
+      SkylarkExtensionCache skylarkExtensionCache) {
+    this(
+        typeCoercerFactory,
+        Console.createNullConsole(),
+        pythonInterpreterProvider,
+        knownRuleTypesProvider,
+        enableProfiling,
+        processedBytes,
+        skylarkExtensionCache);
   }
 
   public DefaultProjectBuildFileParserFactory(
@@ -201,7 +239,8 @@ public class DefaultProjectBuildFileParserFactory implements ProjectBuildFilePar
               knownRuleTypesProvider.getUserDefinedRuleTypes(cell),
               eventBus,
               buildFileParserOptions,
-              parserConfig.getSkylarkGlobHandler());
+              parserConfig.getSkylarkGlobHandler(),
+              skylarkExtensionCache);
       Optional<UserDefinedRuleLoader> udrLoader = Optional.empty();
       if (parserConfig.getUserDefinedRulesState() == UserDefinedRulesState.ENABLED) {
         udrLoader = Optional.of(skylark);
@@ -231,7 +270,8 @@ public class DefaultProjectBuildFileParserFactory implements ProjectBuildFilePar
                   knownRuleTypesProvider.getUserDefinedRuleTypes(cell),
                   eventBus,
                   buildFileParserOptions,
-                  parserConfig.getSkylarkGlobHandler());
+                  parserConfig.getSkylarkGlobHandler(),
+                  skylarkExtensionCache);
           break;
         case PYTHON_DSL:
           parser =
@@ -288,7 +328,8 @@ public class DefaultProjectBuildFileParserFactory implements ProjectBuildFilePar
       KnownUserDefinedRuleTypes knownUserDefinedRuleTypes,
       BuckEventBus eventBus,
       ProjectBuildFileParserOptions buildFileParserOptions,
-      SkylarkGlobHandler skylarkGlobHandler) {
+      SkylarkGlobHandler skylarkGlobHandler,
+      SkylarkExtensionCache skylarkExtensionCache) {
     GlobberFactory globberFactory;
     try {
       globberFactory = getSkylarkGlobberFactory(buildFileParserOptions, skylarkGlobHandler);
@@ -336,7 +377,8 @@ public class DefaultProjectBuildFileParserFactory implements ProjectBuildFilePar
               SkylarkFilesystem.using(cell.getFilesystem()),
               buckGlobals,
               eventHandler,
-              globberFactory);
+              globberFactory,
+              skylarkExtensionCache);
 
       // All built-ins should have already been discovered. Freezing improves performance by
       // avoiding synchronization during query operations. This operation is idempotent, so it's
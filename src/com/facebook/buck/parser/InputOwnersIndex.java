@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.parser;
+
+import com.facebook.buck.core.model.targetgraph.TargetNode;
+import com.facebook.buck.core.path.ForwardRelativePath;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSetMultimap;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Index from the inputs of the target nodes defined in a single build file to the nodes that own
+ * them.
+ *
+ * <p>Instances are kept by {@link DaemonicParserState} until the build file is invalidated, so
+ * repeated owner lookups do not need to scan the inputs of every target node again.
+ */
+public class InputOwnersIndex {
+
+  private final ImmutableList<TargetNode<?>> targetNodes;
+  private final ImmutableSetMultimap<ForwardRelativePath, TargetNode<?>> ownersByInput;
+
+  private InputOwnersIndex(
+      ImmutableList<TargetNode<?>> targetNodes,
+      ImmutableSetMultimap<ForwardRelativePath, TargetNode<?>> ownersByInput) {
+    this.targetNodes = targetNodes;
+    this.ownersByInput = ownersByInput;
+  }
+
+  /** Creates an index of the inputs of the provided target nodes. */
+  public static InputOwnersIndex of(ImmutableList<TargetNode<?>> targetNodes) {
+    ImmutableSetMultimap.Builder<ForwardRelativePath, TargetNode<?>> ownersByInput =
+        ImmutableSetMultimap.builder();
+    for (TargetNode<?> targetNode : targetNodes) {
+      for (ForwardRelativePath input : targetNode.getInputs()) {
+        ownersByInput.put(input, targetNode);
+      }
+    }
+    return new InputOwnersIndex(targetNodes, ownersByInput.build());
+  }
+
+  /** @return {@code true} if no target nodes were indexed. */
+  public boolean isEmpty() {
+    return targetNodes.isEmpty();
+  }
+
+  /**
+   * @return {@code true} if this index was created from exactly the provided target node
+   *     instances, in the same order.
+   */
+  boolean isIndexOf(List<TargetNode<?>> nodes) {
+    if (nodes.size() != targetNodes.size()) {
+      return false;
+    }
+    for (int i = 0; i < nodes.size(); i++) {
+      if (nodes.get(i) != targetNodes.get(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Returns the target nodes that own a file with the given cell relative path, i.e. nodes that
+   * have the file itself, or one of the directories containing it, as an input.
+   */
+  public ImmutableSet<TargetNode<?>> getOwners(ForwardRelativePath file) {
+    ImmutableSet.Builder<TargetNode<?>> owners = ImmutableSet.builder();
+    Optional<ForwardRelativePath> path = Optional.of(file);
+    while (path.isPresent() && !path.get().isEmpty()) {
+      owners.addAll(ownersByInput.get(path.get()));
+      path = path.get().parent();
+    }
+    return owners.build();
+  }
+}
@@ -116,7 +116,8 @@ public class PerBuildStateFactory {
             parserPythonInterpreterProvider,
             parsingContext.isProfilingEnabled(),
             parseProcessedBytes,
-            knownRuleTypesProvider);
+            knownRuleTypesProvider,
+            daemonicParserState.getSkylarkExtensionCache());
     ProjectBuildFileParserPool projectBuildFileParserPool =
         new ProjectBuildFileParserPool(
             numParsingThreads, // Max parsers to create per cell.
@@ -33,6 +33,8 @@ package com.facebook.buck.query;
 import com.facebook.buck.core.model.QueryTarget;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterables;
+import java.util.LinkedHashSet;
 import java.util.Objects;
 import java.util.Set;
 import java.util.function.Consumer;
@@ -249,6 +251,41 @@ public interface QueryEnvironment<NODE_TYPE> {
    */
   Set<NODE_TYPE> getTransitiveClosure(Set<NODE_TYPE> targets) throws QueryException;
 
+  /**
+   * Returns the reverse dependencies of {@code targets} within the forward transitive closure of
+   * {@code universe}, including {@code targets} themselves if they are in the closure, searching
+   * at most {@code depthBound} levels away from {@code targets}. Targets are returned in breadth
+   * first order. Callers must ensure that {@link #buildTransitiveClosure} has been called for
+   * {@code universe}.
+   */
+  default Set<NODE_TYPE> getReverseDepsInUniverse(
+      Set<NODE_TYPE> universe, Set<NODE_TYPE> targets, int depthBound) throws QueryException {
+    Set<NODE_TYPE> transitiveClosureUniverse = getTransitiveClosure(universe);
+
+    // LinkedHashSet preserves the order of insertion when iterating over the values.
+    // The order by which we traverse the result is meaningful because the dependencies are
+    // traversed level-by-level.
+    Set<NODE_TYPE> visited = new LinkedHashSet<>();
+    Set<NODE_TYPE> current = targets;
+
+    // This predicate function does not just do filtering but also populates visited collection.
+    // This is a bit ugly but enables to evaluate the collection exactly once
+    // The actual evaluation and population of `visited` happens in `getReverseDeps` as it iterates
+    // through targets
+    Predicate<NODE_TYPE> filter =
+        target -> (transitiveClosureUniverse.contains(target) && visited.add(target));
+
+    // Iterating depthBound+1 times because the first one processes the given argument set.
+    for (int i = 0; i <= depthBound; i++) {
+      Set<NODE_TYPE> next = getReverseDeps(Iterables.filter(current, filter::test));
+      if (next.isEmpty()) {
+        break;
+      }
+      current = next;
+    }
+    return visited;
+  }
+
   /**
    * Construct the dependency graph for a depth-bounded forward transitive closure of all nodes in
    * "targetNodes". The identity of the calling expression is required to produce error messages.
@@ -137,6 +137,10 @@ public class WorkerMacroArg extends ProxyArg {
     return workerTool.isAsync();
   }
 
+  public int getMaxRequestsPerWorker() {
+    return workerTool.getMaxRequestsPerWorker();
+  }
+
   public String getJobArgs(SourcePathResolverAdapter pathResolver) {
     return Arg.stringify(arg, pathResolver).trim();
   }
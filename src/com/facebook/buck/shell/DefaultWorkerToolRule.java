@@ -60,6 +60,7 @@ public class DefaultWorkerToolRule extends WriteFile
       Tool tool,
       int maxWorkers,
       boolean isAsync,
+      int maxRequestsPerWorker,
       boolean isPersistent) {
     super(
         buildTarget,
@@ -73,6 +74,7 @@ public class DefaultWorkerToolRule extends WriteFile
             new DefaultWorkerToolDelegatingTool(tool, getSourcePathToOutput()),
             maxWorkers,
             isAsync,
+            maxRequestsPerWorker,
             isPersistent,
             buildTarget,
             generateNewUUID());
@@ -150,6 +152,13 @@ public class DefaultWorkerToolRule extends WriteFile
     @CustomFieldBehavior(DefaultFieldSerialization.class)
     private final boolean isAsync;
 
+    /**
+     * Important : Do not add this field into RuleKey. Rule key should not change in case of max
+     * requests per worker variable modification.
+     */
+    @CustomFieldBehavior(DefaultFieldSerialization.class)
+    private final int maxRequestsPerWorker;
+
     /**
      * Important : Do not add this field into RuleKey. Rule key should not change in case of
      * instance key modification (that is calculated during creation as random UUID).
@@ -161,6 +170,7 @@ public class DefaultWorkerToolRule extends WriteFile
         Tool tool,
         int maxWorkers,
         boolean isAsync,
+        int maxRequestsPerWorker,
         boolean isPersistent,
         BuildTarget buildTarget,
         UUID uuid) {
@@ -169,6 +179,7 @@ public class DefaultWorkerToolRule extends WriteFile
       this.isPersistent = isPersistent;
       this.buildTarget = buildTarget;
       this.isAsync = isAsync;
+      this.maxRequestsPerWorker = maxRequestsPerWorker;
       this.instanceKey = calculateInstanceKey(uuid);
     }
 
@@ -200,6 +211,11 @@ public class DefaultWorkerToolRule extends WriteFile
       return isAsync;
     }
 
+    @Override
+    public int getMaxRequestsPerWorker() {
+      return maxRequestsPerWorker;
+    }
+
     @Override
     public boolean isPersistent() {
       return isPersistent;
@@ -36,4 +36,7 @@ public interface WorkerTool extends AddsToRuleKey {
   HashCode getInstanceKey();
 
   boolean isAsync();
+
+  /** Maximum number of jobs each worker process of this tool runs at the same time. */
+  int getMaxRequestsPerWorker();
 }
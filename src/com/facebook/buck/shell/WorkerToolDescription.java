@@ -126,6 +126,13 @@ public class WorkerToolDescription implements DescriptionWithTargetGraph<WorkerT
 
     boolean async = args.getSoloAsync().orElse(false);
 
+    int maxRequestsPerWorker = args.getMaxRequestsPerWorker().orElse(1);
+    Preconditions.checkArgument(
+        maxRequestsPerWorker > 0, "max_requests_per_worker must be greater than 0.");
+    Preconditions.checkArgument(
+        !(async && maxRequestsPerWorker > 1),
+        "solo_async and max_requests_per_worker must not be used together.");
+
     Preconditions.checkArgument(
         !(args.getMaxWorkers().isPresent() && args.getMaxWorkersPerThreadPercent().isPresent()),
         "max_workers and max_workers_per_thread_percent must not be used together.");
@@ -157,6 +164,7 @@ public class WorkerToolDescription implements DescriptionWithTargetGraph<WorkerT
         tool,
         maxWorkers,
         async,
+        maxRequestsPerWorker,
         args.getPersistent()
             .orElse(buckConfig.getBooleanValue(CONFIG_SECTION, CONFIG_PERSISTENT_KEY, false)));
   }
@@ -199,6 +207,8 @@ public class WorkerToolDescription implements DescriptionWithTargetGraph<WorkerT
 
     Optional<Integer> getMaxWorkersPerThreadPercent();
 
+    Optional<Integer> getMaxRequestsPerWorker();
+
     Optional<Boolean> getPersistent();
 
     Optional<Boolean> getSoloAsync();
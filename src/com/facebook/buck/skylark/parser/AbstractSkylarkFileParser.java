@@ -43,6 +43,7 @@ import com.google.common.collect.ImmutableMap.Builder;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.ImmutableSortedSet;
 import com.google.common.collect.Iterables;
+import com.google.common.hash.HashCode;
 import com.google.common.util.concurrent.UncheckedExecutionException;
 import com.google.devtools.build.lib.cmdline.Label;
 import com.google.devtools.build.lib.cmdline.PackageIdentifier;
@@ -89,7 +90,9 @@ abstract class AbstractSkylarkFileParser<T extends FileManifest> implements File
 
   private final Cache<com.google.devtools.build.lib.vfs.Path, BuildFileAST> astCache;
   private final Cache<com.google.devtools.build.lib.vfs.Path, ExtensionData> extensionDataCache;
+  private final Cache<com.google.devtools.build.lib.vfs.Path, HashCode> contentHashCache;
   private final LoadingCache<LoadImport, IncludesData> includesDataCache;
+  private final SkylarkExtensionCache sharedExtensionCache;
   private final PackageImplicitIncludesFinder packageImplicitIncludeFinder;
 
   AbstractSkylarkFileParser(
@@ -97,13 +100,24 @@ abstract class AbstractSkylarkFileParser<T extends FileManifest> implements File
       FileSystem fileSystem,
       BuckGlobals buckGlobals,
       EventHandler eventHandler) {
+    this(options, fileSystem, buckGlobals, eventHandler, new SkylarkExtensionCache());
+  }
+
+  AbstractSkylarkFileParser(
+      ProjectBuildFileParserOptions options,
+      FileSystem fileSystem,
+      BuckGlobals buckGlobals,
+      EventHandler eventHandler,
+      SkylarkExtensionCache sharedExtensionCache) {
     this.options = options;
     this.fileSystem = fileSystem;
     this.eventHandler = eventHandler;
     this.buckGlobals = buckGlobals;
+    this.sharedExtensionCache = sharedExtensionCache;
 
     this.astCache = CacheBuilder.newBuilder().build();
     this.extensionDataCache = CacheBuilder.newBuilder().build();
+    this.contentHashCache = CacheBuilder.newBuilder().build();
 
     this.includesDataCache =
         CacheBuilder.newBuilder()
@@ -581,10 +595,50 @@ abstract class AbstractSkylarkFileParser<T extends FileManifest> implements File
    */
   private @Nullable ExtensionData lookupExtensionForImport(
       com.google.devtools.build.lib.vfs.Path path, String importString) {
-    ExtensionData ext = extensionDataCache.getIfPresent(path);
+    ExtensionData ext = lookupExtension(path);
     return ext == null ? ext : ext.withImportString(importString);
   }
 
+  /**
+   * Retrieves extension data from the cache of this parser, falling back to the cache shared with
+   * other parsers if this parser has not loaded the extension yet.
+   *
+   * @param path a path for the extension to lookup
+   * @return {@link ExtensionData} for the requested extension, or null if no such extension found.
+   */
+  private @Nullable ExtensionData lookupExtension(com.google.devtools.build.lib.vfs.Path path) {
+    ExtensionData ext = extensionDataCache.getIfPresent(path);
+    if (ext != null) {
+      return ext;
+    }
+    HashCode contentHash = getContentHash(path);
+    if (contentHash == null) {
+      return null;
+    }
+    ext = sharedExtensionCache.get(options.getProjectRoot(), path.toString(), contentHash);
+    if (ext != null) {
+      extensionDataCache.put(path, ext);
+    }
+    return ext;
+  }
+
+  /**
+   * @return the content hash of the file at {@code path} or null if it cannot be computed, in which
+   *     case the extension is loaded from scratch and reports a proper error if needed.
+   */
+  private @Nullable HashCode getContentHash(com.google.devtools.build.lib.vfs.Path path) {
+    HashCode contentHash = contentHashCache.getIfPresent(path);
+    if (contentHash == null) {
+      try {
+        contentHash = HashCode.fromBytes(path.getDigest());
+      } catch (IOException e) {
+        return null;
+      }
+      contentHashCache.put(path, contentHash);
+    }
+    return contentHash;
+  }
+
   /**
    * Loads extensions abstract syntax tree if needed.
    *
@@ -620,7 +674,7 @@ abstract class AbstractSkylarkFileParser<T extends FileManifest> implements File
       load.addDependency(dependency);
       com.google.devtools.build.lib.vfs.Path extensionPath =
           getImportPath(dependency.getLabel(), dependency.getImport());
-      if (extensionDataCache.getIfPresent(extensionPath) == null) {
+      if (lookupExtension(extensionPath) == null) {
         // Schedule dependency to be loaded if needed.
         haveUnsatisfiedDeps = true;
         queue.push(new ExtensionLoadState(dependency, extensionPath));
@@ -754,8 +808,12 @@ abstract class AbstractSkylarkFileParser<T extends FileManifest> implements File
       if (!haveUnsatisfiedDeps) {
         // We are done with this load; build it and cache it.
         work.removeFirst();
+        HashCode contentHash = getContentHash(load.getPath());
         extension = buildExtensionData(load);
         extensionDataCache.put(load.getPath(), extension);
+        if (contentHash != null) {
+          sharedExtensionCache.put(options.getProjectRoot(), contentHash, extension);
+        }
       }
     }
 
@@ -0,0 +1,135 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.skylark.parser;
+
+import com.facebook.buck.core.filesystems.AbsPath;
+import com.facebook.buck.core.util.immutables.BuckStyleValue;
+import com.facebook.buck.core.util.log.Logger;
+import com.google.common.hash.HashCode;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Cache of evaluated (and therefore frozen) Skylark extensions that can be shared by all Skylark
+ * parser instances.
+ *
+ * <p>Each parser keeps its own per-instance caches, so without this cache every parser created by a
+ * parser pool, and every parser created by subsequent commands in the daemon, would parse and
+ * evaluate the same {@code .bzl} files again.
+ *
+ * <p>Entries are keyed by the root of the cell that loads an extension, since extensions are
+ * evaluated using cell specific globals, and by the path of the extension. Each entry also records
+ * the content hash of the extension file, so that an entry is only reused if the file did not
+ * change since it was evaluated. Changes to transitively loaded files are handled by {@link
+ * #invalidatePath(String)}, which is expected to be called for every file change event.
+ */
+@ThreadSafe
+public class SkylarkExtensionCache {
+
+  private static final Logger LOG = Logger.get(SkylarkExtensionCache.class);
+
+  private final ConcurrentMap<Key, CachedExtension> entries = new ConcurrentHashMap<>();
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+
+  /**
+   * @return an evaluated extension loaded by a cell with root {@code cellRoot} from {@code path} if
+   *     it has been evaluated before from a file with content hash {@code contentHash}.
+   */
+  @Nullable
+  ExtensionData get(AbsPath cellRoot, String path, HashCode contentHash) {
+    CachedExtension entry = entries.get(ImmutableKey.of(cellRoot, path));
+    if (entry == null || !entry.getContentHash().equals(contentHash)) {
+      misses.incrementAndGet();
+      return null;
+    }
+    hits.incrementAndGet();
+    return entry.getExtensionData();
+  }
+
+  /** Records an extension loaded by a cell with root {@code cellRoot}. */
+  void put(AbsPath cellRoot, HashCode contentHash, ExtensionData extensionData) {
+    entries.put(
+        ImmutableKey.of(cellRoot, extensionData.getPath().toString()),
+        ImmutableCachedExtension.of(contentHash, extensionData));
+  }
+
+  /**
+   * Removes all extensions that have loaded a file with provided absolute {@code path} while being
+   * evaluated, including the extension defined by {@code path} itself.
+   */
+  public void invalidatePath(String path) {
+    if (entries.isEmpty()) {
+      return;
+    }
+    // Extensions are only loaded by build files, so the number of cached entries is proportional to
+    // the number of extension files in the repository and a linear scan is cheap enough.
+    int invalidated = 0;
+    for (Map.Entry<Key, CachedExtension> entry : entries.entrySet()) {
+      if (entry.getValue().getExtensionData().getLoadTransitiveClosure().contains(path)
+          && entries.remove(entry.getKey(), entry.getValue())) {
+        invalidated++;
+      }
+    }
+    if (invalidated > 0) {
+      LOG.verbose("Invalidated %d extensions depending on %s", invalidated, path);
+    }
+  }
+
+  /** Removes all extensions loaded by the cell with provided root. */
+  public void invalidateCell(AbsPath cellRoot) {
+    entries.keySet().removeIf(key -> key.getCellRoot().equals(cellRoot));
+  }
+
+  /** Removes all cached extensions. */
+  public void invalidateAll() {
+    entries.clear();
+  }
+
+  /** @return the number of extensions currently cached. */
+  public int size() {
+    return entries.size();
+  }
+
+  /** @return the number of lookups that were satisfied by this cache. */
+  public long getHitCount() {
+    return hits.get();
+  }
+
+  /** @return the number of lookups that were not satisfied by this cache. */
+  public long getMissCount() {
+    return misses.get();
+  }
+
+  @BuckStyleValue
+  abstract static class Key {
+    abstract AbsPath getCellRoot();
+
+    abstract String getPath();
+  }
+
+  @BuckStyleValue
+  abstract static class CachedExtension {
+    abstract HashCode getContentHash();
+
+    abstract ExtensionData getExtensionData();
+  }
+}
@@ -72,7 +72,25 @@ public class SkylarkProjectBuildFileParser extends AbstractSkylarkFileParser<Bui
       BuckGlobals buckGlobals,
       EventHandler eventHandler,
       GlobberFactory globberFactory) {
-    super(options, fileSystem, buckGlobals, eventHandler);
+    this(
+        options,
+        buckEventBus,
+        fileSystem,
+        buckGlobals,
+        eventHandler,
+        globberFactory,
+        new SkylarkExtensionCache());
+  }
+
+  SkylarkProjectBuildFileParser(
+      ProjectBuildFileParserOptions options,
+      BuckEventBus buckEventBus,
+      FileSystem fileSystem,
+      BuckGlobals buckGlobals,
+      EventHandler eventHandler,
+      GlobberFactory globberFactory,
+      SkylarkExtensionCache sharedExtensionCache) {
+    super(options, fileSystem, buckGlobals, eventHandler, sharedExtensionCache);
     this.buckEventBus = buckEventBus;
     this.globberFactory = globberFactory;
   }
@@ -89,6 +107,28 @@ public class SkylarkProjectBuildFileParser extends AbstractSkylarkFileParser<Bui
         options, buckEventBus, fileSystem, buckGlobals, eventHandler, globberFactory);
   }
 
+  /**
+   * Create an instance of Skylark project build file parser using provided options that reuses
+   * extensions evaluated by other parsers sharing the same {@code sharedExtensionCache}.
+   */
+  public static SkylarkProjectBuildFileParser using(
+      ProjectBuildFileParserOptions options,
+      BuckEventBus buckEventBus,
+      FileSystem fileSystem,
+      BuckGlobals buckGlobals,
+      EventHandler eventHandler,
+      GlobberFactory globberFactory,
+      SkylarkExtensionCache sharedExtensionCache) {
+    return new SkylarkProjectBuildFileParser(
+        options,
+        buckEventBus,
+        fileSystem,
+        buckGlobals,
+        eventHandler,
+        globberFactory,
+        sharedExtensionCache);
+  }
+
   @VisibleForTesting
   protected SkylarkProjectBuildFileParser(SkylarkProjectBuildFileParser other) {
     this(
@@ -100,6 +140,19 @@ public class SkylarkProjectBuildFileParser extends AbstractSkylarkFileParser<Bui
         other.globberFactory);
   }
 
+  @VisibleForTesting
+  protected SkylarkProjectBuildFileParser(
+      SkylarkProjectBuildFileParser other, SkylarkExtensionCache sharedExtensionCache) {
+    this(
+        other.options,
+        other.buckEventBus,
+        other.fileSystem,
+        other.buckGlobals,
+        other.eventHandler,
+        other.globberFactory,
+        sharedExtensionCache);
+  }
+
   @Override
   FileKind getFileKind() {
     return FileKind.BUCK;
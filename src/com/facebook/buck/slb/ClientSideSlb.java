@@ -32,6 +32,8 @@ import java.net.URI;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
+import java.util.Optional;
+import java.util.OptionalLong;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
@@ -57,6 +59,9 @@ public class ClientSideSlb implements HttpLoadBalancer {
   private final ScheduledExecutorService schedulerService;
   private final ScheduledFuture<?> backgroundHealthChecker;
   private final BuckEventBus eventBus;
+  private final boolean hedgingEnabled;
+  private final int minHedgeDelayMillis;
+  private final int maxAcceptableLatencyMillis;
 
   public static boolean isSafeToCreate(ClientSideSlbConfig config) {
     return config.getPingEndpoint() != null
@@ -106,8 +111,12 @@ public class ClientSideSlb implements HttpLoadBalancer {
             config.getLatencyCheckTimeRangeMillis(),
             config.getMaxAcceptableLatencyMillis(),
             config.getMinSamplesToReportError(),
+            config.isLatencyAwareSelectionEnabled(),
             config.getEventBus(),
             this.clock);
+    this.hedgingEnabled = config.isHedgingEnabled();
+    this.minHedgeDelayMillis = config.getMinHedgeDelayMillis();
+    this.maxAcceptableLatencyMillis = config.getMaxAcceptableLatencyMillis();
     this.pingClient = pingClient;
     this.schedulerService = executor;
     backgroundHealthChecker =
@@ -133,6 +142,31 @@ public class ClientSideSlb implements HttpLoadBalancer {
     healthManager.reportRequestError(server);
   }
 
+  @Override
+  public void reportRequestLatency(URI server, long latencyMillis) {
+    healthManager.reportRequestLatency(server, latencyMillis);
+  }
+
+  @Override
+  public OptionalLong getHedgeDelayMillis(URI server) {
+    if (!hedgingEnabled) {
+      return OptionalLong.empty();
+    }
+    long latencyMillis =
+        healthManager.getRequestLatencyPercentileMillis(
+            server, ClientSideSlbConfig.HEDGE_DELAY_PERCENTILE);
+    if (latencyMillis < 0) {
+      // Until the server answered requests, wait for as long as it may take to be deemed unhealthy.
+      latencyMillis = maxAcceptableLatencyMillis;
+    }
+    return OptionalLong.of(Math.max(minHedgeDelayMillis, latencyMillis));
+  }
+
+  @Override
+  public Optional<URI> getHedgeServer(URI server) {
+    return healthManager.getHedgeServer(server);
+  }
+
   @Override
   public void close() {
     backgroundHealthChecker.cancel(true);
@@ -41,6 +41,9 @@ abstract class ClientSideSlbConfig {
 
   public static final int MIN_SAMPLES_TO_REPORT_ERROR_DEFAULT_VALUE = 1;
 
+  public static final int MIN_HEDGE_DELAY_MILLIS = 50;
+  public static final double HEDGE_DELAY_PERCENTILE = 99;
+
   public abstract Clock getClock();
 
   public abstract ImmutableList<URI> getServerPool();
@@ -88,4 +91,27 @@ abstract class ClientSideSlbConfig {
   public int getMinSamplesToReportError() {
     return MIN_SAMPLES_TO_REPORT_ERROR_DEFAULT_VALUE;
   }
+
+  /**
+   * Whether to spread requests among servers according to the latency of their recent requests,
+   * rather than to send them to the server with the lowest ping latency.
+   */
+  @Value.Default
+  public boolean isLatencyAwareSelectionEnabled() {
+    return false;
+  }
+
+  /**
+   * Whether to send fetches that didn't get a response within the {@link #HEDGE_DELAY_PERCENTILE}
+   * of the latencies of their server to a second server as well, and use the first response.
+   */
+  @Value.Default
+  public boolean isHedgingEnabled() {
+    return false;
+  }
+
+  @Value.Default
+  public int getMinHedgeDelayMillis() {
+    return MIN_HEDGE_DELAY_MILLIS;
+  }
 }
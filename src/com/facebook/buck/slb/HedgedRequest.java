@@ -0,0 +1,161 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.slb;
+
+import com.facebook.buck.core.util.log.Logger;
+import com.google.common.util.concurrent.SettableFuture;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * Sends a request to a second server when the first one didn't respond within a delay, and uses
+ * whichever response comes first. As long as the delay is a high percentile of the latencies of the
+ * first server, this cuts the tail latency of requests for a few percents more requests.
+ */
+class HedgedRequest {
+  private static final Logger LOG = Logger.get(HedgedRequest.class);
+
+  private final HttpLoadBalancer slb;
+  private final Call.Factory client;
+  private final List<Attempt> attempts = new CopyOnWriteArrayList<>();
+  private final AtomicInteger pendingAttempts = new AtomicInteger();
+  private final SettableFuture<Attempt> firstResponse = SettableFuture.create();
+
+  private HedgedRequest(HttpLoadBalancer slb, Call.Factory client) {
+    this.slb = slb;
+    this.client = client;
+  }
+
+  /**
+   * Sends the request to the server, and to the hedge server of the load balancer if the server
+   * didn't respond within the delay.
+   */
+  static LoadBalancedHttpResponse execute(
+      HttpLoadBalancer slb,
+      Call.Factory client,
+      URI server,
+      String path,
+      Request request,
+      long hedgeDelayMillis)
+      throws IOException {
+    HedgedRequest hedgedRequest = new HedgedRequest(slb, client);
+    hedgedRequest.send(server, request);
+    Optional<Attempt> attempt = hedgedRequest.awaitFirstResponse(hedgeDelayMillis);
+    if (!attempt.isPresent()) {
+      Optional<URI> hedgeServer = slb.getHedgeServer(server);
+      if (hedgeServer.isPresent()) {
+        LOG.debug(
+            "No response from %s after %d ms, hedging with %s.",
+            server, hedgeDelayMillis, hedgeServer.get());
+        hedgedRequest.send(
+            hedgeServer.get(),
+            request.newBuilder().url(SingleUriService.getFullUrl(hedgeServer.get(), path)).build());
+      }
+      attempt = hedgedRequest.awaitFirstResponse(-1);
+    }
+    return hedgedRequest.useResponse(attempt.get());
+  }
+
+  private void send(URI server, Request request) {
+    Attempt attempt = new Attempt(server, client.newCall(request));
+    attempts.add(attempt);
+    pendingAttempts.incrementAndGet();
+    attempt.call.enqueue(attempt);
+  }
+
+  /**
+   * @param timeoutMillis How long to wait, or a negative value to wait until any attempt finishes.
+   * @return The first attempt to get a response, or empty if there was none within the timeout.
+   */
+  private Optional<Attempt> awaitFirstResponse(long timeoutMillis) throws IOException {
+    try {
+      return Optional.of(
+          timeoutMillis < 0
+              ? firstResponse.get()
+              : firstResponse.get(timeoutMillis, TimeUnit.MILLISECONDS));
+    } catch (TimeoutException e) {
+      return Optional.empty();
+    } catch (InterruptedException e) {
+      attempts.forEach(attempt -> attempt.call.cancel());
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while waiting for a response.");
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      }
+      throw new RuntimeException(e.getCause());
+    }
+  }
+
+  private LoadBalancedHttpResponse useResponse(Attempt winner) {
+    for (Attempt attempt : attempts) {
+      if (attempt != winner) {
+        attempt.call.cancel();
+      }
+    }
+    return new LoadBalancedHttpResponse(winner.server, slb, winner.getResponse());
+  }
+
+  private class Attempt implements Callback {
+    private final URI server;
+    private final Call call;
+    private volatile Response response;
+
+    private Attempt(URI server, Call call) {
+      this.server = server;
+      this.call = call;
+    }
+
+    Response getResponse() {
+      return response;
+    }
+
+    @Override
+    public void onResponse(Call call, Response response) {
+      slb.reportRequestLatency(
+          server, response.receivedResponseAtMillis() - response.sentRequestAtMillis());
+      this.response = response;
+      if (!firstResponse.set(this)) {
+        response.close();
+      }
+    }
+
+    @Override
+    public void onFailure(Call call, IOException e) {
+      // A cancelled attempt lost the race, which says nothing about how long the server would have
+      // taken to respond, nor about its health.
+      if (!call.isCanceled()) {
+        slb.reportRequestException(server);
+      }
+      if (pendingAttempts.decrementAndGet() == 0) {
+        firstResponse.setException(e);
+      }
+    }
+  }
+}
@@ -17,6 +17,8 @@
 package com.facebook.buck.slb;
 
 import java.net.URI;
+import java.util.Optional;
+import java.util.OptionalLong;
 
 public interface HttpLoadBalancer extends AutoCloseable {
   URI getBestServer() throws NoHealthyServersException;
@@ -25,6 +27,18 @@ public interface HttpLoadBalancer extends AutoCloseable {
 
   void reportRequestException(URI server);
 
+  /** Reports how long the server took to start responding to a request. */
+  void reportRequestLatency(URI server, long latencyMillis);
+
+  /**
+   * @return How long to wait for the response of the server to a fetch before sending the same
+   *     request to {@link #getHedgeServer}, or empty to never hedge requests.
+   */
+  OptionalLong getHedgeDelayMillis(URI server);
+
+  /** @return The server to send a request to when the given one is too slow to respond to it. */
+  Optional<URI> getHedgeServer(URI server);
+
   @Override
   void close();
 }
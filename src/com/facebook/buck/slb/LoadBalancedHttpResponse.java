@@ -34,7 +34,10 @@ public class LoadBalancedHttpResponse extends OkHttpResponseWrapper {
   public static LoadBalancedHttpResponse createLoadBalancedResponse(
       URI server, HttpLoadBalancer loadBalancer, Call call) throws IOException {
     try {
-      return new LoadBalancedHttpResponse(server, loadBalancer, call.execute());
+      Response response = call.execute();
+      loadBalancer.reportRequestLatency(
+          server, response.receivedResponseAtMillis() - response.sentRequestAtMillis());
+      return new LoadBalancedHttpResponse(server, loadBalancer, response);
     } catch (IOException e) {
       if (FIX_HTTP_BOTTLENECK) {
         loadBalancer.reportRequestException(server);
@@ -21,7 +21,7 @@ import com.facebook.buck.event.BuckEventBus;
 import java.io.IOException;
 import java.net.URI;
 import java.net.URL;
-import okhttp3.Call;
+import java.util.OptionalLong;
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
 
@@ -51,10 +51,16 @@ public class LoadBalancedService implements HttpService {
       data.setRequestSizeBytes(request.body().contentLength());
     }
     LOG.verbose("Making call to %s", fullUrl);
-    Call call = client.newCall(request);
+    // Only hedge fetches, sending uploads twice would double their cost.
+    OptionalLong hedgeDelayMillis =
+        request.method().equals("GET") ? slb.getHedgeDelayMillis(server) : OptionalLong.empty();
     try {
       HttpResponse response =
-          LoadBalancedHttpResponse.createLoadBalancedResponse(server, slb, call);
+          hedgeDelayMillis.isPresent()
+              ? HedgedRequest.execute(
+                  slb, client, server, path, request, hedgeDelayMillis.getAsLong())
+              : LoadBalancedHttpResponse.createLoadBalancedResponse(
+                  server, slb, client.newCall(request));
       if (response.contentLength() != -1) {
         data.setResponseSizeBytes(response.contentLength());
       }
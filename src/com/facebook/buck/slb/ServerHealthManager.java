@@ -37,6 +37,7 @@ import java.util.Objects;
 import java.util.Optional;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
@@ -53,8 +54,9 @@ public class ServerHealthManager {
   private final float maxErrorPercentage;
   private final int errorCheckTimeRangeMillis;
   private final BuckEventBus eventBus;
-  private final LoadingCache<Object, Optional<URI>> getBestServerCache;
+  private final LoadingCache<Object, ImmutableList<URI>> healthyServersCache;
   private final String serverPoolName;
+  private final boolean latencyAwareSelection;
 
   private final Clock clock;
 
@@ -68,25 +70,55 @@ public class ServerHealthManager {
       int minSamplesToReportError,
       BuckEventBus eventBus,
       Clock clock) {
+    this(
+        serverPoolName,
+        servers,
+        errorCheckTimeRangeMillis,
+        maxErrorPercentage,
+        latencyCheckTimeRangeMillis,
+        maxAcceptableLatencyMillis,
+        minSamplesToReportError,
+        false,
+        eventBus,
+        clock);
+  }
+
+  /**
+   * @param latencyAwareSelection Whether to spread requests among the healthy servers according to
+   *     the latency of their recent requests, instead of sending them all to the server with the
+   *     lowest ping latency.
+   */
+  public ServerHealthManager(
+      String serverPoolName,
+      ImmutableList<URI> servers,
+      int errorCheckTimeRangeMillis,
+      float maxErrorPercentage,
+      int latencyCheckTimeRangeMillis,
+      int maxAcceptableLatencyMillis,
+      int minSamplesToReportError,
+      boolean latencyAwareSelection,
+      BuckEventBus eventBus,
+      Clock clock) {
     this.serverPoolName = serverPoolName;
     this.errorCheckTimeRangeMillis = errorCheckTimeRangeMillis;
     this.maxErrorPercentage = maxErrorPercentage;
     this.latencyCheckTimeRangeMillis = latencyCheckTimeRangeMillis;
     this.maxAcceptableLatencyMillis = maxAcceptableLatencyMillis;
+    this.latencyAwareSelection = latencyAwareSelection;
     this.clock = clock;
     this.servers = new ConcurrentHashMap<>();
     for (URI server : servers) {
       this.servers.put(server, new ServerHealthState(server, minSamplesToReportError));
     }
     this.eventBus = eventBus;
-    this.getBestServerCache =
+    this.healthyServersCache =
         CacheBuilder.newBuilder()
             .expireAfterWrite(CACHE_TIME_MS, TimeUnit.MILLISECONDS)
             .build(
-                new CacheLoader<Object, Optional<URI>>() {
+                new CacheLoader<Object, ImmutableList<URI>>() {
                   @Override
-                  public Optional<URI> load(Object key) {
-                    return calculateBestServer();
+                  public ImmutableList<URI> load(Object key) {
+                    return calculateHealthyServers();
                   }
                 });
   }
@@ -95,7 +127,7 @@ public class ServerHealthManager {
     Preconditions.checkState(servers.containsKey(server), "Unknown server [%s]", server);
     servers.get(server).reportPingLatency(clock.currentTimeMillis(), latencyMillis);
     if (latencyMillis > maxAcceptableLatencyMillis) {
-      getBestServerCache.refresh(this);
+      healthyServersCache.refresh(this);
     }
   }
 
@@ -103,7 +135,7 @@ public class ServerHealthManager {
     Preconditions.checkState(servers.containsKey(server), "Unknown server [%s]", server);
     // Invalidate the best server on any error.
     servers.get(server).reportRequestError(clock.currentTimeMillis());
-    getBestServerCache.refresh(this);
+    healthyServersCache.refresh(this);
   }
 
   public void reportException(URI server, IOException exp) {
@@ -116,11 +148,77 @@ public class ServerHealthManager {
     servers.get(server).reportRequestSuccess(clock.currentTimeMillis());
   }
 
+  public void reportRequestLatency(URI server, long latencyMillis) {
+    Preconditions.checkState(servers.containsKey(server), "Unknown server [%s]", server);
+    servers.get(server).reportRequestLatency(clock.currentTimeMillis(), latencyMillis);
+  }
+
+  /** @return The percentile of the recent request latencies of the server, or -1 if unknown. */
+  public long getRequestLatencyPercentileMillis(URI server, double percentile) {
+    Preconditions.checkState(servers.containsKey(server), "Unknown server [%s]", server);
+    return servers
+        .get(server)
+        .getRequestLatencyPercentileMillis(
+            clock.currentTimeMillis(), latencyCheckTimeRangeMillis, percentile);
+  }
+
   public URI getBestServer() throws NoHealthyServersException {
+    ImmutableList<URI> healthyServers = getHealthyServers();
+    if (!latencyAwareSelection || healthyServers.size() == 1) {
+      return healthyServers.get(0);
+    }
+    // Compare two random servers rather than always picking the fastest one, so that the fastest
+    // server doesn't get all the load (and becomes the slowest) until the next latency report.
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    int first = random.nextInt(healthyServers.size());
+    int second = random.nextInt(healthyServers.size() - 1);
+    if (second >= first) {
+      second++;
+    }
+    long nowMillis = clock.currentTimeMillis();
+    URI firstServer = healthyServers.get(first);
+    URI secondServer = healthyServers.get(second);
+    return getLatencyScore(firstServer, nowMillis) <= getLatencyScore(secondServer, nowMillis)
+        ? firstServer
+        : secondServer;
+  }
+
+  /** @return The fastest healthy server other than the given one, to hedge its requests with. */
+  public Optional<URI> getHedgeServer(URI server) {
+    ImmutableList<URI> healthyServers;
+    try {
+      healthyServers = getHealthyServers();
+    } catch (NoHealthyServersException e) {
+      return Optional.empty();
+    }
+    long nowMillis = clock.currentTimeMillis();
+    return healthyServers.stream()
+        .filter(healthyServer -> !healthyServer.equals(server))
+        .min(
+            Comparator.comparingDouble(
+                healthyServer -> getLatencyScore(healthyServer, nowMillis)));
+  }
+
+  /**
+   * The moving average of the latencies of the recent requests to the server, or its ping latency
+   * if it didn't get any lately. The latter is usually lower, which makes sure that servers which
+   * were avoided for being slow are tried again once in a while.
+   */
+  private double getLatencyScore(URI server, long nowMillis) {
+    ServerHealthState state = Objects.requireNonNull(servers.get(server));
+    double requestLatencyMillis =
+        state.getRequestLatencyEwmaMillis(nowMillis, latencyCheckTimeRangeMillis);
+    if (requestLatencyMillis >= 0) {
+      return requestLatencyMillis;
+    }
+    return Math.max(0, state.getPingLatencyMillis(nowMillis, latencyCheckTimeRangeMillis));
+  }
+
+  private ImmutableList<URI> getHealthyServers() throws NoHealthyServersException {
     try {
-      Optional<URI> server = getBestServerCache.get(this);
-      if (server.isPresent()) {
-        return server.get();
+      ImmutableList<URI> healthyServers = healthyServersCache.get(this);
+      if (!healthyServers.isEmpty()) {
+        return healthyServers;
       }
       throw new NoHealthyServersException(
           String.format(
@@ -148,7 +246,8 @@ public class ServerHealthManager {
     }
   }
 
-  private Optional<URI> calculateBestServer() {
+  /** @return The healthy servers, by increasing ping latency. */
+  private ImmutableList<URI> calculateHealthyServers() {
     ImmutableServerHealthManagerEventData.Builder data =
         ImmutableServerHealthManagerEventData.builder().setServerPoolName(serverPoolName);
     Map<URI, ImmutablePerServerData.Builder> allPerServerData = new HashMap<>();
@@ -172,13 +271,13 @@ public class ServerHealthManager {
 
       if (serverLatencies.isEmpty()) {
         data.setNoHealthyServersAvailable(true);
-        return Optional.empty();
+        return ImmutableList.of();
       }
 
       serverLatencies.sort(LATENCY_COMPARATOR);
       URI bestServer = serverLatencies.get(0).getFirst();
       Objects.requireNonNull(allPerServerData.get(bestServer)).setBestServer(true);
-      return Optional.of(bestServer);
+      return serverLatencies.stream().map(Pair::getFirst).collect(ImmutableList.toImmutableList());
     } finally {
       for (ImmutablePerServerData.Builder builder : allPerServerData.values()) {
         data.addPerServerData(builder.build());
@@ -19,6 +19,8 @@ package com.facebook.buck.slb;
 import com.google.common.base.Preconditions;
 import java.io.IOException;
 import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.ListIterator;
@@ -26,6 +28,8 @@ import javax.annotation.Nullable;
 
 public class ServerHealthState {
   private static final int MAX_STORED_SAMPLES = 100;
+  // Weight of the latest request in the moving average of request latencies.
+  private static final double REQUEST_LATENCY_EWMA_WEIGHT = 0.2;
 
   private final int maxSamplesStored;
   // This value sets how many samples we must in the sliding window before we determine the server
@@ -34,6 +38,8 @@ public class ServerHealthState {
   private final URI server;
   private final List<LatencySample> pingLatencies;
   private final List<RequestSample> requests;
+  private final List<LatencySample> requestLatencies;
+  private double requestLatencyEwmaMillis;
   private float lastReportedErrorPercentage;
   private int lastReportedSamples;
   private long lastReportedLatency;
@@ -57,6 +63,8 @@ public class ServerHealthState {
     this.server = server;
     this.pingLatencies = new LinkedList<>();
     this.requests = new LinkedList<>();
+    this.requestLatencies = new LinkedList<>();
+    this.requestLatencyEwmaMillis = -1;
     this.lastReportedLatency = 0;
     this.lastReportedErrorPercentage = 0;
   }
@@ -74,6 +82,24 @@ public class ServerHealthState {
     }
   }
 
+  /**
+   * Reports how long a request took until its response started, which unlike ping latencies
+   * reflects how loaded the server is.
+   *
+   * <p>NOTE: Assumes nowMillis is roughly non-decreasing in consecutive calls.
+   */
+  public void reportRequestLatency(long nowMillis, long latencyMillis) {
+    synchronized (requestLatencies) {
+      requestLatencies.add(new LatencySample(nowMillis, latencyMillis));
+      keepWithinSizeLimit(requestLatencies);
+      requestLatencyEwmaMillis =
+          requestLatencyEwmaMillis < 0
+              ? latencyMillis
+              : REQUEST_LATENCY_EWMA_WEIGHT * latencyMillis
+                  + (1 - REQUEST_LATENCY_EWMA_WEIGHT) * requestLatencyEwmaMillis;
+    }
+  }
+
   public void reportException(IOException exp) {
     this.lastException = exp;
   }
@@ -177,6 +203,45 @@ public class ServerHealthState {
     return lastReportedLatency;
   }
 
+  /**
+   * @return The exponentially weighted moving average of the request latencies, or -1 if no request
+   *     was reported within the time range, in which case the average is considered stale.
+   */
+  public double getRequestLatencyEwmaMillis(long nowMillis, int timeRangeMillis) {
+    synchronized (requestLatencies) {
+      if (requestLatencies.isEmpty()
+          || requestLatencies.get(requestLatencies.size() - 1).getEpochMillis()
+              < nowMillis - timeRangeMillis) {
+        return -1;
+      }
+      return requestLatencyEwmaMillis;
+    }
+  }
+
+  /**
+   * @param percentile Value in the interval (0, 100].
+   * @return The percentile of the latencies of the requests reported within the time range, or -1
+   *     if there were none.
+   */
+  public long getRequestLatencyPercentileMillis(
+      long nowMillis, int timeRangeMillis, double percentile) {
+    List<Long> latencies = new ArrayList<>();
+    long initialMillis = nowMillis - timeRangeMillis;
+    synchronized (requestLatencies) {
+      for (LatencySample sample : requestLatencies) {
+        if (sample.getEpochMillis() >= initialMillis && sample.getEpochMillis() <= nowMillis) {
+          latencies.add(sample.getLatencyMillis());
+        }
+      }
+    }
+    if (latencies.isEmpty()) {
+      return -1;
+    }
+    Collections.sort(latencies);
+    int index = (int) Math.ceil(percentile / 100 * latencies.size()) - 1;
+    return latencies.get(Math.max(0, index));
+  }
+
   @Nullable
   public IOException getLastException() {
     return this.lastException;
@@ -46,6 +46,9 @@ public class SlbBuckConfig {
       "slb_latency_check_time_range_millis";
   private static final String MAX_ACCEPTABLE_LATENCY_MILLIS = "slb_max_acceptable_latency_millis";
   private static final String MIN_SAMPLES_TO_REPORT_ERROR = "slb_min_samples_to_report_error";
+  private static final String LATENCY_AWARE_SELECTION = "slb_latency_aware_selection";
+  private static final String HEDGE_REQUESTS = "slb_hedge_requests";
+  private static final String MIN_HEDGE_DELAY_MILLIS = "slb_min_hedge_delay_millis";
 
   private final String parentSection;
   private final BuckConfig buckConfig;
@@ -181,6 +184,17 @@ public class SlbBuckConfig {
       configBuilder.setMinSamplesToReportError(
           buckConfig.getInteger(parentSection, MIN_SAMPLES_TO_REPORT_ERROR).getAsInt());
     }
+
+    buckConfig
+        .getBoolean(parentSection, LATENCY_AWARE_SELECTION)
+        .ifPresent(configBuilder::setLatencyAwareSelectionEnabled);
+    buckConfig
+        .getBoolean(parentSection, HEDGE_REQUESTS)
+        .ifPresent(configBuilder::setHedgingEnabled);
+    if (buckConfig.getValue(parentSection, MIN_HEDGE_DELAY_MILLIS).isPresent()) {
+      configBuilder.setMinHedgeDelayMillis(
+          buckConfig.getInteger(parentSection, MIN_HEDGE_DELAY_MILLIS).getAsInt());
+    }
     return configBuilder.build();
   }
 }
@@ -16,6 +16,7 @@
 
 package com.facebook.buck.support.state;
 
+import com.facebook.buck.core.build.engine.cache.manager.DependencyFileInputsIndex;
 import com.facebook.buck.core.cell.Cell;
 import com.facebook.buck.core.files.DirectoryListCache;
 import com.facebook.buck.core.files.FileTreeCache;
@@ -34,6 +35,7 @@ import com.facebook.buck.parser.DaemonicParserState;
 import com.facebook.buck.parser.manifest.BuildFileManifestCache;
 import com.facebook.buck.rules.coercer.TypeCoercerFactory;
 import com.facebook.buck.rules.keys.RuleKeyCacheRecycler;
+import com.facebook.buck.util.ClassLoaderCache;
 import com.facebook.buck.util.cache.ProjectFileHashCache;
 import com.facebook.buck.util.cache.impl.WatchedFileHashCache;
 import com.facebook.buck.util.timing.Clock;
@@ -74,6 +76,8 @@ public final class BuckGlobalState implements Closeable {
   private final EventBus fileEventBus;
   private final Optional<WebServer> webServer;
   private final ConcurrentMap<String, WorkerProcessPool> persistentWorkerPools;
+  private final ClassLoaderCache classLoaderCache;
+  private final DependencyFileInputsIndex dependencyFileInputsIndex;
   private final VersionedTargetGraphCache versionedTargetGraphCache;
   private final ActionGraphCache actionGraphCache;
   private final RuleKeyCacheRecycler<RuleKey> defaultRuleKeyFactoryCacheRecycler;
@@ -111,6 +115,9 @@ public final class BuckGlobalState implements Closeable {
     this.fileEventBus = fileEventBus;
     this.webServer = webServer;
     this.persistentWorkerPools = persistentWorkerPools;
+    this.classLoaderCache = new ClassLoaderCache();
+    this.dependencyFileInputsIndex = new DependencyFileInputsIndex();
+    fileEventBus.register(dependencyFileInputsIndex);
     this.versionedTargetGraphCache = versionedTargetGraphCache;
     this.actionGraphCache = actionGraphCache;
     this.defaultRuleKeyFactoryCacheRecycler = defaultRuleKeyFactoryCacheRecycler;
@@ -176,6 +183,23 @@ public final class BuckGlobalState implements Closeable {
     return persistentWorkerPools;
   }
 
+  /**
+   * Class loaders of compilers and annotation processors, shared by the commands so that they stay
+   * loaded between builds. Commands should hold a reference with {@link ClassLoaderCache#addRef()}
+   * while they use it.
+   */
+  public ClassLoaderCache getClassLoaderCache() {
+    return classLoaderCache;
+  }
+
+  /**
+   * Inputs used by the last local builds of rules with dep-files, kept up to date with file
+   * changes so that the build engine knows which of these rules are affected by them.
+   */
+  public DependencyFileInputsIndex getDependencyFileInputsIndex() {
+    return dependencyFileInputsIndex;
+  }
+
   public RuleKeyCacheRecycler<RuleKey> getDefaultRuleKeyFactoryCacheRecycler() {
     return defaultRuleKeyFactoryCacheRecycler;
   }
@@ -248,6 +272,24 @@ public final class BuckGlobalState implements Closeable {
   public void close() {
     shutdownPersistentWorkerPools();
     shutdownWebServer();
+    closeClassLoaderCache();
+  }
+
+  /**
+   * Closes this state once its web server was stopped with {@link #shutdownWebServer()}, which
+   * leaves the web server to a new state reusing it.
+   */
+  void closeWithoutWebServer() {
+    shutdownPersistentWorkerPools();
+    closeClassLoaderCache();
+  }
+
+  private void closeClassLoaderCache() {
+    try {
+      classLoaderCache.close();
+    } catch (IOException e) {
+      LOG.error(e);
+    }
   }
 
   private void shutdownPersistentWorkerPools() {
@@ -260,7 +302,7 @@ public final class BuckGlobalState implements Closeable {
     }
   }
 
-  private void shutdownWebServer() {
+  void shutdownWebServer() {
     if (webServer.isPresent()) {
       try {
         webServer.get().stop();
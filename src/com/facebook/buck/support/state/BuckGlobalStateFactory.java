@@ -79,6 +79,32 @@ public class BuckGlobalStateFactory {
       UnconfiguredBuildTargetViewFactory unconfiguredBuildTargetFactory,
       TargetConfigurationSerializer targetConfigurationSerializer,
       Clock clock) {
+    return create(
+        rootCell,
+        knownRuleTypesProvider,
+        watchman,
+        webServerToReuse,
+        true,
+        unconfiguredBuildTargetFactory,
+        targetConfigurationSerializer,
+        clock);
+  }
+
+  /**
+   * @param startWebServer whether to start a web server if there is none to reuse, which a state
+   *     used alongside the stored one mustn't do, since the web server of the stored one is
+   *     already listening on the configured port.
+   * @return a new instance of {@link BuckGlobalState} for execution of buck
+   */
+  static BuckGlobalState create(
+      Cells rootCell,
+      KnownRuleTypesProvider knownRuleTypesProvider,
+      Watchman watchman,
+      Optional<WebServer> webServerToReuse,
+      boolean startWebServer,
+      UnconfiguredBuildTargetViewFactory unconfiguredBuildTargetFactory,
+      TargetConfigurationSerializer targetConfigurationSerializer,
+      Clock clock) {
     EventBus fileEventBus = new EventBus("file-change-events");
 
     ImmutableList<Cell> allCells = rootCell.getAllCells();
@@ -125,7 +151,7 @@ public class BuckGlobalStateFactory {
             RichStream.from(allCells).map(Cell::getFilesystem).toImmutableSet());
 
     Optional<WebServer> webServer;
-    if (webServerToReuse.isPresent()) {
+    if (webServerToReuse.isPresent() || !startWebServer) {
       webServer = webServerToReuse;
     } else {
       webServer =
@@ -238,7 +264,14 @@ public class BuckGlobalStateFactory {
     if (!port.isPresent()) {
       return Optional.empty();
     }
-    return Optional.of(new WebServer(port.getAsInt(), filesystem, clock));
+    return Optional.of(
+        new WebServer(
+            port.getAsInt(),
+            filesystem,
+            clock,
+            config
+                .getInteger("httpserver", "max_concurrent_cache_requests")
+                .orElse(WebServer.DEFAULT_MAX_CONCURRENT_CACHE_REQUESTS)));
   }
 
   /**
@@ -31,7 +31,9 @@ import com.facebook.buck.io.watchman.WatchmanFactory;
 import com.facebook.buck.util.Console;
 import com.facebook.buck.util.timing.Clock;
 import com.facebook.buck.util.types.Pair;
+import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableMap;
+import java.util.IdentityHashMap;
 import java.util.Map;
 import java.util.Optional;
 import java.util.OptionalInt;
@@ -48,6 +50,12 @@ public class BuckGlobalStateLifecycleManager {
 
   @Nullable private volatile BuckGlobalState buckGlobalState;
 
+  /**
+   * How many commands acquired each state with {@link #acquireBuckGlobalState} and didn't release
+   * it yet. A state which is replaced or isolated is only closed once no command uses it anymore.
+   */
+  private final Map<BuckGlobalState, Integer> usersByState = new IdentityHashMap<>();
+
   /** Indicates whether a daemon's {@link BuckGlobalState} is reused, or why it can't be reused */
   public enum LifecycleStatus {
     REUSED,
@@ -56,7 +64,8 @@ public class BuckGlobalStateLifecycleManager {
     INVALIDATED_WATCHMAN_RESTARTED,
     INVALIDATED_FILESYSTEM_CHANGED,
     INVALIDATED_BUCK_CONFIG_CHANGED,
-    INVALIDATED_TOOLCHAINS_INCOMPATIBLE;
+    INVALIDATED_TOOLCHAINS_INCOMPATIBLE,
+    ISOLATED;
 
     private String toHumanReadableError() {
       switch (this) {
@@ -74,6 +83,8 @@ public class BuckGlobalStateLifecycleManager {
           return "Buck configuration options changed between invocations";
         case INVALIDATED_TOOLCHAINS_INCOMPATIBLE:
           return "Available / configured toolchains changed between invocations";
+        case ISOLATED:
+          return "Using a separate state for a read-only command running alongside other commands";
         default:
           throw new AssertionError(String.format("Unknown value: %s", this));
       }
@@ -96,6 +107,8 @@ public class BuckGlobalStateLifecycleManager {
           return Optional.of("DaemonBuckConfigInvalidated");
         case INVALIDATED_TOOLCHAINS_INCOMPATIBLE:
           return Optional.of("DaemonToolchainsInvalidated");
+        case ISOLATED:
+          return Optional.of("DaemonStateIsolated");
         default:
           throw new AssertionError(String.format("Unknown value: %s", this));
       }
@@ -121,6 +134,85 @@ public class BuckGlobalStateLifecycleManager {
       Clock clock,
       UnconfiguredBuildTargetViewFactory unconfiguredBuildTargetFactory,
       TargetConfigurationSerializer targetConfigurationSerializer) {
+    return getBuckGlobalState(
+        cells,
+        knownRuleTypesProvider,
+        watchman,
+        console,
+        clock,
+        unconfiguredBuildTargetFactory,
+        targetConfigurationSerializer,
+        false);
+  }
+
+  /**
+   * Get or create Daemon, for a command which has to release it with {@link
+   * #releaseBuckGlobalState} once it finished. Until then, the state isn't closed, even if another
+   * command replaces it.
+   *
+   * @see #getBuckGlobalState(Cells, KnownRuleTypesProvider, Watchman, Console, Clock,
+   *     UnconfiguredBuildTargetViewFactory, TargetConfigurationSerializer, boolean)
+   */
+  public synchronized Pair<BuckGlobalState, LifecycleStatus> acquireBuckGlobalState(
+      Cells cells,
+      KnownRuleTypesProvider knownRuleTypesProvider,
+      Watchman watchman,
+      Console console,
+      Clock clock,
+      UnconfiguredBuildTargetViewFactory unconfiguredBuildTargetFactory,
+      TargetConfigurationSerializer targetConfigurationSerializer,
+      boolean isolateIfInvalidated) {
+    Pair<BuckGlobalState, LifecycleStatus> state =
+        getBuckGlobalState(
+            cells,
+            knownRuleTypesProvider,
+            watchman,
+            console,
+            clock,
+            unconfiguredBuildTargetFactory,
+            targetConfigurationSerializer,
+            isolateIfInvalidated);
+    usersByState.merge(state.getFirst(), 1, Integer::sum);
+    return state;
+  }
+
+  /**
+   * Releases a state acquired with {@link #acquireBuckGlobalState}, closing it if it is no longer
+   * stored and no other command uses it.
+   */
+  public synchronized void releaseBuckGlobalState(BuckGlobalState state) {
+    Integer users = usersByState.get(state);
+    Preconditions.checkState(users != null, "Releasing a daemon state which wasn't acquired.");
+    if (users > 1) {
+      usersByState.put(state, users - 1);
+      return;
+    }
+    usersByState.remove(state);
+    if (state != buckGlobalState) {
+      LOG.info("Closing the daemon state which was replaced or isolated, now that it is unused.");
+      // The web server of a replaced state was already stopped, and may be used by the new state.
+      // Isolated states don't have one.
+      state.closeWithoutWebServer();
+    }
+  }
+
+  /**
+   * Get or create Daemon.
+   *
+   * @param isolateIfInvalidated whether the stored state is in use by other commands, so that it
+   *     mustn't be replaced if it can't be reused. A new state is then returned with {@link
+   *     LifecycleStatus#ISOLATED}, which is not stored, and which the caller has to close, or to
+   *     release if it acquired it.
+   */
+  public synchronized Pair<BuckGlobalState, LifecycleStatus> getBuckGlobalState(
+      Cells cells,
+      KnownRuleTypesProvider knownRuleTypesProvider,
+      Watchman watchman,
+      Console console,
+      Clock clock,
+      UnconfiguredBuildTargetViewFactory unconfiguredBuildTargetFactory,
+      TargetConfigurationSerializer targetConfigurationSerializer,
+      boolean isolateIfInvalidated) {
 
     Cell rootCell = cells.getRootCell();
 
@@ -173,6 +265,24 @@ public class BuckGlobalStateLifecycleManager {
       }
     }
 
+    if (buckGlobalState == null && currentState != null && isolateIfInvalidated) {
+      LOG.info(
+          "Not replacing the daemon state in use by other commands (%s), using a separate one",
+          lifecycleStatus.toHumanReadableError());
+      buckGlobalState = currentState;
+      return new Pair<>(
+          BuckGlobalStateFactory.create(
+              cells,
+              knownRuleTypesProvider,
+              watchman,
+              Optional.empty(),
+              false,
+              unconfiguredBuildTargetFactory,
+              targetConfigurationSerializer,
+              clock),
+          LifecycleStatus.ISOLATED);
+    }
+
     // if we restart daemon, notify user that caches are screwed
     if (buckGlobalState == null
         && currentState != null
@@ -209,7 +319,7 @@ public class BuckGlobalStateLifecycleManager {
               : Optional.empty();
 
       if (currentState != null) {
-        currentState.close();
+        closeUnlessUsed(currentState);
       }
 
       buckGlobalState =
@@ -230,11 +340,24 @@ public class BuckGlobalStateLifecycleManager {
   public synchronized void resetBuckGlobalState() {
     if (buckGlobalState != null) {
       LOG.info("Closing daemon's global state on reset request.");
-      buckGlobalState.close();
+      closeUnlessUsed(buckGlobalState);
     }
     buckGlobalState = null;
   }
 
+  /**
+   * Closes a state which is no longer stored, or only stops its web server if commands still use
+   * it, in which case the last of them to release it closes it.
+   */
+  private void closeUnlessUsed(BuckGlobalState state) {
+    if (usersByState.containsKey(state)) {
+      LOG.info("Closing the replaced daemon state once the commands using it finished.");
+      state.shutdownWebServer();
+    } else {
+      state.close();
+    }
+  }
+
   private boolean shouldReuseWebServer(Cell newCell) {
     if (newCell == null || buckGlobalState == null) {
       return false;
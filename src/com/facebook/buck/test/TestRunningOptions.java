@@ -21,6 +21,7 @@ import com.facebook.buck.test.selectors.TestSelectorList;
 import com.google.common.collect.ImmutableMap;
 import java.util.EnumSet;
 import java.util.Optional;
+import java.util.OptionalInt;
 import java.util.Set;
 import org.immutables.value.Value;
 
@@ -74,6 +75,12 @@ public abstract class TestRunningOptions {
 
   public abstract Optional<String> getJavaTempDir();
 
+  /**
+   * @return the number of JVMs that are reused to run java tests, or empty if every java test rule
+   *     is run in a new JVM.
+   */
+  public abstract OptionalInt getJavaTestRunnerPoolSize();
+
   public static Builder builder() {
     return new Builder();
   }
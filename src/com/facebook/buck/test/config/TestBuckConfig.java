@@ -103,6 +103,29 @@ public abstract class TestBuckConfig implements ConfigView<BuckConfig> {
     return getDelegate().getLong(TEST_SECTION_HEADER, "rule_timeout");
   }
 
+  /**
+   * @return the number of JVMs that are kept running to run the tests of java test rules one after
+   *     another, or empty if every java test rule should be run in a new JVM.
+   */
+  public OptionalInt getJavaTestRunnerPoolSize() {
+    OptionalInt poolSize = getDelegate().getInteger(TEST_SECTION_HEADER, "java_runner_pool_size");
+    if (poolSize.isPresent() && poolSize.getAsInt() <= 0) {
+      throw new HumanReadableException(
+          "test.java_runner_pool_size must be greater than zero (was "
+              + poolSize.getAsInt()
+              + ")");
+    }
+    return poolSize;
+  }
+
+  /**
+   * Whether a test rule whose last run passed is reported as passed again without running it, as
+   * long as its rule key, the rule keys of its runtime deps and the environment are unchanged.
+   */
+  public boolean isCachingPassingResultsEnabled() {
+    return getDelegate().getBooleanValue(TEST_SECTION_HEADER, "cache_passing_results", false);
+  }
+
   public boolean isInclNoLocationClassesEnabled() {
     return getDelegate().getBooleanValue(TEST_SECTION_HEADER, "incl_no_location_classes", false);
   }
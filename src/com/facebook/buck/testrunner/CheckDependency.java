@@ -23,12 +23,23 @@ class CheckDependency {
   }
 
   public static void isPresent(String name, String classToLoad) {
+    if (!isAvailable(name, classToLoad)) {
+      System.exit(1);
+    }
+  }
+
+  /**
+   * Like {@link #isPresent(String, String)}, but returns {@code false} instead of exiting when the
+   * dependency is missing.
+   */
+  public static boolean isAvailable(String name, String classToLoad) {
     try {
       Class.forName(classToLoad);
+      return true;
     } catch (ClassNotFoundException e) {
       System.err.println(
           "Unable to locate " + name + " on the classpath. Please add as a test dependency.");
-      System.exit(1);
+      return false;
     }
   }
 }
@@ -47,4 +47,21 @@ public class JUnitMain {
     runner.parseArgs(args);
     runner.runAndExit();
   }
+
+  /**
+   * Runs the tests without exiting the JVM, so that a test runner JVM can be reused to run the
+   * tests of several test rules one after another.
+   *
+   * @return the exit code {@link #main(String[])} would have exited with.
+   */
+  public static int run(String[] args) {
+    if (!CheckDependency.isAvailable("junit", "org.junit.Test")
+        || !CheckDependency.isAvailable("hamcrest", "org.hamcrest.Description")) {
+      return 1;
+    }
+
+    JUnitRunner runner = new JUnitRunner();
+    runner.parseArgs(args);
+    return runner.runAndGetExitCode();
+  }
 }
@@ -16,89 +16,234 @@
 
 package com.facebook.buck.util;
 
+import com.facebook.buck.core.util.log.Logger;
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalNotification;
+import com.google.common.collect.HashMultiset;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Multiset;
+import com.google.common.collect.Sets;
 import java.io.IOException;
+import java.net.URISyntaxException;
 import java.net.URL;
 import java.net.URLClassLoader;
-import java.util.HashMap;
-import java.util.Map;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
 
 /**
- * Maintain a cache mapping class paths to class loaders that load from these class paths. The class
- * loaders remain active until ClassLoaderCache itself is unloaded.
+ * Maintain a cache mapping class paths to class loaders that load from these class paths.
+ *
+ * <p>The cache is reference counted with {@link #addRef()} and {@link #close()}, so a single cache
+ * can be owned by the daemon and shared by the commands it runs. That keeps compilers and
+ * annotation processors loaded (and JIT-compiled) between builds. Class loaders are looked up by
+ * their parent and class path, and are replaced when the size or modification time of any entry of
+ * the class path changes. The least recently used class loaders are evicted once there are more
+ * than {@code maxClassLoaders} of them. Each reference remembers the class loaders it handed out,
+ * and an evicted class loader is closed as soon as every reference that handed it out is closed.
  */
 public final class ClassLoaderCache implements AutoCloseable {
+  private static final Logger LOG = Logger.get(ClassLoaderCache.class);
 
-  private final Map<ClassLoader, Map<ImmutableList<URL>, ClassLoader>> cache = new HashMap<>();
+  @VisibleForTesting static final int DEFAULT_MAX_CLASS_LOADERS = 128;
 
-  private int referenceCount = 1;
+  private final State state;
 
-  private synchronized Map<ImmutableList<URL>, ClassLoader> getCacheForParent(
-      @Nullable ClassLoader parentClassLoader) {
-    Map<ImmutableList<URL>, ClassLoader> cacheForParent = cache.get(parentClassLoader);
+  /** Class loaders handed out through this reference, released when it is closed. */
+  private final Set<ClassLoader> usedClassLoaders = Sets.newConcurrentHashSet();
 
-    if (cacheForParent == null) {
-      cacheForParent = new HashMap<>();
-      cache.put(parentClassLoader, cacheForParent);
-    }
+  @GuardedBy("state")
+  private boolean closed = false;
+
+  public ClassLoaderCache() {
+    this(DEFAULT_MAX_CLASS_LOADERS);
+  }
 
-    return cacheForParent;
+  public ClassLoaderCache(int maxClassLoaders) {
+    this(new State(maxClassLoaders));
   }
 
-  public synchronized ClassLoader getClassLoaderForClassPath(
+  private ClassLoaderCache(State state) {
+    this.state = state;
+  }
+
+  public ClassLoader getClassLoaderForClassPath(
       @Nullable ClassLoader parentClassLoader, ImmutableList<URL> classPath) {
+    Key key = new Key(parentClassLoader, classPath);
+    ImmutableList<String> fingerprint = fingerprint(classPath);
 
-    Map<ImmutableList<URL>, ClassLoader> cacheForParent = getCacheForParent(parentClassLoader);
+    // Class loaders this reference already uses cannot be closed, so they are safe to return
+    // without taking the lock.
+    CachedClassLoader cached = state.cache.getIfPresent(key);
+    if (cached != null
+        && cached.fingerprint.equals(fingerprint)
+        && usedClassLoaders.contains(cached.classLoader)) {
+      state.hitCount.incrementAndGet();
+      return cached.classLoader;
+    }
 
-    ClassLoader classLoader = cacheForParent.get(classPath);
-    if (classLoader == null) {
-      URL[] urls = classPath.toArray(new URL[0]);
-      classLoader = new CachedURLClassLoader(urls, parentClassLoader);
-      cacheForParent.put(classPath, classLoader);
+    synchronized (state) {
+      Preconditions.checkState(!closed, "Class loader cache reference is closed.");
+      cached = state.cache.getIfPresent(key);
+      if (cached != null && cached.fingerprint.equals(fingerprint)) {
+        state.hitCount.incrementAndGet();
+        use(cached.classLoader);
+        return cached.classLoader;
+      }
+      state.missCount.incrementAndGet();
+      ClassLoader classLoader =
+          new CachedURLClassLoader(classPath.toArray(new URL[0]), parentClassLoader);
+      use(classLoader);
+      state.cache.put(key, new CachedClassLoader(fingerprint, classLoader));
+      return classLoader;
     }
+  }
 
-    return classLoader;
+  @GuardedBy("state")
+  private void use(ClassLoader classLoader) {
+    if (usedClassLoaders.add(classLoader)) {
+      state.users.add(classLoader);
+    }
   }
 
   @VisibleForTesting
-  public synchronized void injectClassLoader(
+  public void injectClassLoader(
       @Nullable ClassLoader parentClassLoader,
       ImmutableList<URL> classPath,
       ClassLoader injectedClassLoader) {
-    Map<ImmutableList<URL>, ClassLoader> cacheForParent = getCacheForParent(parentClassLoader);
+    synchronized (state) {
+      state.cache.put(
+          new Key(parentClassLoader, classPath),
+          new CachedClassLoader(fingerprint(classPath), injectedClassLoader));
+    }
+  }
+
+  /**
+   * Returns a new reference to this cache, sharing its class loaders. The reference has to be
+   * closed once the class loaders it handed out are not used anymore.
+   */
+  public ClassLoaderCache addRef() {
+    synchronized (state) {
+      Preconditions.checkState(state.referenceCount > 0, "Class loader cache is closed.");
+      state.referenceCount += 1;
+      return new ClassLoaderCache(state);
+    }
+  }
 
-    cacheForParent.put(classPath, injectedClassLoader);
+  public long getHitCount() {
+    return state.hitCount.get();
   }
 
-  public synchronized ClassLoaderCache addRef() {
-    referenceCount += 1;
-    return this;
+  public long getMissCount() {
+    return state.missCount.get();
+  }
+
+  public long getEvictionCount() {
+    return state.evictionCount.get();
   }
 
   @Override
-  public synchronized void close() throws IOException {
-    if (referenceCount > 1) {
-      referenceCount -= 1;
-      return;
+  public void close() throws IOException {
+    List<ClassLoader> classLoaders = new ArrayList<>();
+    synchronized (state) {
+      if (closed) {
+        return;
+      }
+      closed = true;
+
+      for (ClassLoader classLoader : usedClassLoaders) {
+        if (state.users.remove(classLoader, 1) == 1
+            && state.evictedClassLoaders.remove(classLoader)) {
+          classLoaders.add(classLoader);
+        }
+      }
+      usedClassLoaders.clear();
+
+      state.referenceCount -= 1;
+      if (state.referenceCount > 0) {
+        LOG.debug(
+            "Class loader cache: %d hits, %d misses, %d evictions.",
+            getHitCount(), getMissCount(), getEvictionCount());
+      } else {
+        classLoaders.addAll(state.evictedClassLoaders);
+        state.cache.asMap().values().forEach(cached -> classLoaders.add(cached.classLoader));
+        state.evictedClassLoaders.clear();
+      }
+    }
+    closeClassLoaders(classLoaders);
+  }
+
+  /** The class loaders and counters shared by all references to a cache. */
+  private static final class State {
+    private final Cache<Key, CachedClassLoader> cache;
+
+    /** Number of open references using each class loader. */
+    @GuardedBy("this")
+    private final Multiset<ClassLoader> users = HashMultiset.create();
+
+    /** Evicted class loaders that some open reference still uses. */
+    @GuardedBy("this")
+    private final Set<ClassLoader> evictedClassLoaders = new HashSet<>();
+
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong evictionCount = new AtomicLong();
+
+    @GuardedBy("this")
+    private int referenceCount = 1;
+
+    State(int maxClassLoaders) {
+      this.cache =
+          CacheBuilder.newBuilder()
+              .maximumSize(maxClassLoaders)
+              .removalListener(this::onRemoval)
+              .build();
+    }
+
+    // Only writes evict, and they all hold the lock already.
+    private synchronized void onRemoval(RemovalNotification<Key, CachedClassLoader> notification) {
+      if (notification.wasEvicted()) {
+        evictionCount.incrementAndGet();
+      }
+      ClassLoader classLoader = Objects.requireNonNull(notification.getValue()).classLoader;
+      if (users.contains(classLoader)) {
+        evictedClassLoaders.add(classLoader);
+        return;
+      }
+      try {
+        closeClassLoaders(ImmutableList.of(classLoader));
+      } catch (IOException e) {
+        LOG.warn(e, "Failed to close an evicted class loader.");
+      }
     }
+  }
 
+  private static void closeClassLoaders(Iterable<ClassLoader> classLoaders) throws IOException {
     Optional<IOException> caughtEx = Optional.empty();
 
-    for (Map<ImmutableList<URL>, ClassLoader> cacheForParent : cache.values()) {
-      for (ClassLoader cl : cacheForParent.values()) {
-        try {
-          if (cl instanceof CachedURLClassLoader) {
-            ((CachedURLClassLoader) cl).reallyClose();
-          }
-        } catch (IOException ex) {
-          if (caughtEx.isPresent()) {
-            caughtEx.get().addSuppressed(ex);
-          } else {
-            caughtEx = Optional.of(ex);
-          }
+    for (ClassLoader cl : classLoaders) {
+      try {
+        if (cl instanceof CachedURLClassLoader) {
+          ((CachedURLClassLoader) cl).reallyClose();
+        }
+      } catch (IOException ex) {
+        if (caughtEx.isPresent()) {
+          caughtEx.get().addSuppressed(ex);
+        } else {
+          caughtEx = Optional.of(ex);
         }
       }
     }
@@ -108,6 +253,62 @@ public final class ClassLoaderCache implements AutoCloseable {
     }
   }
 
+  /** Returns the size and modification time of every file or directory of the class path. */
+  private static ImmutableList<String> fingerprint(ImmutableList<URL> classPath) {
+    ImmutableList.Builder<String> fingerprint = ImmutableList.builder();
+    for (URL url : classPath) {
+      fingerprint.add(fingerprint(url));
+    }
+    return fingerprint.build();
+  }
+
+  private static String fingerprint(URL url) {
+    if (!"file".equals(url.getProtocol())) {
+      return "";
+    }
+    try {
+      Path path = Paths.get(url.toURI());
+      BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+      return attributes.size() + ":" + attributes.lastModifiedTime().toMillis();
+    } catch (IOException | URISyntaxException | IllegalArgumentException e) {
+      return "";
+    }
+  }
+
+  private static final class Key {
+    @Nullable private final ClassLoader parentClassLoader;
+    private final ImmutableList<URL> classPath;
+
+    Key(@Nullable ClassLoader parentClassLoader, ImmutableList<URL> classPath) {
+      this.parentClassLoader = parentClassLoader;
+      this.classPath = classPath;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+      if (!(other instanceof Key)) {
+        return false;
+      }
+      Key that = (Key) other;
+      return parentClassLoader == that.parentClassLoader && classPath.equals(that.classPath);
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * System.identityHashCode(parentClassLoader) + classPath.hashCode();
+    }
+  }
+
+  private static final class CachedClassLoader {
+    private final ImmutableList<String> fingerprint;
+    private final ClassLoader classLoader;
+
+    CachedClassLoader(ImmutableList<String> fingerprint, ClassLoader classLoader) {
+      this.fingerprint = fingerprint;
+      this.classLoader = classLoader;
+    }
+  }
+
   private static class CachedURLClassLoader extends URLClassLoader {
     public CachedURLClassLoader(URL[] urls, @Nullable ClassLoader parent) {
       super(urls, parent);
@@ -0,0 +1,165 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.util.unarchive;
+
+import com.google.common.io.ByteStreams;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import javax.annotation.Nullable;
+
+/**
+ * An {@link InputStream} which reads its delegate on a background thread, so that the work of the
+ * delegate (e.g. decompressing an archive) overlaps with the work of the reader (e.g. writing the
+ * extracted files). At most {@code maxChunks} chunks are read ahead, which bounds the memory used
+ * and blocks the background thread until the reader catches up.
+ */
+class ReadAheadInputStream extends InputStream {
+
+  private static final byte[] END_OF_STREAM = new byte[0];
+
+  private final InputStream delegate;
+  private final int chunkSize;
+  private final BlockingQueue<byte[]> chunks;
+  // Whether the delegate is owned by the background task rather than by close().
+  private final AtomicBoolean claimed = new AtomicBoolean();
+  private final CountDownLatch finished = new CountDownLatch(1);
+  private final Future<?> readAhead;
+
+  @Nullable private volatile Throwable failure;
+  @Nullable private byte[] chunk;
+  private int position;
+  private boolean endOfStream;
+
+  ReadAheadInputStream(
+      InputStream delegate, int chunkSize, int maxChunks, ExecutorService executorService) {
+    this.delegate = delegate;
+    this.chunkSize = chunkSize;
+    this.chunks = new ArrayBlockingQueue<>(maxChunks);
+    this.readAhead = executorService.submit(this::readAhead);
+  }
+
+  private void readAhead() {
+    if (!claimed.compareAndSet(false, true)) {
+      // The stream was closed before the task started.
+      return;
+    }
+    boolean interrupted = false;
+    try (InputStream input = delegate) {
+      while (true) {
+        byte[] buffer = new byte[chunkSize];
+        int read = ByteStreams.read(input, buffer, 0, chunkSize);
+        if (read == 0) {
+          break;
+        }
+        chunks.put(read == chunkSize ? buffer : Arrays.copyOf(buffer, read));
+      }
+    } catch (InterruptedException e) {
+      // The stream was closed before it was fully read, nobody is waiting for more chunks.
+      interrupted = true;
+    } catch (Throwable t) {
+      failure = t;
+    } finally {
+      try {
+        // Otherwise the reader would wait for the next chunk forever.
+        if (!interrupted) {
+          chunks.put(END_OF_STREAM);
+        }
+      } catch (InterruptedException e) {
+        // Same as above.
+      } finally {
+        finished.countDown();
+      }
+    }
+  }
+
+  /** Returns the current chunk, waiting for the next one if it's been fully read. */
+  @Nullable
+  private byte[] getChunk() throws IOException {
+    while (!endOfStream && (chunk == null || position == chunk.length)) {
+      try {
+        chunk = chunks.take();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IOException("Interrupted while reading ahead.", e);
+      }
+      position = 0;
+      if (chunk == END_OF_STREAM) {
+        endOfStream = true;
+        chunk = null;
+        Throwable t = failure;
+        if (t != null) {
+          throw new IOException(t);
+        }
+      }
+    }
+    return chunk;
+  }
+
+  @Override
+  public int read() throws IOException {
+    byte[] current = getChunk();
+    if (current == null) {
+      return -1;
+    }
+    return current[position++] & 0xff;
+  }
+
+  @Override
+  public int read(byte[] b, int off, int len) throws IOException {
+    if (len == 0) {
+      return 0;
+    }
+    byte[] current = getChunk();
+    if (current == null) {
+      return -1;
+    }
+    int read = Math.min(len, current.length - position);
+    System.arraycopy(current, position, b, off, read);
+    position += read;
+    return read;
+  }
+
+  @Override
+  public int available() {
+    return chunk == null ? 0 : chunk.length - position;
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (claimed.compareAndSet(false, true)) {
+      // The background task didn't start yet, and now never will.
+      readAhead.cancel(false);
+      delegate.close();
+      return;
+    }
+    readAhead.cancel(true);
+    try {
+      finished.await();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while closing the stream.", e);
+    }
+    chunks.clear();
+  }
+}
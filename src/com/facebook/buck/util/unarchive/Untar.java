@@ -22,12 +22,15 @@ import com.facebook.buck.io.file.MostFiles;
 import com.facebook.buck.io.filesystem.ProjectFilesystem;
 import com.facebook.buck.util.PatternsMatcher;
 import com.facebook.buck.util.environment.Platform;
+import com.github.luben.zstd.ZstdInputStream;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
 import java.nio.file.FileVisitOption;
 import java.nio.file.Files;
@@ -43,6 +46,10 @@ import java.util.NavigableMap;
 import java.util.Optional;
 import java.util.Set;
 import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
 import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
 import org.apache.commons.compress.compressors.CompressorException;
@@ -51,10 +58,23 @@ import org.apache.commons.compress.compressors.CompressorStreamFactory;
 /** Utility class to extract a .tar.* file */
 public class Untar extends Unarchiver {
 
+  private static final long READ_AHEAD_MIN_SIZE = 1024 * 1024;
+  private static final int READ_AHEAD_CHUNK_SIZE = 256 * 1024;
+  private static final int READ_AHEAD_MAX_CHUNKS = 16;
+  // Shared by all the untars, so that extracting many archives at once doesn't start as many
+  // threads. Idle threads go away, so that the executor doesn't outlive its use.
+  private static final ExecutorService READ_AHEAD_EXECUTOR = newReadAheadExecutor();
+
   private final Optional<String> compressorType;
+  private final Optional<byte[]> zstdDictionary;
 
   private Untar(Optional<String> compressorType) {
+    this(compressorType, Optional.empty());
+  }
+
+  private Untar(Optional<String> compressorType, Optional<byte[]> zstdDictionary) {
     this.compressorType = compressorType;
+    this.zstdDictionary = zstdDictionary;
   }
 
   public static Untar tarUnarchiver() {
@@ -77,6 +97,11 @@ public class Untar extends Unarchiver {
     return new Untar(Optional.of(CompressorStreamFactory.ZSTANDARD));
   }
 
+  /** Returns an unarchiver of .tar.zst files compressed with the given zstd dictionary. */
+  public static Untar zstdUnarchiver(byte[] dictionary) {
+    return new Untar(Optional.of(CompressorStreamFactory.ZSTANDARD), Optional.of(dictionary));
+  }
+
   @Override
   public ImmutableSet<Path> extractArchive(
       Path archiveFile,
@@ -175,14 +200,46 @@ public class Untar extends Unarchiver {
       throws IOException, CompressorException {
     BufferedInputStream inputStream = new BufferedInputStream(Files.newInputStream(tarFile));
     if (compressorType.isPresent()) {
-      return new TarArchiveInputStream(
-          new CompressorStreamFactory()
-              .createCompressorInputStream(compressorType.get(), inputStream));
+      InputStream decompressedStream;
+      if (zstdDictionary.isPresent()) {
+        decompressedStream = new ZstdInputStream(inputStream).setDict(zstdDictionary.get());
+      } else {
+        decompressedStream =
+            new CompressorStreamFactory()
+                .createCompressorInputStream(compressorType.get(), inputStream);
+      }
+      if (Files.size(tarFile) >= READ_AHEAD_MIN_SIZE) {
+        // Decompress on another thread while this one writes the extracted files.
+        decompressedStream =
+            new ReadAheadInputStream(
+                decompressedStream,
+                READ_AHEAD_CHUNK_SIZE,
+                READ_AHEAD_MAX_CHUNKS,
+                READ_AHEAD_EXECUTOR);
+      }
+      return new TarArchiveInputStream(decompressedStream);
     } else {
       return new TarArchiveInputStream(inputStream);
     }
   }
 
+  private static ExecutorService newReadAheadExecutor() {
+    int threads = Runtime.getRuntime().availableProcessors();
+    ThreadPoolExecutor executor =
+        new ThreadPoolExecutor(
+            threads,
+            threads,
+            10,
+            TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(),
+            new ThreadFactoryBuilder()
+                .setNameFormat("untar-read-ahead-%d")
+                .setDaemon(true)
+                .build());
+    executor.allowCoreThreadTimeOut(true);
+    return executor;
+  }
+
   /** Cleans up any files that exist on the filesystem that were not in the archive */
   private void tidyDirectories(
       ProjectFilesystem filesystem, Set<Path> dirsToTidy, ImmutableSet<Path> createdFiles)
@@ -50,8 +50,10 @@ public class WorkerProcess implements Closeable {
   private final ProjectFilesystem filesystem;
   private final Path tmpPath;
   private final Path stdErr;
+  private final boolean multiplexed;
   private final AtomicInteger currentMessageID = new AtomicInteger();
   private boolean handshakePerformed = false;
+  private volatile boolean argsInline = false;
   private final ConcurrentHashMap<Integer, SettableFuture<Integer>> commandExitCodes =
       new ConcurrentHashMap<>();
   @Nullable private WorkerProcessProtocol.CommandSender protocol;
@@ -78,12 +80,28 @@ public class WorkerProcess implements Closeable {
       ProjectFilesystem filesystem,
       Path stdErr,
       Path tmpPath) {
+    this(executor, processParams, filesystem, stdErr, tmpPath, false);
+  }
+
+  /**
+   * @param multiplexed Whether the worker process is asked to run many jobs at the same time, in
+   *     which case it has to handshake with {@link
+   *     WorkerProcessProtocolZero#MULTIPLEXED_PROTOCOL_VERSION}.
+   */
+  public WorkerProcess(
+      ProcessExecutor executor,
+      ProcessExecutorParams processParams,
+      ProjectFilesystem filesystem,
+      Path stdErr,
+      Path tmpPath,
+      boolean multiplexed) {
     this.executor = executor;
     this.stdErr = stdErr;
     this.processParams =
         processParams.withRedirectError(ProcessBuilder.Redirect.to(stdErr.toFile()));
     this.filesystem = filesystem;
     this.tmpPath = tmpPath;
+    this.multiplexed = multiplexed;
     this.readerThread = new Thread(this::readerLoop);
     this.readerThread.setDaemon(true);
     this.readerThread.setName(
@@ -112,10 +130,15 @@ public class WorkerProcess implements Closeable {
                 executor.destroyLaunchedProcess(launchedProcess);
               }
             },
-            () -> launchedProcess != null && launchedProcess.isAlive());
+            () -> launchedProcess != null && launchedProcess.isAlive(),
+            multiplexed
+                ? WorkerProcessProtocolZero.MULTIPLEXED_PROTOCOL_VERSION
+                : WorkerProcessProtocolZero.PROTOCOL_VERSION,
+            true);
 
     LOG.debug("Handshaking with process %d", this.hashCode());
     protocol.handshake(currentMessageID.getAndIncrement());
+    argsInline = protocol.isArgsInline();
     handshakePerformed = true;
     readerThread.start();
   }
@@ -127,7 +150,9 @@ public class WorkerProcess implements Closeable {
     Path stderrPath = Paths.get(tmpPath.toString(), String.format("%d.err", messageID));
     filesystem.deleteFileAtPathIfExists(stdoutPath);
     filesystem.deleteFileAtPathIfExists(stderrPath);
-    filesystem.writeContentsToPath(jobArgs, argsPath);
+    if (!argsInline) {
+      filesystem.writeContentsToPath(jobArgs, argsPath);
+    }
 
     SettableFuture<Integer> exitCodeFuture = SettableFuture.create();
     commandExitCodes.put(messageID, exitCodeFuture);
@@ -144,7 +169,8 @@ public class WorkerProcess implements Closeable {
             "Sending job %d to process %d \n" + " job arguments: '%s'",
             messageID, this.hashCode(), jobArgs);
         protocol.send(
-            messageID, ImmutableWorkerProcessCommand.of(argsPath, stdoutPath, stderrPath));
+            messageID,
+            ImmutableWorkerProcessCommand.of(argsPath, stdoutPath, stderrPath, jobArgs));
       }
 
     } catch (Throwable t) {
@@ -38,4 +38,10 @@ interface WorkerProcessCommand {
    * file instead of printing out into its own stderr.
    */
   Path getStdErrPath();
+
+  /**
+   * The arguments of the command, which protocols sending them inline use instead of the file at
+   * {@link #getArgsPath()}.
+   */
+  String getArgs();
 }
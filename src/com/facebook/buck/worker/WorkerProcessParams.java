@@ -50,6 +50,17 @@ public interface WorkerProcessParams {
    */
   boolean isAsync();
 
+  /**
+   * Maximum number of jobs each worker process runs at the same time. Worker processes running more
+   * than one job handshake with {@link WorkerProcessProtocolZero#MULTIPLEXED_PROTOCOL_VERSION}.
+   */
+  int getMaxRequestsPerWorker();
+
+  /** Whether the worker processes of the pool run many jobs at the same time. */
+  default boolean isMultiplexed() {
+    return getMaxRequestsPerWorker() > 1;
+  }
+
   /**
    * Identifies the instance of the persisted worker process pool. Defines when worker process pool
    * should be invalidated.
@@ -66,7 +77,31 @@ public interface WorkerProcessParams {
       int maxWorkers,
       boolean isAsync,
       Optional<WorkerProcessIdentity> workerProcessIdentity) {
+    return of(
+        tempDir,
+        startupCommand,
+        startupEnvironment,
+        maxWorkers,
+        isAsync,
+        1,
+        workerProcessIdentity);
+  }
+
+  static WorkerProcessParams of(
+      Path tempDir,
+      ImmutableList<String> startupCommand,
+      ImmutableMap<String, String> startupEnvironment,
+      int maxWorkers,
+      boolean isAsync,
+      int maxRequestsPerWorker,
+      Optional<WorkerProcessIdentity> workerProcessIdentity) {
     return ImmutableWorkerProcessParams.of(
-        tempDir, startupCommand, startupEnvironment, maxWorkers, isAsync, workerProcessIdentity);
+        tempDir,
+        startupCommand,
+        startupEnvironment,
+        maxWorkers,
+        isAsync,
+        maxRequestsPerWorker,
+        workerProcessIdentity);
   }
 }
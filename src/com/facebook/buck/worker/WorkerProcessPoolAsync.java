@@ -21,25 +21,57 @@ import com.google.common.hash.HashCode;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.MoreExecutors;
 import java.io.IOException;
-import java.util.concurrent.Semaphore;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
 import javax.annotation.Nullable;
 
+/**
+ * A pool of worker processes which each run many jobs at the same time. Jobs go to the alive
+ * process with the fewest jobs in flight, and a new process is only started once all the others
+ * run as many jobs as they can.
+ */
 public class WorkerProcessPoolAsync implements WorkerProcessPool {
 
   private final HashCode poolHash;
-  private final int maxRequests;
+  private final int capacity;
+  private final int maxWorkers;
+  private final int maxRequestsPerWorker;
   private final ThrowingSupplier<WorkerProcess, IOException> startWorkerProcess;
-  private final Semaphore concurrencyLimiter;
-  @Nullable private WorkerProcess workerProcess;
+  private final List<Worker> workers = new ArrayList<>();
 
+  /** Creates a pool of a single worker process running up to {@code maxRequests} jobs. */
   public WorkerProcessPoolAsync(
       int maxRequests,
       HashCode poolHash,
       ThrowingSupplier<WorkerProcess, IOException> startWorkerProcess) {
+    this(maxRequests, 1, maxRequests, poolHash, startWorkerProcess);
+  }
+
+  /**
+   * Creates a pool of up to {@code maxWorkers} worker processes, each running up to {@code
+   * maxRequestsPerWorker} jobs.
+   */
+  public WorkerProcessPoolAsync(
+      int maxWorkers,
+      int maxRequestsPerWorker,
+      HashCode poolHash,
+      ThrowingSupplier<WorkerProcess, IOException> startWorkerProcess) {
+    this(maxWorkers, maxWorkers, maxRequestsPerWorker, poolHash, startWorkerProcess);
+  }
+
+  private WorkerProcessPoolAsync(
+      int capacity,
+      int maxWorkers,
+      int maxRequestsPerWorker,
+      HashCode poolHash,
+      ThrowingSupplier<WorkerProcess, IOException> startWorkerProcess) {
     this.poolHash = poolHash;
-    this.maxRequests = maxRequests;
+    this.capacity = capacity;
+    this.maxWorkers = maxWorkers <= 0 ? Integer.MAX_VALUE : maxWorkers;
+    this.maxRequestsPerWorker =
+        maxRequestsPerWorker <= 0 ? Integer.MAX_VALUE : maxRequestsPerWorker;
     this.startWorkerProcess = startWorkerProcess;
-    this.concurrencyLimiter = new Semaphore(maxRequests <= 0 ? Integer.MAX_VALUE : maxRequests);
   }
 
   @Override
@@ -49,35 +81,108 @@ public class WorkerProcessPoolAsync implements WorkerProcessPool {
 
   @Override
   public int getCapacity() {
-    return maxRequests;
+    return capacity;
   }
 
   @Override
   public ListenableFuture<WorkerJobResult> submitJob(String expandedJobArgs)
       throws IOException, InterruptedException {
+    Worker worker = acquireWorker();
+    try {
+      ListenableFuture<WorkerJobResult> result =
+          Objects.requireNonNull(worker.process).submitJob(expandedJobArgs);
+      result.addListener(() -> releaseWorker(worker), MoreExecutors.directExecutor());
+      return result;
+    } catch (Throwable t) {
+      releaseWorker(worker);
+      throw t;
+    }
+  }
+
+  /**
+   * Reserves a slot for a job on the least busy worker, waiting for one if they're all busy. A new
+   * worker process is started and handshaken outside the lock, so that jobs can still complete and
+   * other jobs can be submitted in the meantime.
+   */
+  private Worker acquireWorker() throws IOException, InterruptedException {
+    Worker starting;
     synchronized (this) {
-      if (workerProcess == null || !workerProcess.isAlive()) {
-        workerProcess = startWorkerProcess.get();
+      while (true) {
+        workers.removeIf(worker -> worker.isStarted() && worker.jobs == 0 && !worker.isAlive());
+
+        @Nullable Worker leastBusy = null;
+        for (Worker worker : workers) {
+          if (worker.jobs < maxRequestsPerWorker
+              && worker.isAlive()
+              && (leastBusy == null || worker.jobs < leastBusy.jobs)) {
+            leastBusy = worker;
+          }
+        }
+        if (leastBusy != null) {
+          leastBusy.jobs++;
+          return leastBusy;
+        }
+        // Only start another process once the running ones are all fully loaded. The placeholder
+        // holds its slot in the pool while the process starts.
+        if (workers.size() < maxWorkers) {
+          starting = new Worker();
+          starting.jobs++;
+          workers.add(starting);
+          break;
+        }
+        wait();
       }
     }
 
-    concurrencyLimiter.acquire();
+    WorkerProcess process;
     try {
-      ListenableFuture<WorkerJobResult> result = workerProcess.submitJob(expandedJobArgs);
-      result.addListener(concurrencyLimiter::release, MoreExecutors.directExecutor());
-      return result;
+      process = startWorkerProcess.get();
     } catch (Throwable t) {
-      concurrencyLimiter.release();
+      synchronized (this) {
+        workers.remove(starting);
+        notifyAll();
+      }
       throw t;
     }
+
+    synchronized (this) {
+      // The pool was closed while the process was starting.
+      if (!workers.contains(starting)) {
+        process.close();
+        throw new IOException("Worker process pool was closed while starting a worker process.");
+      }
+      starting.process = process;
+      notifyAll();
+      return starting;
+    }
+  }
+
+  private synchronized void releaseWorker(Worker worker) {
+    worker.jobs--;
+    notifyAll();
   }
 
   @Override
-  public void close() {
-    synchronized (this) {
-      if (workerProcess != null) {
-        workerProcess.close();
+  public synchronized void close() {
+    for (Worker worker : workers) {
+      if (worker.process != null) {
+        worker.process.close();
       }
     }
+    workers.clear();
+  }
+
+  /** A worker process, or a placeholder for one that is starting, and the number of its jobs. */
+  private static class Worker {
+    @Nullable private WorkerProcess process;
+    private int jobs;
+
+    private boolean isStarted() {
+      return process != null;
+    }
+
+    private boolean isAlive() {
+      return process != null && process.isAlive();
+    }
   }
 }
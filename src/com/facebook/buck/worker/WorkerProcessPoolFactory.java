@@ -95,11 +95,13 @@ public class WorkerProcessPoolFactory {
                   + "Consolidate these workers to avoid this warning.",
               key, poolCapacity, paramsToUse.getMaxWorkers()));
     }
-    if ((pool instanceof WorkerProcessPoolAsync) != paramsToUse.isAsync()) {
+    if ((pool instanceof WorkerProcessPoolAsync)
+        != (paramsToUse.isAsync() || paramsToUse.isMultiplexed())) {
       context.postEvent(
           ConsoleEvent.warning(
               "There are two 'worker_tool' targets declared with the same command (%s), but "
-                  + "different 'solo_async' settings. Consolidate these workers to avoid this warning.",
+                  + "different 'solo_async' or 'max_requests_per_worker' settings. Consolidate "
+                  + "these workers to avoid this warning.",
               key));
     }
 
@@ -126,13 +128,21 @@ public class WorkerProcessPoolFactory {
           Path tmpDir = workerTmpDir.resolve(Integer.toString(workerNumber.getAndIncrement()));
           filesystem.mkdirs(tmpDir);
           WorkerProcess process =
-              WorkerProcessPoolFactory.this.createWorkerProcess(processParams, context, tmpDir);
+              WorkerProcessPoolFactory.this.createWorkerProcess(
+                  processParams, context, tmpDir, paramsToUse.isMultiplexed());
           process.ensureLaunchAndHandshake();
           return process;
         };
 
     WorkerProcessPool newPool;
-    if (paramsToUse.isAsync()) {
+    if (paramsToUse.isMultiplexed()) {
+      newPool =
+          new WorkerProcessPoolAsync(
+              paramsToUse.getMaxWorkers(),
+              paramsToUse.getMaxRequestsPerWorker(),
+              workerHash,
+              startWorkerProcess);
+    } else if (paramsToUse.isAsync()) {
       newPool =
           new WorkerProcessPoolAsync(paramsToUse.getMaxWorkers(), workerHash, startWorkerProcess);
     } else {
@@ -174,10 +184,13 @@ public class WorkerProcessPoolFactory {
 
   @VisibleForTesting
   public WorkerProcess createWorkerProcess(
-      ProcessExecutorParams processParams, ExecutionContext context, Path tmpDir)
+      ProcessExecutorParams processParams,
+      ExecutionContext context,
+      Path tmpDir,
+      boolean multiplexed)
       throws IOException {
     Path stdErr = Files.createTempFile("buck-worker-", "-stderr.log");
     return new WorkerProcess(
-        context.getProcessExecutor(), processParams, filesystem, stdErr, tmpDir);
+        context.getProcessExecutor(), processParams, filesystem, stdErr, tmpDir, multiplexed);
   }
 }
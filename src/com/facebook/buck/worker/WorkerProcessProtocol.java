@@ -45,6 +45,14 @@ public interface WorkerProcessProtocol {
 
     CommandResponse receiveNextCommandResponse() throws IOException;
 
+    /**
+     * Whether the commands sent after the handshake carry their arguments inline, so that they
+     * don't need to be written to their args file.
+     */
+    default boolean isArgsInline() {
+      return false;
+    }
+
     /** Instructs the CommandReceiver to shut itself down. */
     @Override
     void close() throws IOException;
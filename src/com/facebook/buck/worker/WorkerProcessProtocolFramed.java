@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.worker;
+
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.WireFormat;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * The binary variant of the worker protocol, which the worker process may accept during the JSON
+ * handshake by replying with the {@link #CAPABILITY} capability. Commands and responses are then
+ * sent as protocol buffers, each preceded by its size as a 4 bytes big-endian integer:
+ *
+ * <pre>
+ *   message Command {
+ *     int32 id = 1;
+ *     string args = 2;
+ *     string stdout_path = 3;
+ *     string stderr_path = 4;
+ *   }
+ *
+ *   message Result {
+ *     int32 id = 1;
+ *     int32 exit_code = 2;
+ *   }
+ * </pre>
+ *
+ * <p>Unlike with JSON commands, the arguments of the command are sent inline instead of in a file.
+ * Buck closes the stdin of the worker process when it no longer needs it.
+ */
+class WorkerProcessProtocolFramed {
+
+  /** The capability with which the worker process accepts this protocol in the handshake. */
+  static final String CAPABILITY = "framed";
+
+  private static final int COMMAND_ID_FIELD = 1;
+  private static final int COMMAND_ARGS_FIELD = 2;
+  private static final int COMMAND_STDOUT_PATH_FIELD = 3;
+  private static final int COMMAND_STDERR_PATH_FIELD = 4;
+  private static final int RESULT_ID_FIELD = 1;
+  private static final int RESULT_EXIT_CODE_FIELD = 2;
+
+  private final DataOutputStream processStdin;
+  private final DataInputStream processStdout;
+
+  WorkerProcessProtocolFramed(OutputStream processStdin, InputStream processStdout) {
+    this.processStdin = new DataOutputStream(new BufferedOutputStream(processStdin));
+    this.processStdout = new DataInputStream(new BufferedInputStream(processStdout));
+  }
+
+  void send(int messageId, WorkerProcessCommand command) throws IOException {
+    String stdoutPath = command.getStdOutPath().toString();
+    String stderrPath = command.getStdErrPath().toString();
+    int size =
+        CodedOutputStream.computeInt32Size(COMMAND_ID_FIELD, messageId)
+            + CodedOutputStream.computeStringSize(COMMAND_ARGS_FIELD, command.getArgs())
+            + CodedOutputStream.computeStringSize(COMMAND_STDOUT_PATH_FIELD, stdoutPath)
+            + CodedOutputStream.computeStringSize(COMMAND_STDERR_PATH_FIELD, stderrPath);
+    processStdin.writeInt(size);
+    CodedOutputStream output = CodedOutputStream.newInstance(processStdin);
+    output.writeInt32(COMMAND_ID_FIELD, messageId);
+    output.writeString(COMMAND_ARGS_FIELD, command.getArgs());
+    output.writeString(COMMAND_STDOUT_PATH_FIELD, stdoutPath);
+    output.writeString(COMMAND_STDERR_PATH_FIELD, stderrPath);
+    output.flush();
+    processStdin.flush();
+  }
+
+  WorkerProcessProtocol.CommandResponse receiveNextCommandResponse() throws IOException {
+    byte[] message = new byte[processStdout.readInt()];
+    processStdout.readFully(message);
+
+    int id = -1;
+    int exitCode = -1;
+    CodedInputStream input = CodedInputStream.newInstance(message);
+    for (int tag = input.readTag(); tag != 0; tag = input.readTag()) {
+      switch (WireFormat.getTagFieldNumber(tag)) {
+        case RESULT_ID_FIELD:
+          id = input.readInt32();
+          break;
+        case RESULT_EXIT_CODE_FIELD:
+          exitCode = input.readInt32();
+          break;
+        default:
+          input.skipField(tag);
+      }
+    }
+    return new WorkerProcessProtocol.CommandResponse(id, exitCode);
+  }
+
+  void close() throws IOException {
+    try {
+      processStdin.close();
+    } finally {
+      processStdout.close();
+    }
+  }
+}
@@ -19,6 +19,8 @@ package com.facebook.buck.worker;
 import com.facebook.buck.core.exceptions.HumanReadableException;
 import com.facebook.buck.core.util.log.Logger;
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
 import com.google.gson.stream.JsonReader;
 import com.google.gson.stream.JsonWriter;
 import java.io.BufferedReader;
@@ -31,18 +33,24 @@ import java.io.OutputStreamWriter;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.function.Supplier;
+import javax.annotation.Nullable;
 
 public class WorkerProcessProtocolZero {
 
   private static final Logger LOG = Logger.get(WorkerProcessProtocolZero.class);
 
   public static class CommandSender implements WorkerProcessProtocol.CommandSender {
+    private final OutputStream processStdin;
+    private final InputStream processStdout;
     private final JsonWriter processStdinWriter;
     private final JsonReader processStdoutReader;
     private final Path stdErr;
     private final Runnable onClose;
     private boolean isClosed = false;
     private final Supplier<Boolean> isAlive;
+    private final String protocolVersion;
+    private final boolean offerFramed;
+    @Nullable private WorkerProcessProtocolFramed framed;
 
     public CommandSender(
         OutputStream processStdin,
@@ -50,6 +58,25 @@ public class WorkerProcessProtocolZero {
         Path stdErr,
         Runnable onClose,
         Supplier<Boolean> isAlive) {
+      this(processStdin, processStdout, stdErr, onClose, isAlive, PROTOCOL_VERSION, false);
+    }
+
+    /**
+     * @param protocolVersion the version of the protocol to handshake with, either {@link
+     *     #PROTOCOL_VERSION} or {@link #MULTIPLEXED_PROTOCOL_VERSION}.
+     * @param offerFramed whether to offer the worker process to switch to {@link
+     *     WorkerProcessProtocolFramed} after the handshake.
+     */
+    public CommandSender(
+        OutputStream processStdin,
+        InputStream processStdout,
+        Path stdErr,
+        Runnable onClose,
+        Supplier<Boolean> isAlive,
+        String protocolVersion,
+        boolean offerFramed) {
+      this.processStdin = processStdin;
+      this.processStdout = processStdout;
       this.processStdinWriter =
           new JsonWriter(new BufferedWriter(new OutputStreamWriter(processStdin)));
       this.processStdoutReader =
@@ -57,6 +84,8 @@ public class WorkerProcessProtocolZero {
       this.stdErr = stdErr;
       this.onClose = onClose;
       this.isAlive = isAlive;
+      this.protocolVersion = protocolVersion;
+      this.offerFramed = offerFramed;
     }
 
     @VisibleForTesting
@@ -71,8 +100,27 @@ public class WorkerProcessProtocolZero {
 
     @Override
     public void handshake(int messageId) throws IOException {
-      sendHandshake(processStdinWriter, messageId);
-      receiveHandshake(processStdoutReader, messageId, stdErr);
+      ImmutableList<String> offeredCapabilities =
+          offerFramed
+              ? ImmutableList.of(WorkerProcessProtocolFramed.CAPABILITY)
+              : ImmutableList.of();
+      sendHandshake(processStdinWriter, messageId, protocolVersion, offeredCapabilities);
+      ImmutableSet<String> capabilities =
+          receiveHandshake(processStdoutReader, messageId, protocolVersion, stdErr);
+      if (!offeredCapabilities.containsAll(capabilities)) {
+        throw new HumanReadableException(
+            String.format(
+                "Expected handshake response's \"capabilities\" to be among %s, got %s instead.",
+                offeredCapabilities, capabilities));
+      }
+      if (capabilities.contains(WorkerProcessProtocolFramed.CAPABILITY)) {
+        framed = new WorkerProcessProtocolFramed(processStdin, processStdout);
+      }
+    }
+
+    @Override
+    public boolean isArgsInline() {
+      return framed != null;
     }
 
     /*
@@ -87,6 +135,10 @@ public class WorkerProcessProtocolZero {
     */
     @Override
     public void send(int messageId, WorkerProcessCommand command) throws IOException {
+      if (framed != null) {
+        framed.send(messageId, command);
+        return;
+      }
       processStdinWriter.beginObject();
       processStdinWriter.name("id").value(messageId);
       processStdinWriter.name("type").value(TYPE_COMMAND);
@@ -130,6 +182,17 @@ public class WorkerProcessProtocolZero {
     */
     @Override
     public WorkerProcessProtocol.CommandResponse receiveNextCommandResponse() throws IOException {
+      if (framed != null) {
+        try {
+          return framed.receiveNextCommandResponse();
+        } catch (IOException e) {
+          throw new HumanReadableException(
+              e,
+              "Error receiving command response from external process.\n"
+                  + "Stderr from external process:\n%s",
+              getStdErrorOutput(stdErr));
+        }
+      }
       int id = -1;
       int exitCode = -1;
       String type = "";
@@ -173,10 +236,14 @@ public class WorkerProcessProtocolZero {
         return;
       }
       try {
-        processStdinWriter.endArray();
-        processStdinWriter.close();
-        processStdoutReader.endArray();
-        processStdoutReader.close();
+        if (framed != null) {
+          framed.close();
+        } else {
+          processStdinWriter.endArray();
+          processStdinWriter.close();
+          processStdoutReader.endArray();
+          processStdoutReader.close();
+        }
       } catch (IOException e) {
         if (!isAlive.get()) {
           LOG.warn(
@@ -193,9 +260,17 @@ public class WorkerProcessProtocolZero {
     }
   }
 
+  /** The version of the protocol in which a worker process runs one command at a time. */
+  public static final String PROTOCOL_VERSION = "0";
+
+  /**
+   * The version of the protocol in which a worker process accepts new commands while others are
+   * still running, and may reply to them in any order. The messages are the same as in version 0.
+   */
+  public static final String MULTIPLEXED_PROTOCOL_VERSION = "1";
+
   private static final String TYPE_HANDSHAKE = "handshake";
   private static final String TYPE_COMMAND = "command";
-  private static final String PROTOCOL_VERSION = "0";
   private static final String TYPE_RESULT = "result";
   private static final String TYPE_ERROR = "error";
 
@@ -205,17 +280,26 @@ public class WorkerProcessProtocolZero {
        {
          id: 0,
          type: 'handshake',
-         protocol_version: '0',
-         capabilities: []
+         protocol_version: <protocolVersion>,
+         capabilities: <offeredCapabilities>
        }
   */
-  private static void sendHandshake(JsonWriter writer, int messageId) throws IOException {
+  private static void sendHandshake(
+      JsonWriter writer,
+      int messageId,
+      String protocolVersion,
+      ImmutableList<String> offeredCapabilities)
+      throws IOException {
     writer.beginArray();
     writer.beginObject();
     writer.name("id").value(messageId);
     writer.name("type").value(TYPE_HANDSHAKE);
-    writer.name("protocol_version").value(PROTOCOL_VERSION);
-    writer.name("capabilities").beginArray().endArray();
+    writer.name("protocol_version").value(protocolVersion);
+    writer.name("capabilities").beginArray();
+    for (String capability : offeredCapabilities) {
+      writer.value(capability);
+    }
+    writer.endArray();
     writer.endObject();
     writer.flush();
   }
@@ -226,15 +310,17 @@ public class WorkerProcessProtocolZero {
        {
          id: 0,
          type: 'handshake',
-         protocol_version: '0',
-         capabilities: []
+         protocol_version: <expectedProtocolVersion>,
+         capabilities: <a subset of the offered capabilities>
        }
   */
-  private static void receiveHandshake(JsonReader reader, int messageId, Path stdErr)
+  private static ImmutableSet<String> receiveHandshake(
+      JsonReader reader, int messageId, String expectedProtocolVersion, Path stdErr)
       throws IOException {
     int id = -1;
     String type = "";
     String protocolVersion = "";
+    ImmutableSet.Builder<String> capabilities = ImmutableSet.builder();
 
     try {
       reader.beginArray();
@@ -250,10 +336,13 @@ public class WorkerProcessProtocolZero {
         } else if (property.equals("capabilities")) {
           try {
             reader.beginArray();
+            while (reader.hasNext()) {
+              capabilities.add(reader.nextString());
+            }
             reader.endArray();
           } catch (IllegalStateException e) {
             throw new HumanReadableException(
-                "Expected handshake response's \"capabilities\" to " + "be an empty array.");
+                "Expected handshake response's \"capabilities\" to " + "be an array of strings.");
           }
         } else {
           reader.skipValue();
@@ -280,13 +369,14 @@ public class WorkerProcessProtocolZero {
               "Expected handshake response's \"type\" " + "to be \"%s\", got \"%s\" instead.",
               TYPE_HANDSHAKE, type));
     }
-    if (!protocolVersion.equals(PROTOCOL_VERSION)) {
+    if (!protocolVersion.equals(expectedProtocolVersion)) {
       throw new HumanReadableException(
           String.format(
               "Expected handshake response's "
                   + "\"protocol_version\" to be \"%s\", got \"%s\" instead.",
-              PROTOCOL_VERSION, protocolVersion));
+              expectedProtocolVersion, protocolVersion));
     }
+    return capabilities.build();
   }
 
   private static String getStdErrorOutput(Path stdErr) throws IOException {
@@ -0,0 +1,208 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.android;
+
+import com.facebook.buck.core.model.BuildTarget;
+import com.facebook.buck.core.model.BuildTargetFactory;
+import com.facebook.buck.core.rules.resolver.impl.TestActionGraphBuilder;
+import com.facebook.buck.core.sourcepath.PathSourcePath;
+import com.facebook.buck.core.sourcepath.SourcePath;
+import com.facebook.buck.io.file.MostFiles;
+import com.facebook.buck.io.filesystem.ProjectFilesystem;
+import com.facebook.buck.io.filesystem.TestProjectFilesystems;
+import com.facebook.buck.step.StepExecutionResult;
+import com.facebook.buck.step.TestExecutionContext;
+import com.google.common.collect.ImmutableList;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
+import org.openjdk.jmh.Main;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.RunnerException;
+
+/**
+ * Measures how long it takes to merge the R.txt files of a synthetic app with 800 resource
+ * libraries and 500k symbols into R.java files: without an index, with an index and no changes,
+ * and with an index and a change to one of the libraries.
+ */
+@State(Scope.Benchmark)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class MergeAndroidResourcesStepBenchmark {
+
+  @Param({"800"})
+  private int libraries;
+
+  @Param({"625"})
+  private int symbolsPerLibrary;
+
+  @Param({"no_index", "unchanged", "first_library_changed", "last_library_changed"})
+  private String scenario;
+
+  private Path root;
+  private ProjectFilesystem filesystem;
+  private List<Path> symbolsFiles;
+  private MergeAndroidResourcesStep step;
+  @Nullable private Path changedSymbolsFile;
+  private boolean extraSymbol;
+
+  @Setup(Level.Trial)
+  public void setUp() throws Exception {
+    root = Files.createTempDirectory("merge_android_resources_benchmark");
+    filesystem = TestProjectFilesystems.createProjectFilesystem(root);
+    symbolsFiles = new ArrayList<>(libraries);
+    ImmutableList.Builder<HasAndroidResourceDeps> resourceDeps = ImmutableList.builder();
+    for (int library = 0; library < libraries; library++) {
+      Path symbolsFile = Paths.get("res" + library, "R.txt");
+      writeSymbols(symbolsFile, library, false);
+      symbolsFiles.add(symbolsFile);
+      resourceDeps.add(
+          new SymbolsFile(
+              BuildTargetFactory.newInstance("//res:res" + library),
+              "com.res" + library,
+              PathSourcePath.of(filesystem, symbolsFile)));
+    }
+
+    step =
+        MergeAndroidResourcesStep.createStepForDummyRDotJava(
+            filesystem,
+            new TestActionGraphBuilder().getSourcePathResolver(),
+            resourceDeps.build(),
+            Paths.get("output"),
+            /* forceFinalResourceIds */ false,
+            /* unionPackage */ Optional.empty(),
+            /* rName */ Optional.empty(),
+            /* useOldStyleableFormat */ false,
+            /* skipNonUnionRDotJava */ false,
+            scenario.equals("no_index") ? Optional.empty() : Optional.of(Paths.get("index")));
+    execute();
+
+    if (scenario.equals("first_library_changed")) {
+      changedSymbolsFile = symbolsFiles.get(0);
+    } else if (scenario.equals("last_library_changed")) {
+      changedSymbolsFile = symbolsFiles.get(libraries - 1);
+    }
+  }
+
+  @Setup(Level.Invocation)
+  public void changeSymbols() throws IOException {
+    if (changedSymbolsFile != null) {
+      extraSymbol = !extraSymbol;
+      writeSymbols(changedSymbolsFile, symbolsFiles.indexOf(changedSymbolsFile), extraSymbol);
+    }
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException {
+    MostFiles.deleteRecursivelyIfExists(root);
+  }
+
+  @Benchmark
+  public void merge() throws Exception {
+    execute();
+  }
+
+  private void execute() throws Exception {
+    StepExecutionResult result = step.execute(TestExecutionContext.newInstance());
+    if (!result.isSuccess()) {
+      throw new IllegalStateException(result.getStderr().orElse("Merge failed."));
+    }
+  }
+
+  private void writeSymbols(Path symbolsFile, int library, boolean extraSymbol)
+      throws IOException {
+    List<String> lines = new ArrayList<>(symbolsPerLibrary + 1);
+    for (int symbol = 0; symbol < symbolsPerLibrary; symbol++) {
+      lines.add(String.format("int string res%d_string%d 0x7f%06x", library, symbol, symbol));
+    }
+    if (extraSymbol) {
+      lines.add(String.format("int id res%d_extra 0x7f%06x", library, symbolsPerLibrary));
+    }
+    filesystem.mkdirs(symbolsFile.getParent());
+    filesystem.writeLinesToPath(lines, symbolsFile);
+  }
+
+  /** A resource library which only has an R.txt file. */
+  private static class SymbolsFile implements HasAndroidResourceDeps {
+    private final BuildTarget buildTarget;
+    private final String rDotJavaPackage;
+    private final SourcePath pathToTextSymbolsFile;
+
+    SymbolsFile(BuildTarget buildTarget, String rDotJavaPackage, SourcePath pathToTextSymbolsFile) {
+      this.buildTarget = buildTarget;
+      this.rDotJavaPackage = rDotJavaPackage;
+      this.pathToTextSymbolsFile = pathToTextSymbolsFile;
+    }
+
+    @Override
+    public BuildTarget getBuildTarget() {
+      return buildTarget;
+    }
+
+    @Override
+    public String getRDotJavaPackage() {
+      return rDotJavaPackage;
+    }
+
+    @Override
+    public SourcePath getPathToTextSymbolsFile() {
+      return pathToTextSymbolsFile;
+    }
+
+    @Override
+    public SourcePath getPathToRDotJavaPackageFile() {
+      throw new UnsupportedOperationException();
+    }
+
+    @Nullable
+    @Override
+    public SourcePath getRes() {
+      return null;
+    }
+
+    @Nullable
+    @Override
+    public SourcePath getAssets() {
+      return null;
+    }
+  }
+
+  public static void main(String[] args) throws IOException, RunnerException {
+    Main.main(new String[] {MergeAndroidResourcesStepBenchmark.class.getName()});
+  }
+}
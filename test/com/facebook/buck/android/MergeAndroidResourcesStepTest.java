@@ -50,8 +50,10 @@ import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.ImmutableSortedSet;
 import com.google.common.collect.SortedSetMultimap;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.attribute.FileAttribute;
 import java.util.ArrayList;
 import java.util.EnumSet;
 import java.util.HashSet;
@@ -328,7 +330,8 @@ public class MergeAndroidResourcesStepTest {
             /* unionPackage */ Optional.empty(),
             /* rName */ Optional.empty(),
             /* useOldStyleableFormat */ false,
-            /* skipNonUnionRDotJava */ false);
+            /* skipNonUnionRDotJava */ false,
+            /* rDotJavaIndexDir */ Optional.empty());
 
     ExecutionContext executionContext = TestExecutionContext.newInstance();
 
@@ -395,7 +398,8 @@ public class MergeAndroidResourcesStepTest {
             /* unionPackage */ Optional.empty(),
             /* rName */ Optional.empty(),
             /* useOldStyleableFormat */ false,
-            /* skipNonUnionRDotJava */ false);
+            /* skipNonUnionRDotJava */ false,
+            /* rDotJavaIndexDir */ Optional.empty());
 
     ExecutionContext executionContext = TestExecutionContext.newInstance();
 
@@ -478,7 +482,8 @@ public class MergeAndroidResourcesStepTest {
             /* unionPackage */ Optional.empty(),
             /* rName */ Optional.empty(),
             /* useOldStyleableFormat */ false,
-            /* skipNonUnionRDotJava */ false);
+            /* skipNonUnionRDotJava */ false,
+            /* rDotJavaIndexDir */ Optional.empty());
 
     ExecutionContext executionContext = TestExecutionContext.newInstance();
 
@@ -541,7 +546,8 @@ public class MergeAndroidResourcesStepTest {
             Optional.of("com.package"),
             /* rName */ Optional.empty(),
             /* useOldStyleableFormat */ false,
-            /* skipNonUnionRDotJava */ true);
+            /* skipNonUnionRDotJava */ true,
+            /* rDotJavaIndexDir */ Optional.empty());
 
     ImmutableSortedSet<Path> rDotJavaFiles = mergeStep.getRDotJavaFiles();
     assertEquals(rDotJavaFiles.size(), 1);
@@ -592,7 +598,8 @@ public class MergeAndroidResourcesStepTest {
             Optional.of("com.package"),
             /* rName */ Optional.empty(),
             /* useOldStyleableFormat */ false,
-            /* skipNonUnionRDotJava */ false);
+            /* skipNonUnionRDotJava */ false,
+            /* rDotJavaIndexDir */ Optional.empty());
 
     ImmutableSortedSet<Path> rDotJavaFiles = mergeStep.getRDotJavaFiles();
     assertEquals(rDotJavaFiles.size(), 3);
@@ -660,7 +667,8 @@ public class MergeAndroidResourcesStepTest {
             Optional.of("res"),
             /* rName */ Optional.empty(),
             /* useOldStyleableFormat */ false,
-            /* skipNonUnionRDotJava */ true);
+            /* skipNonUnionRDotJava */ true,
+            /* rDotJavaIndexDir */ Optional.empty());
 
     ExecutionContext executionContext = TestExecutionContext.newInstance();
 
@@ -728,7 +736,8 @@ public class MergeAndroidResourcesStepTest {
             Optional.of("res1"),
             /* rName */ Optional.empty(),
             /* useOldStyleableFormat */ false,
-            /* skipNonUnionRDotJava */ false);
+            /* skipNonUnionRDotJava */ false,
+            /* rDotJavaIndexDir */ Optional.empty());
 
     ExecutionContext executionContext = TestExecutionContext.newInstance();
 
@@ -775,7 +784,8 @@ public class MergeAndroidResourcesStepTest {
             Optional.of("resM"),
             /* rName */ Optional.empty(),
             /* useOldStyleableFormat */ false,
-            /* skipNonUnionRDotJava */ false);
+            /* skipNonUnionRDotJava */ false,
+            /* rDotJavaIndexDir */ Optional.empty());
 
     ExecutionContext executionContext = TestExecutionContext.newInstance();
 
@@ -822,7 +832,8 @@ public class MergeAndroidResourcesStepTest {
             Optional.of("res1"),
             Optional.of("R2"),
             /* useOldStyleableFormat */ false,
-            /* skipNonUnionRDotJava */ false);
+            /* skipNonUnionRDotJava */ false,
+            /* rDotJavaIndexDir */ Optional.empty());
 
     ExecutionContext executionContext = TestExecutionContext.newInstance();
 
@@ -946,7 +957,8 @@ public class MergeAndroidResourcesStepTest {
             Optional.empty(),
             Optional.empty(),
             /* useOldStyleableFormat */ false,
-            false);
+            false,
+            /* rDotJavaIndexDir */ Optional.empty());
 
     StepExecutionResult result = mergeStep.execute(TestExecutionContext.newInstance());
     String message = result.getStderr().orElse("");
@@ -965,6 +977,168 @@ public class MergeAndroidResourcesStepTest {
   }
 
   // sortSymbols has a goofy API.  This will help.
+  @Test
+  public void testOnlyRDotJavaOfPackagesWithChangedInputsIsGeneratedAgain() throws Exception {
+    RecordingProjectFilesystem filesystem = new RecordingProjectFilesystem();
+    ActionGraphBuilder graphBuilder = new TestActionGraphBuilder();
+    Path res1SymbolsFile = writeSymbolsFile(filesystem, "//:res1", "int id id1 0x7f020000");
+    Path res2SymbolsFile = writeSymbolsFile(filesystem, "//:res2", "int id id2 0x7f020000");
+    ImmutableList<HasAndroidResourceDeps> resourceDeps =
+        createResourceDeps(graphBuilder, "//:res1", "//:res2");
+    Path res1RDotJava = Paths.get("output/com/res1/R.java");
+    Path res2RDotJava = Paths.get("output/com/res2/R.java");
+
+    MergeAndroidResourcesStep mergeStep =
+        MergeAndroidResourcesStep.createStepForDummyRDotJava(
+            filesystem,
+            graphBuilder.getSourcePathResolver(),
+            resourceDeps,
+            Paths.get("output"),
+            /* forceFinalResourceIds */ false,
+            /* unionPackage */ Optional.empty(),
+            /* rName */ Optional.empty(),
+            /* useOldStyleableFormat */ false,
+            /* skipNonUnionRDotJava */ false,
+            /* rDotJavaIndexDir */ Optional.of(Paths.get("index")));
+    ExecutionContext executionContext = TestExecutionContext.newInstance();
+    assertEquals(0, mergeStep.execute(executionContext).getExitCode());
+    Optional<String> res1Contents = filesystem.readFileIfItExists(res1RDotJava);
+
+    // Nothing changed: no symbols file is read and no R.java file is written.
+    filesystem.clearRecordedPaths();
+    assertEquals(0, mergeStep.execute(executionContext).getExitCode());
+    assertEquals(ImmutableSet.of(), filesystem.readPaths);
+    assertEquals(ImmutableSet.of(), filesystem.writtenPaths);
+
+    // Ids are enumerated across packages in order, so the symbols of res1 are still read, but its
+    // R.java isn't written again.
+    filesystem.writeLinesToPath(
+        ImmutableList.of("int id id2 0x7f020000", "int id id3 0x7f020001"), res2SymbolsFile);
+    filesystem.clearRecordedPaths();
+    assertEquals(0, mergeStep.execute(executionContext).getExitCode());
+    assertEquals(ImmutableSet.of(res1SymbolsFile, res2SymbolsFile), filesystem.readPaths);
+    assertEquals(ImmutableSet.of(res2RDotJava), filesystem.writtenPaths);
+    assertEquals(res1Contents, filesystem.readFileIfItExists(res1RDotJava));
+    assertThat(
+        filesystem.readFileIfItExists(res2RDotJava).get(),
+        CoreMatchers.containsString("public static int id3=0x07f01003;"));
+
+    // R.java files which don't have the contents they were written with are generated again.
+    filesystem.writeContentsToPath("modified", res1RDotJava);
+    filesystem.clearRecordedPaths();
+    assertEquals(0, mergeStep.execute(executionContext).getExitCode());
+    assertEquals(ImmutableSet.of(res1RDotJava), filesystem.writtenPaths);
+    assertEquals(res1Contents, filesystem.readFileIfItExists(res1RDotJava));
+
+    // R.java files of packages which aren't generated anymore are deleted.
+    MergeAndroidResourcesStep.createStepForDummyRDotJava(
+            filesystem,
+            graphBuilder.getSourcePathResolver(),
+            resourceDeps.subList(0, 1),
+            Paths.get("output"),
+            /* forceFinalResourceIds */ false,
+            /* unionPackage */ Optional.empty(),
+            /* rName */ Optional.empty(),
+            /* useOldStyleableFormat */ false,
+            /* skipNonUnionRDotJava */ false,
+            /* rDotJavaIndexDir */ Optional.of(Paths.get("index")))
+        .execute(executionContext);
+    assertEquals(res1Contents, filesystem.readFileIfItExists(res1RDotJava));
+    assertFalse(filesystem.exists(res2RDotJava));
+  }
+
+  @Test
+  public void testSymbolsFilesOfUnchangedPackagesAreNotReadWithUberRDotTxt() throws Exception {
+    RecordingProjectFilesystem filesystem = new RecordingProjectFilesystem();
+    ActionGraphBuilder graphBuilder = new TestActionGraphBuilder();
+    writeSymbolsFile(filesystem, "//:res1", "int id id1 0x7f020000");
+    Path res2SymbolsFile = writeSymbolsFile(filesystem, "//:res2", "int id id2 0x7f020001");
+    Path uberRDotTxt = filesystem.resolve("R.txt").toAbsolutePath();
+    filesystem.writeLinesToPath(
+        ImmutableList.of(
+            "int id id1 0x7f020000", "int id id2 0x7f020001", "int id id3 0x7f020002"),
+        uberRDotTxt);
+
+    MergeAndroidResourcesStep mergeStep =
+        MergeAndroidResourcesStep.createStepForUberRDotJava(
+            filesystem,
+            graphBuilder.getSourcePathResolver(),
+            createResourceDeps(graphBuilder, "//:res1", "//:res2"),
+            ImmutableList.of(uberRDotTxt),
+            Paths.get("output"),
+            /* bannedDuplicateResourceTypes */ EnumSet.noneOf(RType.class),
+            /* duplicateResourceWhitelistPath */ Optional.empty(),
+            /* overrideSymbolsPath */ ImmutableList.of(),
+            /* unionPackage */ Optional.empty(),
+            /* rDotJavaIndexDir */ Optional.of(Paths.get("index")));
+    ExecutionContext executionContext = TestExecutionContext.newInstance();
+    assertEquals(0, mergeStep.execute(executionContext).getExitCode());
+
+    filesystem.writeLinesToPath(
+        ImmutableList.of("int id id2 0x7f020001", "int id id3 0x7f020002"), res2SymbolsFile);
+    filesystem.clearRecordedPaths();
+    assertEquals(0, mergeStep.execute(executionContext).getExitCode());
+    assertEquals(
+        ImmutableSet.of(uberRDotTxt, res2SymbolsFile), filesystem.readPaths);
+    assertEquals(ImmutableSet.of(Paths.get("output/com/res2/R.java")), filesystem.writtenPaths);
+    assertThat(
+        filesystem.readFileIfItExists(Paths.get("output/com/res2/R.java")).get(),
+        CoreMatchers.containsString("public static final int id3=0x7f020002;"));
+  }
+
+  private static Path writeSymbolsFile(
+      FakeProjectFilesystem filesystem, String target, String... lines) {
+    Path symbolsFile =
+        BuildTargetPaths.getGenPath(
+            filesystem, BuildTargetFactory.newInstance(target), "__%s_text_symbols__/R.txt");
+    filesystem.writeLinesToPath(ImmutableList.copyOf(lines), symbolsFile);
+    return symbolsFile;
+  }
+
+  private static ImmutableList<HasAndroidResourceDeps> createResourceDeps(
+      ActionGraphBuilder graphBuilder, String... targets) {
+    ImmutableList.Builder<HasAndroidResourceDeps> resourceDeps = ImmutableList.builder();
+    for (String target : targets) {
+      BuildTarget buildTarget = BuildTargetFactory.newInstance(target);
+      AndroidResource res =
+          AndroidResourceRuleBuilder.newBuilder()
+              .setRuleFinder(graphBuilder)
+              .setBuildTarget(buildTarget)
+              .setRes(FakeSourcePath.of(buildTarget.getShortName()))
+              .setRDotJavaPackage("com." + buildTarget.getShortName())
+              .build();
+      graphBuilder.addToIndex(res);
+      resourceDeps.add(res);
+    }
+    return resourceDeps.build();
+  }
+
+  /** Records the paths which are read line by line, and the paths which are written. */
+  private static class RecordingProjectFilesystem extends FakeProjectFilesystem {
+    private final Set<Path> readPaths = new HashSet<>();
+    private final Set<Path> writtenPaths = new HashSet<>();
+
+    @Override
+    public List<String> readLines(Path path) {
+      readPaths.add(path);
+      return super.readLines(path);
+    }
+
+    @Override
+    public OutputStream newFileOutputStream(
+        Path pathRelativeToProjectRoot, FileAttribute<?>... attrs) {
+      if (pathRelativeToProjectRoot.toString().endsWith(".java")) {
+        writtenPaths.add(pathRelativeToProjectRoot);
+      }
+      return super.newFileOutputStream(pathRelativeToProjectRoot, attrs);
+    }
+
+    void clearRecordedPaths() {
+      readPaths.clear();
+      writtenPaths.clear();
+    }
+  }
+
   private static class RDotTxtEntryBuilder {
     private final FakeProjectFilesystem filesystem;
     private final ImmutableMap.Builder<Path, String> filePathToPackageName = ImmutableMap.builder();
@@ -19,6 +19,7 @@ package com.facebook.buck.android.aapt;
 import static com.facebook.buck.android.aapt.RDotTxtEntryUtil.FakeEntry;
 import static org.hamcrest.Matchers.containsString;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
@@ -647,6 +648,59 @@ public class MiniAaptTest {
             ((RDotTxtResourceCollector) aapt.getResourceCollector()).getResources()));
   }
 
+  @Test
+  public void testValuesFilesAreParsedAgainOnlyWhenTheyChange()
+      throws IOException, ResourceParseException {
+    ProjectFilesystemView filesystemView = filesystem.asView();
+    DefaultBuckEventBus eventBus = new DefaultBuckEventBus(FakeClock.doNotCare(), new BuildId(""));
+    Path valuesFile = Paths.get("res/values/strings.xml");
+    ParsedResourceFiles parsedResourceFiles = new ParsedResourceFiles();
+
+    filesystem.writeContentsToPath(
+        "<resources><string name=\"first\">1</string></resources>", valuesFile);
+    MiniAapt aapt = newMiniAapt(parsedResourceFiles);
+    aapt.processValues(filesystemView, eventBus, Paths.get("res/values"));
+    ResourceFileSymbols firstSymbols =
+        parsedResourceFiles.get("values", valuesFile, filesystem.computeSha1(valuesFile));
+    MiniAapt unchangedAapt = newMiniAapt(parsedResourceFiles);
+    unchangedAapt.processValues(filesystemView, eventBus, Paths.get("res/values"));
+    assertSame(
+        firstSymbols,
+        parsedResourceFiles.get("values", valuesFile, filesystem.computeSha1(valuesFile)));
+
+    filesystem.writeContentsToPath(
+        "<resources><string name=\"second\">2</string></resources>", valuesFile);
+    MiniAapt changedAapt = newMiniAapt(parsedResourceFiles);
+    changedAapt.processValues(filesystemView, eventBus, Paths.get("res/values"));
+
+    ImmutableSet<RDotTxtEntry> first =
+        ImmutableSet.of(FakeEntry.create(IdType.INT, RType.STRING, "first"));
+    assertEquals(
+        first,
+        createTestingFakes(
+            ((RDotTxtResourceCollector) aapt.getResourceCollector()).getResources()));
+    assertEquals(
+        first,
+        createTestingFakes(
+            ((RDotTxtResourceCollector) unchangedAapt.getResourceCollector()).getResources()));
+    assertEquals(
+        ImmutableSet.of(FakeEntry.create(IdType.INT, RType.STRING, "second")),
+        createTestingFakes(
+            ((RDotTxtResourceCollector) changedAapt.getResourceCollector()).getResources()));
+  }
+
+  private MiniAapt newMiniAapt(ParsedResourceFiles parsedResourceFiles) {
+    return new MiniAapt(
+        resolver,
+        filesystem,
+        FakeSourcePath.of(filesystem, "res"),
+        Paths.get("R.txt"),
+        ImmutableSet.of(),
+        /* isGrayscaleImageProcessingEnabled */ false,
+        MiniAapt.ResourceCollectionType.R_DOT_TXT,
+        parsedResourceFiles);
+  }
+
   @Test
   public void testDotSeparatedResourceNames()
       throws IOException, XPathExpressionException, ResourceParseException {
@@ -18,6 +18,8 @@ package com.facebook.buck.android.resources;
 
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assume.assumeTrue;
 
 import com.facebook.buck.io.filesystem.ProjectFilesystem;
@@ -28,11 +30,19 @@ import com.facebook.buck.testutil.integration.ZipInspector;
 import com.facebook.buck.util.environment.Platform;
 import com.google.common.base.Charsets;
 import com.google.common.collect.ImmutableList;
+import com.google.common.io.ByteStreams;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.PrintStream;
+import java.nio.ByteBuffer;
 import java.nio.IntBuffer;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Optional;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
@@ -101,6 +111,65 @@ public class ExoResourcesRewriterTest {
     assertEquals(expected, content);
   }
 
+  @Test
+  public void testRewriteResourcesDoesNotModifyInputApk() throws IOException {
+    byte[] apkContent = Files.readAllBytes(apkPath);
+    ExoResourcesRewriter.rewriteResources(
+        apkPath,
+        tmpFolder.getRoot().resolve("primary.apk"),
+        tmpFolder.getRoot().resolve("exo.apk"));
+
+    assertArrayEquals(apkContent, Files.readAllBytes(apkPath));
+  }
+
+  @Test
+  public void testStoredResourceTableIsReadStraightFromTheApk() throws IOException {
+    try (ZipFile zip = new ZipFile(apkPath.toFile())) {
+      ZipEntry entry = zip.getEntry("resources.arsc");
+      assertEquals(ZipEntry.STORED, entry.getMethod());
+
+      Optional<ByteBuffer> content = ExoResourcesRewriter.readStoredEntry(apkPath, entry);
+
+      assertTrue(content.isPresent());
+      byte[] bytes = new byte[content.get().remaining()];
+      content.get().get(bytes);
+      assertArrayEquals(ByteStreams.toByteArray(zip.getInputStream(entry)), bytes);
+    }
+  }
+
+  @Test
+  public void testDeflatedResourceTableIsReadThroughTheZipFile() throws IOException {
+    Path deflatedApkPath = tmpFolder.getRoot().resolve("deflated.apk");
+    try (ZipFile zip = new ZipFile(apkPath.toFile());
+        ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(deflatedApkPath))) {
+      for (ZipEntry entry : Collections.list(zip.entries())) {
+        out.putNextEntry(new ZipEntry(entry.getName()));
+        ByteStreams.copy(zip.getInputStream(entry), out);
+        out.closeEntry();
+      }
+    }
+    try (ZipFile zip = new ZipFile(deflatedApkPath.toFile())) {
+      ZipEntry entry = zip.getEntry("resources.arsc");
+      assertEquals(ZipEntry.DEFLATED, entry.getMethod());
+      assertFalse(ExoResourcesRewriter.readStoredEntry(deflatedApkPath, entry).isPresent());
+    }
+
+    Path primaryOutput = tmpFolder.getRoot().resolve("primary.apk");
+    Path exoOutput = tmpFolder.getRoot().resolve("exo.apk");
+    ExoResourcesRewriter.rewriteResources(apkPath, primaryOutput, exoOutput);
+    Path deflatedPrimaryOutput = tmpFolder.getRoot().resolve("deflated-primary.apk");
+    Path deflatedExoOutput = tmpFolder.getRoot().resolve("deflated-exo.apk");
+    ExoResourcesRewriter.rewriteResources(
+        deflatedApkPath, deflatedPrimaryOutput, deflatedExoOutput);
+
+    assertArrayEquals(
+        new ZipInspector(primaryOutput).getFileContents("resources.arsc"),
+        new ZipInspector(deflatedPrimaryOutput).getFileContents("resources.arsc"));
+    assertArrayEquals(
+        new ZipInspector(exoOutput).getFileContents("resources.arsc"),
+        new ZipInspector(deflatedExoOutput).getFileContents("resources.arsc"));
+  }
+
   @Test
   public void testRewriteRTxt() throws IOException {
     assumeTrue(Platform.detect() != Platform.WINDOWS);
@@ -236,6 +236,23 @@ public class ArtifactCacheBuckConfigTest {
     config.getCacheEntries();
   }
 
+  @Test
+  public void testTieredFetchHedgeDelays() throws IOException {
+    ArtifactCacheBuckConfig config =
+        createFromText("[cache]", "tiered_fetch_hedge_delays_millis = 10, 200");
+    assertThat(config.getTieredFetchHedgeDelaysMillis(), Matchers.contains(10L, 200L));
+  }
+
+  @Test
+  public void testMalformedTieredFetchHedgeDelays() throws IOException {
+    ArtifactCacheBuckConfig config =
+        createFromText("[cache]", "tiered_fetch_hedge_delays_millis = 10ms");
+
+    expectedException.expect(HumanReadableException.class);
+    expectedException.expectMessage("tiered_fetch_hedge_delays_millis");
+    config.getTieredFetchHedgeDelaysMillis();
+  }
+
   @Test
   public void testServedCacheAbsentByDefault() throws IOException {
     ArtifactCacheBuckConfig config = createFromText("[cache]", "dir = ~/cache_dir");
@@ -49,6 +49,7 @@ public class ArtifactUploaderIntegrationTest {
     ArtifactUploader.performUploadToArtifactCache(
         ImmutableSet.of(new RuleKey(RULE_KEY)),
         artifactCache,
+        ZstdDictionaries.empty(),
         BuckEventBusForTests.newInstance(),
         ImmutableMap.of(),
         ImmutableSortedSet.of(),
@@ -36,6 +36,9 @@ import com.facebook.buck.io.filesystem.ProjectFilesystem;
 import com.facebook.buck.io.filesystem.impl.FakeProjectFilesystem;
 import com.facebook.buck.testutil.integration.TarInspector;
 import com.facebook.buck.util.types.Unit;
+import com.github.luben.zstd.Zstd;
+import com.github.luben.zstd.ZstdDictTrainer;
+import com.github.luben.zstd.ZstdInputStream;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
@@ -43,11 +46,13 @@ import com.google.common.collect.ImmutableSortedSet;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.attribute.PosixFilePermission;
 import java.util.ArrayList;
+import java.util.Optional;
 import java.util.concurrent.atomic.AtomicBoolean;
 import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
 import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
@@ -129,6 +134,7 @@ public class ArtifactUploaderTest {
     ArtifactUploader.performUploadToArtifactCache(
         ImmutableSet.of(new RuleKey("aa")),
         cache,
+        ZstdDictionaries.empty(),
         BuckEventBusForTests.newInstance(),
         ImmutableMap.of("metadata", "metadata", "build-metadata", "build-metadata"),
         ImmutableSortedSet.of(dir, file, dirFile, metadataFile),
@@ -170,4 +176,57 @@ public class ArtifactUploaderTest {
               .contains(PosixFilePermission.OWNER_EXECUTE));
     }
   }
+
+  @Test
+  public void compressWithWorkersCreatesTheSameArchive() throws Exception {
+    ProjectFilesystem fs = FakeProjectFilesystem.createJavaOnlyFilesystem("/");
+    Path file = Paths.get("file");
+    fs.writeContentsToPath("foo", file);
+    Path singleThreaded = fs.getRootPath().resolve("single.tar.zst").getPath();
+    Path multiThreaded = fs.getRootPath().resolve("multi.tar.zst").getPath();
+
+    ArtifactUploader.compress(fs, ImmutableList.of(file), singleThreaded, 0, Optional.empty());
+    ArtifactUploader.compress(fs, ImmutableList.of(file), multiThreaded, 2, Optional.empty());
+
+    assertArrayEquals(
+        TarInspector.readTarZst(singleThreaded).get("file"),
+        TarInspector.readTarZst(multiThreaded).get("file"));
+  }
+
+  @Test
+  public void compressWithDictionaryCreatesArchivesOnlyReadableWithIt() throws Exception {
+    ZstdDictTrainer trainer = new ZstdDictTrainer(1024 * 1024, 16 * 1024);
+    for (int i = 0; i < 10000; i++) {
+      trainer.addSample(("package com.facebook.buck.sample" + i % 97 + ";\n").getBytes(StandardCharsets.UTF_8));
+    }
+    byte[] bytes = trainer.trainSamples();
+    ZstdDictionaries.Dictionary dictionary =
+        new ZstdDictionaries.Dictionary(Zstd.getDictIdFromDict(bytes), bytes);
+
+    ProjectFilesystem fs = FakeProjectFilesystem.createJavaOnlyFilesystem("/");
+    Path file = Paths.get("file");
+    fs.writeContentsToPath("package com.facebook.buck.sample42;\n", file);
+    Path out = fs.getRootPath().resolve("out.tar.zst").getPath();
+    ArtifactUploader.compress(fs, ImmutableList.of(file), out, 0, Optional.of(dictionary));
+
+    try (TarArchiveInputStream fin =
+        new TarArchiveInputStream(
+            new ZstdInputStream(Files.newInputStream(out)).setDict(dictionary.getBytes()))) {
+      TarArchiveEntry entry = fin.getNextTarEntry();
+      assertEquals("file", entry.getName());
+    }
+    try {
+      TarInspector.readTarZst(out);
+      fail("Archives compressed with a dictionary can't be read without it.");
+    } catch (IOException e) {
+      // Expected.
+    }
+  }
+
+  @Test
+  public void onlyLargeArtifactsAreCompressedByWorkers() {
+    assertEquals(0, ArtifactUploader.getCompressionWorkers(1024, 8));
+    assertEquals(4, ArtifactUploader.getCompressionWorkers(64 * 1024 * 1024, 32));
+    assertEquals(0, ArtifactUploader.getCompressionWorkers(64 * 1024 * 1024, 1));
+  }
 }
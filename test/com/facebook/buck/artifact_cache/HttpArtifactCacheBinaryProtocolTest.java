@@ -20,6 +20,7 @@ import static org.junit.Assert.assertThat;
 
 import com.facebook.buck.core.rulekey.RuleKey;
 import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.hash.HashCode;
@@ -245,4 +246,60 @@ public class HttpArtifactCacheBinaryProtocolTest {
     byte[] expectedBytes = BaseEncoding.base64().decode(base64EncodedData);
     assertThat(byteArrayOutputStream.toByteArray(), Matchers.equalTo(expectedBytes));
   }
+
+  @Test
+  public void testMultiFetchResponseEntries() throws IOException {
+    RuleKey ruleKey = new RuleKey("00000000000000000000000000000000");
+    ImmutableMap<String, String> metadata = ImmutableMap.of("metaKey", "metaValue");
+    HttpArtifactCacheBinaryProtocol.FetchResponse fetchResponse =
+        new HttpArtifactCacheBinaryProtocol.FetchResponse(
+            ImmutableSet.of(ruleKey), metadata, ByteSource.wrap("data".getBytes(Charsets.UTF_8)));
+
+    ByteArrayOutputStream response = new ByteArrayOutputStream();
+    DataOutputStream responseData = new DataOutputStream(response);
+    responseData.writeBoolean(false);
+    responseData.writeBoolean(true);
+    responseData.writeLong(fetchResponse.getContentLength());
+    fetchResponse.writeHeader(responseData);
+    responseData.write("data".getBytes(Charsets.UTF_8));
+    responseData.writeBoolean(false);
+
+    DataInputStream input = new DataInputStream(new ByteArrayInputStream(response.toByteArray()));
+    ByteArrayOutputStream payload = new ByteArrayOutputStream();
+    assertThat(
+        HttpArtifactCacheBinaryProtocol.readMultiFetchResponseEntry(input, payload).isPresent(),
+        Matchers.is(false));
+    HttpArtifactCacheBinaryProtocol.FetchResponseReadResult result =
+        HttpArtifactCacheBinaryProtocol.readMultiFetchResponseEntry(input, payload).get();
+    assertThat(result.getRuleKeys(), Matchers.contains(ruleKey));
+    assertThat(result.getMetadata(), Matchers.equalTo(metadata));
+    assertThat(result.getActualHashCode(), Matchers.equalTo(result.getExpectedHashCode()));
+    assertThat(payload.toByteArray(), Matchers.equalTo("data".getBytes(Charsets.UTF_8)));
+    // The entries after a found artifact are still readable.
+    assertThat(
+        HttpArtifactCacheBinaryProtocol.readMultiFetchResponseEntry(input, payload).isPresent(),
+        Matchers.is(false));
+  }
+
+  @Test
+  public void testMultiContainsRequestAndResponse() throws IOException {
+    ImmutableSet<RuleKey> ruleKeys =
+        ImmutableSet.of(
+            new RuleKey("00000000000000000000000000000000"),
+            new RuleKey("90000000000000000000008000000005"));
+    assertThat(
+        HttpArtifactCacheBinaryProtocol.readRuleKeys(
+            new DataInputStream(
+                new ByteArrayInputStream(
+                    HttpArtifactCacheBinaryProtocol.createKeysHeader(ruleKeys)))),
+        Matchers.contains(ruleKeys.toArray()));
+
+    ByteArrayOutputStream response = new ByteArrayOutputStream();
+    HttpArtifactCacheBinaryProtocol.writeMultiContainsResponse(
+        ImmutableList.of(true, false), response);
+    assertThat(
+        HttpArtifactCacheBinaryProtocol.readMultiContainsResponse(
+            new DataInputStream(new ByteArrayInputStream(response.toByteArray()))),
+        Matchers.contains(true, false));
+  }
 }
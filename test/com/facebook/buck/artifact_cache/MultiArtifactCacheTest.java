@@ -16,14 +16,20 @@
 
 package com.facebook.buck.artifact_cache;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
 
 import com.facebook.buck.artifact_cache.config.ArtifactCacheMode;
 import com.facebook.buck.artifact_cache.config.CacheReadMode;
 import com.facebook.buck.core.model.BuildTarget;
 import com.facebook.buck.core.rulekey.RuleKey;
+import com.facebook.buck.event.BuckEventBus;
+import com.facebook.buck.event.BuckEventBusForTests;
 import com.facebook.buck.io.file.BorrowablePath;
 import com.facebook.buck.io.file.LazyPath;
 import com.facebook.buck.io.filesystem.ProjectFilesystem;
@@ -35,16 +41,22 @@ import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Maps;
+import com.google.common.eventbus.Subscribe;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
 import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Stream;
 import javax.annotation.Nullable;
 import org.hamcrest.Matchers;
 import org.junit.Rule;
@@ -429,4 +441,138 @@ public class MultiArtifactCacheTest {
 
     multiArtifactCache.close();
   }
+
+  @Test
+  public void testTieredFetchUsesTheFirstHitAndLetsFasterCachesComplete() throws Exception {
+    PendingArtifactCache slowCache = new PendingArtifactCache();
+    InMemoryArtifactCache remoteCache = new InMemoryArtifactCache();
+    remoteCache.store(ArtifactInfo.builder().addRuleKeys(dummyRuleKey).build(), new byte[] {42});
+    List<TieredFetchEvent> events = new ArrayList<>();
+    MultiArtifactCache multiArtifactCache =
+        new MultiArtifactCache(
+            ImmutableList.of(slowCache, remoteCache), ImmutableList.of(0L), newEventBus(events));
+
+    Path output = tmp.getRoot().resolve("output");
+    CacheResult result =
+        multiArtifactCache.fetchAsync(null, dummyRuleKey, LazyPath.ofInstance(output)).get();
+
+    assertEquals(CacheResultType.HIT, result.getType());
+    assertArrayEquals(new byte[] {42}, Files.readAllBytes(output));
+    assertFalse(slowCache.fetch.isDone());
+    // The slow cache may yet hit, so it isn't backfilled.
+    assertEquals(Optional.empty(), slowCache.storedKey);
+    TieredFetchEvent event = Iterables.getOnlyElement(events);
+    assertEquals(1, event.getHedgedTiers());
+    assertEquals(1, event.getAbandonedTiers());
+    assertEquals(0, event.getBackfilledCaches());
+
+    // The file of the slow cache is deleted once its fetch completed, not before.
+    Path slowOutput = slowCache.output.get();
+    Files.write(slowOutput, new byte[] {7});
+    assertTrue(Files.exists(slowOutput));
+    slowCache.fetch.set(CacheResult.hit("slow", ArtifactCacheMode.dir));
+    assertArrayEquals(new byte[] {42}, Files.readAllBytes(output));
+    assertEquals(ImmutableList.of(output.getFileName()), listDir(tmp.getRoot()));
+
+    multiArtifactCache.close();
+  }
+
+  @Test
+  public void testTieredFetchQueriesTheNextCacheAfterAMiss() throws Exception {
+    InMemoryArtifactCache localCache = new InMemoryArtifactCache();
+    InMemoryArtifactCache remoteCache = new InMemoryArtifactCache();
+    remoteCache.store(ArtifactInfo.builder().addRuleKeys(dummyRuleKey).build(), new byte[] {42});
+    List<TieredFetchEvent> events = new ArrayList<>();
+    MultiArtifactCache multiArtifactCache =
+        new MultiArtifactCache(
+            ImmutableList.of(localCache, remoteCache),
+            ImmutableList.of(TimeUnit.HOURS.toMillis(1)),
+            newEventBus(events));
+
+    Path output = tmp.getRoot().resolve("output");
+    assertEquals(
+        CacheResultType.HIT,
+        multiArtifactCache.fetchAsync(null, dummyRuleKey, LazyPath.ofInstance(output)).get()
+            .getType());
+    assertTrue(localCache.hasArtifact(dummyRuleKey));
+    assertEquals(
+        CacheResultType.MISS,
+        multiArtifactCache.fetchAsync(null, dummyRuleKey2, LazyPath.ofInstance(output)).get()
+            .getType());
+
+    assertEquals(ImmutableList.of(output.getFileName()), listDir(tmp.getRoot()));
+    assertEquals(2, events.size());
+    for (TieredFetchEvent event : events) {
+      assertEquals(0, event.getHedgedTiers());
+      assertEquals(0, event.getAbandonedTiers());
+    }
+    assertEquals(1, events.get(0).getBackfilledCaches());
+
+    multiArtifactCache.close();
+  }
+
+  @Test
+  public void testTieredFetchDoesNotQuerySlowerCachesAfterAHit() throws Exception {
+    InMemoryArtifactCache localCache = new InMemoryArtifactCache();
+    localCache.store(ArtifactInfo.builder().addRuleKeys(dummyRuleKey).build(), new byte[] {42});
+    PendingArtifactCache remoteCache = new PendingArtifactCache();
+    MultiArtifactCache multiArtifactCache =
+        new MultiArtifactCache(
+            ImmutableList.of(localCache, remoteCache),
+            ImmutableList.of(TimeUnit.HOURS.toMillis(1)),
+            newEventBus(new ArrayList<>()));
+
+    Path output = tmp.getRoot().resolve("output");
+    assertEquals(
+        CacheResultType.HIT,
+        multiArtifactCache.fetchAsync(null, dummyRuleKey, LazyPath.ofInstance(output)).get()
+            .getType());
+    assertNull(remoteCache.fetch);
+
+    multiArtifactCache.close();
+  }
+
+  /** A cache whose fetches only complete when the test completes them. */
+  private static class PendingArtifactCache extends NoopArtifactCache {
+    @Nullable SettableFuture<CacheResult> fetch;
+    @Nullable LazyPath output;
+    Optional<RuleKey> storedKey = Optional.empty();
+
+    @Override
+    public ListenableFuture<CacheResult> fetchAsync(
+        BuildTarget target, RuleKey ruleKey, LazyPath output) {
+      fetch = SettableFuture.create();
+      this.output = output;
+      return fetch;
+    }
+
+    @Override
+    public ListenableFuture<Unit> store(ArtifactInfo info, BorrowablePath output) {
+      storedKey = Optional.of(Iterables.getOnlyElement(info.getRuleKeys()));
+      return Futures.immediateFuture(Unit.UNIT);
+    }
+
+    @Override
+    public CacheReadMode getCacheReadMode() {
+      return CacheReadMode.READWRITE;
+    }
+  }
+
+  private static BuckEventBus newEventBus(List<TieredFetchEvent> events) {
+    BuckEventBus eventBus = BuckEventBusForTests.newInstance();
+    eventBus.register(
+        new Object() {
+          @Subscribe
+          public void onTieredFetch(TieredFetchEvent event) {
+            events.add(event);
+          }
+        });
+    return eventBus;
+  }
+
+  private static ImmutableList<Path> listDir(Path dir) throws IOException {
+    try (Stream<Path> files = Files.list(dir)) {
+      return files.map(Path::getFileName).collect(ImmutableList.toImmutableList());
+    }
+  }
 }
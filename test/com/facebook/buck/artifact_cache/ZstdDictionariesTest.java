@@ -0,0 +1,78 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.artifact_cache;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.facebook.buck.testutil.TemporaryPaths;
+import com.github.luben.zstd.Zstd;
+import com.github.luben.zstd.ZstdDictTrainer;
+import com.google.common.collect.ImmutableMap;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+public class ZstdDictionariesTest {
+
+  @Rule public TemporaryPaths tmp = new TemporaryPaths();
+
+  private byte[] bytes;
+  private long id;
+  private ZstdDictionaries dictionaries;
+
+  @Before
+  public void setUp() throws Exception {
+    ZstdDictTrainer trainer = new ZstdDictTrainer(1024 * 1024, 16 * 1024);
+    for (int i = 0; i < 10000; i++) {
+      trainer.addSample(
+          ("package com.facebook.buck.sample" + i % 97 + ";\n").getBytes(StandardCharsets.UTF_8));
+    }
+    bytes = trainer.trainSamples();
+    id = Zstd.getDictIdFromDict(bytes);
+    Path path = tmp.newFile("java_library.dict");
+    Files.write(path, bytes);
+    dictionaries = ZstdDictionaries.of(ImmutableMap.of("java_library", path));
+  }
+
+  @Test
+  public void dictionaryIsFoundByItsId() {
+    Optional<ZstdDictionaries.Dictionary> dictionary = dictionaries.getById(id);
+    assertTrue(dictionary.isPresent());
+    assertArrayEquals(bytes, dictionary.get().getBytes());
+    assertTrue(dictionaries.getById(Long.toString(id)).isPresent());
+  }
+
+  @Test
+  public void unknownIdsHaveNoDictionary() {
+    assertFalse(dictionaries.getById(id + 1).isPresent());
+    assertFalse(dictionaries.getById(Long.toString(id + 1)).isPresent());
+    assertFalse(ZstdDictionaries.empty().getById(Long.toString(id)).isPresent());
+  }
+
+  @Test
+  public void malformedIdsHaveNoDictionary() {
+    assertFalse(dictionaries.getById("").isPresent());
+    assertFalse(dictionaries.getById("not a number").isPresent());
+    assertFalse(dictionaries.getById("99999999999999999999").isPresent());
+  }
+}
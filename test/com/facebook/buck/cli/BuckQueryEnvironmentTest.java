@@ -17,6 +17,8 @@
 package com.facebook.buck.cli;
 
 import static java.util.Collections.singletonList;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.empty;
 import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.is;
 import static org.junit.Assert.assertThat;
@@ -212,6 +214,29 @@ public class BuckQueryEnvironmentTest {
         buckQueryEnvironment.getTargetsMatchingPattern("//example:"), is(equalTo(expectedTargets)));
   }
 
+  @Test
+  public void rdepsAreLimitedToUniverseAndDepth() throws Exception {
+    assertThat(
+        buckQueryEnvironment.evaluateQuery("rdeps(//example:one, //example:six)"),
+        containsInAnyOrder(
+            createQueryBuildTarget("//example", "one"),
+            createQueryBuildTarget("//example", "two"),
+            createQueryBuildTarget("//example", "three"),
+            createQueryBuildTarget("//example", "four"),
+            createQueryBuildTarget("//example", "five"),
+            createQueryBuildTarget("//example", "six")));
+    assertThat(
+        buckQueryEnvironment.evaluateQuery("rdeps(//example:one, //example:six, 1)"),
+        containsInAnyOrder(
+            createQueryBuildTarget("//example", "three"),
+            createQueryBuildTarget("//example", "four"),
+            createQueryBuildTarget("//example", "five"),
+            createQueryBuildTarget("//example", "six")));
+    assertThat(
+        buckQueryEnvironment.evaluateQuery("rdeps(//example:two, //example:one-tests)"),
+        empty());
+  }
+
   @Test
   public void whenNonExistentFileIsQueriedAWarningIsIssued() {
     ImmutableList<String> expectedTargets = ImmutableList.of("/foo/bar");
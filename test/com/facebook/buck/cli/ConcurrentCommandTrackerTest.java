@@ -0,0 +1,77 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.cli;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.Test;
+
+public class ConcurrentCommandTrackerTest {
+
+  private final AtomicLong nanoTime = new AtomicLong();
+  private final ConcurrentCommandTracker tracker = new ConcurrentCommandTracker(nanoTime::get);
+
+  @Test
+  public void testReadOnlyCommandAlongsideBuildIsConcurrent() {
+    try (ConcurrentCommandTracker.TrackedCommand build = tracker.start(false)) {
+      assertFalse(build.hasConcurrentCommands());
+      ConcurrentCommandTracker.TrackedCommand query = tracker.start(true);
+      assertTrue(query.hasConcurrentCommands());
+      assertTrue(build.hasConcurrentCommands());
+      advanceMillis(30);
+      assertEquals(30, query.finish());
+
+      assertTrue(query.isConcurrentReadOnly());
+      assertFalse(build.isConcurrentReadOnly());
+      assertFalse(build.hasConcurrentCommands());
+    }
+    assertEquals(30, tracker.getConcurrentReadOnlyLatencyPercentileMillis(0.99));
+  }
+
+  @Test
+  public void testCommandsRunningAloneAreNotRecorded() {
+    try (ConcurrentCommandTracker.TrackedCommand query = tracker.start(true)) {
+      advanceMillis(10);
+      assertFalse(query.isConcurrentReadOnly());
+    }
+    assertEquals(-1, tracker.getConcurrentReadOnlyLatencyPercentileMillis(0.5));
+  }
+
+  @Test
+  public void testPercentilesOfLatencies() {
+    ConcurrentCommandTracker.TrackedCommand build = tracker.start(false);
+    for (int latency = 1; latency <= 100; latency++) {
+      try (ConcurrentCommandTracker.TrackedCommand query = tracker.start(true)) {
+        advanceMillis(latency);
+      }
+    }
+    build.close();
+
+    assertEquals(1, tracker.getConcurrentReadOnlyLatencyPercentileMillis(0));
+    assertEquals(50, tracker.getConcurrentReadOnlyLatencyPercentileMillis(0.5));
+    assertEquals(99, tracker.getConcurrentReadOnlyLatencyPercentileMillis(0.99));
+    assertEquals(100, tracker.getConcurrentReadOnlyLatencyPercentileMillis(1));
+  }
+
+  private void advanceMillis(long millis) {
+    nanoTime.addAndGet(TimeUnit.MILLISECONDS.toNanos(millis));
+  }
+}
@@ -17,6 +17,8 @@
 package com.facebook.buck.cli;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 import com.facebook.buck.core.cell.Cell;
@@ -25,6 +27,7 @@ import com.facebook.buck.core.cell.TestCellBuilder;
 import com.facebook.buck.core.cell.nameresolver.SingleRootCellNameResolverProvider;
 import com.facebook.buck.core.description.arg.BuildRuleArg;
 import com.facebook.buck.core.exceptions.DependencyStack;
+import com.facebook.buck.core.filesystems.AbsPath;
 import com.facebook.buck.core.graph.transformation.executor.DepsAwareExecutor;
 import com.facebook.buck.core.graph.transformation.executor.impl.DefaultDepsAwareExecutor;
 import com.facebook.buck.core.graph.transformation.model.ComputeResult;
@@ -34,6 +37,7 @@ import com.facebook.buck.core.model.BuildTargetFactory;
 import com.facebook.buck.core.model.impl.FilesystemBackedBuildFileTree;
 import com.facebook.buck.core.model.targetgraph.TargetNode;
 import com.facebook.buck.core.model.targetgraph.impl.TargetNodeFactory;
+import com.facebook.buck.core.path.ForwardRelativePath;
 import com.facebook.buck.core.rules.BuildRule;
 import com.facebook.buck.core.rules.BuildRuleCreationContextWithTargetGraph;
 import com.facebook.buck.core.rules.BuildRuleParams;
@@ -44,6 +48,8 @@ import com.facebook.buck.io.file.MorePaths;
 import com.facebook.buck.io.filesystem.ProjectFilesystem;
 import com.facebook.buck.io.filesystem.TestProjectFilesystems;
 import com.facebook.buck.io.filesystem.impl.FakeProjectFilesystem;
+import com.facebook.buck.parser.DaemonicParserState;
+import com.facebook.buck.parser.InputOwnersIndex;
 import com.facebook.buck.parser.Parser;
 import com.facebook.buck.parser.TestParserFactory;
 import com.facebook.buck.parser.TestPerBuildStateFactory;
@@ -283,6 +289,65 @@ public class OwnersReportTest {
         report.owners.get(targetNode2));
   }
 
+  @Test
+  public void inputOwnersIndexFindsAllOwnersOfFile() throws IOException {
+    Path inputPath = filesystem.getPath("java/somefolder/badfolder/somefile.java");
+    Path otherPath = filesystem.getPath("java/somefolder/other.java");
+    filesystem.mkdirs(inputPath.getParent());
+    filesystem.writeContentsToPath("", inputPath);
+    filesystem.writeContentsToPath("", otherPath);
+
+    TargetNode<?> fileOwner =
+        createTargetNode(BuildTargetFactory.newInstance("//base:file"), ImmutableSet.of(inputPath));
+    TargetNode<?> directoryOwner =
+        createTargetNode(
+            BuildTargetFactory.newInstance("//base:dir"),
+            ImmutableSet.of(filesystem.getPath("java/somefolder")));
+    TargetNode<?> otherNode =
+        createTargetNode(
+            BuildTargetFactory.newInstance("//base:other"), ImmutableSet.of(otherPath));
+
+    InputOwnersIndex index =
+        InputOwnersIndex.of(ImmutableList.of(fileOwner, directoryOwner, otherNode));
+
+    assertEquals(
+        ImmutableSet.of(fileOwner, directoryOwner),
+        index.getOwners(ForwardRelativePath.ofPath(inputPath)));
+    assertEquals(
+        ImmutableSet.of(),
+        index.getOwners(ForwardRelativePath.of("java/otherfolder/somefile.java")));
+  }
+
+  @Test
+  public void inputOwnersIndexIsReusedUntilBuildFileIsInvalidated() throws IOException {
+    Path inputPath = filesystem.getPath("base/file.java");
+    filesystem.mkdirs(inputPath.getParent());
+    filesystem.writeContentsToPath("", inputPath);
+
+    Cells cells = new TestCellBuilder().setFilesystem(filesystem).build();
+    Cell cell = cells.getRootCell();
+    AbsPath buildFile = cell.getRoot().resolve("base/BUCK");
+    BuildTarget target = BuildTargetFactory.newInstance("//base:name");
+    ImmutableList<TargetNode<?>> targetNodes =
+        ImmutableList.of(createTargetNode(target, ImmutableSet.of(inputPath)));
+    DaemonicParserState state = new DaemonicParserState(1);
+
+    InputOwnersIndex index =
+        state.getInputOwnersIndex(cell, buildFile, Optional.empty(), targetNodes);
+    assertSame(index, state.getInputOwnersIndex(cell, buildFile, Optional.empty(), targetNodes));
+
+    ImmutableList<TargetNode<?>> recreatedTargetNodes =
+        ImmutableList.of(createTargetNode(target, ImmutableSet.of(inputPath)));
+    InputOwnersIndex recreatedIndex =
+        state.getInputOwnersIndex(cell, buildFile, Optional.empty(), recreatedTargetNodes);
+    assertNotSame(index, recreatedIndex);
+
+    state.invalidatePath(buildFile);
+    assertNotSame(
+        recreatedIndex,
+        state.getInputOwnersIndex(cell, buildFile, Optional.empty(), recreatedTargetNodes));
+  }
+
   @Test
   public void verifyThatRequestedFilesThatDoNotExistOnDiskAreReported() {
     String input = "java/some_file";
@@ -0,0 +1,78 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.cli;
+
+import static org.junit.Assert.assertEquals;
+
+import com.facebook.buck.core.model.BuildTarget;
+import com.facebook.buck.core.model.BuildTargetFactory;
+import com.facebook.buck.io.filesystem.ProjectFilesystem;
+import com.facebook.buck.io.filesystem.impl.FakeProjectFilesystem;
+import com.google.common.collect.ImmutableList;
+import java.util.function.Function;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestDurationStoreTest {
+
+  private static final BuildTarget FAST = BuildTargetFactory.newInstance("//test:fast");
+  private static final BuildTarget SLOW = BuildTargetFactory.newInstance("//test:slow");
+  private static final BuildTarget NEW = BuildTargetFactory.newInstance("//test:new");
+
+  private ProjectFilesystem filesystem;
+
+  @Before
+  public void setUp() {
+    filesystem = new FakeProjectFilesystem();
+  }
+
+  @Test
+  public void sortsTestsWithoutRecordedDurationsFirstAndThenLongestFirst() {
+    TestDurationStore store = TestDurationStore.load(filesystem);
+    store.record(FAST, 10);
+    store.record(SLOW, 1000);
+
+    assertEquals(
+        ImmutableList.of(NEW, SLOW, FAST),
+        store.sortLongestFirst(ImmutableList.of(FAST, SLOW, NEW), Function.identity()));
+  }
+
+  @Test
+  public void durationsArePersistedAcrossLoads() {
+    TestDurationStore store = TestDurationStore.load(filesystem);
+    store.record(FAST, 10);
+    store.record(SLOW, 1000);
+    store.save();
+
+    assertEquals(
+        ImmutableList.of(SLOW, FAST),
+        TestDurationStore.load(filesystem)
+            .sortLongestFirst(ImmutableList.of(FAST, SLOW), Function.identity()));
+  }
+
+  @Test
+  public void corruptDurationsFileIsIgnored() throws Exception {
+    filesystem.mkdirs(filesystem.getBuckPaths().getLogDir());
+    filesystem.writeContentsToPath(
+        "not json", filesystem.getBuckPaths().getLogDir().resolve(TestDurationStore.FILE_NAME));
+
+    assertEquals(
+        ImmutableList.of(FAST, SLOW),
+        TestDurationStore.load(filesystem)
+            .sortLongestFirst(ImmutableList.of(FAST, SLOW), Function.identity()));
+  }
+}
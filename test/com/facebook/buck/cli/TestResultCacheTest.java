@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.cli;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.facebook.buck.core.model.BuildTarget;
+import com.facebook.buck.core.model.BuildTargetFactory;
+import com.facebook.buck.core.rulekey.RuleKey;
+import com.facebook.buck.io.filesystem.ProjectFilesystem;
+import com.facebook.buck.io.filesystem.impl.FakeProjectFilesystem;
+import com.facebook.buck.test.TestRunningOptions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestResultCacheTest {
+
+  private static final BuildTarget TEST = BuildTargetFactory.newInstance("//test:test");
+  private static final RuleKey TEST_KEY = new RuleKey("aaaa");
+  private static final RuleKey DEP_KEY = new RuleKey("bbbb");
+  private static final TestRunningOptions OPTIONS = TestRunningOptions.builder().build();
+
+  private ProjectFilesystem filesystem;
+
+  @Before
+  public void setUp() {
+    filesystem = new FakeProjectFilesystem();
+  }
+
+  @Test
+  public void keyCoversRuntimeDepsEnvironmentAndOptions() {
+    String key =
+        TestResultCache.computeKey(
+            TEST_KEY, ImmutableList.of(DEP_KEY), ImmutableMap.of("A", "1"), OPTIONS);
+
+    assertEquals(
+        key,
+        TestResultCache.computeKey(
+            TEST_KEY, ImmutableList.of(DEP_KEY), ImmutableMap.of("A", "1"), OPTIONS));
+    assertNotEquals(
+        key,
+        TestResultCache.computeKey(
+            TEST_KEY, ImmutableList.of(new RuleKey("cccc")), ImmutableMap.of("A", "1"), OPTIONS));
+    assertNotEquals(
+        key,
+        TestResultCache.computeKey(
+            TEST_KEY, ImmutableList.of(DEP_KEY), ImmutableMap.of("A", "2"), OPTIONS));
+    assertNotEquals(
+        key,
+        TestResultCache.computeKey(
+            TEST_KEY,
+            ImmutableList.of(DEP_KEY),
+            ImmutableMap.of("A", "1"),
+            TestRunningOptions.builder()
+                .setEnvironmentOverrides(ImmutableMap.of("B", "1"))
+                .build()));
+  }
+
+  @Test
+  public void passedRunsArePersistedAcrossLoadsUntilForgotten() {
+    TestResultCache cache = TestResultCache.load(filesystem);
+    cache.recordPassed(TEST, "key");
+    cache.save();
+
+    TestResultCache loaded = TestResultCache.load(filesystem);
+    assertTrue(loaded.hasPassed(TEST, "key"));
+    assertFalse(loaded.hasPassed(TEST, "other key"));
+
+    loaded.forget(TEST);
+    loaded.save();
+    assertFalse(TestResultCache.load(filesystem).hasPassed(TEST, "key"));
+  }
+
+  @Test
+  public void corruptKeysFileIsIgnored() throws Exception {
+    filesystem.mkdirs(filesystem.getBuckPaths().getLogDir());
+    filesystem.writeContentsToPath(
+        "not json", filesystem.getBuckPaths().getLogDir().resolve(TestResultCache.FILE_NAME));
+
+    assertFalse(TestResultCache.load(filesystem).hasPassed(TEST, "key"));
+  }
+}
@@ -0,0 +1,45 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.command;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+
+import com.facebook.buck.core.rules.BuildRule;
+import com.facebook.buck.core.rules.impl.FakeBuildRule;
+import com.google.common.collect.ImmutableList;
+import org.junit.Test;
+
+public class BuildExecutorTest {
+
+  @Test
+  public void testOnlySourceOnlyAbiRulesThatDependOnSourceOnlyAbiRulesAreBuiltAhead() {
+    BuildRule aAbi = new FakeBuildRule("//:a#source-only-abi");
+    BuildRule a = new FakeBuildRule("//:a", aAbi);
+    // b is required_for_source_only_abi, so the source-only ABI of c depends on the full b.
+    BuildRule bAbi = new FakeBuildRule("//:b#source-only-abi", aAbi);
+    BuildRule b = new FakeBuildRule("//:b", aAbi);
+    BuildRule cAbi = new FakeBuildRule("//:c#source-only-abi", b);
+    BuildRule c = new FakeBuildRule("//:c", b, bAbi);
+    BuildRule dAbi = new FakeBuildRule("//:d#source-only-abi", cAbi);
+    BuildRule d = new FakeBuildRule("//:d", a, cAbi, dAbi);
+
+    assertThat(
+        BuildExecutor.getSourceOnlyAbiRules(ImmutableList.of(c, d)),
+        containsInAnyOrder(aAbi, bAbi));
+  }
+}
@@ -18,6 +18,7 @@ package com.facebook.buck.core.build.engine.cache.manager;
 
 import com.facebook.buck.artifact_cache.CacheResult;
 import com.facebook.buck.artifact_cache.CacheResultType;
+import com.facebook.buck.artifact_cache.ZstdDictionaries;
 import com.facebook.buck.artifact_cache.config.ArtifactCacheMode;
 import com.facebook.buck.core.rulekey.RuleKey;
 import com.facebook.buck.util.concurrent.FakeWeightedListeningExecutorService;
@@ -39,7 +40,8 @@ public class BuildCacheArtifactFetcherTest {
           null,
           null,
           null,
-          null);
+          null,
+          ZstdDictionaries.empty());
 
   @Test
   public void testConvertErrorToSoftErrorListenableFutureCacheResultError() throws Exception {
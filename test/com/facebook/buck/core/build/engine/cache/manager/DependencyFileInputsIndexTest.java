@@ -0,0 +1,138 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.core.build.engine.cache.manager;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.facebook.buck.core.filesystems.AbsPath;
+import com.facebook.buck.core.filesystems.RelPath;
+import com.facebook.buck.core.model.BuildTarget;
+import com.facebook.buck.core.model.BuildTargetFactory;
+import com.facebook.buck.io.filesystem.ProjectFilesystem;
+import com.facebook.buck.io.filesystem.TestProjectFilesystems;
+import com.facebook.buck.io.watchman.WatchmanEvent;
+import com.facebook.buck.io.watchman.WatchmanOverflowEvent;
+import com.facebook.buck.io.watchman.WatchmanPathEvent;
+import com.facebook.buck.testutil.TemporaryPaths;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.hash.HashCode;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+public class DependencyFileInputsIndexTest {
+
+  private static final HashCode HASH = HashCode.fromInt(1);
+  private static final HashCode OTHER_HASH = HashCode.fromInt(2);
+
+  @Rule public TemporaryPaths tmp = new TemporaryPaths();
+
+  private final BuildTarget foo = BuildTargetFactory.newInstance("//:foo#compile-foo.cpp");
+  private final BuildTarget bar = BuildTargetFactory.newInstance("//:bar#compile-bar.cpp");
+  private final Path header = Paths.get("lib/foo.h");
+  private final Path otherHeader = Paths.get("lib/bar.h");
+  private final Path headerLink = Paths.get("buck-out/gen/lib#headers/foo.h");
+
+  private ProjectFilesystem filesystem;
+  private DependencyFileInputsIndex index;
+
+  @Before
+  public void setUp() throws IOException {
+    filesystem = TestProjectFilesystems.createProjectFilesystem(tmp.getRoot());
+    filesystem.mkdirs(header.getParent());
+    filesystem.writeContentsToPath("", header);
+    filesystem.writeContentsToPath("", otherHeader);
+    filesystem.createParentDirs(headerLink);
+    filesystem.createSymLink(headerLink, filesystem.resolve(header), false);
+    index = new DependencyFileInputsIndex();
+  }
+
+  @Test
+  public void testChangedInputsOfRulesAreReportedWithTheirRecordedHashes() {
+    index.record(foo, ImmutableMap.of(filesystem.resolve(header), HASH));
+    index.record(bar, ImmutableMap.of(filesystem.resolve(otherHeader), OTHER_HASH));
+
+    index.onFileSystemChange(modified(header));
+
+    assertTrue(index.isAffected(foo));
+    assertEquals(ImmutableMap.of(filesystem.resolve(header), HASH), index.getChangedInputs(foo));
+    assertFalse(index.isAffected(bar));
+    assertEquals(ImmutableMap.of(), index.getChangedInputs(bar));
+    // A reported change is only a hint, so the rule stays in the index until it is built again.
+    assertTrue(index.contains(foo));
+  }
+
+  @Test
+  public void testChangesAreAttributedToRulesUsingSymlinksToTheInput() {
+    index.record(foo, ImmutableMap.of(filesystem.resolve(headerLink), HASH));
+
+    assertEquals(ImmutableSet.of(foo), index.getTargetsUsing(filesystem.resolve(header)));
+    index.onFileSystemChange(modified(header));
+    assertEquals(
+        ImmutableMap.of(filesystem.resolve(headerLink), HASH), index.getChangedInputs(foo));
+  }
+
+  @Test
+  public void testRecordingTheNextBuildClearsTheAffectedState() {
+    index.record(foo, ImmutableMap.of(filesystem.resolve(header), HASH));
+    index.onFileSystemChange(modified(header));
+
+    index.record(foo, ImmutableMap.of(filesystem.resolve(otherHeader), OTHER_HASH));
+
+    assertFalse(index.isAffected(foo));
+    assertEquals(ImmutableSet.of(), index.getTargetsUsing(filesystem.resolve(header)));
+    assertEquals(ImmutableSet.of(foo), index.getTargetsUsing(filesystem.resolve(otherHeader)));
+  }
+
+  @Test
+  public void testForgettingARuleClearsTheAffectedState() {
+    index.record(foo, ImmutableMap.of(filesystem.resolve(header), HASH));
+    index.onFileSystemChange(modified(header));
+
+    index.forget(foo);
+
+    assertFalse(index.contains(foo));
+    assertFalse(index.isAffected(foo));
+    assertEquals(ImmutableSet.of(), index.getTargetsUsing(filesystem.resolve(header)));
+  }
+
+  @Test
+  public void testOverflowForgetsEverything() {
+    index.record(foo, ImmutableMap.of(filesystem.resolve(header), HASH));
+    index.record(bar, ImmutableMap.of(filesystem.resolve(otherHeader), OTHER_HASH));
+    index.onFileSystemChange(modified(header));
+
+    index.onFileSystemChange(WatchmanOverflowEvent.of(getCellPath(), "overflow"));
+
+    assertFalse(index.isAffected(foo));
+    assertFalse(index.contains(bar));
+  }
+
+  private AbsPath getCellPath() {
+    return filesystem.getRootPath();
+  }
+
+  private WatchmanPathEvent modified(Path path) {
+    return WatchmanPathEvent.of(getCellPath(), WatchmanEvent.Kind.MODIFY, RelPath.of(path));
+  }
+}
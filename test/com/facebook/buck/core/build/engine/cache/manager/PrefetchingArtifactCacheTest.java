@@ -0,0 +1,113 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.core.build.engine.cache.manager;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.facebook.buck.artifact_cache.ArtifactInfo;
+import com.facebook.buck.artifact_cache.CacheResult;
+import com.facebook.buck.artifact_cache.CacheResultType;
+import com.facebook.buck.artifact_cache.InMemoryArtifactCache;
+import com.facebook.buck.core.model.BuildTarget;
+import com.facebook.buck.core.model.BuildTargetFactory;
+import com.facebook.buck.core.rulekey.RuleKey;
+import com.facebook.buck.io.file.LazyPath;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.annotation.Nullable;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class PrefetchingArtifactCacheTest {
+
+  private static final BuildTarget TARGET = BuildTargetFactory.newInstance("//:rule");
+  private static final RuleKey RULE_KEY = new RuleKey("aaaa");
+  private static final byte[] DATA = "artifact".getBytes(StandardCharsets.UTF_8);
+
+  @Rule public TemporaryFolder tmp = new TemporaryFolder();
+
+  private final AtomicInteger delegateFetches = new AtomicInteger();
+  private InMemoryArtifactCache delegate;
+
+  @Before
+  public void setUp() {
+    delegate =
+        new InMemoryArtifactCache() {
+          @Override
+          public ListenableFuture<CacheResult> fetchAsync(
+              @Nullable BuildTarget target, RuleKey ruleKey, LazyPath output) {
+            delegateFetches.incrementAndGet();
+            return super.fetchAsync(target, ruleKey, output);
+          }
+        };
+  }
+
+  @Test
+  public void testPrefetchedArtifactIsHandedOver() throws Exception {
+    delegate.store(ArtifactInfo.builder().addRuleKeys(RULE_KEY).build(), DATA);
+    PrefetchingArtifactCache cache = new PrefetchingArtifactCache(delegate);
+
+    assertTrue(cache.prefetch(TARGET, RULE_KEY));
+    assertFalse(cache.prefetch(TARGET, RULE_KEY));
+    Path output = tmp.getRoot().toPath().resolve("output.zip");
+    CacheResult result =
+        Futures.getUnchecked(cache.fetchAsync(TARGET, RULE_KEY, LazyPath.ofInstance(output)));
+
+    assertEquals(CacheResultType.HIT, result.getType());
+    assertArrayEquals(DATA, Files.readAllBytes(output));
+    assertEquals(1, delegateFetches.get());
+    assertEquals(1, cache.getUsedPrefetchCount());
+  }
+
+  @Test
+  public void testPrefetchedMissIsNotFetchedAgain() {
+    PrefetchingArtifactCache cache = new PrefetchingArtifactCache(delegate);
+
+    assertTrue(cache.prefetch(TARGET, RULE_KEY));
+    CacheResult result =
+        Futures.getUnchecked(
+            cache.fetchAsync(
+                TARGET, RULE_KEY, LazyPath.ofInstance(tmp.getRoot().toPath().resolve("out"))));
+
+    assertEquals(CacheResultType.MISS, result.getType());
+    assertEquals(1, delegateFetches.get());
+    assertEquals(0, cache.getUsedPrefetchCount());
+  }
+
+  @Test
+  public void testFetchedArtifactIsNotPrefetched() throws Exception {
+    delegate.store(ArtifactInfo.builder().addRuleKeys(RULE_KEY).build(), DATA);
+    PrefetchingArtifactCache cache = new PrefetchingArtifactCache(delegate);
+    Path output = tmp.getRoot().toPath().resolve("output.zip");
+
+    Futures.getUnchecked(cache.fetchAsync(TARGET, RULE_KEY, LazyPath.ofInstance(output)));
+
+    assertFalse(cache.prefetch(TARGET, RULE_KEY));
+    assertArrayEquals(DATA, Files.readAllBytes(output));
+    assertEquals(1, delegateFetches.get());
+    assertEquals(0, cache.getPrefetchCount());
+  }
+}
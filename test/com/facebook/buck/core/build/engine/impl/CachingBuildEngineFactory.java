@@ -16,6 +16,7 @@
 
 package com.facebook.buck.core.build.engine.impl;
 
+import com.facebook.buck.artifact_cache.ZstdDictionaries;
 import com.facebook.buck.core.build.action.resolver.BuildEngineActionToBuildRuleResolver;
 import com.facebook.buck.core.build.engine.cache.manager.BuildInfoStoreManager;
 import com.facebook.buck.core.build.engine.config.ResourceAwareSchedulingInfo;
@@ -49,6 +50,7 @@ public class CachingBuildEngineFactory {
   private DepFiles depFiles = DepFiles.ENABLED;
   private long maxDepFileCacheEntries = 256L;
   private Optional<Long> artifactCacheSizeLimit = Optional.empty();
+  private int cachePrefetchMaxArtifacts = 0;
   private long inputFileSizeLimit = Long.MAX_VALUE;
   private Optional<RuleKeyFactories> ruleKeyFactories = Optional.empty();
   private CachingBuildEngineDelegate cachingBuildEngineDelegate;
@@ -93,6 +95,11 @@ public class CachingBuildEngineFactory {
     return this;
   }
 
+  public CachingBuildEngineFactory setCachePrefetchMaxArtifacts(int cachePrefetchMaxArtifacts) {
+    this.cachePrefetchMaxArtifacts = cachePrefetchMaxArtifacts;
+    return this;
+  }
+
   public CachingBuildEngineFactory setCachingBuildEngineDelegate(
       CachingBuildEngineDelegate cachingBuildEngineDelegate) {
     this.cachingBuildEngineDelegate = cachingBuildEngineDelegate;
@@ -145,6 +152,8 @@ public class CachingBuildEngineFactory {
           depFiles,
           maxDepFileCacheEntries,
           artifactCacheSizeLimit,
+          ZstdDictionaries.empty(),
+          cachePrefetchMaxArtifacts,
           buildRuleResolver,
           buildInfoStoreManager,
           actionToBuildRuleResolver,
@@ -163,6 +172,8 @@ public class CachingBuildEngineFactory {
         depFiles,
         maxDepFileCacheEntries,
         artifactCacheSizeLimit,
+        ZstdDictionaries.empty(),
+        cachePrefetchMaxArtifacts,
         buildRuleResolver,
         actionToBuildRuleResolver,
         targetConfigurationSerializer,
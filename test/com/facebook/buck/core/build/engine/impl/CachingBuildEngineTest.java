@@ -60,6 +60,7 @@ import com.facebook.buck.core.build.engine.buildinfo.BuildInfoRecorder;
 import com.facebook.buck.core.build.engine.buildinfo.BuildInfoStore;
 import com.facebook.buck.core.build.engine.buildinfo.OnDiskBuildInfo;
 import com.facebook.buck.core.build.engine.cache.manager.BuildInfoStoreManager;
+import com.facebook.buck.core.build.engine.cache.manager.DependencyFileInputsIndex;
 import com.facebook.buck.core.build.engine.cache.manager.ManifestRuleKeyManagerTestUtil;
 import com.facebook.buck.core.build.engine.delegate.CachingBuildEngineDelegate;
 import com.facebook.buck.core.build.engine.delegate.LocalCachingBuildEngineDelegate;
@@ -74,6 +75,7 @@ import com.facebook.buck.core.build.stats.BuildRuleDurationTracker;
 import com.facebook.buck.core.cell.CellPathResolver;
 import com.facebook.buck.core.exceptions.ExceptionWithContext;
 import com.facebook.buck.core.exceptions.HumanReadableException;
+import com.facebook.buck.core.filesystems.RelPath;
 import com.facebook.buck.core.model.BuildId;
 import com.facebook.buck.core.model.BuildTarget;
 import com.facebook.buck.core.model.BuildTargetFactory;
@@ -118,6 +120,8 @@ import com.facebook.buck.io.file.LazyPath;
 import com.facebook.buck.io.filesystem.ProjectFilesystem;
 import com.facebook.buck.io.filesystem.TestProjectFilesystems;
 import com.facebook.buck.io.pathformat.PathFormatter;
+import com.facebook.buck.io.watchman.WatchmanEvent;
+import com.facebook.buck.io.watchman.WatchmanPathEvent;
 import com.facebook.buck.rules.keys.DefaultDependencyFileRuleKeyFactory;
 import com.facebook.buck.rules.keys.DefaultRuleKeyFactory;
 import com.facebook.buck.rules.keys.DependencyFileEntry;
@@ -588,6 +592,93 @@ public class CachingBuildEngineTest {
       }
     }
 
+    @Test
+    public void testArtifactOfDepIsPrefetchedOnceRuleKeysAreKnown() throws Exception {
+      Step explodingStep =
+          new AbstractExecutionStep("exploding step") {
+            @Override
+            public StepExecutionResult execute(ExecutionContext context) {
+              throw new UnsupportedOperationException("build step should not be executed");
+            }
+          };
+      BuildRule dep =
+          createRule(
+              filesystem,
+              graphBuilder,
+              /* deps */ ImmutableSortedSet.of(),
+              ImmutableList.of(explodingStep),
+              /* postBuildSteps */ ImmutableList.of(),
+              /* pathToOutputFile */ null,
+              ImmutableList.of(InternalFlavor.of("dep")));
+      BuildRule rule =
+          createRule(
+              filesystem,
+              graphBuilder,
+              ImmutableSortedSet.of(dep),
+              /* buildSteps */ ImmutableList.of(),
+              /* postBuildSteps */ ImmutableList.of(),
+              /* pathToOutputFile */ null,
+              ImmutableList.of());
+      RuleKey ruleKey = defaultRuleKeyFactory.build(rule);
+      RuleKey depKey = defaultRuleKeyFactory.build(dep);
+
+      // Only the dep is in the cache, and the build engine only fetches it after the rule missed.
+      ArtifactCache artifactCache = createMock(ArtifactCache.class);
+      expect(artifactCache.multiContainsAsync(ImmutableSet.of(ruleKey)))
+          .andReturn(Futures.immediateFuture(ImmutableMap.of(ruleKey, CacheResult.miss())));
+      expect(artifactCache.multiContainsAsync(ImmutableSet.of(depKey)))
+          .andReturn(
+              Futures.immediateFuture(
+                  ImmutableMap.of(depKey, CacheResult.contains("dir", ArtifactCacheMode.dir))));
+      expect(artifactCache.fetchAsync(eq(rule.getBuildTarget()), eq(ruleKey), isA(LazyPath.class)))
+          .andReturn(Futures.immediateFuture(CacheResult.miss()));
+      ImmutableMap<String, String> metadata =
+          ImmutableMap.of(
+              BuildInfo.MetadataKey.RULE_KEY,
+              depKey.toString(),
+              BuildInfo.MetadataKey.BUILD_ID,
+              buildContext.getBuildId().toString(),
+              BuildInfo.MetadataKey.ORIGIN_BUILD_ID,
+              buildContext.getBuildId().toString());
+      ImmutableMap<Path, String> desiredZipEntries =
+          ImmutableMap.of(
+              BuildInfo.getPathToArtifactMetadataFile(dep.getBuildTarget(), filesystem),
+              ObjectMappers.WRITER.writeValueAsString(
+                  ImmutableMap.of(
+                      BuildInfo.MetadataKey.RECORDED_PATHS,
+                      ObjectMappers.WRITER.writeValueAsString(ImmutableList.of()),
+                      BuildInfo.MetadataKey.RECORDED_PATH_HASHES,
+                      ObjectMappers.WRITER.writeValueAsString(ImmutableMap.of()),
+                      BuildInfo.MetadataKey.OUTPUT_SIZE,
+                      "0",
+                      BuildInfo.MetadataKey.OUTPUT_HASH,
+                      HashCode.fromInt(123).toString())));
+      // The build engine is handed the prefetched artifact instead of fetching it again.
+      expect(artifactCache.fetchAsync(eq(dep.getBuildTarget()), eq(depKey), isA(LazyPath.class)))
+          .andDelegateTo(new FakeArtifactCacheThatWritesAZipFile(desiredZipEntries, metadata))
+          .once();
+      expect(artifactCache.getCacheReadMode()).andReturn(CacheReadMode.READONLY).anyTimes();
+
+      BuildEngineBuildContext buildContext = this.buildContext.withArtifactCache(artifactCache);
+
+      replayAll();
+
+      try (CachingBuildEngine cachingBuildEngine =
+          cachingBuildEngineFactory().setCachePrefetchMaxArtifacts(10).build()) {
+        BuildResult result =
+            cachingBuildEngine
+                .build(buildContext, TestExecutionContext.newInstance(), rule)
+                .getResult()
+                .get();
+
+        assertEquals(BuildRuleSuccessType.BUILT_LOCALLY, getSuccess(result));
+        assertEquals(
+            BuildRuleSuccessType.FETCHED_FROM_CACHE,
+            getSuccess(cachingBuildEngine.getBuildRuleResult(dep.getBuildTarget())));
+      }
+      verifyAll();
+    }
+
     @Test
     public void testArtifactFetchedFromCacheStillRunsPostBuildSteps()
         throws InterruptedException, ExecutionException, IOException {
@@ -1147,6 +1238,53 @@ public class CachingBuildEngineTest {
       }
     }
 
+    @Test
+    public void failureOfRuleBuiltAheadOnlyFailsRulesThatDependOnIt() throws Exception {
+      Step failingStep =
+          new AbstractExecutionStep("failing step") {
+            @Override
+            public StepExecutionResult execute(ExecutionContext context) {
+              return StepExecutionResults.ERROR;
+            }
+          };
+      BuildRule ruleBuiltAhead =
+          createRule(
+              filesystem,
+              graphBuilder,
+              /* deps */ ImmutableSortedSet.of(),
+              /* buildSteps */ ImmutableList.of(failingStep),
+              /* postBuildSteps */ ImmutableList.of(),
+              /* pathToOutputFile */ null,
+              ImmutableList.of());
+      BuildRule dependent =
+          new EmptyBuildRule(
+              BuildTargetFactory.newInstance("//:dependent"), filesystem, ruleBuiltAhead);
+      BuildRule unrelated =
+          new EmptyBuildRule(BuildTargetFactory.newInstance("//:unrelated"), filesystem);
+
+      try (CachingBuildEngine cachingBuildEngine = cachingBuildEngineFactory().build()) {
+        cachingBuildEngine.buildAhead(
+            buildContext, TestExecutionContext.newInstance(), ruleBuiltAhead);
+        assertThat(
+            cachingBuildEngine.getBuildRuleResult(ruleBuiltAhead.getBuildTarget()).getStatus(),
+            equalTo(BuildRuleStatus.FAIL));
+
+        BuildResult unrelatedResult =
+            cachingBuildEngine
+                .build(buildContext, TestExecutionContext.newInstance(), unrelated)
+                .getResult()
+                .get();
+        assertThat(unrelatedResult.getSuccess(), equalTo(BuildRuleSuccessType.BUILT_LOCALLY));
+
+        BuildResult dependentResult =
+            cachingBuildEngine
+                .build(buildContext, TestExecutionContext.newInstance(), dependent)
+                .getResult()
+                .get();
+        assertThat(dependentResult.getStatus(), equalTo(BuildRuleStatus.FAIL));
+      }
+    }
+
     @Test
     public void matchingRuleKeyDoesNotRunPostBuildSteps() throws Exception {
       // Add a post build step so we can verify that it's steps are executed.
@@ -2560,6 +2698,92 @@ public class CachingBuildEngineTest {
       assertEquals(BuildRuleSuccessType.MATCHING_DEP_FILE_RULE_KEY, result.getSuccess());
     }
 
+    @Test
+    public void depFileRuleKeyMatchesWhenReportedInputChangeKeptItsContent() throws Exception {
+      // Prepare an input file that should appear in the dep file.
+      Path input = Paths.get("input_file");
+      filesystem.writeContentsToPath("contents", input);
+
+      // Create a simple rule which fails if it is built.
+      BuildTarget target = BuildTargetFactory.newInstance("//:rule");
+      RuleKey depFileRuleKey = new RuleKey("aaaa");
+      Path output = Paths.get("output");
+      filesystem.touch(output);
+      BuildRule rule =
+          new DepFileBuildRule(target, filesystem, TestBuildRuleParams.create()) {
+            @Override
+            public ImmutableList<Step> getBuildSteps(
+                BuildContext context, BuildableContext buildableContext) {
+              return ImmutableList.of(
+                  new AbstractExecutionStep("false") {
+                    @Override
+                    public StepExecutionResult execute(ExecutionContext context) {
+                      return StepExecutionResults.ERROR;
+                    }
+                  });
+            }
+
+            @Override
+            public Predicate<SourcePath> getCoveredByDepFilePredicate(
+                SourcePathResolverAdapter pathResolver) {
+              return (SourcePath path) -> true;
+            }
+
+            @Override
+            public Predicate<SourcePath> getExistenceOfInterestPredicate(
+                SourcePathResolverAdapter pathResolver) {
+              return (SourcePath path) -> false;
+            }
+
+            @Override
+            public ImmutableList<SourcePath> getInputsAfterBuildingLocally(
+                BuildContext context, CellPathResolver cellPathResolver) {
+              return ImmutableList.of(PathSourcePath.of(filesystem, input));
+            }
+
+            @Override
+            public SourcePath getSourcePathToOutput() {
+              return ExplicitBuildTargetSourcePath.of(getBuildTarget(), output);
+            }
+          };
+
+      // Index the input of the last build, and report a change which left its content as it was.
+      DependencyFileInputsIndex index = new DependencyFileInputsIndex();
+      index.record(
+          target,
+          ImmutableMap.of(filesystem.resolve(input), fileHashCache.get(filesystem.resolve(input))));
+      index.onFileSystemChange(
+          WatchmanPathEvent.of(
+              filesystem.getRootPath(), WatchmanEvent.Kind.MODIFY, RelPath.of(input)));
+      CachingBuildEngine cachingBuildEngine =
+          cachingBuildEngineFactory()
+              .setCachingBuildEngineDelegate(
+                  new LocalCachingBuildEngineDelegate(fileHashCache, Optional.of(index)))
+              .setRuleKeyFactories(
+                  RuleKeyFactories.of(
+                      defaultRuleKeyFactory,
+                      NOOP_INPUT_BASED_RULE_KEY_FACTORY,
+                      new FakeRuleKeyFactory(ImmutableMap.of(target, depFileRuleKey))))
+              .build();
+
+      // Prepopulate the dep file rule key and dep file.
+      BuildInfoRecorder recorder = createBuildInfoRecorder(target);
+      recorder.addBuildMetadata(BuildInfo.MetadataKey.DEP_FILE_RULE_KEY, depFileRuleKey.toString());
+      recorder.addMetadata(
+          BuildInfo.MetadataKey.DEP_FILE, ImmutableList.of(fileToDepFileEntryString(input)));
+      recorder.addMetadata(
+          BuildInfo.MetadataKey.RECORDED_PATHS, ImmutableList.of(output.toString()));
+      recorder.writeMetadataToDisk(true);
+
+      BuildResult result =
+          cachingBuildEngine
+              .build(buildContext, TestExecutionContext.newInstance(), rule)
+              .getResult()
+              .get();
+      assertEquals(BuildRuleSuccessType.MATCHING_DEP_FILE_RULE_KEY, result.getSuccess());
+      assertFalse(index.isAffected(target));
+    }
+
     @Test
     public void depFileInputChangeCausesRebuild() throws Exception {
       // Use a genrule to produce the input file.
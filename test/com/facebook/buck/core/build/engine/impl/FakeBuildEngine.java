@@ -43,6 +43,12 @@ public class FakeBuildEngine implements BuildEngine {
     return BuildEngineResult.of(future);
   }
 
+  @Override
+  public void buildAhead(
+      BuildEngineBuildContext buildContext, ExecutionContext executionContext, BuildRule rule) {
+    // No-op
+  }
+
   @Override
   public BuildResult getBuildRuleResult(BuildTarget buildTarget) {
     return buildResults.get(buildTarget);
@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.cxx;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import com.facebook.buck.core.model.BuildTarget;
+import com.facebook.buck.core.model.BuildTargetFactory;
+import com.facebook.buck.rules.args.StringArg;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSortedMap;
+import org.junit.Test;
+
+public class TransitiveCxxPreprocessorInputGraphTest {
+
+  @Test
+  public void testSharedDepsAreFlattenedOnce() {
+    TransitiveCxxPreprocessorInputGraph base = graphOf("//:base");
+    TransitiveCxxPreprocessorInputGraph left = graphOf("//:left", base);
+    TransitiveCxxPreprocessorInputGraph right = graphOf("//:right", base);
+    TransitiveCxxPreprocessorInputGraph top = graphOf("//:top", left, right);
+
+    assertEquals(
+        ImmutableSortedMap.of(
+            target("//:base"), input("//:base"),
+            target("//:left"), input("//:left"),
+            target("//:right"), input("//:right"),
+            target("//:top"), input("//:top")),
+        top.toMap());
+    assertEquals(ImmutableSortedMap.of(target("//:base"), input("//:base")), base.toMap());
+  }
+
+  @Test
+  public void testGraphsWithoutInputsOfTheirOwnReuseTheirOnlyDep() {
+    TransitiveCxxPreprocessorInputGraph base = graphOf("//:base");
+
+    assertSame(
+        base,
+        TransitiveCxxPreprocessorInputGraph.of(
+            ImmutableMap.of(),
+            ImmutableList.of(base, TransitiveCxxPreprocessorInputGraph.of(ImmutableMap.of()))));
+  }
+
+  @Test
+  public void testFlatteningDeepGraphs() {
+    TransitiveCxxPreprocessorInputGraph graph = graphOf("//:lib0");
+    for (int i = 1; i < 100000; i++) {
+      graph = graphOf("//:lib" + i, graph);
+    }
+
+    assertEquals(100000, graph.toMap().size());
+  }
+
+  private static TransitiveCxxPreprocessorInputGraph graphOf(
+      String name, TransitiveCxxPreprocessorInputGraph... deps) {
+    return TransitiveCxxPreprocessorInputGraph.of(
+        ImmutableMap.of(target(name), input(name)), ImmutableList.copyOf(deps));
+  }
+
+  private static BuildTarget target(String name) {
+    return BuildTargetFactory.newInstance(name);
+  }
+
+  private static CxxPreprocessorInput input(String name) {
+    return CxxPreprocessorInput.builder()
+        .putPreprocessorFlags(CxxSource.Type.C, StringArg.of("-DNAME=" + name))
+        .build();
+  }
+}
@@ -218,7 +218,10 @@ public class MachineReadableLogJsonViewTest {
             3L,
             0,
             new AtomicInteger(2),
-            new AtomicInteger(0));
+            new AtomicInteger(0),
+            4,
+            1,
+            2);
 
     assertJsonEquals(
         WRITER.writeValueAsString(summary),
@@ -228,7 +231,9 @@ public class MachineReadableLogJsonViewTest {
             + "\"totalCacheHits\":3,\"totalCacheErrors\":3,"
             + "\"totalCacheMisses\":0,\"totalCacheIgnores\":5,\"totalCacheBytes\":3,\""
             + "totalCacheLocalKeyUnchangedHits\":0,"
-            + "\"successUploadCount\":2,\"failureUploadCount\":0}");
+            + "\"successUploadCount\":2,\"failureUploadCount\":0,"
+            + "\"tieredFetchHedgeCount\":4,\"tieredFetchAbandonCount\":1,"
+            + "\"tieredFetchBackfillCount\":2}");
   }
 
   private void assertJsonEquals(String expected, String actual) {
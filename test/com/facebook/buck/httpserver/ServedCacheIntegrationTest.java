@@ -27,6 +27,7 @@ import com.facebook.buck.artifact_cache.CacheResult;
 import com.facebook.buck.artifact_cache.CacheResultType;
 import com.facebook.buck.artifact_cache.ClientCertificateHandler;
 import com.facebook.buck.artifact_cache.DirArtifactCacheTestUtil;
+import com.facebook.buck.artifact_cache.HttpArtifactCacheBinaryProtocol;
 import com.facebook.buck.artifact_cache.TestArtifactCaches;
 import com.facebook.buck.artifact_cache.config.ArtifactCacheBuckConfig;
 import com.facebook.buck.core.cell.CellPathResolver;
@@ -55,12 +56,18 @@ import com.facebook.buck.support.bgtasks.TestBackgroundTaskManager;
 import com.facebook.buck.testutil.TemporaryPaths;
 import com.facebook.buck.util.environment.Architecture;
 import com.facebook.buck.util.environment.Platform;
+import com.facebook.buck.util.json.ObjectMappers;
 import com.facebook.buck.util.timing.FakeClock;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.google.common.base.Joiner;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListeningExecutorService;
 import com.google.common.util.concurrent.MoreExecutors;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.FilterInputStream;
 import java.io.IOException;
@@ -71,6 +78,12 @@ import java.nio.file.Paths;
 import java.util.Optional;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
 import org.hamcrest.Matchers;
 import org.junit.After;
 import org.junit.Before;
@@ -181,6 +194,81 @@ public class ServedCacheIntegrationTest {
         projectFilesystem.readFileIfItExists(fetchedContents).get(), Matchers.equalTo(A_FILE_DATA));
   }
 
+  @Test
+  public void testMultiFetchAndMultiContainsOverHttp2() throws Exception {
+    webServer = new WebServer(/* port */ 0, projectFilesystem, FakeClock.doNotCare());
+    webServer.updateAndStartIfNeeded(Optional.of(dirCache));
+    RuleKey missingRuleKey = new RuleKey("9876543210");
+    byte[] ruleKeys =
+        HttpArtifactCacheBinaryProtocol.createKeysHeader(
+            ImmutableSet.of(A_FILE_RULE_KEY, missingRuleKey));
+    OkHttpClient client =
+        new OkHttpClient.Builder().protocols(ImmutableList.of(Protocol.H2_PRIOR_KNOWLEDGE)).build();
+
+    try (Response response =
+        client.newCall(post("/artifacts/multi_contains", ruleKeys)).execute()) {
+      assertThat(response.protocol(), Matchers.is(Protocol.H2_PRIOR_KNOWLEDGE));
+      assertThat(response.code(), Matchers.is(200));
+      assertThat(
+          HttpArtifactCacheBinaryProtocol.readMultiContainsResponse(
+              new DataInputStream(response.body().byteStream())),
+          Matchers.contains(true, false));
+    }
+
+    try (Response response = client.newCall(post("/artifacts/multi_fetch", ruleKeys)).execute()) {
+      assertThat(response.code(), Matchers.is(200));
+      DataInputStream input = new DataInputStream(response.body().byteStream());
+      assertThat(input.readInt(), Matchers.is(2));
+      ByteArrayOutputStream payload = new ByteArrayOutputStream();
+      HttpArtifactCacheBinaryProtocol.MetadataAndPayloadReadResult result =
+          HttpArtifactCacheBinaryProtocol.readMultiFetchResponseEntry(input, payload).get();
+      assertThat(result.getRuleKeys(), Matchers.contains(A_FILE_RULE_KEY));
+      assertThat(result.getMetadata(), Matchers.equalTo(A_FILE_METADATA));
+      assertThat(result.getActualHashCode(), Matchers.equalTo(result.getExpectedHashCode()));
+      assertThat(payload.toString("UTF-8"), Matchers.equalTo(A_FILE_DATA));
+      assertFalse(
+          HttpArtifactCacheBinaryProtocol.readMultiFetchResponseEntry(input, payload).isPresent());
+    }
+  }
+
+  @Test
+  public void testRequestsBeyondTheConcurrencyLimitAreRejected() throws Exception {
+    webServer =
+        new WebServer(
+            /* port */ 0,
+            projectFilesystem,
+            FakeClock.doNotCare(),
+            /* maxConcurrentCacheRequests */ 0);
+    webServer.updateAndStartIfNeeded(Optional.of(dirCache));
+    OkHttpClient client = new OkHttpClient();
+
+    try (Response response = client.newCall(get("/artifacts/key/" + A_FILE_RULE_KEY)).execute()) {
+      assertThat(response.code(), Matchers.is(503));
+    }
+
+    try (Response response = client.newCall(get("/artifacts/stats")).execute()) {
+      assertThat(response.code(), Matchers.is(200));
+      JsonNode fetchStats = ObjectMappers.READER.readTree(response.body().string()).get("fetch");
+      assertThat(fetchStats.get("requests").asLong(), Matchers.is(1L));
+      assertThat(fetchStats.get("errors").asLong(), Matchers.is(1L));
+    }
+  }
+
+  private Request get(String path) {
+    return new Request.Builder().url(getUrl(path)).build();
+  }
+
+  private Request post(String path, byte[] body) {
+    return new Request.Builder()
+        .url(getUrl(path))
+        .post(RequestBody.create(MediaType.parse("application/octet-stream"), body))
+        .build();
+  }
+
+  private String getUrl(String path) {
+    return String.format("http://127.0.0.1:%d%s", webServer.getPort(), path);
+  }
+
   private static class ThrowAfterXBytesStream extends FilterInputStream {
     private final long bytesToThrowAfter;
     private long bytesRead = 0L;
@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.jvm.java;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.facebook.buck.io.filesystem.ProjectFilesystem;
+import com.facebook.buck.io.filesystem.impl.FakeProjectFilesystem;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Optional;
+import org.junit.Test;
+
+public class IncrementalCompilerStateTest {
+
+  private final Path stateDir = Paths.get("state");
+  private final Path a = Paths.get("A.java");
+  private final Path b = Paths.get("B.java");
+
+  @Test
+  public void testChangedSourcesAreComparedByHash() throws Exception {
+    ProjectFilesystem filesystem = new FakeProjectFilesystem();
+    IncrementalCompilerState.Index index = new IncrementalCompilerState.Index();
+    index.setHashes("inputs", ImmutableMap.of(a, "1", b, "2"));
+    IncrementalCompilerState.writeIndex(filesystem, stateDir, index);
+
+    IncrementalCompilerState.Index loaded =
+        IncrementalCompilerState.readIndex(
+                filesystem, stateDir, IncrementalCompilerState.Index.class)
+            .get();
+    assertEquals(
+        Optional.of(ImmutableSet.of()),
+        loaded.getChangedSources("inputs", ImmutableMap.of(a, "1", b, "2")));
+    assertEquals(
+        Optional.of(ImmutableSet.of(b)),
+        loaded.getChangedSources("inputs", ImmutableMap.of(a, "1", b, "3")));
+  }
+
+  @Test
+  public void testStateIsNotUsedWhenInputsOrSetOfSourcesChange() {
+    IncrementalCompilerState.Index index = new IncrementalCompilerState.Index();
+    index.setHashes("inputs", ImmutableMap.of(a, "1", b, "2"));
+
+    assertFalse(index.getChangedSources("other", ImmutableMap.of(a, "1", b, "2")).isPresent());
+    assertFalse(index.getChangedSources("inputs", ImmutableMap.of(a, "1")).isPresent());
+    assertFalse(
+        index
+            .getChangedSources("inputs", ImmutableMap.of(a, "1", Paths.get("C.java"), "2"))
+            .isPresent());
+  }
+
+  @Test
+  public void testDeletedOrUnreadableIndexIsIgnored() throws Exception {
+    ProjectFilesystem filesystem = new FakeProjectFilesystem();
+    IncrementalCompilerState.writeIndex(
+        filesystem, stateDir, new IncrementalCompilerState.Index());
+    assertTrue(
+        IncrementalCompilerState.readIndex(
+                filesystem, stateDir, IncrementalCompilerState.Index.class)
+            .isPresent());
+
+    IncrementalCompilerState.deleteIndex(filesystem, stateDir);
+    assertFalse(
+        IncrementalCompilerState.readIndex(
+                filesystem, stateDir, IncrementalCompilerState.Index.class)
+            .isPresent());
+
+    filesystem.writeLinesToPath(ImmutableList.of("{not json"), stateDir.resolve("index.json"));
+    assertFalse(
+        IncrementalCompilerState.readIndex(
+                filesystem, stateDir, IncrementalCompilerState.Index.class)
+            .isPresent());
+  }
+}
@@ -19,6 +19,8 @@ package com.facebook.buck.jvm.java;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.hasEntry;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 import com.facebook.buck.core.build.execution.context.ExecutionContext;
 import com.facebook.buck.core.model.BuildId;
@@ -38,6 +40,7 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.List;
 import java.util.Optional;
+import java.util.OptionalInt;
 import java.util.Set;
 import org.junit.Test;
 
@@ -85,7 +88,8 @@ public class JUnitStepTest {
             /* testCaseTimeoutMs */ Optional.empty(),
             ImmutableMap.of(),
             ImmutableList.of("/foo/bar/custom/java"),
-            args);
+            args,
+            /* testRunnerPoolSize */ OptionalInt.empty());
 
     ExecutionContext executionContext =
         TestExecutionContext.newBuilder()
@@ -163,7 +167,8 @@ public class JUnitStepTest {
             /* testCaseTimeoutMs */ Optional.empty(),
             ImmutableMap.of(),
             ImmutableList.of("/foo/bar/custom/java"),
-            args);
+            args,
+            /* testRunnerPoolSize */ OptionalInt.empty());
 
     ExecutionContext executionContext =
         TestExecutionContext.newBuilder()
@@ -228,7 +233,8 @@ public class JUnitStepTest {
             /* testCaseTimeoutMs */ Optional.empty(),
             ImmutableMap.of("FOO", "BAR"),
             ImmutableList.of("/foo/bar/custom/java"),
-            args);
+            args,
+            /* testRunnerPoolSize */ OptionalInt.empty());
 
     ImmutableMap<String, String> observedEnvironment =
         junit.getEnvironmentVariables(TestExecutionContext.newInstance());
@@ -280,7 +286,8 @@ public class JUnitStepTest {
             /* testCaseTimeoutMs */ Optional.empty(),
             ImmutableMap.of(),
             ImmutableList.of("/foo/bar/custom/java"),
-            args);
+            args,
+            /* testRunnerPoolSize */ OptionalInt.empty());
 
     TestConsole console = new TestConsole(Verbosity.ALL);
     ExecutionContext executionContext =
@@ -316,4 +323,71 @@ public class JUnitStepTest {
         "Debugging. Suspending JVM. Connect a JDWP debugger to port 5005 to proceed.",
         console.getTextWrittenToStdErr().trim());
   }
+
+  @Test
+  public void testRunnerWorkerJobArgsContainSystemPropertiesAndTestRunnerArgs() {
+    BuildId pretendBuildId = new BuildId("pretend-build-id");
+    Path modulePath = Paths.get("module/submodule");
+    Path directoryForTestResults = Paths.get("buck-out/gen/theresults/");
+    Path testRunnerClasspath = Paths.get("ant-out/classes/junit");
+    ProjectFilesystem filesystem = FakeProjectFilesystem.createJavaOnlyFilesystem();
+    Path classpathFile = filesystem.resolve("foo");
+    String testClass = "com.facebook.buck.shell.JUnitCommandTest";
+
+    JUnitJvmArgs args =
+        ImmutableJUnitJvmArgs.builder()
+            .setBuildId(pretendBuildId)
+            .setBuckModuleBaseSourceCodePath(modulePath)
+            .setTargetJavaVersion(11)
+            .setClasspathFile(classpathFile)
+            .setTestRunnerClasspath(testRunnerClasspath)
+            .setExtraJvmArgs(ImmutableList.of("-Dname1=value1"))
+            .setTestType(TestType.JUNIT)
+            .setDirectoryForTestResults(directoryForTestResults)
+            .addTestClasses(testClass)
+            .build();
+
+    ImmutableList.Builder<String> jobArgs = ImmutableList.builder();
+    args.formatTestRunnerWorkerJobArgsToList(jobArgs, filesystem, 5000L);
+    MoreAsserts.assertListEquals(
+        ImmutableList.of(
+            "-Dbuck.testrunner_classes=" + testRunnerClasspath,
+            "-Dbuck.classpath_file=" + classpathFile,
+            "-Dcom.facebook.buck.buildId=" + pretendBuildId,
+            "-Dcom.facebook.buck.moduleBasePath=" + modulePath,
+            "-Dapple.awt.UIElement=true",
+            "-Dname1=value1",
+            "com.facebook.buck.testrunner.JUnitMain",
+            "--output",
+            directoryForTestResults.toString(),
+            "--default-test-timeout",
+            "5000",
+            testClass),
+        jobArgs.build());
+
+    assertTrue(newJUnitStep(filesystem, args, OptionalInt.of(2)).shouldRunInTestRunnerPool());
+    assertFalse(newJUnitStep(filesystem, args, OptionalInt.empty()).shouldRunInTestRunnerPool());
+    assertFalse(
+        newJUnitStep(
+                filesystem,
+                ImmutableJUnitJvmArgs.builder()
+                    .from(args)
+                    .setExtraJvmArgs(ImmutableList.of("-Xmx1g"))
+                    .build(),
+                OptionalInt.of(2))
+            .shouldRunInTestRunnerPool());
+  }
+
+  private static JUnitStep newJUnitStep(
+      ProjectFilesystem filesystem, JUnitJvmArgs args, OptionalInt testRunnerPoolSize) {
+    return new JUnitStep(
+        filesystem,
+        /* nativeLibsEnvironment */ ImmutableMap.of(),
+        /* testRuleTimeoutMs */ Optional.empty(),
+        /* testCaseTimeoutMs */ Optional.empty(),
+        ImmutableMap.of(),
+        ImmutableList.of("/foo/bar/custom/java"),
+        args,
+        testRunnerPoolSize);
+  }
 }
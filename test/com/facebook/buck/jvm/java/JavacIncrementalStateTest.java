@@ -0,0 +1,153 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.jvm.java;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.facebook.buck.io.filesystem.ProjectFilesystem;
+import com.facebook.buck.io.filesystem.TestProjectFilesystems;
+import com.facebook.buck.testutil.TemporaryPaths;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+public class JavacIncrementalStateTest {
+
+  @Rule public TemporaryPaths tmp = new TemporaryPaths();
+
+  private ProjectFilesystem filesystem;
+  private final Path stateDir = Paths.get("state");
+  private final Path outputDir = Paths.get("out");
+  private final Path a = Paths.get("src/com/example/A.java");
+  private final Path b = Paths.get("src/com/example/B.java");
+  private final Path c = Paths.get("src/com/example/C.java");
+  private final Path d = Paths.get("src/com/example/D.java");
+  private final ImmutableList<Path> sources = ImmutableList.of(a, b, c, d);
+
+  @Before
+  public void setUp() throws IOException {
+    filesystem = TestProjectFilesystems.createProjectFilesystem(tmp.getRoot());
+    filesystem.mkdirs(a.getParent());
+    write(a, "public class A { public int foo() { return 1; } }");
+    write(b, "public class B { int bar() { return new A().foo(); } }");
+    write(c, "public class C extends A {}");
+    write(d, "class D { void baz(C c) {} }");
+
+    compile(outputDir, sources);
+    JavacIncrementalState.load(filesystem, stateDir)
+        .record("inputs", hashSources(), outputDir, Optional.empty());
+  }
+
+  @Test
+  public void testGetPackageDirectory() {
+    assertEquals("", JavacIncrementalState.getPackageDirectory("class Foo {}"));
+    assertEquals(
+        "com/example/",
+        JavacIncrementalState.getPackageDirectory(
+            "/*\n * The package com.other;\n */\n@Generated\npackage com . example;\n"));
+  }
+
+  @Test
+  public void testOnlyChangedSourcesAreCompiledIfTheAbiDoesNotChange() throws IOException {
+    write(a, "public class A { public int foo() { return 2; } }");
+
+    JavacIncrementalState state = JavacIncrementalState.load(filesystem, stateDir);
+    assertEquals(Optional.of(ImmutableSet.of(a)), state.getChangedSources("inputs", hashSources()));
+    compile(state.getCompileDir(), ImmutableList.of(a));
+    assertEquals(Optional.of(ImmutableSet.of()), state.getAffectedSources(ImmutableSet.of(a)));
+
+    Path mergedDir = Paths.get("merged");
+    state.mergeInto(mergedDir, ImmutableSet.of(a));
+    for (String className : ImmutableList.of("A", "B", "C", "D")) {
+      assertTrue(filesystem.exists(mergedDir.resolve("com/example/" + className + ".class")));
+    }
+  }
+
+  @Test
+  public void testSourcesThatReferToChangedClassesOrTheirSubclassesAreAffected()
+      throws IOException {
+    write(a, "public class A { public int foo() { return 1; } public void qux() {} }");
+
+    JavacIncrementalState state = JavacIncrementalState.load(filesystem, stateDir);
+    compile(state.getCompileDir(), ImmutableList.of(a));
+    assertEquals(
+        Optional.of(ImmutableSet.of(b, c, d)), state.getAffectedSources(ImmutableSet.of(a)));
+  }
+
+  @Test
+  public void testChangedConstantsCannotBeCompiledIncrementally() throws IOException {
+    write(a, "public class A { public static final int X = 2; public int foo() { return X; } }");
+
+    JavacIncrementalState state = JavacIncrementalState.load(filesystem, stateDir);
+    compile(state.getCompileDir(), ImmutableList.of(a));
+    assertFalse(state.getAffectedSources(ImmutableSet.of(a)).isPresent());
+  }
+
+  @Test
+  public void testChangedInputsOrSourceSetsCannotBeCompiledIncrementally() {
+    JavacIncrementalState state = JavacIncrementalState.load(filesystem, stateDir);
+    ImmutableMap<Path, String> sourceHashes = hashSources();
+
+    assertEquals(Optional.of(ImmutableSet.of()), state.getChangedSources("inputs", sourceHashes));
+    assertFalse(state.getChangedSources("other inputs", sourceHashes).isPresent());
+    assertFalse(
+        state.getChangedSources("inputs", ImmutableMap.of(a, sourceHashes.get(a))).isPresent());
+  }
+
+  private ImmutableMap<Path, String> hashSources() {
+    try {
+      return IncrementalCompilerState.hashSources(filesystem, sources);
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  private void write(Path source, String contents) throws IOException {
+    filesystem.writeContentsToPath("package com.example;\n\n" + contents + "\n", source);
+  }
+
+  private void compile(Path classesDir, List<Path> sourcesToCompile) throws IOException {
+    filesystem.mkdirs(classesDir);
+    JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+    String[] arguments =
+        Stream.concat(
+                Stream.of(
+                    "-d",
+                    filesystem.resolve(classesDir).toString(),
+                    "-classpath",
+                    filesystem.resolve(stateDir.resolve("classes")).toString()
+                        + File.pathSeparator
+                        + filesystem.resolve(outputDir)),
+                sourcesToCompile.stream().map(source -> filesystem.resolve(source).toString()))
+            .toArray(String[]::new);
+    assertEquals(0, compiler.run(null, null, null, arguments));
+  }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.jvm.java.runner;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import com.facebook.buck.testutil.TemporaryPaths;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Map;
+import org.junit.Rule;
+import org.junit.Test;
+
+public class TestRunnerWorkerTest {
+  @Rule public TemporaryPaths temporaryPaths = new TemporaryPaths();
+
+  @Test
+  public void readsMessagesOfWorkerProtocol() throws Exception {
+    TestRunnerWorker.MessageReader reader =
+        new TestRunnerWorker.MessageReader(
+            new StringReader(
+                "[{\"id\":0,\"type\":\"handshake\",\"protocol_version\":\"0\","
+                    + "\"capabilities\":[\"a\",[\"]\"]]},\n"
+                    + "{\"id\":1,\"type\":\"command\",\"args_path\":\"/tmp/a\\\"b\\u0041\"}\n]"));
+
+    reader.beginArray();
+    Map<String, String> handshake = reader.nextMessage();
+    assertEquals("0", handshake.get("id"));
+    assertEquals("handshake", handshake.get("type"));
+    assertEquals("0", handshake.get("protocol_version"));
+    Map<String, String> command = reader.nextMessage();
+    assertEquals("1", command.get("id"));
+    assertEquals("/tmp/a\"bA", command.get("args_path"));
+    assertNull(reader.nextMessage());
+  }
+
+  @Test
+  public void splitsJobArguments() {
+    assertEquals(
+        Arrays.asList("-Da=b", "", "Runner"), TestRunnerWorker.splitArgs("-Da=b\0\0Runner"));
+  }
+
+  @Test
+  public void runsJobInIsolatedClassLoaderAndRestoresSystemProperties() throws Exception {
+    Path testClasses =
+        Paths.get(
+            TestRunnerWorkerTest.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+    Path argsPath = temporaryPaths.newFile("args");
+    Path stdOutPath = temporaryPaths.getRoot().resolve("stdout");
+    Path stdErrPath = temporaryPaths.getRoot().resolve("stderr");
+    Files.write(
+        argsPath,
+        String.join(
+                String.valueOf(TestRunnerWorker.ARGS_SEPARATOR),
+                "-D" + FileClassPathRunner.TESTRUNNER_CLASSES_PROPERTY + "=" + testClasses,
+                "-Dtest.runner.worker.property=value",
+                FakeTestRunner.class.getName(),
+                "first",
+                "second")
+            .getBytes(StandardCharsets.UTF_8));
+
+    assertEquals(3, TestRunnerWorker.runJob(argsPath, stdOutPath, stdErrPath));
+    assertEquals(
+        "value first second false",
+        new String(Files.readAllBytes(stdOutPath), StandardCharsets.UTF_8));
+    assertNull(System.getProperty("test.runner.worker.property"));
+    assertNull(System.getProperty(FileClassPathRunner.TESTRUNNER_CLASSES_PROPERTY));
+  }
+
+  /** Test runner that is loaded by the class loader of a job. */
+  public static class FakeTestRunner {
+    public static int run(String[] args) {
+      System.out.print(
+          System.getProperty("test.runner.worker.property")
+              + " "
+              + String.join(" ", args)
+              + " "
+              + (FakeTestRunner.class.getClassLoader() == ClassLoader.getSystemClassLoader()));
+      return 3;
+    }
+  }
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.jvm.kotlin;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.facebook.buck.io.filesystem.ProjectFilesystem;
+import com.facebook.buck.io.filesystem.TestProjectFilesystems;
+import com.facebook.buck.jvm.java.IncrementalCompilerState;
+import com.facebook.buck.testutil.TemporaryPaths;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Opcodes;
+
+public class KotlincIncrementalStateTest {
+
+  @Rule public TemporaryPaths tmp = new TemporaryPaths();
+
+  private ProjectFilesystem filesystem;
+  private final Path stateDir = Paths.get("state");
+  private final Path outputDir = Paths.get("out");
+  private final Path fooSource = Paths.get("src/Foo.kt");
+  private final Path barSource = Paths.get("src/Bar.kt");
+
+  @Before
+  public void setUp() throws IOException {
+    filesystem = TestProjectFilesystems.createProjectFilesystem(tmp.getRoot());
+    filesystem.mkdirs(stateDir);
+    filesystem.mkdirs(fooSource.getParent());
+    filesystem.writeContentsToPath("package com.example\n\nclass Foo\n", fooSource);
+    filesystem.writeContentsToPath("package com.example\n\nclass Bar\n", barSource);
+    writeClass(outputDir, "com/example/Foo", "Foo.kt");
+    writeClass(outputDir, "com/example/FooKt", "Foo.kt");
+    writeClass(outputDir, "com/example/Bar", "Bar.kt");
+  }
+
+  @Test
+  public void testGetPackageDirectory() {
+    assertEquals("", KotlincIncrementalState.getPackageDirectory("class Foo"));
+    assertEquals(
+        "com/example/", KotlincIncrementalState.getPackageDirectory("package com.example\n"));
+    assertEquals(
+        "com/example/",
+        KotlincIncrementalState.getPackageDirectory(
+            "// Copyright\n@file:JvmName(\"Foo\")\npackage com.`example`;\n"));
+  }
+
+  @Test
+  public void testClassesAreMappedToTheirSources() throws IOException {
+    Optional<Map<String, List<String>>> classesBySource =
+        KotlincIncrementalState.mapClassesToSources(
+            filesystem, outputDir, ImmutableList.of(fooSource, barSource));
+
+    assertTrue(classesBySource.isPresent());
+    assertEquals(
+        ImmutableSet.of("com/example/Foo.class", "com/example/FooKt.class"),
+        ImmutableSet.copyOf(classesBySource.get().get(fooSource.toString())));
+    assertEquals(
+        ImmutableList.of("com/example/Bar.class"), classesBySource.get().get(barSource.toString()));
+  }
+
+  @Test
+  public void testClassesOfUnknownSourcesCannotBeMapped() throws IOException {
+    writeClass(outputDir, "com/example/Baz", "Baz.kt");
+
+    assertFalse(
+        KotlincIncrementalState.mapClassesToSources(
+                filesystem, outputDir, ImmutableList.of(fooSource, barSource))
+            .isPresent());
+  }
+
+  @Test
+  public void testOnlyChangedSourcesAreRecompiled() throws IOException {
+    ImmutableMap<Path, String> sourceHashes =
+        IncrementalCompilerState.hashSources(filesystem, ImmutableList.of(fooSource, barSource));
+    KotlincIncrementalState.load(filesystem, stateDir).record("inputs", sourceHashes, outputDir);
+
+    KotlincIncrementalState state = KotlincIncrementalState.load(filesystem, stateDir);
+    assertEquals(Optional.of(ImmutableSet.of()), state.getChangedSources("inputs", sourceHashes));
+    assertFalse(state.isAbiChanged(outputDir));
+
+    filesystem.writeContentsToPath("package com.example\n\nclass Foo {}\n", fooSource);
+    ImmutableMap<Path, String> newSourceHashes =
+        IncrementalCompilerState.hashSources(filesystem, ImmutableList.of(fooSource, barSource));
+    assertEquals(
+        Optional.of(ImmutableSet.of(fooSource)),
+        state.getChangedSources("inputs", newSourceHashes));
+    assertFalse(state.getChangedSources("other inputs", newSourceHashes).isPresent());
+    assertFalse(
+        state
+            .getChangedSources("inputs", ImmutableMap.of(fooSource, newSourceHashes.get(fooSource)))
+            .isPresent());
+  }
+
+  @Test
+  public void testMergeReplacesClassesOfChangedSources() throws IOException {
+    ImmutableMap<Path, String> sourceHashes =
+        IncrementalCompilerState.hashSources(filesystem, ImmutableList.of(fooSource, barSource));
+    KotlincIncrementalState state = KotlincIncrementalState.load(filesystem, stateDir);
+    filesystem.writeContentsToPath("resource", outputDir.resolve("resource.txt"));
+    state.record("inputs", sourceHashes, outputDir);
+
+    writeClass(state.getCompileDir(), "com/example/Foo", "Foo.kt");
+    Path mergedDir = Paths.get("merged");
+    state.mergeInto(mergedDir, ImmutableSet.of(fooSource));
+
+    assertTrue(filesystem.exists(mergedDir.resolve("com/example/Foo.class")));
+    assertFalse(filesystem.exists(mergedDir.resolve("com/example/FooKt.class")));
+    assertTrue(filesystem.exists(mergedDir.resolve("com/example/Bar.class")));
+    assertFalse(filesystem.exists(mergedDir.resolve("resource.txt")));
+    assertTrue(state.isAbiChanged(mergedDir));
+  }
+
+  private void writeClass(Path classesDir, String name, String sourceFile) throws IOException {
+    ClassWriter writer = new ClassWriter(0);
+    writer.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC, name, null, "java/lang/Object", null);
+    writer.visitSource(sourceFile, null);
+    writer.visitEnd();
+    Path classFile = classesDir.resolve(name + ".class");
+    filesystem.createParentDirs(classFile);
+    filesystem.writeBytesToPath(writer.toByteArray(), classFile);
+  }
+}
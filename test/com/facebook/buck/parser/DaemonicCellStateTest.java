@@ -144,6 +144,85 @@ public class DaemonicCellStateTest {
         cache.lookupComputedNode(target.getUnconfiguredBuildTarget()));
   }
 
+  @Test
+  public void testSnapshotIsNotAffectedByLaterInvalidations() throws BuildTargetException {
+    Cache<UnconfiguredBuildTarget, UnconfiguredTargetNode> cache =
+        state.getCache(DaemonicCellState.RAW_TARGET_NODE_CACHE_TYPE);
+    BuildTarget target = BuildTargetFactory.newInstance("//path/to:target");
+    AbsPath buildFile = AbsPath.of(filesystem.resolve("path/to/BUCK"));
+    populateDummyRawNode(state, target);
+    UnconfiguredTargetNode n1 = rawTargetNode("n1");
+    cache.putComputedNodeIfNotPresent(target.getUnconfiguredBuildTarget(), n1);
+
+    DaemonicCellState snapshot = state.snapshot();
+    Cache<UnconfiguredBuildTarget, UnconfiguredTargetNode> snapshotCache =
+        snapshot.getCache(DaemonicCellState.RAW_TARGET_NODE_CACHE_TYPE);
+    assertEquals(1, state.invalidatePath(buildFile));
+
+    assertEquals(Optional.empty(), cache.lookupComputedNode(target.getUnconfiguredBuildTarget()));
+    assertEquals(
+        Optional.of(n1), snapshotCache.lookupComputedNode(target.getUnconfiguredBuildTarget()));
+    assertTrue(snapshot.lookupBuildFileManifest(buildFile).isPresent());
+
+    // The snapshot still tracks which nodes each build file defines.
+    assertEquals(1, snapshot.invalidatePath(buildFile));
+    assertEquals(
+        Optional.empty(), snapshotCache.lookupComputedNode(target.getUnconfiguredBuildTarget()));
+  }
+
+  @Test
+  public void testSnapshotKeepsHandedOverEntriesOverReparsedOnes() throws BuildTargetException {
+    Cache<UnconfiguredBuildTarget, UnconfiguredTargetNode> cache =
+        state.getCache(DaemonicCellState.RAW_TARGET_NODE_CACHE_TYPE);
+    BuildTarget target = BuildTargetFactory.newInstance("//path/to:target");
+    AbsPath buildFile = AbsPath.of(filesystem.resolve("path/to/BUCK"));
+    populateDummyRawNode(state, target);
+    UnconfiguredTargetNode n1 = rawTargetNode("n1");
+    cache.putComputedNodeIfNotPresent(target.getUnconfiguredBuildTarget(), n1);
+
+    DaemonicCellState snapshot = state.snapshot();
+    Cache<UnconfiguredBuildTarget, UnconfiguredTargetNode> snapshotCache =
+        snapshot.getCache(DaemonicCellState.RAW_TARGET_NODE_CACHE_TYPE);
+    state.invalidatePath(buildFile);
+    populateDummyRawNode(state, target);
+    UnconfiguredTargetNode n2 = rawTargetNode("n2");
+    cache.putComputedNodeIfNotPresent(target.getUnconfiguredBuildTarget(), n2);
+
+    assertEquals(Optional.of(n2), cache.lookupComputedNode(target.getUnconfiguredBuildTarget()));
+    assertEquals(
+        Optional.of(n1), snapshotCache.lookupComputedNode(target.getUnconfiguredBuildTarget()));
+  }
+
+  @Test
+  public void testSnapshotReadsThroughWithoutChangingItsBase() throws BuildTargetException {
+    Cache<UnconfiguredBuildTarget, UnconfiguredTargetNode> cache =
+        state.getCache(DaemonicCellState.RAW_TARGET_NODE_CACHE_TYPE);
+    BuildTarget target = BuildTargetFactory.newInstance("//path/to:target");
+    AbsPath buildFile = AbsPath.of(filesystem.resolve("path/to/BUCK"));
+    DaemonicCellState snapshot = state.snapshot();
+    Cache<UnconfiguredBuildTarget, UnconfiguredTargetNode> snapshotCache =
+        snapshot.getCache(DaemonicCellState.RAW_TARGET_NODE_CACHE_TYPE);
+
+    // Entries added to the base after the snapshot was taken are seen through it.
+    populateDummyRawNode(state, target);
+    UnconfiguredTargetNode n1 = rawTargetNode("n1");
+    cache.putComputedNodeIfNotPresent(target.getUnconfiguredBuildTarget(), n1);
+    assertEquals(
+        Optional.of(n1), snapshotCache.lookupComputedNode(target.getUnconfiguredBuildTarget()));
+    assertEquals(
+        n1,
+        snapshotCache.putComputedNodeIfNotPresent(
+            target.getUnconfiguredBuildTarget(), rawTargetNode("n2")));
+
+    // Invalidating the snapshot shadows the entries of its base, but leaves them in place.
+    assertEquals(1, snapshot.invalidatePath(buildFile));
+    assertEquals(
+        Optional.empty(), snapshotCache.lookupComputedNode(target.getUnconfiguredBuildTarget()));
+    assertFalse(snapshot.lookupBuildFileManifest(buildFile).isPresent());
+    assertEquals(Optional.of(n1), cache.lookupComputedNode(target.getUnconfiguredBuildTarget()));
+    assertTrue(state.lookupBuildFileManifest(buildFile).isPresent());
+  }
+
   @Test
   public void testCellNameDoesNotAffectInvalidation() throws BuildTargetException {
     Cache<UnconfiguredBuildTarget, UnconfiguredTargetNode> cache =
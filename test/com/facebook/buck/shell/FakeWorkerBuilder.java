@@ -102,6 +102,11 @@ public class FakeWorkerBuilder
       return false;
     }
 
+    @Override
+    public int getMaxRequestsPerWorker() {
+      return 1;
+    }
+
     @Override
     public HashCode getInstanceKey() {
       return hashCode;
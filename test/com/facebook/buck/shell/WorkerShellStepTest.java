@@ -426,7 +426,10 @@ public class WorkerShellStepTest {
             new WorkerProcessPoolFactory(new FakeProjectFilesystem()) {
               @Override
               public WorkerProcess createWorkerProcess(
-                  ProcessExecutorParams processParams, ExecutionContext context, Path tmpDir)
+                  ProcessExecutorParams processParams,
+                  ExecutionContext context,
+                  Path tmpDir,
+                  boolean multiplexed)
                   throws IOException {
                 try {
                   sleep(5);
@@ -16,6 +16,8 @@
 
 package com.facebook.buck.skylark.parser;
 
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsInAnyOrder;
 import static org.hamcrest.Matchers.containsString;
 import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.hasKey;
@@ -567,6 +569,83 @@ public class SkylarkProjectBuildFileParserTest {
         equalTo(recordingParser.expectedCounts(vfs_path(ext1), 1, vfs_path(ext2), 1)));
   }
 
+  @Test
+  public void reusesExtensionsEvaluatedByAnotherParser() throws Exception {
+    Path buildFile = projectFilesystem.resolve("BUCK");
+    Files.write(buildFile, Arrays.asList("load('//:ext_1.bzl', 'ext_1')"));
+
+    Path ext1 = projectFilesystem.resolve("ext_1.bzl");
+    Files.write(ext1, Arrays.asList("load(':ext_2.bzl', 'ext_2')", "ext_1 = ext_2"));
+
+    Path ext2 = projectFilesystem.resolve("ext_2.bzl");
+    Files.write(ext2, Arrays.asList("ext_2 = 'hello'"));
+
+    SkylarkExtensionCache sharedExtensionCache = new SkylarkExtensionCache();
+    RecordingParser firstParser = new RecordingParser(parser, sharedExtensionCache);
+    firstParser.getManifest(buildFile);
+    RecordingParser secondParser = new RecordingParser(parser, sharedExtensionCache);
+    BuildFileManifest manifest = secondParser.getManifest(buildFile);
+
+    assertThat(
+        firstParser.buildCounts,
+        equalTo(firstParser.expectedCounts(vfs_path(ext1), 1, vfs_path(ext2), 1)));
+    assertThat(secondParser.buildCounts, equalTo(ImmutableMap.of()));
+    assertThat(
+        secondParser.readCounts, equalTo(secondParser.expectedCounts(vfs_path(buildFile), 1)));
+    assertThat(
+        manifest.getIncludes(),
+        containsInAnyOrder(buildFile.toString(), ext1.toString(), ext2.toString()));
+  }
+
+  @Test
+  public void reevaluatesSharedExtensionsWhenTheirContentChanges() throws Exception {
+    Path buildFile = projectFilesystem.resolve("BUCK");
+    Files.write(buildFile, Arrays.asList("load('//:ext.bzl', 'name')", "java_library(name=name)"));
+
+    Path ext = projectFilesystem.resolve("ext.bzl");
+    Files.write(ext, Arrays.asList("name = 'foo'"));
+
+    SkylarkExtensionCache sharedExtensionCache = new SkylarkExtensionCache();
+    new RecordingParser(parser, sharedExtensionCache).getManifest(buildFile);
+
+    Files.write(ext, Arrays.asList("name = 'bar'"));
+    RecordingParser recordingParser = new RecordingParser(parser, sharedExtensionCache);
+    BuildFileManifest manifest = recordingParser.getManifest(buildFile);
+
+    assertThat(
+        recordingParser.buildCounts, equalTo(recordingParser.expectedCounts(vfs_path(ext), 1)));
+    assertThat(manifest.getTargets().keySet(), contains("bar"));
+  }
+
+  @Test
+  public void invalidatingSharedExtensionInvalidatesExtensionsLoadingIt() throws Exception {
+    Path buildFile = projectFilesystem.resolve("BUCK");
+    Files.write(
+        buildFile, Arrays.asList("load('//:ext_1.bzl', 'ext_1')", "load('//:ext_3.bzl', 'ext_3')"));
+
+    Path ext1 = projectFilesystem.resolve("ext_1.bzl");
+    Files.write(ext1, Arrays.asList("load(':ext_2.bzl', 'ext_2')", "ext_1 = ext_2"));
+
+    Path ext2 = projectFilesystem.resolve("ext_2.bzl");
+    Files.write(ext2, Arrays.asList("ext_2 = 'hello'"));
+
+    Path ext3 = projectFilesystem.resolve("ext_3.bzl");
+    Files.write(ext3, Arrays.asList("ext_3 = 'world'"));
+
+    SkylarkExtensionCache sharedExtensionCache = new SkylarkExtensionCache();
+    new RecordingParser(parser, sharedExtensionCache).getManifest(buildFile);
+    assertEquals(3, sharedExtensionCache.size());
+
+    sharedExtensionCache.invalidatePath(ext2.toString());
+    assertEquals(1, sharedExtensionCache.size());
+
+    RecordingParser recordingParser = new RecordingParser(parser, sharedExtensionCache);
+    recordingParser.getManifest(buildFile);
+    assertThat(
+        recordingParser.buildCounts,
+        equalTo(recordingParser.expectedCounts(vfs_path(ext1), 1, vfs_path(ext2), 1)));
+  }
+
   @Test
   public void doesNotReadSameBuildFileMultipleTimes() throws Exception {
     // Verifies BUILD file is accessed for IO and AST construction only once.
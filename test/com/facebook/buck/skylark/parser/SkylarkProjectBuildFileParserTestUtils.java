@@ -54,6 +54,13 @@ public class SkylarkProjectBuildFileParserTestUtils {
       buildCounts = new HashMap<>();
     }
 
+    public RecordingParser(
+        SkylarkProjectBuildFileParser delegate, SkylarkExtensionCache sharedExtensionCache) {
+      super(delegate, sharedExtensionCache);
+      readCounts = new HashMap<>();
+      buildCounts = new HashMap<>();
+    }
+
     @Override
     public BuildFileAST readSkylarkAST(Path path, FileKind fileKind) throws IOException {
       readCounts.compute(path, (k, v) -> v == null ? 1 : v + 1);
@@ -0,0 +1,169 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.slb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import org.easymock.EasyMock;
+import org.easymock.EasyMockSupport;
+import org.junit.Test;
+
+public class HedgedRequestTest extends EasyMockSupport {
+  private static final URI SERVER = URI.create("http://server/");
+  private static final URI HEDGE_SERVER = URI.create("http://hedge/");
+  private static final String PATH = "/artifacts/key";
+
+  private final Map<String, Behavior> behaviorsByHost = new HashMap<>();
+
+  @Test
+  public void testLatencyOfCancelledAttemptIsNotReported() throws IOException {
+    // The server never responds, the hedge server responds right away.
+    behaviorsByHost.put(SERVER.getHost(), (call, callback) -> {});
+    behaviorsByHost.put(
+        HEDGE_SERVER.getHost(), (call, callback) -> callback.onResponse(call, respond(call)));
+
+    HttpLoadBalancer slb = createMock(HttpLoadBalancer.class);
+    EasyMock.expect(slb.getHedgeServer(SERVER)).andReturn(Optional.of(HEDGE_SERVER));
+    slb.reportRequestLatency(HEDGE_SERVER, 5);
+    EasyMock.expectLastCall().once();
+    replayAll();
+
+    LoadBalancedHttpResponse response = execute(slb);
+
+    assertEquals(
+        SingleUriService.getFullUrl(HEDGE_SERVER, PATH).toString(), response.requestUrl());
+    verifyAll();
+  }
+
+  @Test
+  public void testFailureOfAttemptIsReportedAsException() {
+    IOException exception = new IOException("Connection refused");
+    behaviorsByHost.put(SERVER.getHost(), (call, callback) -> callback.onFailure(call, exception));
+
+    HttpLoadBalancer slb = createMock(HttpLoadBalancer.class);
+    slb.reportRequestException(SERVER);
+    EasyMock.expectLastCall().once();
+    replayAll();
+
+    try {
+      execute(slb);
+      fail("The failure of the only attempt should fail the request.");
+    } catch (IOException e) {
+      assertEquals(exception, e);
+    }
+    verifyAll();
+  }
+
+  private LoadBalancedHttpResponse execute(HttpLoadBalancer slb) throws IOException {
+    return HedgedRequest.execute(
+        slb,
+        request -> new FakeCall(request),
+        SERVER,
+        PATH,
+        new Request.Builder().url(SingleUriService.getFullUrl(SERVER, PATH)).build(),
+        1);
+  }
+
+  private static Response respond(Call call) {
+    return new Response.Builder()
+        .request(call.request())
+        .protocol(Protocol.HTTP_1_1)
+        .code(200)
+        .message("")
+        .sentRequestAtMillis(10)
+        .receivedResponseAtMillis(15)
+        .build();
+  }
+
+  /** How a server responds to a call. */
+  private interface Behavior {
+    void enqueue(Call call, Callback callback) throws IOException;
+  }
+
+  /**
+   * A call which behaves as configured for the host it is sent to, and fails right away when it
+   * is cancelled, like okhttp eventually does.
+   */
+  private class FakeCall implements Call {
+    private final Request request;
+    private Callback callback;
+    private boolean executed;
+    private boolean canceled;
+
+    private FakeCall(Request request) {
+      this.request = request;
+    }
+
+    @Override
+    public Request request() {
+      return request;
+    }
+
+    @Override
+    public Response execute() {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void enqueue(Callback responseCallback) {
+      executed = true;
+      callback = responseCallback;
+      try {
+        behaviorsByHost.get(request.url().host()).enqueue(this, responseCallback);
+      } catch (IOException e) {
+        throw new AssertionError(e);
+      }
+    }
+
+    @Override
+    public void cancel() {
+      if (canceled) {
+        return;
+      }
+      canceled = true;
+      if (callback != null) {
+        callback.onFailure(this, new IOException("Canceled"));
+      }
+    }
+
+    @Override
+    public boolean isExecuted() {
+      return executed;
+    }
+
+    @Override
+    public boolean isCanceled() {
+      return canceled;
+    }
+
+    @Override
+    public Call clone() {
+      return new FakeCall(request);
+    }
+  }
+}
@@ -0,0 +1,183 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.slb;
+
+import com.facebook.buck.event.BuckEventBus;
+import com.facebook.buck.event.BuckEventBusForTests;
+import com.facebook.buck.testutil.integration.HttpdForTests;
+import com.facebook.buck.util.timing.DefaultClock;
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.ByteStreams;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/** Simulates cache servers with different latencies to check how requests are spread among them. */
+public class LatencyAwareSlbIntegrationTest {
+
+  private static final String PATH = "/artifact";
+  private static final long FAST_LATENCY_MILLIS = 5;
+  private static final long SLOW_LATENCY_MILLIS = 200;
+  private static final long BLOCKED_LATENCY_MILLIS = TimeUnit.SECONDS.toMillis(30);
+
+  private final List<HttpdForTests> servers = new ArrayList<>();
+  // Releases the requests that are blocked to simulate an unresponsive server.
+  private final CountDownLatch unblock = new CountDownLatch(1);
+  private BuckEventBus eventBus;
+
+  @Before
+  public void setUp() {
+    eventBus = BuckEventBusForTests.newInstance();
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    unblock.countDown();
+    for (HttpdForTests server : servers) {
+      server.close();
+    }
+  }
+
+  @Test
+  public void testSlowServerGetsFewRequests() throws Exception {
+    URI slowServer = startServer(() -> sleep(SLOW_LATENCY_MILLIS));
+    ImmutableList<URI> pool =
+        ImmutableList.of(
+            startServer(() -> sleep(FAST_LATENCY_MILLIS)),
+            slowServer,
+            startServer(() -> sleep(FAST_LATENCY_MILLIS)));
+
+    Map<Integer, Integer> requestsByServer = new HashMap<>();
+    try (LoadBalancedService service = newService(pool, false)) {
+      for (int i = 0; i < 60; ++i) {
+        requestsByServer.merge(fetch(service), 1, Integer::sum);
+      }
+    }
+
+    // The slow server only gets requests until its latency is known.
+    Assert.assertTrue(
+        requestsByServer.toString(), requestsByServer.getOrDefault(slowServer.getPort(), 0) < 6);
+  }
+
+  @Test
+  public void testUnresponsiveServerIsHedged() throws Exception {
+    // Whichever server gets the first request doesn't respond to it.
+    CountDownLatch firstRequest = new CountDownLatch(1);
+    BooleanSupplier blockFirstRequest =
+        () -> {
+          if (firstRequest.getCount() == 0) {
+            return true;
+          }
+          firstRequest.countDown();
+          return sleep(BLOCKED_LATENCY_MILLIS);
+        };
+    ImmutableList<URI> pool =
+        ImmutableList.of(startServer(blockFirstRequest), startServer(blockFirstRequest));
+
+    try (LoadBalancedService service = newService(pool, true)) {
+      long startNanos = System.nanoTime();
+      fetch(service);
+      long latencyMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+      Assert.assertTrue(String.valueOf(latencyMillis), latencyMillis < BLOCKED_LATENCY_MILLIS / 10);
+    }
+  }
+
+  private URI startServer(BooleanSupplier delay) throws Exception {
+    HttpdForTests server = HttpdForTests.httpdForOkHttpTests();
+    servers.add(server);
+    server.addHandler(
+        new AbstractHandler() {
+          @Override
+          public void handle(
+              String target,
+              org.eclipse.jetty.server.Request baseRequest,
+              HttpServletRequest request,
+              HttpServletResponse response)
+              throws IOException {
+            if (target.equals(PATH) && !delay.getAsBoolean()) {
+              return;
+            }
+            response.setStatus(HttpServletResponse.SC_OK);
+            response
+                .getOutputStream()
+                .write(String.valueOf(request.getLocalPort()).getBytes(StandardCharsets.UTF_8));
+            baseRequest.setHandled(true);
+          }
+        });
+    server.start();
+    // Warm the server up, so that the latency of its first request is not mistaken for its own.
+    Request warmup =
+        new Request.Builder().url(server.getRootUri().resolve("/warmup").toURL()).build();
+    try (Response response = new OkHttpClient().newCall(warmup).execute()) {
+      Assert.assertEquals(HttpServletResponse.SC_OK, response.code());
+    }
+    return server.getRootUri();
+  }
+
+  /** @return Whether the delay ran to the end rather than being cut short by the test ending. */
+  private boolean sleep(long millis) {
+    try {
+      return !unblock.await(millis, TimeUnit.MILLISECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return false;
+    }
+  }
+
+  private LoadBalancedService newService(ImmutableList<URI> pool, boolean hedging) {
+    ClientSideSlbConfig config =
+        ImmutableClientSideSlbConfig.builder()
+            .setClock(new DefaultClock())
+            .setServerPool(pool)
+            .setEventBus(eventBus)
+            .setServerPoolName("simulation")
+            .setLatencyAwareSelectionEnabled(true)
+            .setHedgingEnabled(hedging)
+            .setHealthCheckIntervalMillis((int) TimeUnit.HOURS.toMillis(1))
+            .build();
+    ClientSideSlb slb =
+        new ClientSideSlb(config, Executors.newSingleThreadScheduledExecutor(), new OkHttpClient());
+    return new LoadBalancedService(slb, new OkHttpClient(), eventBus);
+  }
+
+  /** @return The port of the server which answered. */
+  private static int fetch(LoadBalancedService service) throws IOException {
+    try (HttpResponse response = service.makeRequest(PATH, new Request.Builder().get())) {
+      Assert.assertEquals(HttpServletResponse.SC_OK, response.statusCode());
+      return Integer.parseInt(
+          new String(ByteStreams.toByteArray(response.getBody()), StandardCharsets.UTF_8));
+    }
+  }
+}
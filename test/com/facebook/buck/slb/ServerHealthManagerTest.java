@@ -22,6 +22,9 @@ import com.facebook.buck.util.timing.FakeClock;
 import com.google.common.collect.ImmutableList;
 import java.io.IOException;
 import java.net.URI;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
@@ -94,6 +97,52 @@ public class ServerHealthManagerTest {
     Assert.fail("All servers have high latency so an exception was expected.");
   }
 
+  @Test
+  public void testLatencyAwareSelectionAvoidsSlowServers() throws IOException {
+    ServerHealthManager manager = newServerHealthManager(true);
+    manager.reportRequestLatency(SERVERS.get(0), 10);
+    manager.reportRequestLatency(SERVERS.get(1), 20);
+    manager.reportRequestLatency(SERVERS.get(2), 500);
+
+    Map<URI, Integer> selections = new HashMap<>();
+    for (int i = 0; i < 100; ++i) {
+      selections.merge(manager.getBestServer(), 1, Integer::sum);
+    }
+    // The slowest server loses every comparison, the fastest one wins all of its comparisons.
+    Assert.assertFalse(selections.containsKey(SERVERS.get(2)));
+    Assert.assertTrue(selections.get(SERVERS.get(0)) > selections.getOrDefault(SERVERS.get(1), 0));
+  }
+
+  @Test
+  public void testHedgeServerIsTheFastestOtherServer() {
+    ServerHealthManager manager = newServerHealthManager(true);
+    manager.reportRequestLatency(SERVERS.get(0), 10);
+    manager.reportRequestLatency(SERVERS.get(1), 20);
+    manager.reportRequestLatency(SERVERS.get(2), 500);
+
+    Assert.assertEquals(Optional.of(SERVERS.get(0)), manager.getHedgeServer(SERVERS.get(2)));
+    Assert.assertEquals(Optional.of(SERVERS.get(1)), manager.getHedgeServer(SERVERS.get(0)));
+  }
+
+  @Test
+  public void testNoHedgeServerIfOthersAreUnhealthy() {
+    ServerHealthManager manager = newServerHealthManager(true);
+    manager.reportPingLatency(SERVERS.get(1), MAX_ACCEPTABLE_LATENCY_MILLIS + 1);
+    manager.reportPingLatency(SERVERS.get(2), MAX_ACCEPTABLE_LATENCY_MILLIS + 1);
+
+    Assert.assertEquals(Optional.empty(), manager.getHedgeServer(SERVERS.get(0)));
+  }
+
+  @Test
+  public void testRequestLatencyPercentile() {
+    ServerHealthManager manager = newServerHealthManager(true);
+    Assert.assertEquals(-1, manager.getRequestLatencyPercentileMillis(SERVERS.get(0), 99));
+
+    manager.reportRequestLatency(SERVERS.get(0), 10);
+    manager.reportRequestLatency(SERVERS.get(0), 30);
+    Assert.assertEquals(30, manager.getRequestLatencyPercentileMillis(SERVERS.get(0), 99));
+  }
+
   private void reportLatencyToAll(ServerHealthManager manager, int latencyMillis) {
     for (URI server : SERVERS) {
       manager.reportPingLatency(server, latencyMillis);
@@ -101,6 +150,10 @@ public class ServerHealthManagerTest {
   }
 
   private ServerHealthManager newServerHealthManager() {
+    return newServerHealthManager(false);
+  }
+
+  private ServerHealthManager newServerHealthManager(boolean latencyAwareSelection) {
     return new ServerHealthManager(
         "test_server_pool",
         SERVERS,
@@ -109,6 +162,7 @@ public class ServerHealthManagerTest {
         RANGE_MILLIS,
         MAX_ACCEPTABLE_LATENCY_MILLIS,
         MIN_SAMPLES_TO_REPORT_ERROR,
+        latencyAwareSelection,
         eventBus,
         NOW_FAKE_CLOCK);
   }
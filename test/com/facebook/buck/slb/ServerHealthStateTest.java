@@ -98,6 +98,41 @@ public class ServerHealthStateTest {
     Assert.assertEquals(1f, errorsPerSecond, DELTA);
   }
 
+  @Test
+  public void testRequestLatencyMovingAverage() {
+    ServerHealthState state = new ServerHealthState(SERVER);
+    Assert.assertEquals(-1, state.getRequestLatencyEwmaMillis(NOW_MILLIS, RANGE_MILLIS), DELTA);
+
+    state.reportRequestLatency(NOW_MILLIS, 10);
+    Assert.assertEquals(10, state.getRequestLatencyEwmaMillis(NOW_MILLIS, RANGE_MILLIS), DELTA);
+
+    state.reportRequestLatency(NOW_MILLIS, 60);
+    Assert.assertEquals(20, state.getRequestLatencyEwmaMillis(NOW_MILLIS, RANGE_MILLIS), DELTA);
+
+    Assert.assertEquals(
+        -1,
+        state.getRequestLatencyEwmaMillis(NOW_MILLIS + RANGE_MILLIS + 1, RANGE_MILLIS),
+        DELTA);
+  }
+
+  @Test
+  public void testRequestLatencyPercentiles() {
+    ServerHealthState state = new ServerHealthState(SERVER);
+    Assert.assertEquals(-1, state.getRequestLatencyPercentileMillis(NOW_MILLIS, RANGE_MILLIS, 99));
+
+    for (int latencyMillis = 100; latencyMillis > 0; --latencyMillis) {
+      state.reportRequestLatency(NOW_MILLIS, latencyMillis);
+    }
+    Assert.assertEquals(50, state.getRequestLatencyPercentileMillis(NOW_MILLIS, RANGE_MILLIS, 50));
+    Assert.assertEquals(99, state.getRequestLatencyPercentileMillis(NOW_MILLIS, RANGE_MILLIS, 99));
+    Assert.assertEquals(
+        100, state.getRequestLatencyPercentileMillis(NOW_MILLIS, RANGE_MILLIS, 100));
+
+    Assert.assertEquals(
+        -1,
+        state.getRequestLatencyPercentileMillis(NOW_MILLIS + RANGE_MILLIS + 1, RANGE_MILLIS, 99));
+  }
+
   private void reportSamples(ServerHealthState state, long epochMillis, int latencyMillis) {
     state.reportRequestError(epochMillis);
     state.reportPingLatency(epochMillis, latencyMillis);
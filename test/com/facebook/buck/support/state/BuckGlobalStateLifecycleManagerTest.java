@@ -19,7 +19,9 @@ package com.facebook.buck.support.state;
 import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.not;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assume.assumeThat;
 import static org.junit.Assume.assumeTrue;
 
@@ -57,14 +59,19 @@ import com.facebook.buck.util.timing.Clock;
 import com.facebook.buck.util.timing.FakeClock;
 import com.facebook.buck.util.timing.SettableFakeClock;
 import com.facebook.buck.util.types.Pair;
+import com.facebook.buck.worker.WorkerJobResult;
+import com.facebook.buck.worker.WorkerProcessPool;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableList.Builder;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.hash.HashCode;
+import com.google.common.util.concurrent.ListenableFuture;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.AbstractMap.SimpleImmutableEntry;
 import java.util.Map.Entry;
+import java.util.concurrent.atomic.AtomicBoolean;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
@@ -178,6 +185,129 @@ public class BuckGlobalStateLifecycleManagerTest {
     assertEquals(LifecycleStatus.INVALIDATED_BUCK_CONFIG_CHANGED, buckStateResult3.getSecond());
   }
 
+  @Test
+  public void whenBuckConfigChangesAlongsideOtherCommandsStateIsIsolated() {
+    buckGlobalStateLifecycleManager.resetBuckGlobalState();
+    Cells cells1 =
+        new TestCellBuilder()
+            .setBuckConfig(
+                FakeBuckConfig.builder()
+                    .setSections(
+                        ImmutableMap.of("somesection", ImmutableMap.of("somename", "somevalue")))
+                    .build())
+            .setFilesystem(filesystem)
+            .build();
+    Cells cells2 =
+        new TestCellBuilder()
+            .setBuckConfig(
+                FakeBuckConfig.builder()
+                    .setSections(
+                        ImmutableMap.of(
+                            "somesection", ImmutableMap.of("somename", "someothervalue")))
+                    .build())
+            .setFilesystem(filesystem)
+            .build();
+
+    Pair<BuckGlobalState, LifecycleStatus> storedState = getBuckGlobalState(cells1, false);
+    Pair<BuckGlobalState, LifecycleStatus> isolatedState = getBuckGlobalState(cells2, true);
+    Pair<BuckGlobalState, LifecycleStatus> reusedState = getBuckGlobalState(cells1, true);
+
+    assertNotEquals(storedState.getFirst(), isolatedState.getFirst());
+    assertEquals(LifecycleStatus.ISOLATED, isolatedState.getSecond());
+    assertEquals(
+        "The stored state should survive the isolated one.",
+        storedState.getFirst(),
+        reusedState.getFirst());
+    assertEquals(LifecycleStatus.REUSED, reusedState.getSecond());
+    isolatedState.getFirst().close();
+  }
+
+  @Test
+  public void stateReplacedWhileInUseIsClosedWhenReleased() {
+    buckGlobalStateLifecycleManager.resetBuckGlobalState();
+    Cells cells1 = cellsWithSomeValue("somevalue");
+    Cells cells2 = cellsWithSomeValue("someothervalue");
+
+    BuckGlobalState readOnlyState = acquireBuckGlobalState(cells1).getFirst();
+    AtomicBoolean closed = new AtomicBoolean();
+    readOnlyState.getPersistentWorkerPools().put("pool", new FakeWorkerProcessPool(closed));
+    Pair<BuckGlobalState, LifecycleStatus> buildState = acquireBuckGlobalState(cells2);
+
+    assertEquals(LifecycleStatus.INVALIDATED_BUCK_CONFIG_CHANGED, buildState.getSecond());
+    assertFalse("A state should stay open while a command uses it.", closed.get());
+    buckGlobalStateLifecycleManager.releaseBuckGlobalState(readOnlyState);
+    assertTrue("The last command using a replaced state should close it.", closed.get());
+    buckGlobalStateLifecycleManager.releaseBuckGlobalState(buildState.getFirst());
+    assertEquals(
+        "The stored state should survive its release.",
+        buildState.getFirst(),
+        getBuckGlobalState(cells2, false).getFirst());
+  }
+
+  private Cells cellsWithSomeValue(String value) {
+    return new TestCellBuilder()
+        .setBuckConfig(
+            FakeBuckConfig.builder()
+                .setSections(ImmutableMap.of("somesection", ImmutableMap.of("somename", value)))
+                .build())
+        .setFilesystem(filesystem)
+        .build();
+  }
+
+  private Pair<BuckGlobalState, LifecycleStatus> acquireBuckGlobalState(Cells cells) {
+    return buckGlobalStateLifecycleManager.acquireBuckGlobalState(
+        cells,
+        knownRuleTypesProvider,
+        watchman,
+        Console.createNullConsole(),
+        clock,
+        unconfiguredBuildTargetFactory,
+        targetConfigurationSerializer,
+        false);
+  }
+
+  /** A worker pool which records whether it was closed. */
+  private static class FakeWorkerProcessPool implements WorkerProcessPool {
+    private final AtomicBoolean closed;
+
+    private FakeWorkerProcessPool(AtomicBoolean closed) {
+      this.closed = closed;
+    }
+
+    @Override
+    public HashCode getPoolHash() {
+      return HashCode.fromInt(0);
+    }
+
+    @Override
+    public int getCapacity() {
+      return 1;
+    }
+
+    @Override
+    public ListenableFuture<WorkerJobResult> submitJob(String expandedJobArgs) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void close() {
+      closed.set(true);
+    }
+  }
+
+  private Pair<BuckGlobalState, LifecycleStatus> getBuckGlobalState(
+      Cells cells, boolean isolateIfInvalidated) {
+    return buckGlobalStateLifecycleManager.getBuckGlobalState(
+        cells,
+        knownRuleTypesProvider,
+        watchman,
+        Console.createNullConsole(),
+        clock,
+        unconfiguredBuildTargetFactory,
+        targetConfigurationSerializer,
+        isolateIfInvalidated);
+  }
+
   @Test
   public void whenAndroidNdkVersionChangesParserInvalidated() {
 
@@ -17,6 +17,8 @@
 package com.facebook.buck.util;
 
 import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertThat;
@@ -28,6 +30,8 @@ import java.io.File;
 import java.io.IOException;
 import java.net.URL;
 import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import org.hamcrest.Matchers;
 import org.junit.Before;
 import org.junit.Rule;
@@ -99,4 +103,83 @@ public class ClassLoaderCacheTest {
       assertThat(cl.getResource("baz"), Matchers.equalTo(bazFile.toURI().toURL()));
     }
   }
+
+  @Test
+  public void evictedClassLoadersAreClosedOnceTheirUsersAreClosed() throws Exception {
+    try (ClassLoaderCache clc = new ClassLoaderCache(1);
+        ClassLoaderCache otherCommandClc = clc.addRef()) {
+      ClassLoader dummyParent = ClassLoader.getSystemClassLoader();
+      ClassLoader cl;
+      try (ClassLoaderCache commandClc = clc.addRef()) {
+        cl =
+            commandClc.getClassLoaderForClassPath(
+                dummyParent, ImmutableList.of(barDir.toURI().toURL()));
+        otherCommandClc.getClassLoaderForClassPath(
+            dummyParent, ImmutableList.of(fooDir.toURI().toURL()));
+
+        assertThat(cl.getResource("baz"), Matchers.equalTo(bazFile.toURI().toURL()));
+      }
+
+      // Another command still holds the cache, but it never used the evicted class loader.
+      assertNull(cl.getResource("baz"));
+    }
+  }
+
+  @Test
+  public void unusedEvictedClassLoadersAreClosedRightAway() throws Exception {
+    try (ClassLoaderCache clc = new ClassLoaderCache(1)) {
+      ClassLoader dummyParent = ClassLoader.getSystemClassLoader();
+      ClassLoader cl;
+      try (ClassLoaderCache commandClc = clc.addRef()) {
+        cl =
+            commandClc.getClassLoaderForClassPath(
+                dummyParent, ImmutableList.of(barDir.toURI().toURL()));
+      }
+      assertThat(cl.getResource("baz"), Matchers.equalTo(bazFile.toURI().toURL()));
+
+      try (ClassLoaderCache commandClc = clc.addRef()) {
+        commandClc.getClassLoaderForClassPath(
+            dummyParent, ImmutableList.of(fooDir.toURI().toURL()));
+        assertNull(cl.getResource("baz"));
+      }
+    }
+  }
+
+  @Test
+  public void evictedClassLoadersAreClosedOnceOnlyTheOwnerHoldsTheCache() throws Exception {
+    try (ClassLoaderCache clc = new ClassLoaderCache(1)) {
+      ClassLoader dummyParent = ClassLoader.getSystemClassLoader();
+      ClassLoader cl;
+      try (ClassLoaderCache commandClc = clc.addRef()) {
+        cl =
+            commandClc.getClassLoaderForClassPath(
+                dummyParent, ImmutableList.of(barDir.toURI().toURL()));
+        commandClc.getClassLoaderForClassPath(
+            dummyParent, ImmutableList.of(fooDir.toURI().toURL()));
+
+        // The evicted class loader might still be used by the command.
+        assertThat(cl.getResource("baz"), Matchers.equalTo(bazFile.toURI().toURL()));
+        assertEquals(1, clc.getEvictionCount());
+      }
+
+      assertNull(cl.getResource("baz"));
+    }
+  }
+
+  @Test
+  public void classLoaderIsReplacedWhenClassPathEntryChanges() throws Exception {
+    try (ClassLoaderCache clc = new ClassLoaderCache()) {
+      ClassLoader dummyParent = ClassLoader.getSystemClassLoader();
+      ImmutableList<URL> classPath = ImmutableList.of(bazFile.toURI().toURL());
+      ClassLoader cl1 = clc.getClassLoaderForClassPath(dummyParent, classPath);
+      assertSame(cl1, clc.getClassLoaderForClassPath(dummyParent, classPath));
+
+      Files.write(bazFile.toPath(), "changed".getBytes(StandardCharsets.UTF_8));
+      ClassLoader cl2 = clc.getClassLoaderForClassPath(dummyParent, classPath);
+
+      assertNotSame(cl1, cl2);
+      assertEquals(1, clc.getHitCount());
+      assertEquals(2, clc.getMissCount());
+    }
+  }
 }
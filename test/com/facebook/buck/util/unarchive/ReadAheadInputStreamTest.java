@@ -0,0 +1,140 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.util.unarchive;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.io.ByteStreams;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+public class ReadAheadInputStreamTest {
+
+  @Rule public ExpectedException expectedException = ExpectedException.none();
+
+  private final ExecutorService executorService = Executors.newSingleThreadExecutor();
+
+  @After
+  public void tearDown() {
+    executorService.shutdownNow();
+  }
+
+  @Test
+  public void testReadsTheWholeDelegate() throws IOException {
+    byte[] data = new byte[100_000];
+    new Random(42).nextBytes(data);
+
+    try (InputStream input =
+        new ReadAheadInputStream(new ByteArrayInputStream(data), 1000, 2, executorService)) {
+      assertEquals(data[0] & 0xff, input.read());
+      assertArrayEquals(Arrays.copyOfRange(data, 1, data.length), ByteStreams.toByteArray(input));
+      assertEquals(-1, input.read());
+    }
+  }
+
+  @Test
+  public void testFailuresOfTheDelegateAreRethrownAfterItsData() throws IOException {
+    InputStream failing =
+        new SequenceInputStream(
+            new ByteArrayInputStream(new byte[10]),
+            new InputStream() {
+              @Override
+              public int read() throws IOException {
+                throw new IOException("corrupted");
+              }
+            });
+
+    try (InputStream input = new ReadAheadInputStream(failing, 4, 1, executorService)) {
+      byte[] buffer = new byte[8];
+      ByteStreams.readFully(input, buffer);
+
+      expectedException.expect(IOException.class);
+      expectedException.expectMessage("corrupted");
+      ByteStreams.exhaust(input);
+    }
+  }
+
+  @Test
+  public void testClosingBeforeTheEndStopsReadingAhead() throws IOException {
+    InputStream endless =
+        new InputStream() {
+          @Override
+          public int read() {
+            return 0;
+          }
+        };
+
+    InputStream input = new ReadAheadInputStream(endless, 16, 1, executorService);
+    assertEquals(0, input.read());
+    input.close();
+  }
+
+  @Test
+  public void testUncheckedFailuresOfTheDelegateAreRethrown() throws IOException {
+    InputStream failing =
+        new InputStream() {
+          @Override
+          public int read() {
+            throw new IllegalStateException("bug");
+          }
+        };
+
+    try (InputStream input = new ReadAheadInputStream(failing, 4, 1, executorService)) {
+      expectedException.expect(IOException.class);
+      expectedException.expectMessage("bug");
+      input.read();
+    }
+  }
+
+  @Test
+  public void testClosingBeforeReadingAheadStartsClosesTheDelegate() throws Exception {
+    // Keep the only thread of the executor busy.
+    CountDownLatch busy = new CountDownLatch(1);
+    executorService.submit(
+        () -> {
+          busy.await();
+          return null;
+        });
+    AtomicBoolean closed = new AtomicBoolean();
+    InputStream delegate =
+        new ByteArrayInputStream(new byte[10]) {
+          @Override
+          public void close() {
+            closed.set(true);
+          }
+        };
+
+    new ReadAheadInputStream(delegate, 4, 1, executorService).close();
+
+    assertTrue(closed.get());
+    busy.countDown();
+  }
+}
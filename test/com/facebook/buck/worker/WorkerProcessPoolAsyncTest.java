@@ -0,0 +1,219 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.worker;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.facebook.buck.io.filesystem.impl.FakeProjectFilesystem;
+import com.facebook.buck.util.FakeProcessExecutor;
+import com.facebook.buck.util.ProcessExecutorParams;
+import com.facebook.buck.util.function.ThrowingSupplier;
+import com.google.common.collect.ImmutableList;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.Uninterruptibles;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import org.junit.Test;
+
+public class WorkerProcessPoolAsyncTest {
+
+  private static final int TIMEOUT_MILLIS = 1000;
+
+  @Test(timeout = TIMEOUT_MILLIS)
+  public void testSoloPoolRunsAllJobsOnOneProcess() throws Exception {
+    List<PendingJobsWorkerProcess> processes = new ArrayList<>();
+    WorkerProcessPoolAsync pool = new WorkerProcessPoolAsync(3, poolHash(), starter(processes));
+
+    for (int i = 0; i < 3; i++) {
+      pool.submitJob("job");
+    }
+
+    assertEquals(1, processes.size());
+    assertEquals(3, processes.get(0).jobs.size());
+    assertEquals(3, pool.getCapacity());
+  }
+
+  @Test(timeout = TIMEOUT_MILLIS)
+  public void testMultiplexedPoolStartsProcessesOnceOthersAreFullyLoaded() throws Exception {
+    List<PendingJobsWorkerProcess> processes = new ArrayList<>();
+    WorkerProcessPoolAsync pool = new WorkerProcessPoolAsync(2, 2, poolHash(), starter(processes));
+
+    pool.submitJob("job");
+    pool.submitJob("job");
+    assertEquals(1, processes.size());
+
+    pool.submitJob("job");
+    assertEquals(2, processes.size());
+
+    // The first process finishing a job makes it the least busy one.
+    processes.get(0).finishJob();
+    pool.submitJob("job");
+    pool.submitJob("job");
+    assertEquals(2, processes.size());
+    assertEquals(3, processes.get(0).jobs.size());
+    assertEquals(2, processes.get(1).jobs.size());
+  }
+
+  @Test(timeout = TIMEOUT_MILLIS)
+  public void testJobsWaitForFreeSlots() throws Exception {
+    List<PendingJobsWorkerProcess> processes = new ArrayList<>();
+    WorkerProcessPoolAsync pool = new WorkerProcessPoolAsync(1, 2, poolHash(), starter(processes));
+    pool.submitJob("job");
+    pool.submitJob("job");
+
+    CompletableFuture<ListenableFuture<WorkerJobResult>> blocked =
+        CompletableFuture.supplyAsync(
+            () -> {
+              try {
+                return pool.submitJob("job");
+              } catch (IOException | InterruptedException e) {
+                throw new RuntimeException(e);
+              }
+            });
+    try {
+      blocked.get(50, TimeUnit.MILLISECONDS);
+      throw new AssertionError("Job should wait for a free slot.");
+    } catch (TimeoutException e) {
+      // Expected.
+    }
+    assertFalse(blocked.isDone());
+
+    processes.get(0).finishJob();
+    blocked.get();
+    assertEquals(1, processes.size());
+    assertEquals(3, processes.get(0).jobs.size());
+  }
+
+  @Test(timeout = TIMEOUT_MILLIS)
+  public void testDeadProcessesAreReplaced() throws Exception {
+    List<PendingJobsWorkerProcess> processes = new ArrayList<>();
+    WorkerProcessPoolAsync pool = new WorkerProcessPoolAsync(1, 2, poolHash(), starter(processes));
+    pool.submitJob("job");
+    processes.get(0).finishJob();
+    processes.get(0).close();
+
+    pool.submitJob("job");
+
+    assertEquals(2, processes.size());
+    assertTrue(processes.get(1).isAlive());
+  }
+
+  @Test(timeout = TIMEOUT_MILLIS)
+  public void testJobsCompleteWhileAProcessStarts() throws Exception {
+    List<PendingJobsWorkerProcess> processes = new ArrayList<>();
+    CountDownLatch starting = new CountDownLatch(1);
+    CountDownLatch canStart = new CountDownLatch(1);
+    ThrowingSupplier<WorkerProcess, IOException> starter = starter(processes);
+    WorkerProcessPoolAsync pool =
+        new WorkerProcessPoolAsync(
+            2,
+            1,
+            poolHash(),
+            () -> {
+              if (!processes.isEmpty()) {
+                starting.countDown();
+                Uninterruptibles.awaitUninterruptibly(canStart);
+              }
+              return starter.get();
+            });
+    ListenableFuture<WorkerJobResult> first = pool.submitJob("job");
+
+    CompletableFuture<ListenableFuture<WorkerJobResult>> second =
+        CompletableFuture.supplyAsync(
+            () -> {
+              try {
+                return pool.submitJob("job");
+              } catch (IOException | InterruptedException e) {
+                throw new RuntimeException(e);
+              }
+            });
+    starting.await();
+
+    // Completing a job needs the pool's lock, which the starting process must not hold.
+    processes.get(0).finishJob();
+    assertTrue(first.isDone());
+
+    canStart.countDown();
+    second.get();
+    assertEquals(2, processes.size());
+    assertEquals(1, processes.get(1).jobs.size());
+  }
+
+  private static HashCode poolHash() {
+    return Hashing.sha1().hashLong(0);
+  }
+
+  private static ThrowingSupplier<WorkerProcess, IOException> starter(
+      List<PendingJobsWorkerProcess> processes) {
+    return () -> {
+      PendingJobsWorkerProcess process = new PendingJobsWorkerProcess();
+      processes.add(process);
+      return process;
+    };
+  }
+
+  /** A worker process whose jobs only finish when the test says so. */
+  private static class PendingJobsWorkerProcess extends WorkerProcess {
+    private final List<SettableFuture<WorkerJobResult>> jobs = new ArrayList<>();
+    private int finishedJobs = 0;
+    private boolean alive = true;
+
+    PendingJobsWorkerProcess() throws IOException {
+      super(
+          new FakeProcessExecutor(),
+          ProcessExecutorParams.builder().setCommand(ImmutableList.of()).build(),
+          new FakeProjectFilesystem(),
+          Files.createTempFile("buck-worker-", "-stderr.log"),
+          Paths.get("tmp").toAbsolutePath().normalize(),
+          true);
+    }
+
+    @Override
+    public boolean isAlive() {
+      return alive;
+    }
+
+    @Override
+    public synchronized ListenableFuture<WorkerJobResult> submitJob(String jobArgs) {
+      SettableFuture<WorkerJobResult> job = SettableFuture.create();
+      jobs.add(job);
+      return job;
+    }
+
+    void finishJob() {
+      jobs.get(finishedJobs++).set(WorkerJobResult.of(0, Optional.empty(), Optional.empty()));
+    }
+
+    @Override
+    public void close() {
+      alive = false;
+    }
+  }
+}
@@ -0,0 +1,224 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.worker;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.WireFormat;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.channels.Channels;
+import java.nio.channels.Pipe;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.Main;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.RunnerException;
+
+/**
+ * Measures the round-trip latency of a command between Buck and a worker process speaking the JSON
+ * protocol (with its args file) and the framed protocol. The worker process is a thread replying to
+ * every command right away, connected to Buck through pipes.
+ */
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 10, time = 1, timeUnit = TimeUnit.SECONDS)
+@Fork(1)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class WorkerProcessProtocolBenchmark {
+
+  private static final String ARGS = "--input src/com/example/Foo.java --output out/Foo.o -O2";
+
+  @Param({"false", "true"})
+  private boolean framed;
+
+  private Path tmpDir;
+  private WorkerProcessProtocol.CommandSender sender;
+  private Thread worker;
+  private int messageId = 1;
+
+  @Setup
+  public void setUp() throws IOException {
+    tmpDir = Files.createTempDirectory("worker-protocol-benchmark");
+    Pipe toWorker = Pipe.open();
+    Pipe fromWorker = Pipe.open();
+    InputStream workerStdin = Channels.newInputStream(toWorker.source());
+    OutputStream workerStdout = Channels.newOutputStream(fromWorker.sink());
+    worker =
+        new Thread(
+            () -> {
+              try {
+                runWorker(workerStdin, workerStdout);
+              } catch (IOException e) {
+                throw new RuntimeException(e);
+              }
+            });
+    worker.setDaemon(true);
+    worker.start();
+
+    sender =
+        new WorkerProcessProtocolZero.CommandSender(
+            Channels.newOutputStream(toWorker.sink()),
+            Channels.newInputStream(fromWorker.source()),
+            Files.createTempFile(tmpDir, "worker", ".err"),
+            () -> {},
+            () -> true,
+            WorkerProcessProtocolZero.PROTOCOL_VERSION,
+            true);
+    sender.handshake(0);
+  }
+
+  @TearDown
+  public void tearDown() throws Exception {
+    sender.close();
+    worker.join();
+  }
+
+  /** Sends a command the way {@link WorkerProcess#submitJob} does, and waits for its result. */
+  @Benchmark
+  @BenchmarkMode(Mode.AverageTime)
+  public int roundTrip() throws IOException {
+    int id = messageId++;
+    Path argsPath = tmpDir.resolve(id + ".args");
+    if (!sender.isArgsInline()) {
+      Files.write(argsPath, ARGS.getBytes(StandardCharsets.UTF_8));
+    }
+    sender.send(
+        id,
+        ImmutableWorkerProcessCommand.of(
+            argsPath, tmpDir.resolve(id + ".out"), tmpDir.resolve(id + ".err"), ARGS));
+    return sender.receiveNextCommandResponse().getExitCode();
+  }
+
+  private void runWorker(InputStream stdin, OutputStream stdout) throws IOException {
+    JsonReader reader = new JsonReader(new InputStreamReader(stdin, StandardCharsets.UTF_8));
+    JsonWriter writer = new JsonWriter(new OutputStreamWriter(stdout, StandardCharsets.UTF_8));
+    reader.beginArray();
+    int handshakeId = readMessage(reader).id;
+    writer.beginArray();
+    writer.beginObject();
+    writer.name("id").value(handshakeId);
+    writer.name("type").value("handshake");
+    writer.name("protocol_version").value(WorkerProcessProtocolZero.PROTOCOL_VERSION);
+    writer.name("capabilities").beginArray();
+    if (framed) {
+      writer.value(WorkerProcessProtocolFramed.CAPABILITY);
+    }
+    writer.endArray();
+    writer.endObject();
+    writer.flush();
+
+    if (framed) {
+      runFramedWorker(stdin, stdout);
+      return;
+    }
+    while (reader.hasNext()) {
+      Message command = readMessage(reader);
+      Files.readAllBytes(command.argsPath);
+      writer.beginObject();
+      writer.name("id").value(command.id);
+      writer.name("type").value("result");
+      writer.name("exit_code").value(0);
+      writer.endObject();
+      writer.flush();
+    }
+    reader.endArray();
+    writer.endArray();
+    writer.close();
+  }
+
+  private static void runFramedWorker(InputStream stdin, OutputStream stdout) throws IOException {
+    DataInputStream input = new DataInputStream(new BufferedInputStream(stdin));
+    DataOutputStream output = new DataOutputStream(new BufferedOutputStream(stdout));
+    while (true) {
+      byte[] command;
+      try {
+        command = new byte[input.readInt()];
+      } catch (EOFException e) {
+        output.close();
+        return;
+      }
+      input.readFully(command);
+      int id = -1;
+      CodedInputStream commandInput = CodedInputStream.newInstance(command);
+      for (int tag = commandInput.readTag(); tag != 0; tag = commandInput.readTag()) {
+        if (WireFormat.getTagFieldNumber(tag) == 1) {
+          id = commandInput.readInt32();
+        } else {
+          commandInput.skipField(tag);
+        }
+      }
+      output.writeInt(
+          CodedOutputStream.computeInt32Size(1, id) + CodedOutputStream.computeInt32Size(2, 0));
+      CodedOutputStream result = CodedOutputStream.newInstance(output);
+      result.writeInt32(1, id);
+      result.writeInt32(2, 0);
+      result.flush();
+      output.flush();
+    }
+  }
+
+  private static Message readMessage(JsonReader reader) throws IOException {
+    Message message = new Message();
+    reader.beginObject();
+    while (reader.hasNext()) {
+      String name = reader.nextName();
+      if (name.equals("id")) {
+        message.id = reader.nextInt();
+      } else if (name.equals("args_path")) {
+        message.argsPath = Paths.get(reader.nextString());
+      } else {
+        reader.skipValue();
+      }
+    }
+    reader.endObject();
+    return message;
+  }
+
+  private static class Message {
+    private int id;
+    private Path argsPath;
+  }
+
+  public static void main(String[] args) throws IOException, RunnerException {
+    Main.main(new String[] {WorkerProcessProtocolBenchmark.class.getName()});
+  }
+}
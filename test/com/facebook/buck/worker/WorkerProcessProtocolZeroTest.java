@@ -23,10 +23,16 @@ import static org.junit.Assert.fail;
 
 import com.facebook.buck.core.exceptions.HumanReadableException;
 import com.facebook.buck.testutil.TemporaryPaths;
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.WireFormat;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.SequenceInputStream;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
 import java.nio.file.Paths;
@@ -81,7 +87,8 @@ public class WorkerProcessProtocolZeroTest {
     Path argsPath = Paths.get("args");
     Path stdoutPath = Paths.get("stdout");
     Path stderrPath = Paths.get("stderr");
-    protocol.send(messageID, ImmutableWorkerProcessCommand.of(argsPath, stdoutPath, stderrPath));
+    protocol.send(
+        messageID, ImmutableWorkerProcessCommand.of(argsPath, stdoutPath, stderrPath, "args"));
     String expectedJson =
         String.format(
             "{\"id\":%d,\"type\":\"command\","
@@ -111,6 +118,120 @@ public class WorkerProcessProtocolZeroTest {
     protocol.handshake(handshakeID);
   }
 
+  @Test
+  public void testMultiplexedHandshake() throws IOException {
+    int handshakeID = 123;
+    ByteArrayOutputStream jsonSentToWorkerProcess = new ByteArrayOutputStream();
+    WorkerProcessProtocol.CommandSender protocol =
+        new WorkerProcessProtocolZero.CommandSender(
+            jsonSentToWorkerProcess,
+            createMockJsonReaderForReceiveHandshake(handshakeID, "handshake", "1"),
+            newTempFile(),
+            () -> {},
+            () -> true,
+            WorkerProcessProtocolZero.MULTIPLEXED_PROTOCOL_VERSION,
+            false);
+
+    protocol.handshake(handshakeID);
+    assertThat(
+        jsonSentToWorkerProcess.toString(), Matchers.containsString("\"protocol_version\":\"1\""));
+  }
+
+  @Test
+  public void testMultiplexedHandshakeWithSingleJobWorker() throws IOException {
+    expectedException.expect(HumanReadableException.class);
+    expectedException.expectMessage(
+        "Expected handshake response's \"protocol_version\" to be \"1\", got \"0\" instead.");
+
+    int handshakeID = 123;
+    WorkerProcessProtocol.CommandSender protocol =
+        new WorkerProcessProtocolZero.CommandSender(
+            dummyOutputStream,
+            createMockJsonReaderForReceiveHandshake(handshakeID, "handshake", "0"),
+            newTempFile(),
+            () -> {},
+            () -> true,
+            WorkerProcessProtocolZero.MULTIPLEXED_PROTOCOL_VERSION,
+            false);
+
+    protocol.handshake(handshakeID);
+  }
+
+  @Test
+  public void testFramedProtocolIsUsedOnceAccepted() throws IOException {
+    int handshakeID = 123;
+    InputStream handshake =
+        inputStream(
+            String.format(
+                "[{\"id\":%d,\"type\":\"handshake\",\"protocol_version\":\"0\","
+                    + "\"capabilities\":[\"framed\"]}",
+                handshakeID));
+    ByteArrayOutputStream toolOutput = new ByteArrayOutputStream();
+    DataOutputStream result = new DataOutputStream(toolOutput);
+    result.writeInt(
+        CodedOutputStream.computeInt32Size(1, 124) + CodedOutputStream.computeInt32Size(2, 3));
+    CodedOutputStream resultMessage = CodedOutputStream.newInstance(result);
+    resultMessage.writeInt32(1, 124);
+    resultMessage.writeInt32(2, 3);
+    resultMessage.flush();
+
+    ByteArrayOutputStream sentToWorkerProcess = new ByteArrayOutputStream();
+    WorkerProcessProtocol.CommandSender protocol =
+        new WorkerProcessProtocolZero.CommandSender(
+            sentToWorkerProcess,
+            // The result is only readable after the handshake, as if the tool wrote it later.
+            new SequenceInputStream(handshake, new ByteArrayInputStream(toolOutput.toByteArray())),
+            newTempFile(),
+            () -> {},
+            () -> true,
+            WorkerProcessProtocolZero.PROTOCOL_VERSION,
+            true);
+    protocol.handshake(handshakeID);
+    assertTrue(protocol.isArgsInline());
+    assertThat(
+        sentToWorkerProcess.toString(),
+        Matchers.containsString("\"capabilities\":[\"framed\"]"));
+
+    int handshakeSize = sentToWorkerProcess.size();
+    protocol.send(
+        124,
+        ImmutableWorkerProcessCommand.of(
+            Paths.get("args"), Paths.get("stdout"), Paths.get("stderr"), "inline args"));
+    byte[] sent = sentToWorkerProcess.toByteArray();
+    DataInputStream command =
+        new DataInputStream(
+            new ByteArrayInputStream(sent, handshakeSize, sent.length - handshakeSize));
+    byte[] commandMessage = new byte[command.readInt()];
+    command.readFully(commandMessage);
+    CodedInputStream commandInput = CodedInputStream.newInstance(commandMessage);
+    assertEquals(1, WireFormat.getTagFieldNumber(commandInput.readTag()));
+    assertEquals(124, commandInput.readInt32());
+    assertEquals(2, WireFormat.getTagFieldNumber(commandInput.readTag()));
+    assertEquals("inline args", commandInput.readString());
+
+    WorkerProcessProtocol.CommandResponse response = protocol.receiveNextCommandResponse();
+    assertEquals(124, response.getCommandId());
+    assertEquals(3, response.getExitCode());
+  }
+
+  @Test
+  public void testCapabilitiesWhichWereNotOffered() throws IOException {
+    expectedException.expect(HumanReadableException.class);
+    expectedException.expectMessage("Expected handshake response's \"capabilities\" to be among");
+
+    WorkerProcessProtocol.CommandSender protocol =
+        new WorkerProcessProtocolZero.CommandSender(
+            dummyOutputStream,
+            inputStream(
+                "[{\"id\":1,\"type\":\"handshake\",\"protocol_version\":\"0\","
+                    + "\"capabilities\":[\"framed\"]}"),
+            newTempFile(),
+            () -> {},
+            () -> true);
+
+    protocol.handshake(1);
+  }
+
   private InputStream createMockJsonReaderForReceiveCommandResponse(
       int messageID, String type, int exitCode) {
     String jsonToBeRead =